@@ -0,0 +1,75 @@
+package net.savantly.authorization.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import net.savantly.authorization.jdbc.RolePermissions;
+import net.savantly.authorization.jdbc.RolePermissionsRepository;
+
+/**
+ * Starts the library on an in-memory H2 database, with the JPA or the plain JDBC store
+ *
+ * @author jeremy branham
+ *
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration
+public class BenchmarkApplication {
+
+	public static final String JPA = "jpa";
+	public static final String JDBC = "jdbc";
+
+	private static int databases;
+
+	public static ConfigurableApplicationContext start(String store) {
+		Map<String, Object> properties = new HashMap<>();
+		properties.put("spring.datasource.url", "jdbc:h2:mem:benchmark-" + nextDatabase() + ";DB_CLOSE_DELAY=-1");
+		properties.put("spring.main.banner-mode", "off");
+		properties.put("logging.level.root", "warn");
+		if (JDBC.equals(store)) {
+			properties.put("savantly.permissions.store", JDBC);
+			properties.put("spring.autoconfigure.exclude",
+					"org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration,"
+					+ "org.springframework.boot.autoconfigure.data.jpa.JpaRepositoriesAutoConfiguration");
+			properties.put("spring.datasource.schema", "classpath:net/savantly/authorization/jdbc/schema.sql");
+		}
+		return new SpringApplicationBuilder(BenchmarkApplication.class)
+				.web(WebApplicationType.NONE)
+				.properties(properties)
+				.run();
+	}
+
+	/**
+	 * Stores the mappings through the store the context was started with
+	 */
+	public static void populate(ConfigurableApplicationContext context, String store, Map<String, List<String>> mappings) {
+		if (JPA.equals(store)) {
+			List<RolePermissions> entities = new ArrayList<>();
+			mappings.forEach((role, permissions) -> entities.add(new RolePermissions(role, new ArrayList<>(permissions))));
+			context.getBean(RolePermissionsRepository.class).saveAll(entities);
+		} else {
+			JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+			List<Object[]> roles = new ArrayList<>();
+			List<Object[]> rows = new ArrayList<>();
+			mappings.forEach((role, permissions) -> {
+				roles.add(new Object[] { role });
+				permissions.forEach(permission -> rows.add(new Object[] { role, permission }));
+			});
+			jdbcTemplate.batchUpdate("insert into role_permissions (role) values (?)", roles);
+			jdbcTemplate.batchUpdate("insert into role_permissions_permissions (role_permissions_role, permissions) values (?, ?)", rows);
+		}
+	}
+
+	private static synchronized int nextDatabase() {
+		return databases++;
+	}
+}
@@ -0,0 +1,56 @@
+package net.savantly.authorization.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.savantly.authorization.service.PermissionProvider;
+
+/**
+ * Generates role to permission mappings where each role shares half of its permissions with the next role,
+ * like overlapping job functions
+ *
+ * @author jeremy branham
+ *
+ */
+public final class BenchmarkMappings {
+
+	/**
+	 * The number of roles in the mapping table, principals are members of the first few
+	 */
+	public static final int TABLE_ROLES = 200;
+
+	private BenchmarkMappings() {
+	}
+
+	public static Map<String, List<String>> generate(int permissionsPerRole) {
+		Map<String, List<String>> mappings = new LinkedHashMap<>();
+		for (int r = 0; r < TABLE_ROLES; r++) {
+			List<String> permissions = new ArrayList<>(permissionsPerRole);
+			int first = r * Math.max(1, permissionsPerRole / 2);
+			for (int p = 0; p < permissionsPerRole; p++) {
+				permissions.add("resource" + (first + p) + ":read");
+			}
+			mappings.put(role(r), permissions);
+		}
+		return mappings;
+	}
+
+	public static List<String> roles(int rolesPerPrincipal) {
+		List<String> roles = new ArrayList<>(rolesPerPrincipal);
+		for (int r = 0; r < rolesPerPrincipal; r++) {
+			roles.add(role(r));
+		}
+		return roles;
+	}
+
+	public static PermissionProvider inMemory(Map<String, List<String>> mappings) {
+		return role -> mappings.getOrDefault(role, Collections.<String>emptyList());
+	}
+
+	private static String role(int r) {
+		return "ROLE_" + r;
+	}
+}
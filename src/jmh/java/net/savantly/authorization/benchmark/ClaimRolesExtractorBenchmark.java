@@ -0,0 +1,74 @@
+package net.savantly.authorization.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import net.savantly.authorization.jwt.ClaimRolesExtractor;
+
+/**
+ * Compares the precompiled {@link ClaimRolesExtractor} with the claim lookup the converter used before it,
+ * which split the claim path with a regular expression on every token
+ *
+ * @author jeremy branham
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ClaimRolesExtractorBenchmark {
+
+	@Param({ "groups", "realm_access.roles" })
+	String claim;
+
+	@Param({ "1", "10", "50" })
+	int rolesPerPrincipal;
+
+	ClaimRolesExtractor extractor;
+	Map<String, Object> claims;
+
+	@Setup
+	public void setUp() {
+		extractor = ClaimRolesExtractor.of(claim);
+		List<String> roles = BenchmarkMappings.roles(rolesPerPrincipal);
+		claims = new HashMap<>();
+		claims.put("sub", "user");
+		claims.put("groups", roles);
+		claims.put("realm_access", Collections.singletonMap("roles", roles));
+	}
+
+	@Benchmark
+	public List<String> extractor() {
+		return extractor.extract(claims);
+	}
+
+	@Benchmark
+	public Collection<String> splitOnEveryToken() {
+		return getRolesFromClaims(claims, claim);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Collection<String> getRolesFromClaims(Map<String, Object> claims, String groupsClaim) {
+		if (groupsClaim.contains(".")) {
+			Object value = claims;
+			for (String key : groupsClaim.split("\\.")) {
+				value = ((Map<String, Object>) value).get(key);
+			}
+			return (Collection<String>) value;
+		}
+		return (Collection<String>) claims.getOrDefault(groupsClaim, new ArrayList<>());
+	}
+}
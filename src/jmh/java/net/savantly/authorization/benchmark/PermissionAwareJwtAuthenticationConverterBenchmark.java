@@ -0,0 +1,70 @@
+package net.savantly.authorization.benchmark;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import net.savantly.authorization.cache.BoundedCache;
+import net.savantly.authorization.service.PermissionAwareJwtAuthenticationConverter;
+import net.savantly.authorization.service.PermissionProvider;
+
+/**
+ * Converts a JWT to an authentication with an in-memory provider, so only the converter's own cost is measured
+ *
+ * @author jeremy branham
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PermissionAwareJwtAuthenticationConverterBenchmark {
+
+	@Param({ "flat", "nested" })
+	String claim;
+
+	@Param({ "1", "10", "50" })
+	int rolesPerPrincipal;
+
+	@Param({ "10", "100" })
+	int permissionsPerRole;
+
+	@Param({ "false", "true" })
+	boolean memoized;
+
+	PermissionAwareJwtAuthenticationConverter converter;
+	Jwt jwt;
+
+	@Setup
+	public void setUp() {
+		PermissionProvider permissionProvider = BenchmarkMappings.inMemory(BenchmarkMappings.generate(permissionsPerRole));
+		List<String> roles = BenchmarkMappings.roles(rolesPerPrincipal);
+		Jwt.Builder builder = Jwt.withTokenValue("token").header("alg", "none");
+		if ("nested".equals(claim)) {
+			converter = new PermissionAwareJwtAuthenticationConverter(permissionProvider, "realm_access.roles");
+			builder.claim("realm_access", Collections.singletonMap("roles", roles));
+		} else {
+			converter = new PermissionAwareJwtAuthenticationConverter(permissionProvider);
+			builder.claim("groups", roles);
+		}
+		if (memoized) {
+			converter.setAuthorityCache(new BoundedCache<>(1_000));
+		}
+		jwt = builder.build();
+	}
+
+	@Benchmark
+	public AbstractAuthenticationToken convert() {
+		return converter.convert(jwt);
+	}
+}
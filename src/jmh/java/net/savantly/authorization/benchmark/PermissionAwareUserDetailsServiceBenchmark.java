@@ -0,0 +1,53 @@
+package net.savantly.authorization.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import net.savantly.authorization.service.PermissionAwareUserDetailsService;
+
+/**
+ * Loads a user through the permission aware wrapper, with an in-memory delegate and provider
+ *
+ * @author jeremy branham
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PermissionAwareUserDetailsServiceBenchmark {
+
+	@Param({ "1", "10", "50" })
+	int rolesPerPrincipal;
+
+	@Param({ "10", "100" })
+	int permissionsPerRole;
+
+	PermissionAwareUserDetailsService userDetailsService;
+
+	@Setup
+	public void setUp() {
+		List<GrantedAuthority> roles = AuthorityUtils.createAuthorityList(
+				BenchmarkMappings.roles(rolesPerPrincipal).toArray(new String[0]));
+		UserDetails user = new User("user", "password", roles);
+		userDetailsService = new PermissionAwareUserDetailsService(username -> user,
+				BenchmarkMappings.inMemory(BenchmarkMappings.generate(permissionsPerRole)));
+	}
+
+	@Benchmark
+	public UserDetails loadUserByUsername() {
+		return userDetailsService.loadUserByUsername("user");
+	}
+}
@@ -0,0 +1,106 @@
+package net.savantly.authorization.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import net.savantly.authorization.jdbc.RolePermissionsRepository;
+import net.savantly.authorization.service.CachingPermissionProvider;
+import net.savantly.authorization.service.JdbcPermissionProvider;
+import net.savantly.authorization.service.JdbcTemplatePermissionProvider;
+import net.savantly.authorization.service.PermissionProvider;
+import net.savantly.authorization.service.SnapshotPermissionProvider;
+
+/**
+ * Looks up a principal's permissions with each {@link PermissionProvider} implementation, the database backed ones on H2
+ *
+ * @author jeremy branham
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PermissionProviderBenchmark {
+
+	@Param({ "memory", "jpa", "jdbc", "caching", "snapshot" })
+	String provider;
+
+	@Param({ "1", "10", "50" })
+	int rolesPerPrincipal;
+
+	@Param({ "10", "100" })
+	int permissionsPerRole;
+
+	ConfigurableApplicationContext context;
+	PermissionProvider permissionProvider;
+	List<String> roles;
+
+	@Setup
+	public void setUp() {
+		Map<String, List<String>> mappings = BenchmarkMappings.generate(permissionsPerRole);
+		roles = BenchmarkMappings.roles(rolesPerPrincipal);
+		if ("memory".equals(provider)) {
+			permissionProvider = BenchmarkMappings.inMemory(mappings);
+			return;
+		}
+		String store = "jdbc".equals(provider) ? BenchmarkApplication.JDBC : BenchmarkApplication.JPA;
+		context = BenchmarkApplication.start(store);
+		BenchmarkApplication.populate(context, store, mappings);
+		switch (provider) {
+		case "jdbc":
+			permissionProvider = context.getBean(JdbcTemplatePermissionProvider.class);
+			break;
+		case "caching":
+			permissionProvider = new CachingPermissionProvider(context.getBean(JdbcPermissionProvider.class));
+			break;
+		case "snapshot":
+			SnapshotPermissionProvider snapshot = new SnapshotPermissionProvider(context.getBean(RolePermissionsRepository.class));
+			snapshot.afterPropertiesSet();
+			permissionProvider = snapshot;
+			break;
+		default:
+			permissionProvider = context.getBean(JdbcPermissionProvider.class);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (permissionProvider instanceof SnapshotPermissionProvider) {
+			((SnapshotPermissionProvider) permissionProvider).destroy();
+		}
+		if (context != null) {
+			context.close();
+		}
+	}
+
+	/**
+	 * One lookup per role, like the integration points before bulk lookups
+	 */
+	@Benchmark
+	public void perRole(Blackhole blackhole) {
+		for (String role : roles) {
+			blackhole.consume(permissionProvider.getEffectivePermissions(role));
+		}
+	}
+
+	/**
+	 * One lookup for all of the principal's roles
+	 */
+	@Benchmark
+	public Set<String> roleSet() {
+		return permissionProvider.getEffectivePermissions(roles);
+	}
+}
@@ -0,0 +1,78 @@
+package net.savantly.authorization.benchmark;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import net.savantly.authorization.jdbc.RolePermissionEntry;
+import net.savantly.authorization.jdbc.RolePermissions;
+import net.savantly.authorization.jdbc.RolePermissionsRepository;
+
+/**
+ * Compares loading a role's permissions through the managed entity with the flat queries {@link net.savantly.authorization.service.JdbcPermissionProvider} runs, on H2
+ *
+ * @author jeremy branham
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RolePermissionsRepositoryBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	int permissionsPerRole;
+
+	ConfigurableApplicationContext context;
+	RolePermissionsRepository repository;
+	String role;
+	List<String> roles;
+
+	@Setup
+	public void setUp() {
+		context = BenchmarkApplication.start(BenchmarkApplication.JPA);
+		BenchmarkApplication.populate(context, BenchmarkApplication.JPA, BenchmarkMappings.generate(permissionsPerRole));
+		repository = context.getBean(RolePermissionsRepository.class);
+		role = BenchmarkMappings.roles(1).get(0);
+		roles = Collections.singletonList(role);
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public List<String> entity() {
+		RolePermissions rolePermissions = repository.findById(role).orElse(null);
+		// touch the collection, like the provider did when it read from the entity
+		rolePermissions.getPermissions().size();
+		return rolePermissions.getPermissions();
+	}
+
+	/**
+	 * The query behind the merged lookups of the provider
+	 */
+	@Benchmark
+	public List<String> permissionsByRoleIn() {
+		return repository.findPermissionsByRoleIn(roles);
+	}
+
+	/**
+	 * The query behind the by-role lookups of the provider
+	 */
+	@Benchmark
+	public List<RolePermissionEntry> entriesByRoleIn() {
+		return repository.findEntriesByRoleIn(roles);
+	}
+}
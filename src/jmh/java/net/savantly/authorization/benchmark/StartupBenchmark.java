@@ -0,0 +1,44 @@
+package net.savantly.authorization.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Starts an application context with the JPA store and with the plain JDBC store.
+ * Each measurement is a single start, so the timings include class loading only on the first iterations.
+ * JMH does not report auxiliary counters for single shot runs, the heap after startup is printed by {@link StartupFootprint}.
+ *
+ * @author jeremy branham
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StartupBenchmark {
+
+	@Param({ BenchmarkApplication.JPA, BenchmarkApplication.JDBC })
+	String store;
+
+	ConfigurableApplicationContext context;
+
+	@TearDown(Level.Invocation)
+	public void close() {
+		context.close();
+	}
+
+	@Benchmark
+	public ConfigurableApplicationContext startup() {
+		context = BenchmarkApplication.start(store);
+		return context;
+	}
+}
@@ -0,0 +1,29 @@
+package net.savantly.authorization.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Starts the {@link BenchmarkApplication} once in a fresh JVM, and prints the startup time and the heap in use after a full GC.
+ * Run it once per store, a warm JVM hides the class loading that dominates a real startup.
+ *
+ * @author jeremy branham
+ *
+ */
+public class StartupFootprint {
+
+	public static void main(String[] args) {
+		String store = args.length > 0 ? args[0] : BenchmarkApplication.JPA;
+		long started = System.nanoTime();
+		ConfigurableApplicationContext context = BenchmarkApplication.start(store);
+		long startupMillis = (System.nanoTime() - started) / 1_000_000;
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		memory.gc();
+		long heapUsed = memory.getHeapMemoryUsage().getUsed();
+		System.out.printf("store=%s startup=%d ms heap=%.1f MiB beans=%d%n", store, startupMillis, heapUsed / 1048576.0,
+				context.getBeanDefinitionCount());
+		context.close();
+	}
+}
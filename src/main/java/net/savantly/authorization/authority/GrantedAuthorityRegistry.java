@@ -0,0 +1,107 @@
+package net.savantly.authorization.authority;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+/**
+ * Hands out one canonical, immutable {@link GrantedAuthority} per authority name,
+ * so resolving the same permissions over and over does not allocate new authorities or strings.
+ * <p>
+ * Only names that come from the permission mappings should be registered, names from a request like the groups of a token
+ * are looked up with {@link #lookupAuthority(String)}, which never registers them.
+ * The registry also stops growing at its maximum size, after which unknown names get a fresh authority that is not retained.
+ * <p>
+ * The configuration creates one as a bean and passes it to the providers it creates, the converters should be given the same bean.
+ * 
+ * @author jeremy branham
+ *
+ */
+public class GrantedAuthorityRegistry {
+
+	public static final int DEFAULT_MAXIMUM_SIZE = 100_000;
+	private static final GrantedAuthorityRegistry SHARED = new GrantedAuthorityRegistry();
+
+	private final ConcurrentMap<String, GrantedAuthority> authorities = new ConcurrentHashMap<>();
+	private final int maximumSize;
+
+	public GrantedAuthorityRegistry() {
+		this(DEFAULT_MAXIMUM_SIZE);
+	}
+
+	public GrantedAuthorityRegistry(int maximumSize) {
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * @return the registry of the providers and integration points built by hand without one,
+	 * the configuration creates its own {@link GrantedAuthorityRegistry} bean instead
+	 */
+	public static GrantedAuthorityRegistry getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * @return the canonical authority for the name
+	 */
+	public GrantedAuthority getAuthority(String name) {
+		GrantedAuthority authority = authorities.get(name);
+		if (authority != null) {
+			return authority;
+		}
+		if (authorities.size() >= maximumSize) {
+			return new SimpleGrantedAuthority(name);
+		}
+		return authorities.computeIfAbsent(name, SimpleGrantedAuthority::new);
+	}
+
+	/**
+	 * @return the canonical authority when the name is registered, otherwise a new authority that is not retained
+	 */
+	public GrantedAuthority lookupAuthority(String name) {
+		GrantedAuthority authority = authorities.get(name);
+		return authority != null ? authority : new SimpleGrantedAuthority(name);
+	}
+
+	/**
+	 * @return the canonical authorities for the names, in the same order
+	 */
+	public List<GrantedAuthority> getAuthorities(Collection<String> names) {
+		List<GrantedAuthority> result = new ArrayList<>(names.size());
+		for (String name : names) {
+			result.add(getAuthority(name));
+		}
+		return result;
+	}
+
+	/**
+	 * @return the canonical string instance for the name
+	 */
+	public String intern(String name) {
+		return getAuthority(name).getAuthority();
+	}
+
+	/**
+	 * @return canonical string instances for the names, in the same order
+	 */
+	public List<String> intern(Collection<String> names) {
+		List<String> result = new ArrayList<>(names.size());
+		for (String name : names) {
+			result.add(intern(name));
+		}
+		return result;
+	}
+
+	public int size() {
+		return authorities.size();
+	}
+
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+}
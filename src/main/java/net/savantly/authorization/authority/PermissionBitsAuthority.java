@@ -0,0 +1,111 @@
+package net.savantly.authorization.authority;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * Carries a principal's effective permissions as a bitset inside its authorities,
+ * so a permission check is a hash lookup and a bit test instead of a scan of the authority list.
+ * <p>
+ * This is a complex authority in the {@link GrantedAuthority} sense, so {@link #getAuthority()} returns null
+ * and the regular string authorities stay in the list for <code>hasAuthority</code> and <code>hasRole</code>.
+ * <p>
+ * The integration points also give it the principal's direct authority names, its roles, which are not mapped permissions.
+ * It then holds every authority name of the principal, so a name it does not hold is denied without scanning the authority list.
+ * 
+ * @author jeremy branham
+ *
+ */
+public final class PermissionBitsAuthority implements GrantedAuthority {
+
+	private static final long serialVersionUID = 1L;
+
+	private final PermissionIndex index;
+	private final BitSet bits;
+	private final Set<String> authorityNames;
+
+	/**
+	 * Holds only the mapped permissions, so names it does not hold are still looked up in the authority list
+	 */
+	public PermissionBitsAuthority(PermissionIndex index, BitSet bits) {
+		this.index = index;
+		this.bits = (BitSet) bits.clone();
+		this.authorityNames = null;
+	}
+
+	/**
+	 * @param authorityNames the principal's direct authority names, like its roles
+	 */
+	public PermissionBitsAuthority(PermissionIndex index, BitSet bits, Collection<String> authorityNames) {
+		this.index = index;
+		this.bits = (BitSet) bits.clone();
+		this.authorityNames = Collections.unmodifiableSet(new HashSet<>(authorityNames));
+	}
+
+	public boolean hasPermission(String permission) {
+		int id = index.indexOf(permission);
+		return id >= 0 && bits.get(id);
+	}
+
+	/**
+	 * @return whether the name is a mapped permission in the bitset or one of the principal's direct authority names
+	 */
+	public boolean hasAuthority(String name) {
+		return hasPermission(name) || (authorityNames != null && authorityNames.contains(name));
+	}
+
+	/**
+	 * @return whether it holds every authority name of the principal, so a name it does not hold is not granted
+	 */
+	public boolean isComplete() {
+		return authorityNames != null;
+	}
+
+	/**
+	 * @return the principal's direct authority names, or null when only the mapped permissions are held
+	 */
+	public Set<String> getAuthorityNames() {
+		return authorityNames;
+	}
+
+	public int getPermissionCount() {
+		return bits.cardinality();
+	}
+
+	public Set<String> getPermissions() {
+		return index.toNames(bits);
+	}
+
+	@Override
+	public String getAuthority() {
+		return null;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof PermissionBitsAuthority)) {
+			return false;
+		}
+		PermissionBitsAuthority other = (PermissionBitsAuthority) obj;
+		return index == other.index && bits.equals(other.bits) && Objects.equals(authorityNames, other.authorityNames);
+	}
+
+	@Override
+	public int hashCode() {
+		return bits.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return "PermissionBitsAuthority [permissions=" + getPermissionCount() + "]";
+	}
+}
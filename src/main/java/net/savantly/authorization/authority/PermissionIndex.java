@@ -0,0 +1,82 @@
+package net.savantly.authorization.authority;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Assigns each permission name a dense integer id, so a set of permissions can be stored as a {@link BitSet}.
+ * Ids are never reused or reassigned.
+ * 
+ * @author jeremy branham
+ *
+ */
+public class PermissionIndex implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+	private final List<String> names = new ArrayList<>();
+
+	/**
+	 * @return the id of the permission, assigning the next free id if it is new
+	 */
+	public int register(String permission) {
+		Integer id = ids.get(permission);
+		if (id != null) {
+			return id;
+		}
+		synchronized (names) {
+			id = ids.get(permission);
+			if (id == null) {
+				id = names.size();
+				names.add(permission);
+				ids.put(permission, id);
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * @return the id of the permission, or -1 if it has never been registered
+	 */
+	public int indexOf(String permission) {
+		Integer id = ids.get(permission);
+		return id == null ? -1 : id;
+	}
+
+	public String nameOf(int id) {
+		synchronized (names) {
+			return names.get(id);
+		}
+	}
+
+	public int size() {
+		return ids.size();
+	}
+
+	/**
+	 * Registers the permissions and returns them as a bitset
+	 */
+	public BitSet toBits(Collection<String> permissions) {
+		BitSet bits = new BitSet(size());
+		for (String permission : permissions) {
+			bits.set(register(permission));
+		}
+		return bits;
+	}
+
+	public Set<String> toNames(BitSet bits) {
+		Set<String> result = new LinkedHashSet<>();
+		for (int id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1)) {
+			result.add(nameOf(id));
+		}
+		return result;
+	}
+}
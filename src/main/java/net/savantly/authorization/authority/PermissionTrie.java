@@ -0,0 +1,112 @@
+package net.savantly.authorization.authority;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable prefix trie of namespaced permission grants, like <code>orders:read</code> or <code>billing:*</code>.
+ * <p>
+ * Grants are split into segments on a separator, <code>:</code> by default.
+ * A <code>*</code> as the last segment grants everything below its namespace, so <code>orders:*</code> implies
+ * <code>orders:read</code> and <code>orders:refund:approve</code>, but not <code>orders</code> itself.
+ * A <code>*</code> in any other position matches exactly one segment, and a lone <code>*</code> implies every permission.
+ * Other grants only imply themselves.
+ * <p>
+ * {@link #implies(String)} walks one node per segment of the checked permission, whatever the number of grants,
+ * as long as no inner <code>*</code> sits next to an exact segment at the same level.
+ * Where one does, like <code>orders:*:view</code> next to <code>orders:eu:view</code>, both branches are tried,
+ * so the cost grows with such wildcards on the path, but never beyond the number of nodes in the trie.
+ * 
+ * @author jeremy branham
+ *
+ */
+public final class PermissionTrie implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final char DEFAULT_SEPARATOR = ':';
+	public static final String WILDCARD = "*";
+
+	private final Node root = new Node();
+	private final char separator;
+	private int size;
+
+	public PermissionTrie(Collection<String> grants) {
+		this(grants, DEFAULT_SEPARATOR);
+	}
+
+	public PermissionTrie(Collection<String> grants, char separator) {
+		this.separator = separator;
+		for (String grant : grants) {
+			if (grant != null) {
+				add(grant);
+			}
+		}
+	}
+
+	/**
+	 * @return true if any grant is the permission, or a wildcard that covers it
+	 */
+	public boolean implies(String permission) {
+		return permission != null && implies(root, permission, 0);
+	}
+
+	/**
+	 * @return the number of grants in the trie
+	 */
+	public int size() {
+		return size;
+	}
+
+	private void add(String grant) {
+		Node node = root;
+		int start = 0;
+		while (true) {
+			int end = grant.indexOf(separator, start);
+			boolean last = end < 0;
+			String segment = last ? grant.substring(start) : grant.substring(start, end);
+			if (last && WILDCARD.equals(segment)) {
+				node.grantsDescendants = true;
+				break;
+			}
+			node = node.children.computeIfAbsent(segment, s -> new Node());
+			if (last) {
+				node.granted = true;
+				break;
+			}
+			start = end + 1;
+		}
+		size++;
+	}
+
+	private boolean implies(Node node, String permission, int start) {
+		if (node.grantsDescendants) {
+			return true;
+		}
+		int end = permission.indexOf(separator, start);
+		boolean last = end < 0;
+		String segment = last ? permission.substring(start) : permission.substring(start, end);
+		Node child = node.children.get(segment);
+		if (child != null && (last ? child.granted : implies(child, permission, end + 1))) {
+			return true;
+		}
+		Node wildcard = node.children.get(WILDCARD);
+		return wildcard != null && (last ? wildcard.granted : implies(wildcard, permission, end + 1));
+	}
+
+	private static final class Node implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Map<String, Node> children = new HashMap<>(4);
+		private boolean granted;
+		private boolean grantsDescendants;
+	}
+
+	@Override
+	public String toString() {
+		return "PermissionTrie [grants=" + size + "]";
+	}
+}
@@ -0,0 +1,77 @@
+package net.savantly.authorization.authority;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * Carries a principal's permission grants as a {@link PermissionTrie} inside its authorities,
+ * so wildcard and namespaced grants like <code>orders:*</code> can be checked without expanding them into authority names.
+ * <p>
+ * This is a complex authority in the {@link GrantedAuthority} sense, so {@link #getAuthority()} returns null
+ * and the grants stay in the list as regular string authorities for <code>hasAuthority</code>.
+ * <p>
+ * Like the {@link PermissionBitsAuthority} it can also hold the principal's direct authority names,
+ * so a name it neither implies nor holds is denied without scanning the authority list.
+ * 
+ * @author jeremy branham
+ *
+ */
+public final class PermissionTrieAuthority implements GrantedAuthority {
+
+	private static final long serialVersionUID = 1L;
+
+	private final PermissionTrie trie;
+	private final Set<String> authorityNames;
+
+	/**
+	 * Holds only the grants, so names it does not imply are still looked up in the authority list
+	 */
+	public PermissionTrieAuthority(PermissionTrie trie) {
+		this.trie = trie;
+		this.authorityNames = null;
+	}
+
+	/**
+	 * @param authorityNames the principal's direct authority names, like its roles
+	 */
+	public PermissionTrieAuthority(PermissionTrie trie, Collection<String> authorityNames) {
+		this.trie = trie;
+		this.authorityNames = Collections.unmodifiableSet(new HashSet<>(authorityNames));
+	}
+
+	public boolean implies(String permission) {
+		return trie.implies(permission);
+	}
+
+	/**
+	 * @return whether a grant implies the name or it is one of the principal's direct authority names
+	 */
+	public boolean hasAuthority(String name) {
+		return implies(name) || (authorityNames != null && authorityNames.contains(name));
+	}
+
+	/**
+	 * @return whether it holds every authority name of the principal, so a name it does not hold is not granted
+	 */
+	public boolean isComplete() {
+		return authorityNames != null;
+	}
+
+	public PermissionTrie getTrie() {
+		return trie;
+	}
+
+	@Override
+	public String getAuthority() {
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return "PermissionTrieAuthority [grants=" + trie.size() + "]";
+	}
+}
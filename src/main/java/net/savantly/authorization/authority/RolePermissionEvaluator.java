@@ -0,0 +1,67 @@
+package net.savantly.authorization.authority;
+
+import java.io.Serializable;
+
+import org.springframework.security.access.PermissionEvaluator;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * A {@link PermissionEvaluator} for mapped permissions, used as <code>hasPermission(null, 'CREATE')</code>.
+ * <p>
+ * The target object is ignored. When the authentication carries a {@link PermissionTrieAuthority}
+ * the permission is answered from the trie, so wildcard grants like <code>orders:*</code> are honored.
+ * Otherwise when it carries a {@link PermissionBitsAuthority} the permission is answered from the bitset.
+ * The integration points give both the principal's roles as well, so a permission they do not hold is denied right away,
+ * and granted and denied checks alike cost a lookup instead of a scan.
+ * Without either authority, or with one built without the direct authority names, the authority names are scanned.
+ * 
+ * @author jeremy branham
+ *
+ */
+public class RolePermissionEvaluator implements PermissionEvaluator {
+
+	@Override
+	public boolean hasPermission(Authentication authentication, Object targetDomainObject, Object permission) {
+		return hasPermission(authentication, permission);
+	}
+
+	@Override
+	public boolean hasPermission(Authentication authentication, Serializable targetId, String targetType, Object permission) {
+		return hasPermission(authentication, permission);
+	}
+
+	public boolean hasPermission(Authentication authentication, Object permission) {
+		if (authentication == null || !(permission instanceof String)) {
+			return false;
+		}
+		String name = (String) permission;
+		for (GrantedAuthority authority : authentication.getAuthorities()) {
+			// the integration points put the trie or bits authority first, so a check returns on the first element
+			if (authority instanceof PermissionTrieAuthority) {
+				PermissionTrieAuthority trie = (PermissionTrieAuthority) authority;
+				if (trie.hasAuthority(name)) {
+					return true;
+				}
+				if (trie.isComplete()) {
+					return false;
+				}
+				continue;
+			}
+			if (authority instanceof PermissionBitsAuthority) {
+				PermissionBitsAuthority bits = (PermissionBitsAuthority) authority;
+				if (bits.hasAuthority(name)) {
+					return true;
+				}
+				if (bits.isComplete()) {
+					return false;
+				}
+				continue;
+			}
+			if (name.equals(authority.getAuthority())) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
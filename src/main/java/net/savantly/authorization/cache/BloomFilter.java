@@ -0,0 +1,117 @@
+package net.savantly.authorization.cache;
+
+import java.util.Collection;
+
+/**
+ * A Bloom filter of strings: {@link #mightContain(String)} never returns false for a value that was added,
+ * and returns true for a value that was not added with roughly the configured false positive rate.
+ * <p>
+ * Sized for an expected number of values, so the memory is fixed at about <code>-n ln(p) / ln(2)^2</code> bits.
+ * Adding values is not thread safe, a filter should be built and then published to readers.
+ *
+ * @author jeremy branham
+ *
+ */
+public final class BloomFilter {
+
+	private final long[] words;
+	private final int bitSize;
+	private final int hashFunctions;
+	private int insertions;
+
+	/**
+	 * @param expectedInsertions how many values will be added
+	 * @param falsePositiveRate the acceptable rate of false positives at that many values, between 0 and 1
+	 */
+	public BloomFilter(int expectedInsertions, double falsePositiveRate) {
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1: " + falsePositiveRate);
+		}
+		int n = Math.max(1, expectedInsertions);
+		long bits = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		this.bitSize = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, bits));
+		this.hashFunctions = Math.max(1, (int) Math.round((double) bitSize / n * Math.log(2)));
+		this.words = new long[(bitSize + 63) / 64];
+	}
+
+	public static BloomFilter of(Collection<String> values, double falsePositiveRate) {
+		BloomFilter filter = new BloomFilter(values.size(), falsePositiveRate);
+		values.forEach(filter::put);
+		return filter;
+	}
+
+	public void put(String value) {
+		long hash = hash(value);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 1; i <= hashFunctions; i++) {
+			int bit = index(h1 + i * h2);
+			words[bit >>> 6] |= 1L << bit;
+		}
+		insertions++;
+	}
+
+	/**
+	 * @return false if the value was certainly not added
+	 */
+	public boolean mightContain(String value) {
+		long hash = hash(value);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 1; i <= hashFunctions; i++) {
+			int bit = index(h1 + i * h2);
+			if ((words[bit >>> 6] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int getBitSize() {
+		return bitSize;
+	}
+
+	public int getHashFunctions() {
+		return hashFunctions;
+	}
+
+	public int getInsertions() {
+		return insertions;
+	}
+
+	public long getMemoryBytes() {
+		return words.length * 8L;
+	}
+
+	/**
+	 * @return the false positive rate expected for the values added so far
+	 */
+	public double getExpectedFalsePositiveRate() {
+		return Math.pow(1 - Math.exp(-(double) hashFunctions * insertions / bitSize), hashFunctions);
+	}
+
+	private int index(int combinedHash) {
+		return (combinedHash & Integer.MAX_VALUE) % bitSize;
+	}
+
+	// 64-bit FNV-1a over the chars, with the murmur3 finalizer to spread the bits
+	private static long hash(String value) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			hash ^= value.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb3fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return "BloomFilter [values=" + insertions + ", bits=" + bitSize + ", hashFunctions=" + hashFunctions
+				+ ", expectedFalsePositiveRate=" + getExpectedFalsePositiveRate() + "]";
+	}
+}
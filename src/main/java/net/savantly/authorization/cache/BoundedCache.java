@@ -0,0 +1,194 @@
+package net.savantly.authorization.cache;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * A small in-process cache with a maximum size, optional expire-after-write and
+ * expire-after-access timeouts, least-recently-used eviction and hit/miss statistics.
+ * <p>
+ * Values are loaded outside of the cache lock, so a slow loader never blocks readers of other keys.
+ * A value whose load overlapped an invalidation is returned to its caller but not cached,
+ * so an invalidation is never undone by a load that read the data before it changed.
+ *
+ * @author jeremy branham
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class BoundedCache<K, V> {
+
+	private final int maximumSize;
+	private final long expireAfterWriteNanos;
+	private final long expireAfterAccessNanos;
+	private final LongSupplier ticker;
+	private final LinkedHashMap<K, Entry> entries;
+	// guarded by entries, incremented on every invalidation so loads that overlapped one are not cached
+	private long generation;
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+
+	public BoundedCache(int maximumSize) {
+		this(maximumSize, null, null);
+	}
+
+	public BoundedCache(int maximumSize, Duration expireAfterWrite, Duration expireAfterAccess) {
+		this(maximumSize, expireAfterWrite, expireAfterAccess, System::nanoTime);
+	}
+
+	public BoundedCache(int maximumSize, Duration expireAfterWrite, Duration expireAfterAccess, LongSupplier ticker) {
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("maximumSize must be greater than 0");
+		}
+		this.maximumSize = maximumSize;
+		this.expireAfterWriteNanos = toNanos(expireAfterWrite);
+		this.expireAfterAccessNanos = toNanos(expireAfterAccess);
+		this.ticker = ticker;
+		// access-order iteration puts the least recently used entry first
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * @return the cached value, or null if there is no live entry for the key
+	 */
+	public V get(K key) {
+		long now = ticker.getAsLong();
+		synchronized (entries) {
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				missCount.increment();
+				return null;
+			}
+			if (entry.isExpired(now)) {
+				entries.remove(key);
+				evictionCount.increment();
+				missCount.increment();
+				return null;
+			}
+			entry.accessedAt = now;
+			hitCount.increment();
+			return entry.value;
+		}
+	}
+
+	/**
+	 * Returns the cached value, or loads and caches it when absent or expired.
+	 * A null value returned by the loader is not cached, nor is a value when the cache was invalidated while it loaded.
+	 */
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		V value = get(key);
+		if (value != null) {
+			return value;
+		}
+		long startGeneration;
+		synchronized (entries) {
+			startGeneration = generation;
+		}
+		value = loader.apply(key);
+		if (value != null) {
+			long now = ticker.getAsLong();
+			synchronized (entries) {
+				if (generation == startGeneration) {
+					entries.put(key, new Entry(value, now));
+					evictOverflow();
+				}
+			}
+		}
+		return value;
+	}
+
+	public void put(K key, V value) {
+		long now = ticker.getAsLong();
+		synchronized (entries) {
+			entries.put(key, new Entry(value, now));
+			evictOverflow();
+		}
+	}
+
+	/**
+	 * Removes the entry of a key, loads of any key that are in flight are not cached
+	 */
+	public void invalidate(K key) {
+		synchronized (entries) {
+			generation++;
+			entries.remove(key);
+		}
+	}
+
+	public void invalidateAll() {
+		synchronized (entries) {
+			generation++;
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Removes all expired entries
+	 */
+	public void cleanUp() {
+		long now = ticker.getAsLong();
+		synchronized (entries) {
+			Iterator<Entry> it = entries.values().iterator();
+			while (it.hasNext()) {
+				if (it.next().isExpired(now)) {
+					it.remove();
+					evictionCount.increment();
+				}
+			}
+		}
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	public CacheStatistics getStatistics() {
+		return new CacheStatistics(hitCount.sum(), missCount.sum(), evictionCount.sum());
+	}
+
+	private void evictOverflow() {
+		Iterator<Map.Entry<K, Entry>> it = entries.entrySet().iterator();
+		while (entries.size() > maximumSize && it.hasNext()) {
+			it.next();
+			it.remove();
+			evictionCount.increment();
+		}
+	}
+
+	private static long toNanos(Duration duration) {
+		if (duration == null || duration.isZero() || duration.isNegative()) {
+			return 0;
+		}
+		return duration.toNanos();
+	}
+
+	private class Entry {
+		private final V value;
+		private final long writtenAt;
+		private long accessedAt;
+
+		Entry(V value, long now) {
+			this.value = value;
+			this.writtenAt = now;
+			this.accessedAt = now;
+		}
+
+		boolean isExpired(long now) {
+			return (expireAfterWriteNanos > 0 && now - writtenAt >= expireAfterWriteNanos)
+					|| (expireAfterAccessNanos > 0 && now - accessedAt >= expireAfterAccessNanos);
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package net.savantly.authorization.cache;
+
+/**
+ * Point-in-time statistics of a {@link BoundedCache}
+ *
+ * @author jeremy branham
+ *
+ */
+public class CacheStatistics {
+
+	private final long hitCount;
+	private final long missCount;
+	private final long evictionCount;
+
+	public CacheStatistics(long hitCount, long missCount, long evictionCount) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	public long getRequestCount() {
+		return hitCount + missCount;
+	}
+
+	/**
+	 * @return the ratio of hits to requests, or 1.0 when there have been no requests
+	 */
+	public double getHitRate() {
+		long requestCount = getRequestCount();
+		return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+	}
+
+	@Override
+	public String toString() {
+		return "CacheStatistics [hitCount=" + hitCount + ", missCount=" + missCount + ", evictionCount="
+				+ evictionCount + "]";
+	}
+}
@@ -0,0 +1,49 @@
+package net.savantly.authorization.configuration;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.AnyNestedCondition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import net.savantly.authorization.authority.GrantedAuthorityRegistry;
+import net.savantly.authorization.service.JdbcTemplatePermissionProvider;
+
+/**
+ * Reads the role permissions tables with a {@link JdbcTemplate}, without bootstrapping JPA.
+ * Applies when <code>savantly.permissions.store=jdbc</code>, or when Spring Data JPA is not on the classpath and no other store is selected.
+ *
+ * @author jeremy branham
+ *
+ */
+@Configuration
+@Conditional(JdbcRolePermissionConfiguration.JdbcStoreCondition.class)
+public class JdbcRolePermissionConfiguration {
+
+	@Bean
+	@Qualifier(RolePermissionConfiguration.SOURCE_PERMISSION_PROVIDER)
+	public JdbcTemplatePermissionProvider jdbcTemplatePermissionProvider(JdbcTemplate jdbcTemplate, GrantedAuthorityRegistry authorityRegistry) {
+		return new JdbcTemplatePermissionProvider(jdbcTemplate, authorityRegistry);
+	}
+
+	static class JdbcStoreCondition extends AnyNestedCondition {
+
+		JdbcStoreCondition() {
+			super(ConfigurationPhase.PARSE_CONFIGURATION);
+		}
+
+		@ConditionalOnProperty(prefix = "savantly.permissions", name = "store", havingValue = "jdbc")
+		static class JdbcStoreSelected {
+
+		}
+
+		@ConditionalOnMissingClass(JpaRolePermissionConfiguration.JPA_REPOSITORY_CLASS)
+		@ConditionalOnProperty(prefix = "savantly.permissions", name = "store", havingValue = "jpa", matchIfMissing = true)
+		static class JpaNotAvailable {
+
+		}
+	}
+}
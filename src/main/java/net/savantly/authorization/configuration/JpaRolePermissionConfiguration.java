@@ -0,0 +1,74 @@
+package net.savantly.authorization.configuration;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.boot.autoconfigure.AutoConfigurationPackages;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.domain.EntityScanPackages;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.ImportBeanDefinitionRegistrar;
+import org.springframework.core.type.AnnotationMetadata;
+
+import net.savantly.authorization.authority.GrantedAuthorityRegistry;
+import net.savantly.authorization.jdbc.RolePermissionsChangeRepository;
+import net.savantly.authorization.jdbc.RolePermissionsRepository;
+import net.savantly.authorization.service.JdbcPermissionProvider;
+import net.savantly.authorization.service.RolePermissionsChangePoller;
+
+/**
+ * Maps the role permissions tables with JPA, and creates the {@link RolePermissionsRepository}.
+ * Only applies when Spring Data JPA is on the classpath and <code>savantly.permissions.store</code> is not <code>jdbc</code>.
+ * <p>
+ * The entity package is added to the auto-configuration packages, so Spring Boot scans it beside the application's own entities and repositories.
+ * An application declaring its own <code>@EnableJpaRepositories</code> has to include <code>net.savantly.authorization.jdbc</code> in it.
+ *
+ * @author jeremy branham
+ *
+ */
+@Configuration
+@ConditionalOnClass(name = JpaRolePermissionConfiguration.JPA_REPOSITORY_CLASS)
+@ConditionalOnProperty(prefix = "savantly.permissions", name = "store", havingValue = "jpa", matchIfMissing = true)
+@Import(JpaRolePermissionConfiguration.RolePermissionsPackageRegistrar.class)
+public class JpaRolePermissionConfiguration {
+
+	static final String JPA_REPOSITORY_CLASS = "org.springframework.data.jpa.repository.JpaRepository";
+	static final String ENTITY_PACKAGE = "net.savantly.authorization.jdbc";
+	private static final String ENTITY_SCAN_PACKAGES_BEAN = EntityScanPackages.class.getName();
+
+	@Bean
+	@Qualifier(RolePermissionConfiguration.SOURCE_PERMISSION_PROVIDER)
+	public JdbcPermissionProvider jdbcPermissionProvider(RolePermissionsRepository rolePermissionRepository,
+			GrantedAuthorityRegistry authorityRegistry) {
+		return new JdbcPermissionProvider(rolePermissionRepository, authorityRegistry);
+	}
+
+	@Bean
+	@ConditionalOnProperty(prefix = "savantly.permissions.change-log", name = "enabled", havingValue = "true")
+	public RolePermissionsChangePoller rolePermissionsChangePoller(RolePermissionsChangeRepository changeRepository,
+			RolePermissionProperties properties) {
+		RolePermissionProperties.ChangeLog changeLog = properties.getChangeLog();
+		RolePermissionsChangePoller poller = new RolePermissionsChangePoller(changeRepository, changeLog.getPollInterval());
+		poller.setGracePeriod(changeLog.getGracePeriod());
+		poller.setRetention(changeLog.getRetention());
+		poller.setRetentionInterval(changeLog.getRetentionInterval());
+		return poller;
+	}
+
+	/**
+	 * Adds the entity package to the packages Spring Boot scans, instead of replacing them with its own scan.
+	 * An <code>@EntityScan</code> of the application replaces the auto-configuration packages for entities, so the package is added there as well.
+	 */
+	static class RolePermissionsPackageRegistrar implements ImportBeanDefinitionRegistrar {
+
+		@Override
+		public void registerBeanDefinitions(AnnotationMetadata importingClassMetadata, BeanDefinitionRegistry registry) {
+			AutoConfigurationPackages.register(registry, ENTITY_PACKAGE);
+			if (registry.containsBeanDefinition(ENTITY_SCAN_PACKAGES_BEAN)) {
+				EntityScanPackages.register(registry, ENTITY_PACKAGE);
+			}
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package net.savantly.authorization.configuration;
+
+import java.nio.file.Paths;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import net.savantly.authorization.authority.GrantedAuthorityRegistry;
+import net.savantly.authorization.service.PropertiesPermissionProvider;
+
+/**
+ * Serves the <code>savantly.permissions.roles</code> mappings without a database.
+ * Only applies when <code>savantly.permissions.store=properties</code>.
+ *
+ * @author jeremy branham
+ *
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "savantly.permissions", name = "store", havingValue = "properties")
+public class PropertiesRolePermissionConfiguration {
+
+	@Bean
+	@Qualifier(RolePermissionConfiguration.SOURCE_PERMISSION_PROVIDER)
+	public PropertiesPermissionProvider propertiesPermissionProvider(RolePermissionProperties properties,
+			GrantedAuthorityRegistry authorityRegistry) {
+		return new PropertiesPermissionProvider(properties.getRoles(), authorityRegistry);
+	}
+
+	@Bean
+	@ConditionalOnProperty(prefix = "savantly.permissions.roles-file", name = "path")
+	public RolePermissionsFileReloader rolePermissionsFileReloader(PropertiesPermissionProvider propertiesPermissionProvider,
+			RolePermissionProperties properties) {
+		RolePermissionProperties.RolesFile rolesFile = properties.getRolesFile();
+		return new RolePermissionsFileReloader(propertiesPermissionProvider, Paths.get(rolesFile.getPath()), rolesFile.getPollInterval());
+	}
+}
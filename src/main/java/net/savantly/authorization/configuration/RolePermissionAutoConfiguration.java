@@ -0,0 +1,57 @@
+package net.savantly.authorization.configuration;
+
+import javax.sql.DataSource;
+
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.AnyNestedCondition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.data.jpa.JpaRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+import net.savantly.authorization.service.PermissionProvider;
+
+/**
+ * Applies the {@link RolePermissionConfiguration} without the {@link EnableRolePermissions} annotation.
+ * Backs off when the annotation is present or the application defines its own {@link PermissionProvider},
+ * and can be turned off with <code>savantly.permissions.enabled=false</code>.
+ * <p>
+ * The JPA and JDBC stores need a {@link DataSource}, without one only <code>savantly.permissions.store=properties</code> is configured.
+ * Ordered before the Spring Data JPA repositories so the role permission repositories are found beside the application's own.
+ *
+ * @author jeremy branham
+ *
+ */
+@Configuration
+@AutoConfigureAfter({ DataSourceAutoConfiguration.class, HibernateJpaAutoConfiguration.class, JdbcTemplateAutoConfiguration.class })
+@AutoConfigureBefore(JpaRepositoriesAutoConfiguration.class)
+@ConditionalOnProperty(prefix = "savantly.permissions", name = "enabled", havingValue = "true", matchIfMissing = true)
+@ConditionalOnMissingBean({ RolePermissionConfiguration.class, PermissionProvider.class })
+@Conditional(RolePermissionAutoConfiguration.StoreAvailableCondition.class)
+@Import(RolePermissionConfiguration.class)
+public class RolePermissionAutoConfiguration {
+
+	static class StoreAvailableCondition extends AnyNestedCondition {
+
+		StoreAvailableCondition() {
+			super(ConfigurationPhase.REGISTER_BEAN);
+		}
+
+		@ConditionalOnProperty(prefix = "savantly.permissions", name = "store", havingValue = "properties")
+		static class PropertiesStoreSelected {
+
+		}
+
+		@ConditionalOnBean(DataSource.class)
+		static class DataSourceAvailable {
+
+		}
+	}
+}
@@ -1,26 +1,232 @@
 package net.savantly.authorization.configuration;
 
-import org.springframework.boot.autoconfigure.domain.EntityScan;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Primary;
 
-import net.savantly.authorization.jdbc.RolePermissionsRepository;
-import net.savantly.authorization.service.JdbcPermissionProvider;
+import net.savantly.authorization.authority.GrantedAuthorityRegistry;
+import net.savantly.authorization.cache.BoundedCache;
+import net.savantly.authorization.metrics.PermissionMetrics;
+import net.savantly.authorization.service.CachingPermissionProvider;
+import net.savantly.authorization.service.CoalescingPermissionProvider;
+import net.savantly.authorization.service.FailoverPermissionProvider;
+import net.savantly.authorization.service.InstrumentedPermissionProvider;
+import net.savantly.authorization.service.InvertedPermissionIndex;
+import net.savantly.authorization.service.KnownRolesPermissionProvider;
 import net.savantly.authorization.service.PermissionProvider;
+import net.savantly.authorization.service.PermissionRoleLookup;
+import net.savantly.authorization.service.PropertiesPermissionProvider;
+import net.savantly.authorization.service.RoleCatalog;
+import net.savantly.authorization.service.RoleInheritanceLookup;
+import net.savantly.authorization.service.TieredPermissionProvider;
+import net.savantly.authorization.service.TieredPermissionProvider.Tier;
+import net.savantly.authorization.snapshot.MappedPermissionSnapshotProvider;
+import net.savantly.authorization.snapshot.PermissionSnapshotExporter;
 
 /**
- * 
+ * Creates the {@link PermissionProvider} that reads the role permissions tables.
+ * The JPA backed provider is used when Spring Data JPA is on the classpath, otherwise a plain JDBC provider is used,
+ * unless <code>savantly.permissions.store=properties</code> serves the mappings from the configuration.
+ *
  * @author jeremy branham
  *
  */
 @Configuration
-@EnableJpaRepositories(basePackages = "net.savantly.authorization.jdbc")
-@EntityScan(basePackages = "net.savantly.authorization.jdbc")
+@EnableConfigurationProperties(RolePermissionProperties.class)
+@Import({ JpaRolePermissionConfiguration.class, JdbcRolePermissionConfiguration.class, PropertiesRolePermissionConfiguration.class,
+		RolePermissionMetricsConfiguration.class })
 public class RolePermissionConfiguration {
 
+	/**
+	 * Qualifies the provider that reads the backing store, as opposed to the providers that decorate it
+	 */
+	public static final String SOURCE_PERMISSION_PROVIDER = "rolePermissionSource";
+
+	/**
+	 * Hands out the canonical authorities of the permissions, pass it to the converters so they share the instances of the providers
+	 */
+	@Bean
+	@ConditionalOnMissingBean
+	public GrantedAuthorityRegistry grantedAuthorityRegistry() {
+		return new GrantedAuthorityRegistry();
+	}
+
+	@Bean
+	@Primary
+	@ConditionalOnExpression("${savantly.permissions.cache.enabled:false} and !${savantly.permissions.tiers.enabled:false}")
+	public CachingPermissionProvider cachingPermissionProvider(
+			@Qualifier(SOURCE_PERMISSION_PROVIDER) PermissionProvider sourcePermissionProvider, RolePermissionProperties properties,
+			ObjectProvider<KnownRolesPermissionProvider> knownRolesPermissionProvider,
+			ObjectProvider<MappedPermissionSnapshotProvider> snapshotPermissionProvider, ObjectProvider<PermissionMetrics> permissionMetrics,
+			ObjectProvider<CoalescingPermissionProvider> coalescingPermissionProvider) {
+		RolePermissionProperties.Cache cache = properties.getCache();
+		PermissionMetrics metrics = permissionMetrics.getIfAvailable(() -> PermissionMetrics.NOOP);
+		PermissionProvider delegate = coalescingPermissionProvider.getIfAvailable();
+		if (delegate == null) {
+			delegate = instrument(sourcePermissionProvider, knownRolesPermissionProvider, snapshotPermissionProvider, metrics);
+		}
+		CachingPermissionProvider cachingPermissionProvider = new CachingPermissionProvider(delegate, cache.getMaximumSize(),
+				cache.getExpireAfterWrite(), cache.getExpireAfterAccess());
+		cachingPermissionProvider.setPermissionMetrics(metrics);
+		cachingPermissionProvider.setRoleInheritanceLookup(roleInheritance(sourcePermissionProvider));
+		return cachingPermissionProvider;
+	}
+
+	/**
+	 * Times the lookups of the source provider, the caching provider wraps the source the same way when it is enabled
+	 */
+	@Bean
+	@Primary
+	@ConditionalOnExpression("!${savantly.permissions.cache.enabled:false} and !${savantly.permissions.tiers.enabled:false}")
+	public InstrumentedPermissionProvider instrumentedPermissionProvider(
+			@Qualifier(SOURCE_PERMISSION_PROVIDER) PermissionProvider sourcePermissionProvider,
+			ObjectProvider<KnownRolesPermissionProvider> knownRolesPermissionProvider,
+			ObjectProvider<MappedPermissionSnapshotProvider> snapshotPermissionProvider, ObjectProvider<PermissionMetrics> permissionMetrics) {
+		return instrument(sourcePermissionProvider, knownRolesPermissionProvider, snapshotPermissionProvider,
+				permissionMetrics.getIfAvailable(() -> PermissionMetrics.NOOP));
+	}
+
+	/**
+	 * Layers the cache in front of the source provider and the configured mappings behind it.
+	 * Nothing that can be stale is asked before the source, the snapshot file is only read when the source fails.
+	 */
 	@Bean
-	public PermissionProvider jdbcPermissionProvider(RolePermissionsRepository rolePermissionRepository) {
-		return new JdbcPermissionProvider(rolePermissionRepository);
+	@Primary
+	@ConditionalOnProperty(prefix = "savantly.permissions.tiers", name = "enabled", havingValue = "true")
+	public TieredPermissionProvider tieredPermissionProvider(
+			@Qualifier(SOURCE_PERMISSION_PROVIDER) PermissionProvider sourcePermissionProvider, RolePermissionProperties properties,
+			GrantedAuthorityRegistry authorityRegistry,
+			ObjectProvider<KnownRolesPermissionProvider> knownRolesPermissionProvider,
+			ObjectProvider<MappedPermissionSnapshotProvider> snapshotPermissionProvider, ObjectProvider<PermissionMetrics> permissionMetrics,
+			ObjectProvider<CoalescingPermissionProvider> coalescingPermissionProvider) {
+		RolePermissionProperties.Cache cache = properties.getCache();
+		PermissionMetrics metrics = permissionMetrics.getIfAvailable(() -> PermissionMetrics.NOOP);
+		List<Tier> tiers = new ArrayList<>();
+		if (cache.isEnabled()) {
+			tiers.add(Tier.cache("memory", new BoundedCache<String, List<String>>(cache.getMaximumSize(), cache.getExpireAfterWrite(),
+					cache.getExpireAfterAccess())));
+		}
+		PermissionProvider source = coalescingPermissionProvider.getIfAvailable();
+		if (source == null) {
+			source = instrument(sourcePermissionProvider, knownRolesPermissionProvider, snapshotPermissionProvider, metrics);
+		}
+		tiers.add(new Tier("source", source));
+		if (!properties.getRoles().isEmpty() && !(sourcePermissionProvider instanceof PropertiesPermissionProvider)) {
+			tiers.add(new Tier("properties", new PropertiesPermissionProvider(properties.getRoles(), authorityRegistry)));
+		}
+		TieredPermissionProvider tieredPermissionProvider = new TieredPermissionProvider(tiers, properties.getTiers().getMerge());
+		tieredPermissionProvider.setPermissionMetrics(metrics);
+		tieredPermissionProvider.setRoleInheritanceLookup(roleInheritance(sourcePermissionProvider));
+		return tieredPermissionProvider;
+	}
+
+	/**
+	 * Shares one source lookup between concurrent cache misses for the same role.
+	 * A bean of its own, so it forgets its lookups in flight on a change event before the cache in front of it is invalidated.
+	 */
+	@Bean
+	@ConditionalOnExpression("${savantly.permissions.cache.enabled:false} and ${savantly.permissions.cache.coalesce-loads:true}")
+	public CoalescingPermissionProvider coalescingPermissionProvider(
+			@Qualifier(SOURCE_PERMISSION_PROVIDER) PermissionProvider sourcePermissionProvider, RolePermissionProperties properties,
+			ObjectProvider<KnownRolesPermissionProvider> knownRolesPermissionProvider,
+			ObjectProvider<MappedPermissionSnapshotProvider> snapshotPermissionProvider, ObjectProvider<PermissionMetrics> permissionMetrics) {
+		return new CoalescingPermissionProvider(instrument(sourcePermissionProvider, knownRolesPermissionProvider, snapshotPermissionProvider,
+				permissionMetrics.getIfAvailable(() -> PermissionMetrics.NOOP)), properties.getCache().getLoadTimeout());
+	}
+
+	/**
+	 * Keeps lookups of unmapped roles from reaching the source provider
+	 */
+	@Bean
+	@ConditionalOnProperty(prefix = "savantly.permissions.known-roles", name = "enabled", havingValue = "true")
+	public KnownRolesPermissionProvider knownRolesPermissionProvider(
+			@Qualifier(SOURCE_PERMISSION_PROVIDER) PermissionProvider sourcePermissionProvider, RolePermissionProperties properties,
+			ObjectProvider<PermissionMetrics> permissionMetrics) {
+		if (!(sourcePermissionProvider instanceof RoleCatalog)) {
+			throw new IllegalStateException("savantly.permissions.known-roles needs a permission provider that lists its roles, "
+					+ sourcePermissionProvider.getClass().getName() + " does not implement " + RoleCatalog.class.getName());
+		}
+		RolePermissionProperties.KnownRoles knownRoles = properties.getKnownRoles();
+		KnownRolesPermissionProvider knownRolesPermissionProvider = new KnownRolesPermissionProvider(sourcePermissionProvider,
+				(RoleCatalog) sourcePermissionProvider, knownRoles.getFalsePositiveRate(), knownRoles.getNegativeCacheMaximumSize(),
+				knownRoles.getNegativeCacheTtl());
+		knownRolesPermissionProvider.setPermissionMetrics(permissionMetrics.getIfAvailable(() -> PermissionMetrics.NOOP));
+		return knownRolesPermissionProvider;
+	}
+
+	/**
+	 * Answers which roles grant a permission from memory, kept current by change events.
+	 * Primary over the source provider, which is a {@link PermissionRoleLookup} as well when it queries a database.
+	 */
+	@Bean
+	@Primary
+	@ConditionalOnProperty(prefix = "savantly.permissions.inverted-index", name = "enabled", havingValue = "true")
+	public InvertedPermissionIndex invertedPermissionIndex(@Qualifier(SOURCE_PERMISSION_PROVIDER) PermissionProvider sourcePermissionProvider) {
+		if (!(sourcePermissionProvider instanceof RoleCatalog)) {
+			throw new IllegalStateException("savantly.permissions.inverted-index needs a permission provider that lists its roles, "
+					+ sourcePermissionProvider.getClass().getName() + " does not implement " + RoleCatalog.class.getName());
+		}
+		InvertedPermissionIndex invertedPermissionIndex = new InvertedPermissionIndex(sourcePermissionProvider, (RoleCatalog) sourcePermissionProvider);
+		invertedPermissionIndex.setRoleInheritanceLookup(roleInheritance(sourcePermissionProvider));
+		return invertedPermissionIndex;
+	}
+
+	/**
+	 * Serves the last exported snapshot of the mappings while the source provider fails
+	 */
+	@Bean
+	@ConditionalOnProperty(prefix = "savantly.permissions.snapshot-file", name = "path")
+	public MappedPermissionSnapshotProvider mappedPermissionSnapshotProvider(RolePermissionProperties properties,
+			GrantedAuthorityRegistry authorityRegistry) {
+		MappedPermissionSnapshotProvider snapshotPermissionProvider = new MappedPermissionSnapshotProvider(Paths.get(properties.getSnapshotFile().getPath()));
+		snapshotPermissionProvider.setAuthorityRegistry(authorityRegistry);
+		return snapshotPermissionProvider;
+	}
+
+	@Bean
+	@ConditionalOnExpression("'${savantly.permissions.snapshot-file.path:}' != '' and ${savantly.permissions.snapshot-file.export:true}")
+	public PermissionSnapshotExporter permissionSnapshotExporter(
+			@Qualifier(SOURCE_PERMISSION_PROVIDER) PermissionProvider sourcePermissionProvider,
+			MappedPermissionSnapshotProvider snapshotPermissionProvider) {
+		if (!(sourcePermissionProvider instanceof RoleCatalog)) {
+			throw new IllegalStateException("exporting savantly.permissions.snapshot-file needs a permission provider that lists its roles, "
+					+ sourcePermissionProvider.getClass().getName() + " does not implement " + RoleCatalog.class.getName());
+		}
+		PermissionSnapshotExporter exporter = PermissionSnapshotExporter.of((PermissionProvider & RoleCatalog) sourcePermissionProvider,
+				snapshotPermissionProvider.getFile());
+		exporter.setSnapshotProvider(snapshotPermissionProvider);
+		return exporter;
+	}
+
+	private static InstrumentedPermissionProvider instrument(PermissionProvider sourcePermissionProvider,
+			ObjectProvider<KnownRolesPermissionProvider> knownRolesPermissionProvider,
+			ObjectProvider<MappedPermissionSnapshotProvider> snapshotPermissionProvider, PermissionMetrics metrics) {
+		PermissionProvider delegate = knownRolesPermissionProvider.getIfAvailable();
+		if (delegate == null) {
+			delegate = sourcePermissionProvider;
+		}
+		MappedPermissionSnapshotProvider snapshot = snapshotPermissionProvider.getIfAvailable();
+		if (snapshot != null) {
+			delegate = new FailoverPermissionProvider(delegate, snapshot);
+		}
+		return new InstrumentedPermissionProvider(delegate, metrics, sourcePermissionProvider.getClass().getSimpleName());
+	}
+
+	/**
+	 * @return the source provider when it knows the role hierarchy, so a change also discards the roles inheriting from the changed ones
+	 */
+	private static RoleInheritanceLookup roleInheritance(PermissionProvider sourcePermissionProvider) {
+		return sourcePermissionProvider instanceof RoleInheritanceLookup ? (RoleInheritanceLookup) sourcePermissionProvider : null;
 	}
 }
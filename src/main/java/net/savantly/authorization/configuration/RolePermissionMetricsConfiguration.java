@@ -0,0 +1,34 @@
+package net.savantly.authorization.configuration;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.savantly.authorization.metrics.MicrometerPermissionMetrics;
+import net.savantly.authorization.metrics.PermissionMetrics;
+
+/**
+ * Publishes {@link PermissionMetrics} to the application's Micrometer registry, when Micrometer is on the classpath.
+ * Without a {@link MeterRegistry} bean the metrics are a no-op.
+ *
+ * @author jeremy branham
+ *
+ */
+@Configuration
+@ConditionalOnClass(name = RolePermissionMetricsConfiguration.METER_REGISTRY_CLASS)
+@ConditionalOnProperty(prefix = "savantly.permissions.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class RolePermissionMetricsConfiguration {
+
+	static final String METER_REGISTRY_CLASS = "io.micrometer.core.instrument.MeterRegistry";
+
+	@Bean
+	@ConditionalOnMissingBean
+	public PermissionMetrics permissionMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+		MeterRegistry registry = meterRegistry.getIfAvailable();
+		return registry == null ? PermissionMetrics.NOOP : new MicrometerPermissionMetrics(registry);
+	}
+}
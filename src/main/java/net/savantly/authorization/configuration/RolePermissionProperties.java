@@ -0,0 +1,377 @@
+package net.savantly.authorization.configuration;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import net.savantly.authorization.service.CachingPermissionProvider;
+import net.savantly.authorization.service.CoalescingPermissionProvider;
+import net.savantly.authorization.service.InvertedPermissionIndex;
+import net.savantly.authorization.service.KnownRolesPermissionProvider;
+import net.savantly.authorization.service.PropertiesPermissionProvider;
+import net.savantly.authorization.service.RolePermissionsChangePoller;
+import net.savantly.authorization.service.TieredPermissionProvider;
+import net.savantly.authorization.snapshot.MappedPermissionSnapshotProvider;
+import net.savantly.authorization.snapshot.PermissionSnapshotExporter;
+
+/**
+ * Configuration properties under the <code>savantly.permissions</code> prefix
+ *
+ * @author jeremy branham
+ *
+ */
+@ConfigurationProperties(prefix = "savantly.permissions")
+public class RolePermissionProperties {
+
+	/**
+	 * Apply the role permissions auto-configuration
+	 */
+	private boolean enabled = true;
+	/**
+	 * How the role permissions tables are read, defaults to JPA when it is on the classpath
+	 */
+	private Store store;
+	/**
+	 * The permissions of each role, served by the {@link PropertiesPermissionProvider} when <code>store=properties</code>,
+	 * or in front of the store when <code>tiers.enabled</code>
+	 */
+	private Map<String, List<String>> roles = new LinkedHashMap<>();
+	private final RolesFile rolesFile = new RolesFile();
+	private final Cache cache = new Cache();
+	private final ChangeLog changeLog = new ChangeLog();
+	private final KnownRoles knownRoles = new KnownRoles();
+	private final SnapshotFile snapshotFile = new SnapshotFile();
+	private final Tiers tiers = new Tiers();
+	private final InvertedIndex invertedIndex = new InvertedIndex();
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public Store getStore() {
+		return store;
+	}
+	public void setStore(Store store) {
+		this.store = store;
+	}
+
+	public Map<String, List<String>> getRoles() {
+		return roles;
+	}
+	public void setRoles(Map<String, List<String>> roles) {
+		this.roles = roles;
+	}
+
+	public RolesFile getRolesFile() {
+		return rolesFile;
+	}
+
+	public Cache getCache() {
+		return cache;
+	}
+
+	public ChangeLog getChangeLog() {
+		return changeLog;
+	}
+
+	public KnownRoles getKnownRoles() {
+		return knownRoles;
+	}
+
+	public SnapshotFile getSnapshotFile() {
+		return snapshotFile;
+	}
+
+	public Tiers getTiers() {
+		return tiers;
+	}
+
+	public InvertedIndex getInvertedIndex() {
+		return invertedIndex;
+	}
+
+	public enum Store {
+		/**
+		 * The <code>RolePermissionsRepository</code> and the <code>JdbcPermissionProvider</code>
+		 */
+		JPA,
+		/**
+		 * The <code>JdbcTemplatePermissionProvider</code>, without bootstrapping JPA
+		 */
+		JDBC,
+		/**
+		 * The <code>PropertiesPermissionProvider</code>, serving the <code>roles</code> mappings without a database
+		 */
+		PROPERTIES
+	}
+
+	/**
+	 * Settings for the {@link RolePermissionsFileReloader}
+	 */
+	public static class RolesFile {
+
+		/**
+		 * A properties or YAML file with <code>savantly.permissions.roles</code> mappings, replacing the ones in the application configuration
+		 */
+		private String path;
+		/**
+		 * How often the file is checked for changes, zero to only load it at startup
+		 */
+		private Duration pollInterval = RolePermissionsFileReloader.DEFAULT_POLL_INTERVAL;
+
+		public String getPath() {
+			return path;
+		}
+		public void setPath(String path) {
+			this.path = path;
+		}
+
+		public Duration getPollInterval() {
+			return pollInterval;
+		}
+		public void setPollInterval(Duration pollInterval) {
+			this.pollInterval = pollInterval;
+		}
+	}
+
+	/**
+	 * Settings for the {@link CachingPermissionProvider}
+	 */
+	public static class Cache {
+
+		/**
+		 * Wrap the permission provider in a {@link CachingPermissionProvider}
+		 */
+		private boolean enabled = false;
+		private int maximumSize = CachingPermissionProvider.DEFAULT_MAXIMUM_SIZE;
+		private Duration expireAfterWrite = CachingPermissionProvider.DEFAULT_EXPIRE_AFTER_WRITE;
+		private Duration expireAfterAccess;
+		/**
+		 * Share one lookup between concurrent misses for the same role, see the {@link CoalescingPermissionProvider}
+		 */
+		private boolean coalesceLoads = true;
+		/**
+		 * How long a miss waits for a lookup started by another request
+		 */
+		private Duration loadTimeout = CoalescingPermissionProvider.DEFAULT_TIMEOUT;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getMaximumSize() {
+			return maximumSize;
+		}
+		public void setMaximumSize(int maximumSize) {
+			this.maximumSize = maximumSize;
+		}
+
+		public Duration getExpireAfterWrite() {
+			return expireAfterWrite;
+		}
+		public void setExpireAfterWrite(Duration expireAfterWrite) {
+			this.expireAfterWrite = expireAfterWrite;
+		}
+
+		public Duration getExpireAfterAccess() {
+			return expireAfterAccess;
+		}
+		public void setExpireAfterAccess(Duration expireAfterAccess) {
+			this.expireAfterAccess = expireAfterAccess;
+		}
+
+		public boolean isCoalesceLoads() {
+			return coalesceLoads;
+		}
+		public void setCoalesceLoads(boolean coalesceLoads) {
+			this.coalesceLoads = coalesceLoads;
+		}
+
+		public Duration getLoadTimeout() {
+			return loadTimeout;
+		}
+		public void setLoadTimeout(Duration loadTimeout) {
+			this.loadTimeout = loadTimeout;
+		}
+	}
+
+	/**
+	 * Settings for the {@link RolePermissionsChangePoller}
+	 */
+	public static class ChangeLog {
+
+		/**
+		 * Poll the change log written by every node sharing the database, and reload the changed roles
+		 */
+		private boolean enabled = false;
+		private Duration pollInterval = RolePermissionsChangePoller.DEFAULT_POLL_INTERVAL;
+		private Duration gracePeriod = RolePermissionsChangePoller.DEFAULT_GRACE_PERIOD;
+		private Duration retention;
+		private Duration retentionInterval = RolePermissionsChangePoller.DEFAULT_RETENTION_INTERVAL;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public Duration getPollInterval() {
+			return pollInterval;
+		}
+		public void setPollInterval(Duration pollInterval) {
+			this.pollInterval = pollInterval;
+		}
+
+		public Duration getGracePeriod() {
+			return gracePeriod;
+		}
+		public void setGracePeriod(Duration gracePeriod) {
+			this.gracePeriod = gracePeriod;
+		}
+
+		public Duration getRetention() {
+			return retention;
+		}
+		public void setRetention(Duration retention) {
+			this.retention = retention;
+		}
+
+		public Duration getRetentionInterval() {
+			return retentionInterval;
+		}
+		public void setRetentionInterval(Duration retentionInterval) {
+			this.retentionInterval = retentionInterval;
+		}
+	}
+
+	/**
+	 * Settings for the {@link KnownRolesPermissionProvider}
+	 */
+	public static class KnownRoles {
+
+		/**
+		 * Skip the lookup of roles that have no mapping, using a Bloom filter of the mapped roles and a negative cache
+		 */
+		private boolean enabled = false;
+		/**
+		 * The rate at which an unmapped role gets past the filter, the filter takes about 1.2 bytes per role at 1%
+		 */
+		private double falsePositiveRate = KnownRolesPermissionProvider.DEFAULT_FALSE_POSITIVE_RATE;
+		private int negativeCacheMaximumSize = KnownRolesPermissionProvider.DEFAULT_NEGATIVE_CACHE_MAXIMUM_SIZE;
+		private Duration negativeCacheTtl = KnownRolesPermissionProvider.DEFAULT_NEGATIVE_CACHE_TTL;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public double getFalsePositiveRate() {
+			return falsePositiveRate;
+		}
+		public void setFalsePositiveRate(double falsePositiveRate) {
+			this.falsePositiveRate = falsePositiveRate;
+		}
+
+		public int getNegativeCacheMaximumSize() {
+			return negativeCacheMaximumSize;
+		}
+		public void setNegativeCacheMaximumSize(int negativeCacheMaximumSize) {
+			this.negativeCacheMaximumSize = negativeCacheMaximumSize;
+		}
+
+		public Duration getNegativeCacheTtl() {
+			return negativeCacheTtl;
+		}
+		public void setNegativeCacheTtl(Duration negativeCacheTtl) {
+			this.negativeCacheTtl = negativeCacheTtl;
+		}
+	}
+
+	/**
+	 * Settings for the {@link MappedPermissionSnapshotProvider} and the {@link PermissionSnapshotExporter}
+	 */
+	public static class SnapshotFile {
+
+		/**
+		 * Where the binary snapshot of the mappings is kept, served while the database is unavailable
+		 */
+		private String path;
+		/**
+		 * Write the snapshot at startup and after every change, turn off when another process writes it
+		 */
+		private boolean export = true;
+
+		public String getPath() {
+			return path;
+		}
+		public void setPath(String path) {
+			this.path = path;
+		}
+
+		public boolean isExport() {
+			return export;
+		}
+		public void setExport(boolean export) {
+			this.export = export;
+		}
+	}
+
+	/**
+	 * Settings for the {@link TieredPermissionProvider}
+	 */
+	public static class Tiers {
+
+		/**
+		 * Look roles up in the cache before the source provider, and in the configured roles after it
+		 */
+		private boolean enabled = false;
+		/**
+		 * Whether the first tier with permissions answers, or the permissions of every tier are merged
+		 */
+		private TieredPermissionProvider.MergePolicy merge = TieredPermissionProvider.MergePolicy.FIRST_HIT;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public TieredPermissionProvider.MergePolicy getMerge() {
+			return merge;
+		}
+		public void setMerge(TieredPermissionProvider.MergePolicy merge) {
+			this.merge = merge;
+		}
+	}
+
+	/**
+	 * Settings for the {@link InvertedPermissionIndex}
+	 */
+	public static class InvertedIndex {
+
+		/**
+		 * Keep an in-memory index of the roles granting each permission, built from the source provider at startup
+		 */
+		private boolean enabled = false;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package net.savantly.authorization.configuration;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.PropertiesPropertySourceLoader;
+import org.springframework.boot.env.PropertySourceLoader;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.FileSystemResource;
+
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+import net.savantly.authorization.service.PropertiesPermissionProvider;
+
+/**
+ * Reloads the mappings of a {@link PropertiesPermissionProvider} from a properties or YAML file when the file changes,
+ * and publishes a {@link RolePermissionsChangedEvent} so caches of the old mappings are discarded.
+ * <p>
+ * The file uses the same <code>savantly.permissions.roles</code> keys as the application configuration,
+ * and is bound with the Spring Boot {@link Binder}, so relaxed names and comma separated lists work the same way.
+ * The file's modification time is polled, which also notices a Kubernetes config map swapping its symbolic links.
+ * A file that cannot be read or bound while polling keeps the current mappings.
+ *
+ * @author jeremy branham
+ *
+ */
+public class RolePermissionsFileReloader implements InitializingBean, DisposableBean, ApplicationEventPublisherAware {
+
+	private static final Logger log = LoggerFactory.getLogger(RolePermissionsFileReloader.class);
+
+	public static final Duration DEFAULT_POLL_INTERVAL = Duration.ofSeconds(10);
+	static final String ROLES_PROPERTY = "savantly.permissions.roles";
+	private static final Bindable<Map<String, List<String>>> ROLES = Bindable.of(ResolvableType.forClassWithGenerics(Map.class, ResolvableType.forClass(String.class),
+			ResolvableType.forClassWithGenerics(List.class, String.class)));
+
+	private final PropertiesPermissionProvider permissionProvider;
+	private final Path file;
+	private final Duration pollInterval;
+	private ApplicationEventPublisher eventPublisher;
+	private ScheduledExecutorService executor;
+	// guarded by this
+	private long lastModified = -1;
+
+	public RolePermissionsFileReloader(PropertiesPermissionProvider permissionProvider, Path file) {
+		this(permissionProvider, file, DEFAULT_POLL_INTERVAL);
+	}
+
+	/**
+	 * @param pollInterval how often the file's modification time is checked, or null to only reload on demand with {@link #reload()}
+	 */
+	public RolePermissionsFileReloader(PropertiesPermissionProvider permissionProvider, Path file, Duration pollInterval) {
+		this.permissionProvider = permissionProvider;
+		this.file = file;
+		this.pollInterval = pollInterval;
+	}
+
+	@Override
+	public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
+		this.eventPublisher = eventPublisher;
+	}
+
+	@Override
+	public synchronized void afterPropertiesSet() {
+		reloadIfModified();
+		if (pollInterval != null && !pollInterval.isZero() && !pollInterval.isNegative()) {
+			long millis = pollInterval.toMillis();
+			executor = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "role-permissions-file-reloader");
+				thread.setDaemon(true);
+				return thread;
+			});
+			executor.scheduleWithFixedDelay(this::reloadIfModifiedQuietly, millis, millis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public synchronized void destroy() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reloads the file when it changed since it was last loaded
+	 *
+	 * @return true when new mappings were loaded
+	 */
+	public synchronized boolean reloadIfModified() {
+		long modified;
+		try {
+			modified = Files.getLastModifiedTime(file).toMillis();
+		} catch (NoSuchFileException e) {
+			log.warn("role permissions file {} does not exist, keeping the current mappings", file);
+			return false;
+		} catch (IOException e) {
+			log.warn("failed to read role permissions file {}, keeping the current mappings", file, e);
+			return false;
+		}
+		if (modified == lastModified) {
+			return false;
+		}
+		reload();
+		lastModified = modified;
+		return true;
+	}
+
+	/**
+	 * Binds the file and replaces the provider's mappings
+	 */
+	public synchronized void reload() {
+		Map<String, List<String>> roles = bind();
+		permissionProvider.update(roles);
+		log.info("loaded the permissions of {} roles from {}", roles.size(), file);
+		if (eventPublisher != null) {
+			eventPublisher.publishEvent(new RolePermissionsChangedEvent(this));
+		}
+	}
+
+	private Map<String, List<String>> bind() {
+		String name = file.getFileName().toString();
+		PropertySourceLoader loader = name.endsWith(".yml") || name.endsWith(".yaml") ? new YamlPropertySourceLoader()
+				: new PropertiesPropertySourceLoader();
+		List<PropertySource<?>> propertySources;
+		try {
+			propertySources = loader.load(name, new FileSystemResource(file.toFile()));
+		} catch (IOException e) {
+			throw new IllegalStateException("failed to load role permissions file " + file, e);
+		}
+		return new Binder(ConfigurationPropertySources.from(propertySources))
+				.bind(ROLES_PROPERTY, ROLES)
+				.orElse(Collections.<String, List<String>>emptyMap());
+	}
+
+	private void reloadIfModifiedQuietly() {
+		try {
+			reloadIfModified();
+		} catch (RuntimeException e) {
+			log.warn("failed to reload role permissions file {}, keeping the current mappings", file, e);
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+package net.savantly.authorization.event;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when role to permission mappings have changed, so cached permissions and authorities can be discarded.
+ * 
+ * @author jeremy branham
+ *
+ */
+public class RolePermissionsChangedEvent extends ApplicationEvent {
+
+	private static final long serialVersionUID = 1L;
+	private final Set<String> roles;
+
+	/**
+	 * Signals that any role may have changed
+	 */
+	public RolePermissionsChangedEvent(Object source) {
+		this(source, Collections.emptySet());
+	}
+
+	/**
+	 * Signals that the given roles have changed
+	 */
+	public RolePermissionsChangedEvent(Object source, Collection<String> roles) {
+		super(source);
+		this.roles = Collections.unmodifiableSet(new LinkedHashSet<>(roles));
+	}
+
+	/**
+	 * @return the changed roles, or an empty set when any role may have changed
+	 */
+	public Set<String> getRoles() {
+		return roles;
+	}
+
+	public boolean isAllRoles() {
+		return roles.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return "RolePermissionsChangedEvent [roles=" + (isAllRoles() ? "*" : roles) + "]";
+	}
+}
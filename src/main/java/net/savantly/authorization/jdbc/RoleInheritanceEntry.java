@@ -0,0 +1,35 @@
+package net.savantly.authorization.jdbc;
+
+/**
+ * A read-only (role, inherited role) row of the role hierarchy.
+ * Loaded with a JPQL constructor expression, so it is never managed by the persistence context.
+ * 
+ * @author jeremy branham
+ *
+ */
+public class RoleInheritanceEntry {
+
+	private final String role;
+	private final String inheritedRole;
+
+	public RoleInheritanceEntry(String role, String inheritedRole) {
+		this.role = role;
+		this.inheritedRole = inheritedRole;
+	}
+
+	public String getRole() {
+		return role;
+	}
+
+	/**
+	 * @return a role whose permissions are inherited by {@link #getRole()}
+	 */
+	public String getInheritedRole() {
+		return inheritedRole;
+	}
+
+	@Override
+	public String toString() {
+		return "RoleInheritanceEntry [role=" + role + ", inheritedRole=" + inheritedRole + "]";
+	}
+}
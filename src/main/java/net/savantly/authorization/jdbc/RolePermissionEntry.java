@@ -0,0 +1,35 @@
+package net.savantly.authorization.jdbc;
+
+/**
+ * A read-only (role, permission) row of the role permissions mapping.
+ * Loaded with a JPQL constructor expression, so it is never managed by the persistence context.
+ * 
+ * @author jeremy branham
+ *
+ */
+public class RolePermissionEntry {
+
+	private final String role;
+	private final String permission;
+
+	public RolePermissionEntry(String role, String permission) {
+		this.role = role;
+		this.permission = permission;
+	}
+
+	public String getRole() {
+		return role;
+	}
+
+	/**
+	 * @return the permission, or null for a role without permissions
+	 */
+	public String getPermission() {
+		return permission;
+	}
+
+	@Override
+	public String toString() {
+		return "RolePermissionEntry [role=" + role + ", permission=" + permission + "]";
+	}
+}
@@ -1,12 +1,24 @@
 package net.savantly.authorization.jdbc;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
+import javax.persistence.CollectionTable;
 import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
+import org.springframework.data.domain.DomainEvents;
+
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
 
 @Entity
 public class RolePermissions {
@@ -14,9 +26,20 @@ public class RolePermissions {
 	@Id
 	private String role;
 	
+	/**
+	 * Indexed by permission, so the roles granting a permission are found without scanning every mapping
+	 */
 	@ElementCollection(fetch = FetchType.EAGER)
+	@CollectionTable(name = "role_permissions_permissions", indexes = @Index(name = "idx_role_permissions_permission", columnList = "permissions"))
 	private List<String> permissions = new ArrayList<>();
 	
+	/**
+	 * The roles whose permissions this role inherits, fetched separately so the permissions are not multiplied by a join
+	 */
+	@ElementCollection(fetch = FetchType.EAGER)
+	@Fetch(FetchMode.SELECT)
+	private Set<String> inheritedRoles = new LinkedHashSet<>();
+	
 	public RolePermissions() {}
 	
 	public RolePermissions(String role, List<String> permissions) {
@@ -24,6 +47,12 @@ public class RolePermissions {
 		this.permissions = permissions;
 	}
 	
+	public RolePermissions(String role, List<String> permissions, Set<String> inheritedRoles) {
+		this.role = role;
+		this.permissions = permissions;
+		this.inheritedRoles = inheritedRoles;
+	}
+	
 	public String getRole() {
 		return role;
 	}
@@ -37,4 +66,19 @@ public class RolePermissions {
 	public void setPermissions(List<String> permissions) {
 		this.permissions = permissions;
 	}
-}
+	
+	public Set<String> getInheritedRoles() {
+		return inheritedRoles;
+	}
+	public void setInheritedRoles(Set<String> inheritedRoles) {
+		this.inheritedRoles = inheritedRoles;
+	}
+	
+	/**
+	 * Announces the change when the mapping is saved through the {@link RolePermissionsRepository}
+	 */
+	@DomainEvents
+	protected Collection<Object> domainEvents() {
+		return Collections.singletonList(new RolePermissionsChangedEvent(this, Collections.singleton(role)));
+	}
+}
\ No newline at end of file
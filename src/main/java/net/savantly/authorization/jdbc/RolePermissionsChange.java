@@ -0,0 +1,54 @@
+package net.savantly.authorization.jdbc;
+
+import java.time.Instant;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+
+/**
+ * A change log record, written for every role that is saved or deleted through the {@link RolePermissionsRepository}.
+ * The generated version increases with every change, so other nodes can ask for the changes since the last version they saw.
+ * 
+ * @author jeremy branham
+ *
+ */
+@Entity
+public class RolePermissionsChange {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Long version;
+
+	@Column(nullable = false)
+	private String role;
+
+	@Column(nullable = false)
+	private Instant changedAt;
+
+	public RolePermissionsChange() {}
+
+	public RolePermissionsChange(String role) {
+		this.role = role;
+		this.changedAt = Instant.now();
+	}
+
+	public Long getVersion() {
+		return version;
+	}
+
+	public String getRole() {
+		return role;
+	}
+
+	public Instant getChangedAt() {
+		return changedAt;
+	}
+
+	@Override
+	public String toString() {
+		return "RolePermissionsChange [version=" + version + ", role=" + role + ", changedAt=" + changedAt + "]";
+	}
+}
@@ -0,0 +1,35 @@
+package net.savantly.authorization.jdbc;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface RolePermissionsChangeRepository extends CrudRepository<RolePermissionsChange, Long> {
+
+	/**
+	 * Loads the changes recorded after the given version, oldest first
+	 */
+	@Transactional(readOnly = true)
+	List<RolePermissionsChange> findByVersionGreaterThanOrderByVersionAsc(long version);
+
+	/**
+	 * @return the latest recorded version, or null when nothing has been recorded
+	 */
+	@Transactional(readOnly = true)
+	@Query("select max(c.version) from RolePermissionsChange c")
+	Long findLatestVersion();
+
+	/**
+	 * Removes the change records older than the given instant
+	 */
+	@Modifying
+	@Transactional
+	@Query("delete from RolePermissionsChange c where c.changedAt < :before")
+	int deleteChangesBefore(@Param("before") Instant before);
+
+}
@@ -1,7 +1,67 @@
 package net.savantly.authorization.jdbc;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Saves and deletes through this repository also record a {@link RolePermissionsChange} per role, see {@link VersionedRolePermissionsRepository}
+ */
+public interface RolePermissionsRepository extends CrudRepository<RolePermissions, String>,
+		VersionedRolePermissionsRepository<RolePermissions, String> {
+
+	/**
+	 * Loads the name of every mapped role without hydrating the entities
+	 */
+	@Transactional(readOnly = true)
+	@Query("select r.role from RolePermissions r")
+	List<String> findAllRoles();
+
+	/**
+	 * Loads the distinct permissions of all the given roles in a single query
+	 */
+	@Transactional(readOnly = true)
+	@Query("select distinct p from RolePermissions r join r.permissions p where r.role in :roles")
+	List<String> findPermissionsByRoleIn(@Param("roles") Collection<String> roles);
+
+	/**
+	 * Loads the roles mapped directly to exactly the given permission, answered from the index on the permissions column.
+	 * The roles inheriting it are not included.
+	 */
+	@Transactional(readOnly = true)
+	@Query("select distinct r.role from RolePermissions r join r.permissions p where p = :permission")
+	List<String> findRolesByPermission(@Param("permission") String permission);
+
+	/**
+	 * Loads every (role, permission) pair as read-only rows, including a row with a null permission for each role without permissions
+	 */
+	@Transactional(readOnly = true)
+	@Query("select new net.savantly.authorization.jdbc.RolePermissionEntry(r.role, p) from RolePermissions r left join r.permissions p")
+	List<RolePermissionEntry> findAllEntries();
+
+	/**
+	 * Loads the (role, permission) pairs of the given roles as read-only rows
+	 */
+	@Transactional(readOnly = true)
+	@Query("select new net.savantly.authorization.jdbc.RolePermissionEntry(r.role, p) from RolePermissions r left join r.permissions p where r.role in :roles")
+	List<RolePermissionEntry> findEntriesByRoleIn(@Param("roles") Collection<String> roles);
+
+	/**
+	 * Loads every (role, inherited role) pair of the role hierarchy as read-only rows
+	 */
+	@Transactional(readOnly = true)
+	@Query("select new net.savantly.authorization.jdbc.RoleInheritanceEntry(r.role, i) from RolePermissions r join r.inheritedRoles i")
+	List<RoleInheritanceEntry> findAllInheritanceEntries();
 
-public interface RolePermissionsRepository extends CrudRepository<RolePermissions, String> {
+	/**
+	 * Loads the (role, inherited role) pairs of the given roles as read-only rows
+	 */
+	@Transactional(readOnly = true)
+	@Query("select new net.savantly.authorization.jdbc.RoleInheritanceEntry(r.role, i) from RolePermissions r join r.inheritedRoles i where r.role in :roles")
+	List<RoleInheritanceEntry> findInheritanceEntriesByRoleIn(@Param("roles") Collection<String> roles);
 
 }
@@ -0,0 +1,28 @@
+package net.savantly.authorization.jdbc;
+
+/**
+ * The writes of the {@link RolePermissionsRepository}, overridden to record a {@link RolePermissionsChange} for every role they touch.
+ * <p>
+ * Declared with the same type variables as the {@link org.springframework.data.repository.CrudRepository} methods it overrides,
+ * so the compiler sees one method in the repository instead of two ambiguous ones.
+ * 
+ * @param <T> the {@link RolePermissions} entity
+ * @param <ID> the role
+ * @author jeremy branham
+ *
+ */
+public interface VersionedRolePermissionsRepository<T, ID> {
+
+	<S extends T> S save(S entity);
+
+	<S extends T> Iterable<S> saveAll(Iterable<S> entities);
+
+	void deleteById(ID id);
+
+	void delete(T entity);
+
+	void deleteAll(Iterable<? extends T> entities);
+
+	void deleteAll();
+
+}
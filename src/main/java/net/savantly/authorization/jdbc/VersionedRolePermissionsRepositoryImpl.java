@@ -0,0 +1,103 @@
+package net.savantly.authorization.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.transaction.annotation.Transactional;
+
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+
+/**
+ * Saves and deletes role permissions, and records a {@link RolePermissionsChange} for each role in the same transaction.
+ * Saves announce the change through the entity's domain events, deletes publish a {@link RolePermissionsChangedEvent} here.
+ * 
+ * @author jeremy branham
+ *
+ */
+class VersionedRolePermissionsRepositoryImpl implements VersionedRolePermissionsRepository<RolePermissions, String> {
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private final ApplicationEventPublisher eventPublisher;
+
+	VersionedRolePermissionsRepositoryImpl(ApplicationEventPublisher eventPublisher) {
+		this.eventPublisher = eventPublisher;
+	}
+
+	@Override
+	@Transactional
+	public <S extends RolePermissions> S save(S entity) {
+		S saved = entityManager.merge(entity);
+		record(Collections.singleton(saved.getRole()));
+		return saved;
+	}
+
+	@Override
+	@Transactional
+	public <S extends RolePermissions> Iterable<S> saveAll(Iterable<S> entities) {
+		List<S> saved = new ArrayList<>();
+		Set<String> roles = new LinkedHashSet<>();
+		for (S entity : entities) {
+			S merged = entityManager.merge(entity);
+			saved.add(merged);
+			roles.add(merged.getRole());
+		}
+		record(roles);
+		return saved;
+	}
+
+	@Override
+	@Transactional
+	public void deleteById(String id) {
+		RolePermissions entity = entityManager.find(RolePermissions.class, id);
+		if (entity == null) {
+			throw new EmptyResultDataAccessException(String.format("No %s entity with id %s exists!", RolePermissions.class, id), 1);
+		}
+		delete(entity);
+	}
+
+	@Override
+	@Transactional
+	public void delete(RolePermissions entity) {
+		deleteAll(Collections.singleton(entity));
+	}
+
+	@Override
+	@Transactional
+	public void deleteAll(Iterable<? extends RolePermissions> entities) {
+		Set<String> roles = new LinkedHashSet<>();
+		for (RolePermissions entity : entities) {
+			RolePermissions existing = entityManager.find(RolePermissions.class, entity.getRole());
+			if (existing != null) {
+				entityManager.remove(existing);
+				roles.add(existing.getRole());
+			}
+		}
+		if (!roles.isEmpty()) {
+			record(roles);
+			eventPublisher.publishEvent(new RolePermissionsChangedEvent(this, roles));
+		}
+	}
+
+	@Override
+	@Transactional
+	public void deleteAll() {
+		deleteAll(entityManager.createQuery("select r from RolePermissions r", RolePermissions.class).getResultList());
+	}
+
+	private void record(Collection<String> roles) {
+		for (String role : roles) {
+			entityManager.persist(new RolePermissionsChange(role));
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package net.savantly.authorization.jwt;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads role names from one or more JWT claims.
+ * <p>
+ * Claim paths are parsed once, when the extractor is built. A path may be nested with dots, like <code>realm_access.roles</code>.
+ * A claim value may be a collection, an array or a string. Strings are split on a delimiter when one is configured.
+ * An optional prefix is prepended to every role found in a claim.
+ * Missing claims and values of other shapes are ignored.
+ * A single claim holding a list, with no prefix to prepend, is returned itself instead of being copied, so its entries are not filtered
+ * and are taken to be role names, as the claim lookup of the converter always did.
+ * 
+ * @author jeremy branham
+ *
+ */
+public class ClaimRolesExtractor {
+
+	private final ClaimPath[] paths;
+
+	private ClaimRolesExtractor(List<ClaimPath> paths) {
+		this.paths = paths.toArray(new ClaimPath[0]);
+	}
+
+	/**
+	 * @param paths the claim paths, each holding a collection, array or single string of roles
+	 */
+	public static ClaimRolesExtractor of(String... paths) {
+		Builder builder = builder();
+		for (String path : paths) {
+			builder.claim(path);
+		}
+		return builder.build();
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return the roles found in all configured claims, in claim order, not to be modified
+	 */
+	public List<String> extract(Map<String, Object> claims) {
+		if (paths.length == 1) {
+			List<String> roles = paths[0].view(claims);
+			if (roles != null) {
+				return roles;
+			}
+		}
+		List<String> roles = new ArrayList<>();
+		for (ClaimPath path : paths) {
+			path.extract(claims, roles);
+		}
+		return roles;
+	}
+
+	public static class Builder {
+
+		private final List<ClaimPath> paths = new ArrayList<>();
+
+		/**
+		 * Reads roles from the claim at the path
+		 */
+		public Builder claim(String path) {
+			return claim(path, null);
+		}
+
+		/**
+		 * Reads roles from the claim at the path, and prepends the prefix to each
+		 */
+		public Builder claim(String path, String prefix) {
+			return delimitedClaim(path, null, prefix);
+		}
+
+		/**
+		 * Reads roles from the claim at the path, splitting string values on the delimiter, like the space delimited <code>scope</code> claim
+		 */
+		public Builder delimitedClaim(String path, String delimiter, String prefix) {
+			if (path == null || path.isEmpty()) {
+				throw new IllegalArgumentException("claim path must not be empty");
+			}
+			if (delimiter != null && delimiter.isEmpty()) {
+				throw new IllegalArgumentException("delimiter must not be empty");
+			}
+			paths.add(new ClaimPath(path, delimiter, prefix));
+			return this;
+		}
+
+		public ClaimRolesExtractor build() {
+			return new ClaimRolesExtractor(paths);
+		}
+	}
+
+	private static class ClaimPath {
+
+		private final String path;
+		private final String[] segments;
+		private final String delimiter;
+		private final String prefix;
+
+		ClaimPath(String path, String delimiter, String prefix) {
+			this.path = path;
+			this.segments = split(path, ".");
+			this.delimiter = delimiter;
+			this.prefix = prefix == null || prefix.isEmpty() ? null : prefix;
+		}
+
+		/**
+		 * @return the claim itself when it is a list of role names that need no prefix, otherwise null
+		 */
+		@SuppressWarnings("unchecked")
+		List<String> view(Map<String, Object> claims) {
+			if (prefix != null) {
+				return null;
+			}
+			Object value = resolve(claims);
+			return value instanceof List ? (List<String>) value : null;
+		}
+
+		void extract(Map<String, Object> claims, Collection<String> roles) {
+			Object value = resolve(claims);
+			if (value instanceof Collection) {
+				for (Object role : (Collection<?>) value) {
+					add(role, roles);
+				}
+			} else if (value instanceof Object[]) {
+				for (Object role : (Object[]) value) {
+					add(role, roles);
+				}
+			} else if (value instanceof String) {
+				addString((String) value, roles);
+			}
+		}
+
+		private Object resolve(Map<String, Object> claims) {
+			Object value = claims.get(segments[0]);
+			for (int i = 1; i < segments.length && value != null; i++) {
+				value = value instanceof Map ? ((Map<?, ?>) value).get(segments[i]) : null;
+			}
+			return value;
+		}
+
+		private void add(Object role, Collection<String> roles) {
+			if (role != null) {
+				addRole(role.toString(), roles);
+			}
+		}
+
+		private void addString(String value, Collection<String> roles) {
+			if (delimiter == null) {
+				addRole(value, roles);
+				return;
+			}
+			int start = 0;
+			int end;
+			while ((end = value.indexOf(delimiter, start)) >= 0) {
+				addRole(value.substring(start, end), roles);
+				start = end + delimiter.length();
+			}
+			addRole(value.substring(start), roles);
+		}
+
+		private void addRole(String role, Collection<String> roles) {
+			if (!role.isEmpty()) {
+				roles.add(prefix == null ? role : prefix.concat(role));
+			}
+		}
+
+		private static String[] split(String value, String delimiter) {
+			List<String> parts = new ArrayList<>();
+			int start = 0;
+			int end;
+			while ((end = value.indexOf(delimiter, start)) >= 0) {
+				parts.add(value.substring(start, end));
+				start = end + delimiter.length();
+			}
+			parts.add(value.substring(start));
+			return parts.toArray(new String[0]);
+		}
+
+		@Override
+		public String toString() {
+			return path;
+		}
+	}
+}
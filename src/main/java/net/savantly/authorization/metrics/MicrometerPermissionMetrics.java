@@ -0,0 +1,132 @@
+package net.savantly.authorization.metrics;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.savantly.authorization.cache.BloomFilter;
+import net.savantly.authorization.cache.BoundedCache;
+
+/**
+ * Publishes {@link PermissionMetrics} to a Micrometer {@link MeterRegistry}.
+ * Meters are created once per provider or source and reused, so recording does not allocate tags.
+ * 
+ * @author jeremy branham
+ *
+ */
+public class MicrometerPermissionMetrics implements PermissionMetrics {
+
+	public static final String LOOKUP = "savantly.permissions.lookup";
+	public static final String LOOKUP_ROLES = "savantly.permissions.lookup.roles";
+	public static final String UNKNOWN_ROLES = "savantly.permissions.lookup.unknown.roles";
+	public static final String RESOLUTION = "savantly.permissions.resolution";
+	public static final String RESOLUTION_ROLES = "savantly.permissions.resolution.roles";
+	public static final String RESOLUTION_AUTHORITIES = "savantly.permissions.resolution.authorities";
+	public static final String CACHE_SIZE = "savantly.permissions.cache.size";
+	public static final String CACHE_REQUESTS = "savantly.permissions.cache.requests";
+	public static final String CACHE_HIT_RATIO = "savantly.permissions.cache.hit.ratio";
+	public static final String FILTER_MEMORY = "savantly.permissions.filter.memory";
+	public static final String FILTER_FALSE_POSITIVE_RATE = "savantly.permissions.filter.false.positive.rate";
+	public static final String FILTER_REJECTED = "savantly.permissions.filter.rejected";
+
+	private final MeterRegistry registry;
+	private final ConcurrentMap<String, LookupMeters> lookupMeters = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, ResolutionMeters> resolutionMeters = new ConcurrentHashMap<>();
+	private final List<Object> monitoredSuppliers = new CopyOnWriteArrayList<>();
+
+	public MicrometerPermissionMetrics(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return true;
+	}
+
+	@Override
+	public void recordLookup(String provider, long nanos, int roles, int unknownRoles) {
+		LookupMeters meters = lookupMeters.computeIfAbsent(provider, LookupMeters::new);
+		meters.latency.record(nanos, TimeUnit.NANOSECONDS);
+		meters.roles.record(roles);
+		if (unknownRoles > 0) {
+			meters.unknownRoles.increment(unknownRoles);
+		}
+	}
+
+	@Override
+	public void recordResolution(String source, long nanos, int roles, int authorities) {
+		ResolutionMeters meters = resolutionMeters.computeIfAbsent(source, ResolutionMeters::new);
+		meters.latency.record(nanos, TimeUnit.NANOSECONDS);
+		meters.roles.record(roles);
+		meters.authorities.record(authorities);
+	}
+
+	@Override
+	public void monitorCache(String cache, BoundedCache<?, ?> boundedCache) {
+		Gauge.builder(CACHE_SIZE, boundedCache, BoundedCache::size)
+				.tag("cache", cache)
+				.register(registry);
+		FunctionCounter.builder(CACHE_REQUESTS, boundedCache, c -> c.getStatistics().getHitCount())
+				.tags("cache", cache, "result", "hit")
+				.register(registry);
+		FunctionCounter.builder(CACHE_REQUESTS, boundedCache, c -> c.getStatistics().getMissCount())
+				.tags("cache", cache, "result", "miss")
+				.register(registry);
+		Gauge.builder(CACHE_HIT_RATIO, boundedCache, c -> c.getStatistics().getHitRate())
+				.tag("cache", cache)
+				.register(registry);
+	}
+
+	@Override
+	public void monitorFilter(String filter, Supplier<BloomFilter> bloomFilter, LongSupplier rejected) {
+		// meters only hold weak references, and the suppliers are usually method references held by nothing else
+		monitoredSuppliers.add(bloomFilter);
+		monitoredSuppliers.add(rejected);
+		Gauge.builder(FILTER_MEMORY, bloomFilter, s -> s.get() == null ? 0 : s.get().getMemoryBytes())
+				.tag("filter", filter)
+				.baseUnit("bytes")
+				.register(registry);
+		Gauge.builder(FILTER_FALSE_POSITIVE_RATE, bloomFilter, s -> s.get() == null ? 0 : s.get().getExpectedFalsePositiveRate())
+				.tag("filter", filter)
+				.register(registry);
+		FunctionCounter.builder(FILTER_REJECTED, rejected, LongSupplier::getAsLong)
+				.tag("filter", filter)
+				.register(registry);
+	}
+
+	private class LookupMeters {
+
+		private final Timer latency;
+		private final DistributionSummary roles;
+		private final Counter unknownRoles;
+
+		LookupMeters(String provider) {
+			this.latency = Timer.builder(LOOKUP).tag("provider", provider).register(registry);
+			this.roles = DistributionSummary.builder(LOOKUP_ROLES).tag("provider", provider).register(registry);
+			this.unknownRoles = Counter.builder(UNKNOWN_ROLES).tag("provider", provider).register(registry);
+		}
+	}
+
+	private class ResolutionMeters {
+
+		private final Timer latency;
+		private final DistributionSummary roles;
+		private final DistributionSummary authorities;
+
+		ResolutionMeters(String source) {
+			this.latency = Timer.builder(RESOLUTION).tag("source", source).register(registry);
+			this.roles = DistributionSummary.builder(RESOLUTION_ROLES).tag("source", source).register(registry);
+			this.authorities = DistributionSummary.builder(RESOLUTION_AUTHORITIES).tag("source", source).register(registry);
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package net.savantly.authorization.metrics;
+
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import net.savantly.authorization.cache.BloomFilter;
+import net.savantly.authorization.cache.BoundedCache;
+
+/**
+ * Records what permission resolution costs. The instrumented components only read the clock when {@link #isEnabled()},
+ * so the {@link #NOOP} default costs nothing when no meter registry is present.
+ * 
+ * @author jeremy branham
+ *
+ */
+public interface PermissionMetrics {
+
+	PermissionMetrics NOOP = new PermissionMetrics() {
+	};
+
+	default boolean isEnabled() {
+		return false;
+	}
+
+	/**
+	 * Records a <code>PermissionProvider</code> lookup
+	 *
+	 * @param provider the provider implementation
+	 * @param nanos how long the lookup took
+	 * @param roles how many roles were looked up
+	 * @param unknownRoles how many of the roles have no permissions
+	 */
+	default void recordLookup(String provider, long nanos, int roles, int unknownRoles) {
+	}
+
+	/**
+	 * Records the expansion of a principal's roles to granted authorities
+	 *
+	 * @param source the integration point, like <code>jwt</code> or <code>user-details</code>
+	 * @param nanos how long the expansion took
+	 * @param roles how many roles the principal has
+	 * @param authorities how many authorities the principal ended up with
+	 */
+	default void recordResolution(String source, long nanos, int roles, int authorities) {
+	}
+
+	/**
+	 * Reports the size and hit ratio of a cache
+	 */
+	default void monitorCache(String cache, BoundedCache<?, ?> boundedCache) {
+	}
+
+	/**
+	 * Reports the memory, expected false positive rate and rejected lookups of a filter that is rebuilt over time
+	 *
+	 * @param bloomFilter the current filter, which may be null
+	 * @param rejected how many lookups the filter has rejected
+	 */
+	default void monitorFilter(String filter, Supplier<BloomFilter> bloomFilter, LongSupplier rejected) {
+	}
+}
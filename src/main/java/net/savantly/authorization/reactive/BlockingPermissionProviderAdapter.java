@@ -0,0 +1,68 @@
+package net.savantly.authorization.reactive;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import net.savantly.authorization.service.PermissionProvider;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Exposes a blocking {@link PermissionProvider}, like the JPA backed <code>JdbcPermissionProvider</code>,
+ * as a {@link ReactivePermissionProvider}. Lookups run on a bounded scheduler, never on the calling event loop.
+ * 
+ * @author jeremy branham
+ *
+ */
+public class BlockingPermissionProviderAdapter implements ReactivePermissionProvider, DisposableBean {
+
+	public static final int DEFAULT_THREAD_CAP = 10;
+	public static final int DEFAULT_QUEUED_TASK_CAP = 10_000;
+
+	private final PermissionProvider delegate;
+	private final Scheduler scheduler;
+	private final boolean ownsScheduler;
+
+	/**
+	 * Uses a dedicated bounded elastic scheduler, disposed with this bean
+	 */
+	public BlockingPermissionProviderAdapter(PermissionProvider delegate) {
+		this(delegate, Schedulers.newBoundedElastic(DEFAULT_THREAD_CAP, DEFAULT_QUEUED_TASK_CAP, "role-permissions"), true);
+	}
+
+	/**
+	 * @param scheduler a scheduler that may block, owned by the caller
+	 */
+	public BlockingPermissionProviderAdapter(PermissionProvider delegate, Scheduler scheduler) {
+		this(delegate, scheduler, false);
+	}
+
+	private BlockingPermissionProviderAdapter(PermissionProvider delegate, Scheduler scheduler, boolean ownsScheduler) {
+		this.delegate = delegate;
+		this.scheduler = scheduler;
+		this.ownsScheduler = ownsScheduler;
+	}
+
+	@Override
+	public Mono<List<String>> getEffectivePermissions(String role) {
+		return Mono.fromCallable(() -> delegate.getEffectivePermissions(role))
+				.subscribeOn(scheduler);
+	}
+
+	@Override
+	public Mono<Set<String>> getEffectivePermissions(Collection<String> roles) {
+		return Mono.fromCallable(() -> delegate.getEffectivePermissions(roles))
+				.subscribeOn(scheduler);
+	}
+
+	@Override
+	public void destroy() {
+		if (ownsScheduler) {
+			scheduler.dispose();
+		}
+	}
+}
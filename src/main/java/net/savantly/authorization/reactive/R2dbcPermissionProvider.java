@@ -0,0 +1,171 @@
+package net.savantly.authorization.reactive;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import io.r2dbc.spi.Statement;
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+import net.savantly.authorization.service.RoleInheritanceClosure;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reads role to permission mappings through R2DBC, from the tables mapped by the <code>RolePermissions</code> entity.
+ * <p>
+ * The role hierarchy is flattened into a {@link RoleInheritanceClosure} when it is first needed,
+ * and updated for the changed roles when a {@link RolePermissionsChangedEvent} is received by a provider declared as a bean,
+ * so a lookup expands the roles in memory and reads their permissions with a single query however deep the hierarchy is.
+ * A cycle in the hierarchy fails the lookup that loads it, and a change that introduces one keeps the previous closure.
+ * 
+ * @author jeremy branham
+ *
+ */
+public class R2dbcPermissionProvider implements ReactivePermissionProvider {
+
+	private static final Logger log = LoggerFactory.getLogger(R2dbcPermissionProvider.class);
+
+	static final String PERMISSIONS_TABLE = "role_permissions_permissions";
+	static final String ROLE_COLUMN = "role_permissions_role";
+	static final String PERMISSION_COLUMN = "permissions";
+	static final String INHERITED_ROLES_TABLE = "role_permissions_inherited_roles";
+	static final String INHERITED_ROLE_COLUMN = "inherited_roles";
+	private static final String SELECT_INHERITED_ROLES = "SELECT " + ROLE_COLUMN + ", " + INHERITED_ROLE_COLUMN
+			+ " FROM " + INHERITED_ROLES_TABLE;
+
+	private final Object inheritanceLock = new Object();
+	private final ConnectionFactory connectionFactory;
+	private volatile RoleInheritanceClosure inheritance;
+
+	public R2dbcPermissionProvider(ConnectionFactory connectionFactory) {
+		this.connectionFactory = connectionFactory;
+	}
+
+	@Override
+	public Mono<List<String>> getEffectivePermissions(String role) {
+		return getInheritance()
+				.flatMap(closure -> read(closure.getRoles(role)))
+				.<List<String>>map(ArrayList::new)
+				.doOnNext(permissions -> {
+					if (log.isDebugEnabled()) {
+						log.debug("role: {} effective permissions: {}", role, permissions);
+					}
+				});
+	}
+
+	@Override
+	public Mono<Set<String>> getEffectivePermissions(Collection<String> roles) {
+		if (roles.isEmpty()) {
+			return Mono.just(Collections.emptySet());
+		}
+		return getInheritance().flatMap(closure -> read(closure.expand(roles)));
+	}
+
+	/**
+	 * Reloads the whole role hierarchy
+	 *
+	 * @return completes when the new closure has been swapped in, or errors with an {@link IllegalArgumentException} if the hierarchy has a cycle
+	 */
+	public Mono<Void> refreshInheritance() {
+		return loadInheritance().then();
+	}
+
+	/**
+	 * Reloads the inherited roles of the given roles, and recomputes them and the roles that inherit from them
+	 *
+	 * @return completes when the new closure has been swapped in, or errors with an {@link IllegalArgumentException} if the change introduces a cycle
+	 */
+	public Mono<Void> refreshInheritance(Collection<String> roles) {
+		List<String> changedRoles = new ArrayList<>(roles);
+		return readInheritedRoles(SELECT_INHERITED_ROLES + " WHERE " + ROLE_COLUMN + " IN (" + parameters(changedRoles.size()) + ")", changedRoles)
+				.doOnNext(inheritedRoles -> {
+					synchronized (inheritanceLock) {
+						// not loaded yet, the first lookup reads the whole hierarchy
+						if (this.inheritance != null) {
+							this.inheritance = this.inheritance.update(inheritedRoles, changedRoles);
+						}
+					}
+				})
+				.then();
+	}
+
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onRolePermissionsChanged(RolePermissionsChangedEvent event) {
+		(event.isAllRoles() ? refreshInheritance() : refreshInheritance(event.getRoles()))
+				.subscribe(null, e -> log.warn("failed to update the role hierarchy after {}, it may be stale until the next change", event, e));
+	}
+
+	private Mono<RoleInheritanceClosure> getInheritance() {
+		return Mono.defer(() -> {
+			RoleInheritanceClosure current = this.inheritance;
+			return current != null ? Mono.just(current) : loadInheritance();
+		});
+	}
+
+	private Mono<RoleInheritanceClosure> loadInheritance() {
+		return readInheritedRoles(SELECT_INHERITED_ROLES, Collections.<String>emptyList())
+				.map(RoleInheritanceClosure::of)
+				.doOnNext(loaded -> {
+					synchronized (inheritanceLock) {
+						this.inheritance = loaded;
+					}
+				});
+	}
+
+	/**
+	 * Reads the distinct direct permissions of the roles in a single query
+	 */
+	private Mono<Set<String>> read(Collection<String> roles) {
+		List<String> parameters = new ArrayList<>(roles);
+		String sql = "SELECT " + PERMISSION_COLUMN + " FROM " + PERMISSIONS_TABLE + " WHERE " + ROLE_COLUMN + " IN (" + parameters(parameters.size()) + ")";
+		// a role without permissions has no rows, but the column itself is nullable, and a null cannot be emitted
+		return select(sql, parameters, (row, metadata) -> Optional.ofNullable(row.get(0, String.class)))
+				.filter(Optional::isPresent)
+				.map(Optional::get)
+				.<Set<String>>collect(LinkedHashSet::new, Set::add);
+	}
+
+	private Mono<Map<String, List<String>>> readInheritedRoles(String sql, List<String> roles) {
+		return select(sql, roles, (row, metadata) -> new String[] { row.get(0, String.class), row.get(1, String.class) })
+				.collect(HashMap::new, (inheritedRoles, edge) -> inheritedRoles.computeIfAbsent(edge[0], r -> new ArrayList<>()).add(edge[1]));
+	}
+
+	private static String parameters(int count) {
+		StringBuilder parameters = new StringBuilder();
+		for (int i = 1; i <= count; i++) {
+			parameters.append(i == 1 ? "$" : ", $").append(i);
+		}
+		return parameters.toString();
+	}
+
+	private <T> Flux<T> select(String sql, List<String> parameters, BiFunction<Row, RowMetadata, T> mapper) {
+		return Flux.usingWhen(connectionFactory.create(),
+				connection -> execute(connection, sql, parameters, mapper),
+				Connection::close);
+	}
+
+	private <T> Flux<T> execute(Connection connection, String sql, List<String> parameters, BiFunction<Row, RowMetadata, T> mapper) {
+		Statement statement = connection.createStatement(sql);
+		for (int i = 0; i < parameters.size(); i++) {
+			statement.bind(i, parameters.get(i));
+		}
+		return Flux.from(statement.execute())
+				.flatMap((Result result) -> result.map(mapper));
+	}
+}
@@ -0,0 +1,75 @@
+package net.savantly.authorization.reactive;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+import net.savantly.authorization.authority.GrantedAuthorityRegistry;
+import net.savantly.authorization.jwt.ClaimRolesExtractor;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive counterpart of the {@link net.savantly.authorization.service.PermissionAwareJwtAuthenticationConverter},
+ * for <code>ServerHttpSecurity.oauth2ResourceServer().jwt().jwtAuthenticationConverter(...)</code>
+ * 
+ * @author jeremy branham
+ *
+ */
+public class ReactivePermissionAwareJwtAuthenticationConverter implements Converter<Jwt, Mono<AbstractAuthenticationToken>> {
+
+	private final ReactivePermissionProvider permissionProvider;
+	private final ClaimRolesExtractor rolesExtractor;
+	private GrantedAuthorityRegistry authorityRegistry = GrantedAuthorityRegistry.getShared();
+
+	public ReactivePermissionAwareJwtAuthenticationConverter(ReactivePermissionProvider permissionProvider) {
+		this(permissionProvider, "groups");
+	}
+
+	/**
+	 * @param groupsClaim the claim holding the user's roles, may be a nested path like <code>realm_access.roles</code>
+	 */
+	public ReactivePermissionAwareJwtAuthenticationConverter(ReactivePermissionProvider permissionProvider, String groupsClaim) {
+		this(permissionProvider, ClaimRolesExtractor.of(groupsClaim));
+	}
+
+	/**
+	 * @param rolesExtractor reads the user's roles from one or more claims
+	 */
+	public ReactivePermissionAwareJwtAuthenticationConverter(ReactivePermissionProvider permissionProvider, ClaimRolesExtractor rolesExtractor) {
+		this.permissionProvider = permissionProvider;
+		this.rolesExtractor = rolesExtractor;
+	}
+
+	/**
+	 * @param authorityRegistry supplies the canonical authority instances, pass the configuration's {@link GrantedAuthorityRegistry} bean, defaults to the shared registry
+	 */
+	public void setAuthorityRegistry(GrantedAuthorityRegistry authorityRegistry) {
+		this.authorityRegistry = authorityRegistry;
+	}
+
+	@Override
+	public Mono<AbstractAuthenticationToken> convert(Jwt jwt) {
+		List<String> roles = rolesExtractor.extract(jwt.getClaims());
+		return permissionProvider.getEffectivePermissions(roles)
+				.<AbstractAuthenticationToken>map(permissions -> new JwtAuthenticationToken(jwt, toAuthorities(roles, permissions)));
+	}
+
+	private Collection<GrantedAuthority> toAuthorities(List<String> roles, Set<String> permissions) {
+		List<GrantedAuthority> authorities = new ArrayList<>(roles.size() + permissions.size());
+		for (String role : roles) {
+			// token groups are not registered, so unmapped group names cannot fill the shared registry
+			authorities.add(authorityRegistry.lookupAuthority(role));
+		}
+		for (String permission : permissions) {
+			authorities.add(authorityRegistry.getAuthority(permission));
+		}
+		return authorities;
+	}
+}
@@ -0,0 +1,116 @@
+package net.savantly.authorization.reactive;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import net.savantly.authorization.authority.GrantedAuthorityRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * Wraps a ReactiveUserDetailsService to inject mapped permissions as granted authorities
+ * <p>
+ * The user is wrapped rather than copied, so a custom {@link UserDetails} type and its fields stay reachable with {@link UserDetailsWrapper#getUserDetails()}.
+ * 
+ * @author jeremy branham
+ *
+ */
+public class ReactivePermissionAwareUserDetailsService implements ReactiveUserDetailsService {
+
+	private final ReactiveUserDetailsService userDetailsService;
+	private final ReactivePermissionProvider permissionProvider;
+	private GrantedAuthorityRegistry authorityRegistry = GrantedAuthorityRegistry.getShared();
+
+	public ReactivePermissionAwareUserDetailsService(ReactiveUserDetailsService userDetailsService, ReactivePermissionProvider permissionProvider) {
+		this.userDetailsService = userDetailsService;
+		this.permissionProvider = permissionProvider;
+	}
+
+	/**
+	 * @param authorityRegistry supplies the canonical permission authorities, pass the configuration's {@link GrantedAuthorityRegistry} bean, defaults to the shared registry
+	 */
+	public void setAuthorityRegistry(GrantedAuthorityRegistry authorityRegistry) {
+		this.authorityRegistry = authorityRegistry;
+	}
+
+	@Override
+	public Mono<UserDetails> findByUsername(String username) {
+		return this.userDetailsService.findByUsername(username)
+				.flatMap(this::withPermissions);
+	}
+
+	private Mono<UserDetails> withPermissions(UserDetails userDetails) {
+		List<String> roles = userDetails.getAuthorities().stream()
+			.map(GrantedAuthority::getAuthority)
+			.collect(Collectors.toList());
+		return permissionProvider.getEffectivePermissions(roles)
+			.map(permissions -> {
+				List<GrantedAuthority> authorities = authorityRegistry.getAuthorities(permissions);
+				// add the original authorities back to the list
+				authorities.addAll(userDetails.getAuthorities());
+				return new UserDetailsWrapper(userDetails, authorities);
+			});
+	}
+
+	/**
+	 * Delegates to the wrapped user, except for the authorities
+	 */
+	public static class UserDetailsWrapper implements UserDetails {
+
+		private static final long serialVersionUID = 1L;
+		private final UserDetails userDetails;
+		private final List<GrantedAuthority> authorities;
+
+		public UserDetailsWrapper(UserDetails userDetails, List<GrantedAuthority> authorities) {
+			this.userDetails = userDetails;
+			this.authorities = authorities;
+		}
+
+		/**
+		 * @return the user loaded by the wrapped service
+		 */
+		public UserDetails getUserDetails() {
+			return userDetails;
+		}
+
+		@Override
+		public Collection<? extends GrantedAuthority> getAuthorities() {
+			return authorities;
+		}
+
+		@Override
+		public String getPassword() {
+			return this.userDetails.getPassword();
+		}
+
+		@Override
+		public String getUsername() {
+			return this.userDetails.getUsername();
+		}
+
+		@Override
+		public boolean isAccountNonExpired() {
+			return this.userDetails.isAccountNonExpired();
+		}
+
+		@Override
+		public boolean isAccountNonLocked() {
+			return this.userDetails.isAccountNonLocked();
+		}
+
+		@Override
+		public boolean isCredentialsNonExpired() {
+			return this.userDetails.isCredentialsNonExpired();
+		}
+
+		@Override
+		public boolean isEnabled() {
+			return this.userDetails.isEnabled();
+		}
+
+	}
+}
@@ -0,0 +1,35 @@
+package net.savantly.authorization.reactive;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of the {@link net.savantly.authorization.service.PermissionProvider}
+ * 
+ * @author jeremy branham
+ *
+ */
+public interface ReactivePermissionProvider {
+
+	/**
+	 * @return the permissions of the role, or an empty list when the role is not mapped
+	 */
+	Mono<List<String>> getEffectivePermissions(String role);
+
+	/**
+	 * Resolves the permissions of several roles at once.
+	 * 
+	 * @param roles the roles to resolve
+	 * @return the merged, distinct permissions of all roles
+	 */
+	default Mono<Set<String>> getEffectivePermissions(Collection<String> roles) {
+		return Flux.fromIterable(roles)
+				.flatMap(this::getEffectivePermissions)
+				.<Set<String>>collect(LinkedHashSet::new, Set::addAll);
+	}
+}
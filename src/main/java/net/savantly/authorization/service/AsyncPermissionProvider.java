@@ -0,0 +1,44 @@
+package net.savantly.authorization.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous counterpart of the {@link PermissionProvider}, for stores where a lookup waits on the network
+ * and several roles should be looked up at the same time.
+ *
+ * @author jeremy branham
+ *
+ */
+public interface AsyncPermissionProvider {
+
+	/**
+	 * @return completes with the permissions of the role, or an empty list when the role is not mapped
+	 */
+	CompletableFuture<List<String>> getEffectivePermissionsAsync(String role);
+
+	/**
+	 * Starts the lookups of all roles at once, and joins them
+	 *
+	 * @param roles the roles to resolve
+	 * @return completes with the merged, distinct permissions of all roles
+	 */
+	default CompletableFuture<Set<String>> getEffectivePermissionsAsync(Collection<String> roles) {
+		List<CompletableFuture<List<String>>> lookups = new ArrayList<>(roles.size());
+		for (String role : roles) {
+			lookups.add(getEffectivePermissionsAsync(role));
+		}
+		return CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+			Set<String> permissions = new LinkedHashSet<>();
+			for (CompletableFuture<List<String>> lookup : lookups) {
+				permissions.addAll(lookup.join());
+			}
+			return permissions;
+		});
+	}
+
+}
@@ -0,0 +1,113 @@
+package net.savantly.authorization.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import net.savantly.authorization.cache.BoundedCache;
+import net.savantly.authorization.cache.CacheStatistics;
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+import net.savantly.authorization.metrics.PermissionMetrics;
+
+/**
+ * Caches the effective permissions of another {@link PermissionProvider} per role.
+ * Entries are bounded by size and optionally expire after write and/or access,
+ * and are discarded when a {@link RolePermissionsChangedEvent} is received, together with the roles inheriting from the changed ones
+ * when a {@link RoleInheritanceLookup} is set.
+ *
+ * @author jeremy branham
+ *
+ */
+public class CachingPermissionProvider implements PermissionProvider {
+
+	private static final Logger log = LoggerFactory.getLogger(CachingPermissionProvider.class);
+
+	public static final int DEFAULT_MAXIMUM_SIZE = 10_000;
+	public static final Duration DEFAULT_EXPIRE_AFTER_WRITE = Duration.ofMinutes(5);
+
+	private final PermissionProvider delegate;
+	private final BoundedCache<String, List<String>> cache;
+	private RoleInheritanceLookup roleInheritanceLookup;
+
+	public CachingPermissionProvider(PermissionProvider delegate) {
+		this(delegate, DEFAULT_MAXIMUM_SIZE, DEFAULT_EXPIRE_AFTER_WRITE, null);
+	}
+
+	public CachingPermissionProvider(PermissionProvider delegate, int maximumSize, Duration expireAfterWrite, Duration expireAfterAccess) {
+		this(delegate, new BoundedCache<>(maximumSize, expireAfterWrite, expireAfterAccess));
+	}
+
+	public CachingPermissionProvider(PermissionProvider delegate, BoundedCache<String, List<String>> cache) {
+		this.delegate = delegate;
+		this.cache = cache;
+	}
+
+	@Override
+	public List<String> getEffectivePermissions(String role) {
+		return this.cache.get(role, this::load);
+	}
+
+	/**
+	 * Removes the cached permissions of a single role
+	 */
+	public void invalidate(String role) {
+		this.cache.invalidate(role);
+	}
+
+	/**
+	 * Removes all cached permissions
+	 */
+	public void invalidateAll() {
+		this.cache.invalidateAll();
+	}
+
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onRolePermissionsChanged(RolePermissionsChangedEvent event) {
+		Set<String> changedRoles = RoleInheritanceLookup.getChangedRoles(event, roleInheritanceLookup);
+		if (changedRoles.isEmpty()) {
+			invalidateAll();
+		} else {
+			changedRoles.forEach(this::invalidate);
+		}
+	}
+
+	/**
+	 * @param roleInheritanceLookup widens a change to the roles inheriting from the changed roles, unset when roles do not inherit from each other
+	 */
+	public void setRoleInheritanceLookup(RoleInheritanceLookup roleInheritanceLookup) {
+		this.roleInheritanceLookup = roleInheritanceLookup;
+	}
+
+	/**
+	 * @param permissionMetrics reports the cache size and hit ratio
+	 */
+	public void setPermissionMetrics(PermissionMetrics permissionMetrics) {
+		permissionMetrics.monitorCache("role-permissions", this.cache);
+	}
+
+	public CacheStatistics getStatistics() {
+		return this.cache.getStatistics();
+	}
+
+	public PermissionProvider getDelegate() {
+		return delegate;
+	}
+
+	private List<String> load(String role) {
+		if (log.isDebugEnabled()) {
+			log.debug("loading permissions for role: {}", role);
+		}
+		List<String> permissions = this.delegate.getEffectivePermissions(role);
+		if (permissions == null || permissions.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(new ArrayList<>(permissions));
+	}
+
+}
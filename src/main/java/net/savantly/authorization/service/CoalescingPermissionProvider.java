@@ -0,0 +1,143 @@
+package net.savantly.authorization.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+
+/**
+ * Coalesces concurrent lookups of the same role into a single lookup of another {@link PermissionProvider}.
+ * <p>
+ * The first caller runs the lookup on its own thread, and callers asking for the same role while it is in flight
+ * wait for and share its result, or its exception. A waiting caller gives up after the timeout with a {@link PermissionLookupException},
+ * the lookup itself is not interrupted. Nothing is kept once the lookup completes, so this belongs under a cache,
+ * where it stops a burst of misses for a popular role, after a deploy or an expiry, from all reaching the store.
+ * <p>
+ * Bulk lookups are coalesced by their distinct set of roles.
+ * <p>
+ * A {@link RolePermissionsChangedEvent} forgets the lookups in flight, so callers arriving after a change start a new lookup
+ * instead of sharing one that may have read the permissions from before the change. It listens for the event itself when it is a bean,
+ * ordered before the caches, so a miss right after their invalidation does not join a lookup from before the change.
+ *
+ * @author jeremy branham
+ *
+ */
+public class CoalescingPermissionProvider implements PermissionProvider {
+
+	public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
+
+	private final PermissionProvider delegate;
+	private final long timeoutNanos;
+	private final ConcurrentMap<String, CompletableFuture<List<String>>> inFlight = new ConcurrentHashMap<>();
+	private final ConcurrentMap<List<String>, CompletableFuture<Set<String>>> inFlightBulk = new ConcurrentHashMap<>();
+	private final LongAdder coalescedCount = new LongAdder();
+
+	public CoalescingPermissionProvider(PermissionProvider delegate) {
+		this(delegate, DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * @param timeout how long a caller waits for a lookup started by another caller
+	 */
+	public CoalescingPermissionProvider(PermissionProvider delegate, Duration timeout) {
+		this.delegate = delegate;
+		this.timeoutNanos = timeout.toNanos();
+	}
+
+	@Override
+	public List<String> getEffectivePermissions(String role) {
+		return load(inFlight, role, delegate::getEffectivePermissions, Collections.singletonList(role));
+	}
+
+	@Override
+	public Set<String> getEffectivePermissions(Collection<String> roles) {
+		// sorted and de-duplicated, so requests for the same roles in any order share a lookup
+		List<String> roleSet = new ArrayList<>(new TreeSet<>(roles));
+		return load(inFlightBulk, roleSet, delegate::getEffectivePermissions, roleSet);
+	}
+
+	/**
+	 * Forgets the lookups in flight, callers already waiting on them still get their result
+	 */
+	public void forgetInFlight() {
+		inFlight.clear();
+		inFlightBulk.clear();
+	}
+
+	@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onRolePermissionsChanged(RolePermissionsChangedEvent event) {
+		// any in flight lookup may inherit from the changed roles, and there are only a few of them
+		forgetInFlight();
+	}
+
+	/**
+	 * @return how many lookups were answered by a lookup another caller had in flight
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.sum();
+	}
+
+	public PermissionProvider getDelegate() {
+		return delegate;
+	}
+
+	private <K, V> V load(ConcurrentMap<K, CompletableFuture<V>> flights, K key, Function<K, V> loader, Collection<String> roles) {
+		CompletableFuture<V> flight = new CompletableFuture<>();
+		CompletableFuture<V> existing = flights.putIfAbsent(key, flight);
+		if (existing != null) {
+			coalescedCount.increment();
+			return await(existing, roles);
+		}
+		try {
+			V value = loader.apply(key);
+			flight.complete(value);
+			return value;
+		} catch (RuntimeException | Error e) {
+			flight.completeExceptionally(e);
+			throw e;
+		} finally {
+			// a later caller starts a new lookup, so a failure is not remembered
+			flights.remove(key, flight);
+		}
+	}
+
+	private <V> V await(CompletableFuture<V> flight, Collection<String> roles) {
+		try {
+			return flight.get(timeoutNanos, TimeUnit.NANOSECONDS);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new PermissionLookupException("permission lookup failed for roles: " + roles, roles, cause);
+		} catch (TimeoutException e) {
+			throw new PermissionLookupException("permission lookup in flight did not finish within "
+					+ TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms for roles: " + roles, roles, e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new PermissionLookupException("interrupted waiting for the permission lookup of roles: " + roles, roles, e);
+		}
+	}
+
+}
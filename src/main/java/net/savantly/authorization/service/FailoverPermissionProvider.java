@@ -0,0 +1,103 @@
+package net.savantly.authorization.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves lookups from a primary {@link PermissionProvider}, and from a fallback while the primary fails,
+ * like a last known snapshot of the mappings in front of a database that is unreachable at startup or during an outage.
+ * <p>
+ * Every lookup tries the primary first, so the primary takes over again as soon as it recovers.
+ * When the fallback fails as well, the primary's exception is thrown with the fallback's exception suppressed.
+ *
+ * @author jeremy branham
+ *
+ */
+public class FailoverPermissionProvider implements PermissionProvider {
+
+	private static final Logger log = LoggerFactory.getLogger(FailoverPermissionProvider.class);
+
+	private final PermissionProvider primary;
+	private final PermissionProvider fallback;
+	private final AtomicBoolean failingOver = new AtomicBoolean();
+	private final LongAdder failoverCount = new LongAdder();
+
+	public FailoverPermissionProvider(PermissionProvider primary, PermissionProvider fallback) {
+		this.primary = primary;
+		this.fallback = fallback;
+	}
+
+	@Override
+	public List<String> getEffectivePermissions(String role) {
+		return lookup(role, primary::getEffectivePermissions, fallback::getEffectivePermissions);
+	}
+
+	@Override
+	public Set<String> getEffectivePermissions(Collection<String> roles) {
+		return lookup(roles, primary::getEffectivePermissions, fallback::getEffectivePermissions);
+	}
+
+	@Override
+	public Map<String, List<String>> getEffectivePermissionsByRole(Collection<String> roles) {
+		return lookup(roles, primary::getEffectivePermissionsByRole, fallback::getEffectivePermissionsByRole);
+	}
+
+	@Override
+	public boolean isBulkLookupByRole() {
+		return primary.isBulkLookupByRole();
+	}
+
+	/**
+	 * @return true while the primary is failing
+	 */
+	public boolean isFailingOver() {
+		return failingOver.get();
+	}
+
+	/**
+	 * @return how many lookups were served by the fallback
+	 */
+	public long getFailoverCount() {
+		return failoverCount.sum();
+	}
+
+	public PermissionProvider getPrimary() {
+		return primary;
+	}
+
+	public PermissionProvider getFallback() {
+		return fallback;
+	}
+
+	private <K, V> V lookup(K roles, Function<K, V> primaryLookup, Function<K, V> fallbackLookup) {
+		V permissions;
+		try {
+			permissions = primaryLookup.apply(roles);
+		} catch (RuntimeException e) {
+			try {
+				permissions = fallbackLookup.apply(roles);
+			} catch (RuntimeException fallbackException) {
+				e.addSuppressed(fallbackException);
+				throw e;
+			}
+			failoverCount.increment();
+			if (failingOver.compareAndSet(false, true)) {
+				log.warn("permission lookup failed, serving permissions from the fallback until it recovers", e);
+			}
+			return permissions;
+		}
+		if (failingOver.get() && failingOver.compareAndSet(true, false)) {
+			log.info("permission lookup recovered, no longer serving permissions from the fallback");
+		}
+		return permissions;
+	}
+
+}
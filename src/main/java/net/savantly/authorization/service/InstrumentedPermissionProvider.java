@@ -0,0 +1,94 @@
+package net.savantly.authorization.service;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.savantly.authorization.metrics.PermissionMetrics;
+
+/**
+ * Records the latency, role count and unknown-role misses of another {@link PermissionProvider}'s lookups,
+ * tagged with the name of the provider implementation.
+ * A lookup of several roles counts the roles without any permissions when the delegate reads the permissions of each role in bulk,
+ * see {@link PermissionProvider#isBulkLookupByRole()}. Otherwise it stays a single merged lookup of the delegate,
+ * and its roles are only counted as misses when none of them has permissions.
+ * 
+ * @author jeremy branham
+ *
+ */
+public class InstrumentedPermissionProvider implements PermissionProvider {
+
+	private final PermissionProvider delegate;
+	private final PermissionMetrics metrics;
+	private final String providerName;
+
+	public InstrumentedPermissionProvider(PermissionProvider delegate, PermissionMetrics metrics) {
+		this(delegate, metrics, delegate.getClass().getSimpleName());
+	}
+
+	public InstrumentedPermissionProvider(PermissionProvider delegate, PermissionMetrics metrics, String providerName) {
+		this.delegate = delegate;
+		this.metrics = metrics;
+		this.providerName = providerName;
+	}
+
+	@Override
+	public List<String> getEffectivePermissions(String role) {
+		if (!metrics.isEnabled()) {
+			return delegate.getEffectivePermissions(role);
+		}
+		long start = System.nanoTime();
+		List<String> permissions = delegate.getEffectivePermissions(role);
+		metrics.recordLookup(providerName, System.nanoTime() - start, 1, permissions == null || permissions.isEmpty() ? 1 : 0);
+		return permissions;
+	}
+
+	@Override
+	public Set<String> getEffectivePermissions(Collection<String> roles) {
+		if (!metrics.isEnabled()) {
+			return delegate.getEffectivePermissions(roles);
+		}
+		if (delegate.isBulkLookupByRole()) {
+			Set<String> permissions = new LinkedHashSet<>();
+			for (List<String> rolePermissions : getEffectivePermissionsByRole(roles).values()) {
+				permissions.addAll(rolePermissions);
+			}
+			return permissions;
+		}
+		long start = System.nanoTime();
+		Set<String> permissions = delegate.getEffectivePermissions(roles);
+		metrics.recordLookup(providerName, System.nanoTime() - start, roles.size(),
+				permissions == null || permissions.isEmpty() ? new HashSet<>(roles).size() : 0);
+		return permissions;
+	}
+
+	@Override
+	public Map<String, List<String>> getEffectivePermissionsByRole(Collection<String> roles) {
+		if (!metrics.isEnabled()) {
+			return delegate.getEffectivePermissionsByRole(roles);
+		}
+		long start = System.nanoTime();
+		Map<String, List<String>> byRole = delegate.getEffectivePermissionsByRole(roles);
+		int unknownRoles = 0;
+		for (List<String> rolePermissions : byRole.values()) {
+			if (rolePermissions == null || rolePermissions.isEmpty()) {
+				unknownRoles++;
+			}
+		}
+		metrics.recordLookup(providerName, System.nanoTime() - start, roles.size(), unknownRoles);
+		return byRole;
+	}
+
+	@Override
+	public boolean isBulkLookupByRole() {
+		return delegate.isBulkLookupByRole();
+	}
+
+	public PermissionProvider getDelegate() {
+		return delegate;
+	}
+
+}
@@ -0,0 +1,204 @@
+package net.savantly.authorization.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import net.savantly.authorization.authority.PermissionTrie;
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+
+/**
+ * Keeps an in-memory index of permission to roles, so the roles granting a permission are found in time proportional to the result,
+ * instead of loading and scanning every mapping.
+ * <p>
+ * The index holds the effective permissions of the roles, so a role inheriting a permission is found as well.
+ * It is built from one bulk read of every role in the catalog, see {@link RoleCatalog#getAllEffectivePermissions(PermissionProvider)},
+ * when the bean is initialized.
+ * A {@link RolePermissionsChangedEvent} for some roles re-reads only those roles and patches their entries, any other event rebuilds the index.
+ * When a {@link RoleInheritanceLookup} is set, the roles inheriting from the changed roles are re-read as well.
+ * A change is applied to a copy of the index, which then replaces the index with a single volatile write,
+ * so readers never lock and never see a partial update, neither of one role nor of a change to several roles.
+ * The copy costs one pass over the indexed permissions, which is small next to re-reading the roles from the store.
+ *
+ * @author jeremy branham
+ *
+ */
+public class InvertedPermissionIndex implements PermissionRoleLookup, InitializingBean {
+
+	private static final Logger log = LoggerFactory.getLogger(InvertedPermissionIndex.class);
+
+	private final PermissionProvider permissionProvider;
+	private final RoleCatalog roleCatalog;
+	private volatile Index index = new Index();
+	private RoleInheritanceLookup roleInheritanceLookup;
+
+	public InvertedPermissionIndex(PermissionProvider permissionProvider, RoleCatalog roleCatalog) {
+		this.permissionProvider = permissionProvider;
+		this.roleCatalog = roleCatalog;
+	}
+
+	/**
+	 * @param roleInheritanceLookup widens a change to the roles inheriting from the changed roles, unset when roles do not inherit from each other
+	 */
+	public void setRoleInheritanceLookup(RoleInheritanceLookup roleInheritanceLookup) {
+		this.roleInheritanceLookup = roleInheritanceLookup;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		rebuild();
+	}
+
+	@Override
+	public Set<String> getRolesGranting(String permission) {
+		return index.rolesByPermission.getOrDefault(permission, Collections.<String>emptySet());
+	}
+
+	/**
+	 * @return the roles granting the permission, directly or with a wildcard grant like <code>payments:*</code> that covers it
+	 */
+	public Set<String> getRolesImplying(String permission) {
+		Index current = this.index;
+		Set<String> roles = current.rolesByPermission.getOrDefault(permission, Collections.<String>emptySet());
+		Set<String> implying = null;
+		// wildcard grants are few, so each is matched on its own
+		for (Map.Entry<String, PermissionTrie> wildcard : current.wildcards.entrySet()) {
+			if (!wildcard.getKey().equals(permission) && wildcard.getValue().implies(permission)) {
+				if (implying == null) {
+					implying = new LinkedHashSet<>(roles);
+				}
+				implying.addAll(current.rolesByPermission.getOrDefault(wildcard.getKey(), Collections.<String>emptySet()));
+			}
+		}
+		return implying == null ? roles : Collections.unmodifiableSet(implying);
+	}
+
+	/**
+	 * @return the permissions of a role as indexed
+	 */
+	public Set<String> getPermissions(String role) {
+		return index.permissionsByRole.getOrDefault(role, Collections.<String>emptySet());
+	}
+
+	/**
+	 * @return how many distinct permissions are granted by at least one role
+	 */
+	public int getPermissionCount() {
+		return index.rolesByPermission.size();
+	}
+
+	/**
+	 * Reads the permissions of every role and replaces the index
+	 */
+	public synchronized void rebuild() {
+		Index rebuilt = new Index();
+		Map<String, List<String>> roles = roleCatalog.getAllEffectivePermissions(permissionProvider);
+		roles.forEach(rebuilt::update);
+		this.index = rebuilt;
+		if (log.isDebugEnabled()) {
+			log.debug("indexed {} permissions of {} roles", rebuilt.rolesByPermission.size(), roles.size());
+		}
+	}
+
+	/**
+	 * Re-reads the permissions of the given roles, a role that no longer has permissions is removed from the index
+	 */
+	public synchronized void update(Collection<String> roles) {
+		Index updated = new Index(index);
+		permissionProvider.getEffectivePermissionsByRole(roles).forEach(updated::update);
+		this.index = updated;
+	}
+
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onRolePermissionsChanged(RolePermissionsChangedEvent event) {
+		try {
+			Set<String> changedRoles = RoleInheritanceLookup.getChangedRoles(event, roleInheritanceLookup);
+			if (changedRoles.isEmpty()) {
+				rebuild();
+			} else {
+				update(changedRoles);
+			}
+		} catch (RuntimeException e) {
+			log.warn("failed to update the permission index after {}, it may be stale until the next change", event, e);
+		}
+	}
+
+	/**
+	 * Both directions of the mapping, the forward one tells an update which reverse entries to patch.
+	 * Only changed before it is published, the sets and tries it holds are immutable and shared between copies.
+	 */
+	private static final class Index {
+
+		final Map<String, Set<String>> permissionsByRole;
+		final Map<String, Set<String>> rolesByPermission;
+		final Map<String, PermissionTrie> wildcards;
+
+		Index() {
+			this.permissionsByRole = new HashMap<>();
+			this.rolesByPermission = new HashMap<>();
+			this.wildcards = new HashMap<>();
+		}
+
+		Index(Index index) {
+			this.permissionsByRole = new HashMap<>(index.permissionsByRole);
+			this.rolesByPermission = new HashMap<>(index.rolesByPermission);
+			this.wildcards = new HashMap<>(index.wildcards);
+		}
+
+		void update(String role, List<String> permissions) {
+			Set<String> updated = new LinkedHashSet<>();
+			for (String permission : permissions) {
+				if (permission != null) {
+					updated.add(permission);
+				}
+			}
+			Set<String> previous = permissionsByRole.getOrDefault(role, Collections.<String>emptySet());
+			for (String permission : previous) {
+				if (!updated.contains(permission)) {
+					rolesByPermission.computeIfPresent(permission, (key, roles) -> without(roles, role));
+					if (!rolesByPermission.containsKey(permission)) {
+						wildcards.remove(permission);
+					}
+				}
+			}
+			for (String permission : updated) {
+				if (!previous.contains(permission)) {
+					rolesByPermission.compute(permission, (key, roles) -> with(roles, role));
+					if (permission.contains(PermissionTrie.WILDCARD)) {
+						wildcards.computeIfAbsent(permission, grant -> new PermissionTrie(Collections.singleton(grant)));
+					}
+				}
+			}
+			if (updated.isEmpty()) {
+				permissionsByRole.remove(role);
+			} else {
+				permissionsByRole.put(role, Collections.unmodifiableSet(updated));
+			}
+		}
+
+		private static Set<String> with(Set<String> roles, String role) {
+			Set<String> copy = roles == null ? new LinkedHashSet<>() : new LinkedHashSet<>(roles);
+			copy.add(role);
+			return Collections.unmodifiableSet(copy);
+		}
+
+		private static Set<String> without(Set<String> roles, String role) {
+			if (roles.size() == 1 && roles.contains(role)) {
+				return null;
+			}
+			Set<String> copy = new LinkedHashSet<>(roles);
+			copy.remove(role);
+			return Collections.unmodifiableSet(copy);
+		}
+	}
+
+}
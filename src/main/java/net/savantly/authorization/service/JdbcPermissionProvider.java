@@ -1,41 +1,210 @@
 package net.savantly.authorization.service;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.transaction.event.TransactionalEventListener;
 
-import net.savantly.authorization.jdbc.RolePermissions;
+import net.savantly.authorization.authority.GrantedAuthorityRegistry;
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+import net.savantly.authorization.jdbc.RoleInheritanceEntry;
+import net.savantly.authorization.jdbc.RolePermissionEntry;
 import net.savantly.authorization.jdbc.RolePermissionsRepository;
 
 /**
+ * Reads role to permission mappings through the {@link RolePermissionsRepository}, without hydrating the entities.
+ * <p>
+ * The role hierarchy is flattened into a {@link RoleInheritanceClosure} when it is first needed,
+ * and updated for the changed roles when a {@link RolePermissionsChangedEvent} is received,
+ * so a lookup expands the roles in memory and reads their permissions with a single query however deep the hierarchy is.
+ * A cycle in the hierarchy is rejected when it is loaded, and a change that introduces one keeps the previous closure.
+ * Inherited roles changed without going through the repository are seen after {@link #refreshInheritance()}.
  * 
  * @author jeremy branham
  *
  */
-public class JdbcPermissionProvider implements PermissionProvider {
+public class JdbcPermissionProvider implements PermissionProvider, RoleCatalog, PermissionRoleLookup, RoleInheritanceLookup {
 	
 	private static final Logger log = LoggerFactory.getLogger(JdbcPermissionProvider.class);
 	
+	private final Object inheritanceLock = new Object();
 	private RolePermissionsRepository rolePermissionsRepository;
+	private GrantedAuthorityRegistry authorityRegistry;
+	private volatile RoleInheritanceClosure inheritance;
 	
 	public JdbcPermissionProvider(RolePermissionsRepository rolePermissionsRepository) {
+		this(rolePermissionsRepository, GrantedAuthorityRegistry.getShared());
+	}
+	
+	/**
+	 * @param authorityRegistry canonicalizes the permission names that are returned
+	 */
+	public JdbcPermissionProvider(RolePermissionsRepository rolePermissionsRepository, GrantedAuthorityRegistry authorityRegistry) {
 		this.rolePermissionsRepository = rolePermissionsRepository;
+		this.authorityRegistry = authorityRegistry;
 	}
 
 	@Override
 	public List<String> getEffectivePermissions(String role) {
-		Optional<RolePermissions> roleMap = this.rolePermissionsRepository.findById(role);
-		if (roleMap.isPresent()) {
-			if (log.isDebugEnabled()) {
-				log.debug("role: {} effective permissions: {}", role, roleMap.get().getPermissions());
-			}
-			return roleMap.get().getPermissions();
-		} else {
+		Set<String> permissions = read(getInheritance().getRoles(role));
+		if (permissions.isEmpty()) {
 			return Collections.emptyList();
 		}
+		if (log.isDebugEnabled()) {
+			log.debug("role: {} effective permissions: {}", role, permissions);
+		}
+		return new ArrayList<>(permissions);
+	}
+
+	@Override
+	public Set<String> getEffectivePermissions(Collection<String> roles) {
+		if (roles.isEmpty()) {
+			return Collections.emptySet();
+		}
+		Set<String> permissions = read(getInheritance().expand(roles));
+		if (log.isDebugEnabled()) {
+			log.debug("roles: {} effective permissions: {}", roles, permissions);
+		}
+		return permissions;
+	}
+
+	@Override
+	public Map<String, List<String>> getEffectivePermissionsByRole(Collection<String> roles) {
+		if (roles.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		RoleInheritanceClosure closure = getInheritance();
+		return closure.getEffectivePermissions(roles, toPermissions(this.rolePermissionsRepository.findEntriesByRoleIn(closure.expand(roles))));
+	}
+
+	/**
+	 * Reads every mapping with one query, and resolves the inherited roles from the closure
+	 */
+	@Override
+	public Map<String, List<String>> getAllEffectivePermissions(PermissionProvider permissionProvider) {
+		RoleInheritanceClosure closure = getInheritance();
+		Map<String, List<String>> direct = toPermissions(this.rolePermissionsRepository.findAllEntries());
+		return closure.getEffectivePermissions(direct.keySet(), direct);
+	}
+
+	@Override
+	public boolean isBulkLookupByRole() {
+		return true;
+	}
+
+	@Override
+	public Collection<String> getRoles() {
+		return this.rolePermissionsRepository.findAllRoles();
+	}
+
+	@Override
+	public Collection<String> getRolesGranting(String permission) {
+		List<String> granting = this.rolePermissionsRepository.findRolesByPermission(permission);
+		return granting.isEmpty() ? granting : getInheritance().getInheritingRoles(granting);
+	}
+
+	@Override
+	public Set<String> getInheritingRoles(Collection<String> roles) {
+		return getInheritance().getInheritingRoles(roles);
+	}
+
+	/**
+	 * Reloads the whole role hierarchy
+	 *
+	 * @throws IllegalArgumentException if the hierarchy has a cycle, the previous closure is kept
+	 */
+	public void refreshInheritance() {
+		synchronized (inheritanceLock) {
+			this.inheritance = RoleInheritanceClosure.of(toMap(this.rolePermissionsRepository.findAllInheritanceEntries()));
+		}
+	}
+
+	/**
+	 * Reloads the inherited roles of the given roles, and recomputes them and the roles that inherit from them
+	 *
+	 * @throws IllegalArgumentException if the change introduces a cycle, the previous closure is kept
+	 */
+	public void refreshInheritance(Collection<String> roles) {
+		synchronized (inheritanceLock) {
+			// not loaded yet, the first lookup reads the whole hierarchy
+			if (this.inheritance != null) {
+				this.inheritance = this.inheritance.update(toMap(this.rolePermissionsRepository.findInheritanceEntriesByRoleIn(roles)), roles);
+			}
+		}
+	}
+
+	/**
+	 * Ordered first, so the caches that are invalidated by the same event reload from the updated hierarchy
+	 */
+	@Order(Ordered.HIGHEST_PRECEDENCE)
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onRolePermissionsChanged(RolePermissionsChangedEvent event) {
+		try {
+			if (event.isAllRoles()) {
+				refreshInheritance();
+			} else {
+				refreshInheritance(event.getRoles());
+			}
+		} catch (RuntimeException e) {
+			log.warn("failed to update the role hierarchy after {}, it may be stale until the next change", event, e);
+		}
+	}
+
+	private RoleInheritanceClosure getInheritance() {
+		RoleInheritanceClosure current = this.inheritance;
+		if (current == null) {
+			synchronized (inheritanceLock) {
+				if (this.inheritance == null) {
+					refreshInheritance();
+				}
+				current = this.inheritance;
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Reads the distinct direct permissions of the roles in a single query, de-duplicated by the database
+	 */
+	private Set<String> read(Collection<String> roles) {
+		Set<String> permissions = new LinkedHashSet<>();
+		for (String permission : this.rolePermissionsRepository.findPermissionsByRoleIn(roles)) {
+			permissions.add(authorityRegistry.intern(permission));
+		}
+		return permissions;
+	}
+
+	/**
+	 * @return the direct permissions of each role read, an empty list for a role without permissions
+	 */
+	private Map<String, List<String>> toPermissions(List<RolePermissionEntry> entries) {
+		Map<String, List<String>> permissions = new LinkedHashMap<>();
+		for (RolePermissionEntry entry : entries) {
+			List<String> rolePermissions = permissions.computeIfAbsent(entry.getRole(), r -> new ArrayList<>());
+			if (entry.getPermission() != null) {
+				rolePermissions.add(authorityRegistry.intern(entry.getPermission()));
+			}
+		}
+		return permissions;
+	}
+
+	private static Map<String, List<String>> toMap(List<RoleInheritanceEntry> entries) {
+		Map<String, List<String>> inheritedRoles = new HashMap<>();
+		for (RoleInheritanceEntry entry : entries) {
+			inheritedRoles.computeIfAbsent(entry.getRole(), r -> new ArrayList<>()).add(entry.getInheritedRole());
+		}
+		return inheritedRoles;
 	}
 
 }
@@ -0,0 +1,235 @@
+package net.savantly.authorization.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import net.savantly.authorization.authority.GrantedAuthorityRegistry;
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+
+/**
+ * Reads role to permission mappings with plain JDBC, from the tables mapped by the <code>RolePermissions</code> entity.
+ * <p>
+ * Needs only a {@link DataSource}, so it can be used without JPA on the classpath.
+ * The tables can be created with <code>net/savantly/authorization/jdbc/schema.sql</code>.
+ * <p>
+ * The role hierarchy is flattened into a {@link RoleInheritanceClosure} when it is first needed,
+ * and updated for the changed roles when a {@link RolePermissionsChangedEvent} is received,
+ * so a lookup expands the roles in memory and reads their permissions with a single query however deep the hierarchy is.
+ * A cycle in the hierarchy is rejected when it is loaded, and a change that introduces one keeps the previous closure.
+ * Inherited roles changed without publishing an event are seen after {@link #refreshInheritance()}.
+ *
+ * @author jeremy branham
+ *
+ */
+public class JdbcTemplatePermissionProvider implements PermissionProvider, RoleCatalog, PermissionRoleLookup, RoleInheritanceLookup {
+
+	private static final Logger log = LoggerFactory.getLogger(JdbcTemplatePermissionProvider.class);
+
+	static final String ROLES_TABLE = "role_permissions";
+	static final String PERMISSIONS_TABLE = "role_permissions_permissions";
+	static final String ROLE_COLUMN = "role_permissions_role";
+	static final String PERMISSION_COLUMN = "permissions";
+	static final String INHERITED_ROLES_TABLE = "role_permissions_inherited_roles";
+	static final String INHERITED_ROLE_COLUMN = "inherited_roles";
+	private static final String SELECT_ROLES = "SELECT role FROM " + ROLES_TABLE;
+	private static final String SELECT_ROLES_GRANTING = "SELECT DISTINCT " + ROLE_COLUMN + " FROM " + PERMISSIONS_TABLE
+			+ " WHERE " + PERMISSION_COLUMN + " = ?";
+	private static final String SELECT_ALL_PERMISSIONS = "SELECT r.role, p." + PERMISSION_COLUMN + " FROM " + ROLES_TABLE + " r LEFT JOIN "
+			+ PERMISSIONS_TABLE + " p ON p." + ROLE_COLUMN + " = r.role";
+	private static final String SELECT_PERMISSIONS_IN = "SELECT " + ROLE_COLUMN + ", " + PERMISSION_COLUMN + " FROM " + PERMISSIONS_TABLE
+			+ " WHERE " + ROLE_COLUMN + " IN (:roles)";
+	private static final String SELECT_INHERITED_ROLES = "SELECT " + ROLE_COLUMN + ", " + INHERITED_ROLE_COLUMN
+			+ " FROM " + INHERITED_ROLES_TABLE;
+	private static final String SELECT_INHERITED_ROLES_IN = SELECT_INHERITED_ROLES + " WHERE " + ROLE_COLUMN + " IN (:roles)";
+
+	private final Object inheritanceLock = new Object();
+	private final NamedParameterJdbcTemplate jdbcTemplate;
+	private final GrantedAuthorityRegistry authorityRegistry;
+	private volatile RoleInheritanceClosure inheritance;
+
+	public JdbcTemplatePermissionProvider(DataSource dataSource) {
+		this(new JdbcTemplate(dataSource));
+	}
+
+	public JdbcTemplatePermissionProvider(JdbcTemplate jdbcTemplate) {
+		this(jdbcTemplate, GrantedAuthorityRegistry.getShared());
+	}
+
+	/**
+	 * @param authorityRegistry canonicalizes the permission names that are returned
+	 */
+	public JdbcTemplatePermissionProvider(JdbcTemplate jdbcTemplate, GrantedAuthorityRegistry authorityRegistry) {
+		this.jdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+		this.authorityRegistry = authorityRegistry;
+	}
+
+	@Override
+	public List<String> getEffectivePermissions(String role) {
+		Set<String> permissions = new LinkedHashSet<>();
+		read(getInheritance().getRoles(role), (r, permission) -> permissions.add(permission));
+		if (permissions.isEmpty()) {
+			return Collections.emptyList();
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("role: {} effective permissions: {}", role, permissions);
+		}
+		return new ArrayList<>(permissions);
+	}
+
+	@Override
+	public Set<String> getEffectivePermissions(Collection<String> roles) {
+		if (roles.isEmpty()) {
+			return Collections.emptySet();
+		}
+		Set<String> permissions = new LinkedHashSet<>();
+		read(getInheritance().expand(roles), (r, permission) -> permissions.add(permission));
+		if (log.isDebugEnabled()) {
+			log.debug("roles: {} effective permissions: {}", roles, permissions);
+		}
+		return permissions;
+	}
+
+	@Override
+	public Map<String, List<String>> getEffectivePermissionsByRole(Collection<String> roles) {
+		if (roles.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		RoleInheritanceClosure closure = getInheritance();
+		Map<String, List<String>> direct = new HashMap<>();
+		read(closure.expand(roles), (r, permission) -> direct.computeIfAbsent(r, k -> new ArrayList<>()).add(permission));
+		return closure.getEffectivePermissions(roles, direct);
+	}
+
+	/**
+	 * Reads every mapping with one query, and resolves the inherited roles from the closure
+	 */
+	@Override
+	public Map<String, List<String>> getAllEffectivePermissions(PermissionProvider permissionProvider) {
+		RoleInheritanceClosure closure = getInheritance();
+		Map<String, List<String>> direct = new LinkedHashMap<>();
+		this.jdbcTemplate.query(SELECT_ALL_PERMISSIONS, Collections.<String, Object>emptyMap(), rs -> {
+			List<String> permissions = direct.computeIfAbsent(rs.getString(1), r -> new ArrayList<>());
+			String permission = rs.getString(2);
+			if (permission != null) {
+				permissions.add(authorityRegistry.intern(permission));
+			}
+		});
+		return closure.getEffectivePermissions(direct.keySet(), direct);
+	}
+
+	@Override
+	public boolean isBulkLookupByRole() {
+		return true;
+	}
+
+	@Override
+	public Collection<String> getRoles() {
+		return this.jdbcTemplate.getJdbcOperations().queryForList(SELECT_ROLES, String.class);
+	}
+
+	@Override
+	public Collection<String> getRolesGranting(String permission) {
+		List<String> granting = this.jdbcTemplate.getJdbcOperations().queryForList(SELECT_ROLES_GRANTING, String.class, permission);
+		return granting.isEmpty() ? granting : getInheritance().getInheritingRoles(granting);
+	}
+
+	@Override
+	public Set<String> getInheritingRoles(Collection<String> roles) {
+		return getInheritance().getInheritingRoles(roles);
+	}
+
+	/**
+	 * Reloads the whole role hierarchy
+	 *
+	 * @throws IllegalArgumentException if the hierarchy has a cycle, the previous closure is kept
+	 */
+	public void refreshInheritance() {
+		synchronized (inheritanceLock) {
+			this.inheritance = RoleInheritanceClosure.of(readInheritedRoles(SELECT_INHERITED_ROLES, Collections.<String>emptyList()));
+		}
+	}
+
+	/**
+	 * Reloads the inherited roles of the given roles, and recomputes them and the roles that inherit from them
+	 *
+	 * @throws IllegalArgumentException if the change introduces a cycle, the previous closure is kept
+	 */
+	public void refreshInheritance(Collection<String> roles) {
+		synchronized (inheritanceLock) {
+			// not loaded yet, the first lookup reads the whole hierarchy
+			if (this.inheritance != null) {
+				this.inheritance = this.inheritance.update(readInheritedRoles(SELECT_INHERITED_ROLES_IN, roles), roles);
+			}
+		}
+	}
+
+	/**
+	 * Ordered first, so the caches that are invalidated by the same event reload from the updated hierarchy
+	 */
+	@Order(Ordered.HIGHEST_PRECEDENCE)
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onRolePermissionsChanged(RolePermissionsChangedEvent event) {
+		try {
+			if (event.isAllRoles()) {
+				refreshInheritance();
+			} else {
+				refreshInheritance(event.getRoles());
+			}
+		} catch (RuntimeException e) {
+			log.warn("failed to update the role hierarchy after {}, it may be stale until the next change", event, e);
+		}
+	}
+
+	private RoleInheritanceClosure getInheritance() {
+		RoleInheritanceClosure current = this.inheritance;
+		if (current == null) {
+			synchronized (inheritanceLock) {
+				if (this.inheritance == null) {
+					refreshInheritance();
+				}
+				current = this.inheritance;
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Reads the direct permissions of the roles in a single query
+	 */
+	private void read(Collection<String> roles, BiConsumer<String, String> permissionConsumer) {
+		this.jdbcTemplate.query(SELECT_PERMISSIONS_IN, Collections.singletonMap("roles", roles), rs -> {
+			String permission = rs.getString(2);
+			// a role without permissions has no rows, but the column itself is nullable
+			if (permission != null) {
+				permissionConsumer.accept(rs.getString(1), authorityRegistry.intern(permission));
+			}
+		});
+	}
+
+	private Map<String, List<String>> readInheritedRoles(String sql, Collection<String> roles) {
+		Map<String, List<String>> inheritedRoles = new HashMap<>();
+		this.jdbcTemplate.query(sql, Collections.singletonMap("roles", roles), rs -> {
+			inheritedRoles.computeIfAbsent(rs.getString(1), r -> new ArrayList<>()).add(rs.getString(2));
+		});
+		return inheritedRoles;
+	}
+
+}
@@ -0,0 +1,239 @@
+package net.savantly.authorization.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import net.savantly.authorization.cache.BloomFilter;
+import net.savantly.authorization.cache.BoundedCache;
+import net.savantly.authorization.cache.CacheStatistics;
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+import net.savantly.authorization.metrics.PermissionMetrics;
+
+/**
+ * Keeps lookups of roles that have no mapping from reaching another {@link PermissionProvider}.
+ * <p>
+ * Identity providers often put many more groups in a token than the application maps,
+ * so most lookups would be misses. The names of the mapped roles, read from a {@link RoleCatalog},
+ * are kept in a {@link BloomFilter}, and a role the filter rules out is answered with no permissions right away.
+ * The few unmapped roles that get past the filter are remembered in a short lived negative cache,
+ * also when they are looked up together with other roles, since those lookups ask the delegate for the permissions of each role.
+ * <p>
+ * The filter is rebuilt and the negative cache cleared when a {@link RolePermissionsChangedEvent} is received.
+ * Until the filter is first built every lookup is passed through.
+ *
+ * @author jeremy branham
+ *
+ */
+public class KnownRolesPermissionProvider implements PermissionProvider, InitializingBean {
+
+	private static final Logger log = LoggerFactory.getLogger(KnownRolesPermissionProvider.class);
+
+	public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+	public static final Duration DEFAULT_NEGATIVE_CACHE_TTL = Duration.ofSeconds(30);
+	public static final int DEFAULT_NEGATIVE_CACHE_MAXIMUM_SIZE = 10_000;
+
+	private final PermissionProvider delegate;
+	private final RoleCatalog roleCatalog;
+	private final double falsePositiveRate;
+	private final BoundedCache<String, Boolean> negativeCache;
+	private final Object rebuildLock = new Object();
+	// bumped on every change, so a miss that raced with a change is not cached
+	private final AtomicLong generation = new AtomicLong();
+	private final LongAdder filtered = new LongAdder();
+	private volatile BloomFilter filter;
+
+	public KnownRolesPermissionProvider(PermissionProvider delegate, RoleCatalog roleCatalog) {
+		this(delegate, roleCatalog, DEFAULT_FALSE_POSITIVE_RATE, DEFAULT_NEGATIVE_CACHE_MAXIMUM_SIZE, DEFAULT_NEGATIVE_CACHE_TTL);
+	}
+
+	/**
+	 * @param falsePositiveRate the rate at which an unmapped role gets past the filter, between 0 and 1
+	 * @param negativeCacheMaximumSize how many unmapped roles that got past the filter are remembered
+	 * @param negativeCacheTtl how long an unmapped role is remembered, or null to not remember them
+	 */
+	public KnownRolesPermissionProvider(PermissionProvider delegate, RoleCatalog roleCatalog, double falsePositiveRate,
+			int negativeCacheMaximumSize, Duration negativeCacheTtl) {
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1: " + falsePositiveRate);
+		}
+		this.delegate = delegate;
+		this.roleCatalog = roleCatalog;
+		this.falsePositiveRate = falsePositiveRate;
+		this.negativeCache = negativeCacheTtl == null || negativeCacheTtl.isZero() ? null
+				: new BoundedCache<>(negativeCacheMaximumSize, negativeCacheTtl, null);
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		rebuild();
+	}
+
+	@Override
+	public List<String> getEffectivePermissions(String role) {
+		if (isUnknown(role)) {
+			return Collections.emptyList();
+		}
+		long generationBefore = generation.get();
+		List<String> permissions = delegate.getEffectivePermissions(role);
+		if ((permissions == null || permissions.isEmpty()) && negativeCache != null && generation.get() == generationBefore) {
+			negativeCache.put(role, Boolean.TRUE);
+		}
+		return permissions;
+	}
+
+	@Override
+	public Set<String> getEffectivePermissions(Collection<String> roles) {
+		if (!delegate.isBulkLookupByRole()) {
+			// the misses of a merged lookup are only known when nothing was found
+			Set<String> candidates = new LinkedHashSet<>();
+			for (String role : roles) {
+				if (!isUnknown(role)) {
+					candidates.add(role);
+				}
+			}
+			if (candidates.isEmpty()) {
+				return Collections.emptySet();
+			}
+			long generationBefore = generation.get();
+			Set<String> permissions = delegate.getEffectivePermissions(candidates);
+			if ((permissions == null || permissions.isEmpty()) && negativeCache != null && generation.get() == generationBefore) {
+				candidates.forEach(role -> negativeCache.put(role, Boolean.TRUE));
+			}
+			return permissions;
+		}
+		Set<String> permissions = new LinkedHashSet<>();
+		for (List<String> rolePermissions : getEffectivePermissionsByRole(roles).values()) {
+			permissions.addAll(rolePermissions);
+		}
+		return permissions;
+	}
+
+	@Override
+	public Map<String, List<String>> getEffectivePermissionsByRole(Collection<String> roles) {
+		Map<String, List<String>> permissions = new LinkedHashMap<>();
+		List<String> candidates = new ArrayList<>(roles.size());
+		for (String role : roles) {
+			if (!permissions.containsKey(role)) {
+				permissions.put(role, Collections.<String>emptyList());
+				if (!isUnknown(role)) {
+					candidates.add(role);
+				}
+			}
+		}
+		if (candidates.isEmpty()) {
+			return permissions;
+		}
+		long generationBefore = generation.get();
+		Map<String, List<String>> loaded = delegate.getEffectivePermissionsByRole(candidates);
+		boolean unchanged = generation.get() == generationBefore;
+		for (String role : candidates) {
+			List<String> rolePermissions = loaded.get(role);
+			if (rolePermissions != null && !rolePermissions.isEmpty()) {
+				permissions.put(role, rolePermissions);
+			} else if (negativeCache != null && unchanged) {
+				negativeCache.put(role, Boolean.TRUE);
+			}
+		}
+		return permissions;
+	}
+
+	@Override
+	public boolean isBulkLookupByRole() {
+		return delegate.isBulkLookupByRole();
+	}
+
+	/**
+	 * Rebuilds the filter from the role catalog on the calling thread, and clears the negative cache
+	 */
+	public void rebuild() {
+		synchronized (rebuildLock) {
+			generation.incrementAndGet();
+			long start = System.nanoTime();
+			Collection<String> roles = roleCatalog.getRoles();
+			BloomFilter rebuilt = BloomFilter.of(roles, falsePositiveRate);
+			this.filter = rebuilt;
+			if (negativeCache != null) {
+				negativeCache.invalidateAll();
+			}
+			if (log.isDebugEnabled()) {
+				log.debug("rebuilt known roles filter of {} roles, {} bytes, in {}ms", roles.size(), rebuilt.getMemoryBytes(),
+						TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+			}
+		}
+	}
+
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onRolePermissionsChanged(RolePermissionsChangedEvent event) {
+		try {
+			rebuild();
+		} catch (RuntimeException e) {
+			// a stale filter could hide a new role, so stop filtering until the next successful rebuild
+			this.filter = null;
+			log.warn("failed to rebuild the known roles filter, passing every role through", e);
+		}
+	}
+
+	/**
+	 * @param permissionMetrics reports the filter size, expected false positive rate and rejected roles, and the negative cache
+	 */
+	public void setPermissionMetrics(PermissionMetrics permissionMetrics) {
+		permissionMetrics.monitorFilter("known-roles", this::getBloomFilter, this::getFilteredCount);
+		if (negativeCache != null) {
+			permissionMetrics.monitorCache("unknown-roles", negativeCache);
+		}
+	}
+
+	/**
+	 * @return the current filter, or null before it is first built
+	 */
+	public BloomFilter getBloomFilter() {
+		return filter;
+	}
+
+	/**
+	 * @return how many role lookups were answered without calling the delegate
+	 */
+	public long getFilteredCount() {
+		return filtered.sum();
+	}
+
+	/**
+	 * @return the statistics of the negative cache, or null when it is disabled
+	 */
+	public CacheStatistics getNegativeCacheStatistics() {
+		return negativeCache == null ? null : negativeCache.getStatistics();
+	}
+
+	public PermissionProvider getDelegate() {
+		return delegate;
+	}
+
+	private boolean isUnknown(String role) {
+		BloomFilter current = this.filter;
+		if (current != null && !current.mightContain(role)) {
+			filtered.increment();
+			return true;
+		}
+		if (negativeCache != null && negativeCache.get(role) != null) {
+			filtered.increment();
+			return true;
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,234 @@
+package net.savantly.authorization.service;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Looks up the roles of a bulk request concurrently, on a bounded executor, for a {@link PermissionProvider}
+ * backed by a slow store that has no efficient bulk lookup of its own.
+ * <p>
+ * Every role is looked up with the delegate's single role lookup, and at most <code>parallelism</code> lookups run at a time.
+ * A bulk request waits no longer than the timeout overall; the roles that failed or did not finish in time are handled by the {@link PartialFailurePolicy}.
+ * Single role lookups run on the calling thread.
+ * <p>
+ * The default executor uses virtual threads when the JDK has them, and a fixed pool of <code>parallelism</code> daemon threads otherwise.
+ * Providers that already read many roles in one query, like the <code>JdbcPermissionProvider</code>, are faster without this.
+ *
+ * @author jeremy branham
+ *
+ */
+public class ParallelPermissionProvider implements PermissionProvider, AsyncPermissionProvider, DisposableBean {
+
+	private static final Logger log = LoggerFactory.getLogger(ParallelPermissionProvider.class);
+
+	public static final int DEFAULT_PARALLELISM = 16;
+	public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(5);
+
+	private static final AtomicInteger threadCount = new AtomicInteger();
+	private static final ScheduledExecutorService timeoutExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "role-permissions-lookup-timeout");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * What a bulk lookup returns when the permissions of some roles could not be looked up
+	 */
+	public enum PartialFailurePolicy {
+		/**
+		 * Fail the whole lookup with a {@link PermissionLookupException}
+		 */
+		FAIL,
+		/**
+		 * Return the permissions of the roles that were looked up, so the principal gets fewer permissions but never more
+		 */
+		OMIT
+	}
+
+	private final PermissionProvider delegate;
+	private final Executor executor;
+	private final boolean ownsExecutor;
+	private final Semaphore permits;
+	private final Duration timeout;
+	private final PartialFailurePolicy partialFailurePolicy;
+
+	public ParallelPermissionProvider(PermissionProvider delegate) {
+		this(delegate, DEFAULT_PARALLELISM, DEFAULT_TIMEOUT, PartialFailurePolicy.FAIL);
+	}
+
+	/**
+	 * Uses a dedicated executor, shut down with this bean
+	 *
+	 * @param parallelism how many lookups may run at a time
+	 * @param timeout how long a bulk lookup may take overall
+	 */
+	public ParallelPermissionProvider(PermissionProvider delegate, int parallelism, Duration timeout, PartialFailurePolicy partialFailurePolicy) {
+		this(delegate, newExecutor(parallelism), true, parallelism, timeout, partialFailurePolicy);
+	}
+
+	/**
+	 * @param executor an executor that may block, owned by the caller
+	 * @param parallelism how many lookups of this provider may run on the executor at a time
+	 * @param timeout how long a bulk lookup may take overall
+	 */
+	public ParallelPermissionProvider(PermissionProvider delegate, Executor executor, int parallelism, Duration timeout,
+			PartialFailurePolicy partialFailurePolicy) {
+		this(delegate, executor, false, parallelism, timeout, partialFailurePolicy);
+	}
+
+	private ParallelPermissionProvider(PermissionProvider delegate, Executor executor, boolean ownsExecutor, int parallelism,
+			Duration timeout, PartialFailurePolicy partialFailurePolicy) {
+		this.delegate = delegate;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		this.permits = new Semaphore(parallelism);
+		this.timeout = timeout;
+		this.partialFailurePolicy = partialFailurePolicy;
+	}
+
+	/**
+	 * @return an executor of virtual threads when the JDK has them, otherwise a fixed pool of daemon threads
+	 */
+	public static ExecutorService newExecutor(int parallelism) {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// before JDK 21, or JDK 19 and 20 without preview features enabled
+			return Executors.newFixedThreadPool(parallelism, r -> {
+				Thread thread = new Thread(r, "role-permissions-lookup-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	@Override
+	public List<String> getEffectivePermissions(String role) {
+		return delegate.getEffectivePermissions(role);
+	}
+
+	@Override
+	public Set<String> getEffectivePermissions(Collection<String> roles) {
+		try {
+			return getEffectivePermissionsAsync(roles).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	@Override
+	public CompletableFuture<List<String>> getEffectivePermissionsAsync(String role) {
+		return CompletableFuture.supplyAsync(() -> {
+			permits.acquireUninterruptibly();
+			try {
+				return delegate.getEffectivePermissions(role);
+			} finally {
+				permits.release();
+			}
+		}, executor);
+	}
+
+	@Override
+	public CompletableFuture<Set<String>> getEffectivePermissionsAsync(Collection<String> roles) {
+		Set<String> distinctRoles = new LinkedHashSet<>(roles);
+		if (distinctRoles.isEmpty()) {
+			return CompletableFuture.completedFuture(Collections.<String>emptySet());
+		}
+		Map<String, CompletableFuture<List<String>>> lookups = new LinkedHashMap<>();
+		for (String role : distinctRoles) {
+			lookups.put(role, getEffectivePermissionsAsync(role));
+		}
+		CompletableFuture<Set<String>> result = new CompletableFuture<>();
+		ScheduledFuture<?> deadline = timeoutExecutor.schedule(() -> complete(result, lookups),
+				timeout.toNanos(), TimeUnit.NANOSECONDS);
+		CompletableFuture.allOf(lookups.values().toArray(new CompletableFuture<?>[0])).whenComplete((done, e) -> {
+			deadline.cancel(false);
+			complete(result, lookups);
+		});
+		return result;
+	}
+
+	@Override
+	public void destroy() {
+		if (ownsExecutor) {
+			((ExecutorService) executor).shutdownNow();
+		}
+	}
+
+	public PermissionProvider getDelegate() {
+		return delegate;
+	}
+
+	private void complete(CompletableFuture<Set<String>> result, Map<String, CompletableFuture<List<String>>> lookups) {
+		if (result.isDone()) {
+			return;
+		}
+		Set<String> permissions = new LinkedHashSet<>();
+		List<String> missingRoles = new ArrayList<>();
+		Throwable cause = null;
+		for (Map.Entry<String, CompletableFuture<List<String>>> lookup : lookups.entrySet()) {
+			CompletableFuture<List<String>> future = lookup.getValue();
+			if (future.isDone() && !future.isCompletedExceptionally()) {
+				List<String> rolePermissions = future.join();
+				if (rolePermissions != null) {
+					permissions.addAll(rolePermissions);
+				}
+				continue;
+			}
+			missingRoles.add(lookup.getKey());
+			if (cause == null && future.isCompletedExceptionally()) {
+				cause = failureOf(future);
+			}
+		}
+		if (missingRoles.isEmpty()) {
+			result.complete(permissions);
+			return;
+		}
+		String message = cause == null ? "permission lookup did not finish within " + timeout.toMillis() + "ms for roles: " + missingRoles
+				: "permission lookup failed for roles: " + missingRoles;
+		if (partialFailurePolicy == PartialFailurePolicy.OMIT) {
+			log.warn("{}, omitting their permissions", message, cause);
+			result.complete(permissions);
+		} else {
+			result.completeExceptionally(new PermissionLookupException(message, missingRoles, cause));
+		}
+	}
+
+	private static Throwable failureOf(CompletableFuture<?> future) {
+		try {
+			future.join();
+			return null;
+		} catch (CompletionException e) {
+			return e.getCause();
+		} catch (RuntimeException e) {
+			return e;
+		}
+	}
+
+}
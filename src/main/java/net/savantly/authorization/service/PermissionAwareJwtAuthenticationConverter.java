@@ -1,17 +1,34 @@
 package net.savantly.authorization.service;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import net.savantly.authorization.authority.GrantedAuthorityRegistry;
+import net.savantly.authorization.authority.PermissionBitsAuthority;
+import net.savantly.authorization.authority.PermissionTrieAuthority;
+import net.savantly.authorization.authority.RolePermissionEvaluator;
+import net.savantly.authorization.cache.BoundedCache;
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+import net.savantly.authorization.jwt.ClaimRolesExtractor;
+import net.savantly.authorization.metrics.PermissionMetrics;
 
 /**
  * 
@@ -22,61 +39,213 @@ public class PermissionAwareJwtAuthenticationConverter extends JwtAuthentication
 	
 	private static final Logger log = LoggerFactory.getLogger(PermissionAwareJwtAuthenticationConverter.class);
 	private final PermissionProvider permissionProvider;
-	private final String groupsClaim;
+	private final ClaimRolesExtractor rolesExtractor;
+	private BoundedCache<List<String>, Collection<GrantedAuthority>> authorityCache;
+	private BoundedCache<String, Collection<GrantedAuthority>> tokenCache;
+	// incremented on every mapping change, so authorities resolved while it happened are not cached per token
+	private final AtomicLong generation = new AtomicLong();
+	private GrantedAuthorityRegistry authorityRegistry = GrantedAuthorityRegistry.getShared();
+	private PermissionBitsResolver permissionBitsResolver;
+	private PermissionTrieResolver permissionTrieResolver;
+	private PermissionMetrics permissionMetrics = PermissionMetrics.NOOP;
+	private Clock clock = Clock.systemUTC();
 
 	public PermissionAwareJwtAuthenticationConverter(PermissionProvider permissionProvider) {
 		this(permissionProvider, "groups");
 	}
+	/**
+	 * @param groupsClaim the claim holding the user's roles, may be a nested path like <code>realm_access.roles</code>
+	 */
 	public PermissionAwareJwtAuthenticationConverter(PermissionProvider permissionProvider, String groupsClaim) {
+		this(permissionProvider, ClaimRolesExtractor.of(groupsClaim));
+	}
+	/**
+	 * @param rolesExtractor reads the user's roles from one or more claims
+	 */
+	public PermissionAwareJwtAuthenticationConverter(PermissionProvider permissionProvider, ClaimRolesExtractor rolesExtractor) {
 		this.permissionProvider = permissionProvider;
-		this.groupsClaim = groupsClaim;
+		this.rolesExtractor = rolesExtractor;
+	}
+
+	/**
+	 * Memoize the authorities computed for each distinct set of roles.
+	 * The cache is cleared when a {@link RolePermissionsChangedEvent} is received.
+	 * 
+	 * @param authorityCache the cache to use, or null to disable memoization
+	 */
+	public void setAuthorityCache(BoundedCache<List<String>, Collection<GrantedAuthority>> authorityCache) {
+		this.authorityCache = authorityCache;
+		if (authorityCache != null) {
+			this.permissionMetrics.monitorCache("jwt-authorities", authorityCache);
+		}
+	}
+
+	public BoundedCache<List<String>, Collection<GrantedAuthority>> getAuthorityCache() {
+		return authorityCache;
+	}
+
+	/**
+	 * Cache the authorities of each token, so a client reusing a token skips claim extraction and authority expansion.
+	 * Tokens are keyed by their issuer and <code>jti</code>, or by a SHA-256 hash of the token value when they have no <code>jti</code>.
+	 * An entry is only served while the token's <code>exp</code> has not passed, and expired tokens are not cached.
+	 * Entries of expired tokens are evicted by the cache's own size bound and expiry, so it should expire after write.
+	 * The cache is cleared when a {@link RolePermissionsChangedEvent} is received.
+	 * 
+	 * @param tokenCache the cache to use, or null to resolve the authorities of every token
+	 */
+	public void setTokenCache(BoundedCache<String, Collection<GrantedAuthority>> tokenCache) {
+		this.tokenCache = tokenCache;
+		if (tokenCache != null) {
+			this.permissionMetrics.monitorCache("jwt-tokens", tokenCache);
+		}
+	}
+
+	public BoundedCache<String, Collection<GrantedAuthority>> getTokenCache() {
+		return tokenCache;
+	}
+
+	/**
+	 * @param authorityRegistry supplies the canonical authority instances, pass the configuration's {@link GrantedAuthorityRegistry} bean, defaults to the shared registry
+	 */
+	public void setAuthorityRegistry(GrantedAuthorityRegistry authorityRegistry) {
+		this.authorityRegistry = authorityRegistry;
+	}
+
+	/**
+	 * Adds a {@link PermissionBitsAuthority} as the first authority, for constant time checks with the {@link RolePermissionEvaluator}
+	 * 
+	 * @param permissionBitsResolver the resolver to use, or null to only add the authority names
+	 */
+	public void setPermissionBitsResolver(PermissionBitsResolver permissionBitsResolver) {
+		this.permissionBitsResolver = permissionBitsResolver;
+	}
+
+	/**
+	 * Adds a {@link PermissionTrieAuthority} as the first authority, so the {@link RolePermissionEvaluator} honors wildcard grants like <code>orders:*</code>
+	 * 
+	 * @param permissionTrieResolver the resolver to use, or null to only match exact permission names
+	 */
+	public void setPermissionTrieResolver(PermissionTrieResolver permissionTrieResolver) {
+		this.permissionTrieResolver = permissionTrieResolver;
+	}
+
+	/**
+	 * @param permissionMetrics records the latency, roles per token and authorities per principal, and the authority cache hit ratio
+	 */
+	public void setPermissionMetrics(PermissionMetrics permissionMetrics) {
+		this.permissionMetrics = permissionMetrics;
+		if (this.authorityCache != null) {
+			permissionMetrics.monitorCache("jwt-authorities", this.authorityCache);
+		}
+		if (this.tokenCache != null) {
+			permissionMetrics.monitorCache("jwt-tokens", this.tokenCache);
+		}
+	}
+
+	/**
+	 * Discards memoized authorities
+	 */
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onRolePermissionsChanged(RolePermissionsChangedEvent event) {
+		generation.incrementAndGet();
+		if (this.authorityCache != null) {
+			this.authorityCache.invalidateAll();
+		}
+		if (this.tokenCache != null) {
+			this.tokenCache.invalidateAll();
+		}
 	}
 
 	@Override
 	protected Collection<GrantedAuthority> extractAuthorities(Jwt jwt) {
-		Collection<String> usersGroups = getRolesFromClaims(jwt.getClaims());
-		Collection<GrantedAuthority> allAuthorities = usersGroups.stream().map(SimpleGrantedAuthority::new)
-				.collect(Collectors.toList());
-		List<SimpleGrantedAuthority> roleAuthorities = getPermissionsFromRoles(usersGroups)
-				.stream()
-				.map(SimpleGrantedAuthority::new)
-				.collect(Collectors.toList());
-		allAuthorities.addAll(roleAuthorities);
-		return allAuthorities;
+		if (this.tokenCache == null) {
+			return extractTokenAuthorities(jwt);
+		}
+		String key = tokenKey(jwt);
+		Instant expiresAt = jwt.getExpiresAt();
+		boolean expired = expiresAt != null && !expiresAt.isAfter(clock.instant());
+		Collection<GrantedAuthority> authorities = this.tokenCache.get(key);
+		if (authorities != null) {
+			if (!expired) {
+				return authorities;
+			}
+			this.tokenCache.invalidate(key);
+		}
+		long startGeneration = generation.get();
+		authorities = Collections.unmodifiableCollection(extractTokenAuthorities(jwt));
+		if (!expired && generation.get() == startGeneration) {
+			this.tokenCache.put(key, authorities);
+		}
+		return authorities;
 	}
-	
-	private List<String> getPermissionsFromRoles(Collection<String> usersRoles) {
-		List<String> effectiveAuthorities = new ArrayList<>();
-		usersRoles.forEach(r -> {
-			effectiveAuthorities.addAll(permissionProvider.getEffectivePermissions(r));
-		});
-		if(log.isDebugEnabled()) {
-			log.debug("role: {} effective permissions: {}", effectiveAuthorities);
+
+	// visible for tests, which move the clock past a token's exp
+	void setClock(Clock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * @return the issuer and <code>jti</code> of the token, or a hash of the token value when it has no <code>jti</code>
+	 */
+	static String tokenKey(Jwt jwt) {
+		String id = jwt.getId();
+		if (id != null) {
+			String issuer = jwt.getClaimAsString("iss");
+			return "jti:" + (issuer == null ? "" : issuer) + ' ' + id;
+		}
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(jwt.getTokenValue().getBytes(StandardCharsets.US_ASCII));
+			return "sha256:" + Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
 		}
-		return effectiveAuthorities;
 	}
 
-	@SuppressWarnings("unchecked")
-    private Collection<String> getRolesFromClaims(Map<String, Object> claims) {
-		if (groupsClaim.contains(".")) {
-			String[] pathParts = groupsClaim.split("\\.");
-			try {
-			return getNestedValue(claims, pathParts);
-			} catch (Exception e) {
-				throw new RuntimeException("failed to extract roles using groupsClaim value: " + groupsClaim, e);
-			}
-		} else {
-			return (Collection<String>) claims.getOrDefault(groupsClaim, new ArrayList<>());
+	private Collection<GrantedAuthority> extractTokenAuthorities(Jwt jwt) {
+		if (!permissionMetrics.isEnabled()) {
+			return resolveAuthorities(rolesExtractor.extract(jwt.getClaims()));
 		}
-    }
-	
-	private static <T> T getNestedValue(Map map, String... keys) {
-	    Object value = map;
+		long start = System.nanoTime();
+		Collection<String> usersGroups = rolesExtractor.extract(jwt.getClaims());
+		Collection<GrantedAuthority> authorities = resolveAuthorities(usersGroups);
+		permissionMetrics.recordResolution("jwt", System.nanoTime() - start, usersGroups.size(), authorities.size());
+		return authorities;
+	}
 
-	    for (String key : keys) {
-	        value = ((Map) value).get(key);
-	    }
+	private Collection<GrantedAuthority> resolveAuthorities(Collection<String> usersGroups) {
+		if (this.authorityCache == null) {
+			return expandAuthorities(usersGroups);
+		}
+		// sorted and de-duplicated, so every token with the same roles shares an entry
+		List<String> roleSet = new ArrayList<>(new TreeSet<>(usersGroups));
+		return this.authorityCache.get(roleSet, roles -> Collections.unmodifiableList(new ArrayList<>(expandAuthorities(roles))));
+	}
 
-	    return (T) value;
+	private Collection<GrantedAuthority> expandAuthorities(Collection<String> usersGroups) {
+		Set<String> permissions = getPermissionsFromRoles(usersGroups);
+		List<GrantedAuthority> allAuthorities = new ArrayList<>(usersGroups.size() + permissions.size() + 2);
+		if (permissionTrieResolver != null) {
+			allAuthorities.add(permissionTrieResolver.resolve(usersGroups));
+		}
+		if (permissionBitsResolver != null) {
+			allAuthorities.add(permissionBitsResolver.resolve(usersGroups));
+		}
+		for (String role : usersGroups) {
+			// token groups are not registered, so unmapped group names cannot fill the shared registry
+			allAuthorities.add(authorityRegistry.lookupAuthority(role));
+		}
+		for (String permission : permissions) {
+			allAuthorities.add(authorityRegistry.getAuthority(permission));
+		}
+		return allAuthorities;
+	}
+	
+	private Set<String> getPermissionsFromRoles(Collection<String> usersRoles) {
+		Set<String> effectiveAuthorities = permissionProvider.getEffectivePermissions(usersRoles);
+		if(log.isDebugEnabled()) {
+			log.debug("roles: {} effective permissions: {}", usersRoles, effectiveAuthorities);
+		}
+		return effectiveAuthorities;
 	}
 }
\ No newline at end of file
@@ -1,14 +1,24 @@
 package net.savantly.authorization.service;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import net.savantly.authorization.authority.GrantedAuthorityRegistry;
+import net.savantly.authorization.authority.PermissionBitsAuthority;
+import net.savantly.authorization.authority.PermissionTrieAuthority;
+import net.savantly.authorization.authority.RolePermissionEvaluator;
+import net.savantly.authorization.cache.BoundedCache;
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+import net.savantly.authorization.metrics.PermissionMetrics;
 
 /**
  * Wraps a UserDetailsService to inject mapped permissions as granted authorities
@@ -24,28 +34,194 @@ public class PermissionAwareUserDetailsService implements UserDetailsService {
 	
 	private PermissionProvider permissionProvider;
 	
+	private GrantedAuthorityRegistry authorityRegistry = GrantedAuthorityRegistry.getShared();
+	
+	private PermissionBitsResolver permissionBitsResolver;
+	
+	private PermissionTrieResolver permissionTrieResolver;
+	
+	private PermissionMetrics permissionMetrics = PermissionMetrics.NOOP;
+	
+	private BoundedCache<String, UserAuthorities> authorityCache;
+	
+	private BoundedCache<String, UserDetails> userDetailsCache;
+	
+	// incremented on every mapping change, so an expansion that raced with it is not cached
+	private final AtomicLong generation = new AtomicLong();
+	
 	public PermissionAwareUserDetailsService(UserDetailsService userDetailsService, PermissionProvider permissionProvider) {
 		this.userDetailsService = userDetailsService;
 		this.permissionProvider = permissionProvider;
 	}
+	
+	/**
+	 * @param authorityRegistry supplies the canonical permission authorities, pass the configuration's {@link GrantedAuthorityRegistry} bean, defaults to the shared registry
+	 */
+	public void setAuthorityRegistry(GrantedAuthorityRegistry authorityRegistry) {
+		this.authorityRegistry = authorityRegistry;
+	}
+
+	/**
+	 * Adds a {@link PermissionBitsAuthority} as the first authority, for constant time checks with the {@link RolePermissionEvaluator}
+	 * 
+	 * @param permissionBitsResolver the resolver to use, or null to only add the authority names
+	 */
+	public void setPermissionBitsResolver(PermissionBitsResolver permissionBitsResolver) {
+		this.permissionBitsResolver = permissionBitsResolver;
+	}
+
+	/**
+	 * Adds a {@link PermissionTrieAuthority} as the first authority, so the {@link RolePermissionEvaluator} honors wildcard grants like <code>orders:*</code>
+	 * 
+	 * @param permissionTrieResolver the resolver to use, or null to only match exact permission names
+	 */
+	public void setPermissionTrieResolver(PermissionTrieResolver permissionTrieResolver) {
+		this.permissionTrieResolver = permissionTrieResolver;
+	}
+
+	/**
+	 * @param permissionMetrics records the latency, roles and authorities per principal, and the hit ratio of the caches
+	 */
+	public void setPermissionMetrics(PermissionMetrics permissionMetrics) {
+		this.permissionMetrics = permissionMetrics;
+		if (this.authorityCache != null) {
+			permissionMetrics.monitorCache("user-authorities", this.authorityCache);
+		}
+		if (this.userDetailsCache != null) {
+			permissionMetrics.monitorCache("user-details", this.userDetailsCache);
+		}
+	}
+
+	/**
+	 * Memoize the authorities expanded for each username, reused as long as the user still has the same roles.
+	 * The cache is cleared when a {@link RolePermissionsChangedEvent} is received.
+	 * It holds no password data, so the wrapped service is still asked for the user on every call.
+	 * 
+	 * @param authorityCache the cache to use, or null to expand the authorities on every call
+	 */
+	public void setAuthorityCache(BoundedCache<String, UserAuthorities> authorityCache) {
+		this.authorityCache = authorityCache;
+		if (authorityCache != null) {
+			this.permissionMetrics.monitorCache("user-authorities", authorityCache);
+		}
+	}
+
+	public BoundedCache<String, UserAuthorities> getAuthorityCache() {
+		return authorityCache;
+	}
+
+	/**
+	 * Cache the users loaded from the wrapped service, including their password and account state,
+	 * so together with the authority cache a repeated login is served from memory.
+	 * Keep the expiry short, and call {@link #invalidate(String)} when a user's password or account changes.
+	 * The returned users are not a <code>CredentialsContainer</code>, so erasing the credentials of an authentication never clears a cached password.
+	 * 
+	 * @param userDetailsCache the cache to use, or null to load the user on every call
+	 */
+	public void setUserDetailsCache(BoundedCache<String, UserDetails> userDetailsCache) {
+		this.userDetailsCache = userDetailsCache;
+		if (userDetailsCache != null) {
+			this.permissionMetrics.monitorCache("user-details", userDetailsCache);
+		}
+	}
+
+	public BoundedCache<String, UserDetails> getUserDetailsCache() {
+		return userDetailsCache;
+	}
+
+	/**
+	 * Discards what is cached for a user, like after a password change
+	 */
+	public void invalidate(String username) {
+		if (this.userDetailsCache != null) {
+			this.userDetailsCache.invalidate(username);
+		}
+		if (this.authorityCache != null) {
+			this.authorityCache.invalidate(username);
+		}
+	}
+
+	/**
+	 * Discards memoized authorities
+	 */
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onRolePermissionsChanged(RolePermissionsChangedEvent event) {
+		generation.incrementAndGet();
+		if (this.authorityCache != null) {
+			this.authorityCache.invalidateAll();
+		}
+	}
 
 	@Override
 	public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-		UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
-		List<GrantedAuthority> permissions = extractPermissions(userDetails);
+		long start = permissionMetrics.isEnabled() ? System.nanoTime() : 0;
+		UserDetails userDetails = this.userDetailsCache == null ? this.userDetailsService.loadUserByUsername(username)
+				: this.userDetailsCache.get(username, this.userDetailsService::loadUserByUsername);
+		List<GrantedAuthority> permissions = resolvePermissions(username, userDetails);
+		if (permissionMetrics.isEnabled()) {
+			permissionMetrics.recordResolution("user-details", System.nanoTime() - start,
+					userDetails.getAuthorities().size(), permissions.size());
+		}
 		return new UserDetailsWrapper(userDetails, permissions);
 	}
 
-	private List<GrantedAuthority> extractPermissions(UserDetails userDetails) {
-		List<GrantedAuthority> permissions = userDetails.getAuthorities().stream()
-			.flatMap(a -> permissionProvider.getEffectivePermissions(a.getAuthority()).stream()).distinct()
-			.map(p -> new SimpleGrantedAuthority(p))
+	private List<GrantedAuthority> resolvePermissions(String username, UserDetails userDetails) {
+		List<String> roles = userDetails.getAuthorities().stream()
+			.map(GrantedAuthority::getAuthority)
 			.collect(Collectors.toList());
+		if (this.authorityCache == null) {
+			return extractPermissions(userDetails, roles);
+		}
+		UserAuthorities cached = this.authorityCache.get(username);
+		if (cached != null && cached.getRoles().equals(roles)) {
+			return cached.getAuthorities();
+		}
+		long startGeneration = generation.get();
+		UserAuthorities expanded = new UserAuthorities(roles, extractPermissions(userDetails, roles));
+		if (generation.get() == startGeneration) {
+			this.authorityCache.put(username, expanded);
+		}
+		return expanded.getAuthorities();
+	}
+
+	private List<GrantedAuthority> extractPermissions(UserDetails userDetails, List<String> roles) {
+		List<GrantedAuthority> permissions = authorityRegistry.getAuthorities(permissionProvider.getEffectivePermissions(roles));
+		if (permissionBitsResolver != null) {
+			permissions.add(0, permissionBitsResolver.resolve(roles));
+		}
+		if (permissionTrieResolver != null) {
+			permissions.add(0, permissionTrieResolver.resolve(roles));
+		}
 		// add the original authorities back to the list
 		permissions.addAll(userDetails.getAuthorities());
 		return permissions;
 	}
 	
+	/**
+	 * The authorities expanded for a user, and the roles they were expanded from
+	 */
+	public static final class UserAuthorities {
+
+		private final List<String> roles;
+		private final List<GrantedAuthority> authorities;
+
+		UserAuthorities(List<String> roles, List<GrantedAuthority> authorities) {
+			this.roles = Collections.unmodifiableList(roles);
+			this.authorities = Collections.unmodifiableList(authorities);
+		}
+
+		public List<String> getRoles() {
+			return roles;
+		}
+
+		public List<GrantedAuthority> getAuthorities() {
+			return authorities;
+		}
+	}
+	
+	/**
+	 * Deliberately not a <code>CredentialsContainer</code>, so erasing credentials after authentication leaves the wrapped, possibly cached, user intact
+	 */
 	protected class UserDetailsWrapper implements UserDetails {
 		
 		private static final long serialVersionUID = 1L;
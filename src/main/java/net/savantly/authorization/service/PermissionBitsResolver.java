@@ -0,0 +1,70 @@
+package net.savantly.authorization.service;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Set;
+
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import net.savantly.authorization.authority.PermissionBitsAuthority;
+import net.savantly.authorization.authority.PermissionIndex;
+import net.savantly.authorization.cache.BoundedCache;
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+
+/**
+ * Resolves a principal's roles to a {@link PermissionBitsAuthority}, the OR of each role's permission bitset.
+ * The roles themselves are held as the principal's direct authority names, so the authority answers every check on its own.
+ * Role bitsets are cached and discarded when a {@link RolePermissionsChangedEvent} is received,
+ * together with the roles inheriting from the changed ones when a {@link RoleInheritanceLookup} is set.
+ * 
+ * @author jeremy branham
+ *
+ */
+public class PermissionBitsResolver {
+
+	public static final int DEFAULT_MAXIMUM_ROLES = 10_000;
+
+	private final PermissionProvider permissionProvider;
+	private final PermissionIndex index;
+	private final BoundedCache<String, BitSet> roleBits;
+	private RoleInheritanceLookup roleInheritanceLookup;
+
+	public PermissionBitsResolver(PermissionProvider permissionProvider) {
+		this(permissionProvider, new PermissionIndex(), DEFAULT_MAXIMUM_ROLES);
+	}
+
+	public PermissionBitsResolver(PermissionProvider permissionProvider, PermissionIndex index, int maximumRoles) {
+		this.permissionProvider = permissionProvider;
+		this.index = index;
+		this.roleBits = new BoundedCache<>(maximumRoles);
+	}
+
+	public PermissionBitsAuthority resolve(Collection<String> roles) {
+		BitSet bits = new BitSet(index.size());
+		for (String role : roles) {
+			bits.or(roleBits.get(role, r -> index.toBits(permissionProvider.getEffectivePermissions(r))));
+		}
+		return new PermissionBitsAuthority(index, bits, roles);
+	}
+
+	public PermissionIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * @param roleInheritanceLookup widens a change to the roles inheriting from the changed roles, unset when roles do not inherit from each other
+	 */
+	public void setRoleInheritanceLookup(RoleInheritanceLookup roleInheritanceLookup) {
+		this.roleInheritanceLookup = roleInheritanceLookup;
+	}
+
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onRolePermissionsChanged(RolePermissionsChangedEvent event) {
+		Set<String> changedRoles = RoleInheritanceLookup.getChangedRoles(event, roleInheritanceLookup);
+		if (changedRoles.isEmpty()) {
+			roleBits.invalidateAll();
+		} else {
+			changedRoles.forEach(roleBits::invalidate);
+		}
+	}
+}
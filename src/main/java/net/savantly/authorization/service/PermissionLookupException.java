@@ -0,0 +1,32 @@
+package net.savantly.authorization.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Thrown when the permissions of some roles could not be looked up, because the lookup failed or did not finish in time
+ *
+ * @author jeremy branham
+ *
+ */
+public class PermissionLookupException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Set<String> roles;
+
+	public PermissionLookupException(String message, Collection<String> roles, Throwable cause) {
+		super(message, cause);
+		this.roles = Collections.unmodifiableSet(new LinkedHashSet<>(roles));
+	}
+
+	/**
+	 * @return the roles whose permissions are missing
+	 */
+	public Set<String> getRoles() {
+		return roles;
+	}
+
+}
@@ -1,9 +1,58 @@
 package net.savantly.authorization.service;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public interface PermissionProvider {
 	
 	List<String> getEffectivePermissions(String role);
 
+	/**
+	 * Resolves the permissions of several roles at once.
+	 * Implementations backed by a remote store should override this to fetch all roles in one round trip.
+	 * 
+	 * @param roles the roles to resolve
+	 * @return the merged, distinct permissions of all roles
+	 */
+	default Set<String> getEffectivePermissions(Collection<String> roles) {
+		Set<String> permissions = new LinkedHashSet<>();
+		for (String role : roles) {
+			permissions.addAll(getEffectivePermissions(role));
+		}
+		return permissions;
+	}
+
+	/**
+	 * Resolves the permissions of several roles at once, keeping them apart per role, so callers can tell which roles have none.
+	 * Implementations backed by a remote store should override this to fetch all roles in one round trip.
+	 * 
+	 * @param roles the roles to resolve
+	 * @return the effective permissions of each distinct role, an empty list for a role without permissions
+	 */
+	default Map<String, List<String>> getEffectivePermissionsByRole(Collection<String> roles) {
+		Map<String, List<String>> permissions = new LinkedHashMap<>();
+		for (String role : roles) {
+			if (!permissions.containsKey(role)) {
+				List<String> rolePermissions = getEffectivePermissions(role);
+				permissions.put(role, rolePermissions == null ? Collections.<String>emptyList() : rolePermissions);
+			}
+		}
+		return permissions;
+	}
+
+	/**
+	 * Tells decorators whether asking for the permissions of each role costs more than asking for the merged permissions
+	 * 
+	 * @return true when {@link #getEffectivePermissionsByRole(Collection)} reads the roles together, as cheaply as
+	 * {@link #getEffectivePermissions(Collection)}, false when it looks them up one role at a time
+	 */
+	default boolean isBulkLookupByRole() {
+		return false;
+	}
+
 }
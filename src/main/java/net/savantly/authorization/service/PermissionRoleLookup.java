@@ -0,0 +1,20 @@
+package net.savantly.authorization.service;
+
+import java.util.Collection;
+
+/**
+ * Answers which roles grant a permission, the reverse of a {@link PermissionProvider}, for audits and access reviews.
+ * A role grants a permission when its effective permissions include it, so a role inheriting it from another role is included.
+ *
+ * @author jeremy branham
+ *
+ */
+public interface PermissionRoleLookup {
+
+	/**
+	 * @return the roles whose effective permissions include exactly this permission, mapped to it or inheriting it,
+	 * wildcard grants that cover it are not included
+	 */
+	Collection<String> getRolesGranting(String permission);
+
+}
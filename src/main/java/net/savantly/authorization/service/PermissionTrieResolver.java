@@ -0,0 +1,52 @@
+package net.savantly.authorization.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import net.savantly.authorization.authority.PermissionTrie;
+import net.savantly.authorization.authority.PermissionTrieAuthority;
+import net.savantly.authorization.cache.BoundedCache;
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+
+/**
+ * Resolves a principal's roles to a {@link PermissionTrieAuthority} of all their permission grants.
+ * Tries are cached per distinct role set and discarded when a {@link RolePermissionsChangedEvent} is received.
+ * The roles themselves are held as the principal's direct authority names, so the authority answers every check on its own.
+ * 
+ * @author jeremy branham
+ *
+ */
+public class PermissionTrieResolver {
+
+	public static final int DEFAULT_MAXIMUM_ROLE_SETS = 10_000;
+
+	private final PermissionProvider permissionProvider;
+	private final char separator;
+	private final BoundedCache<List<String>, PermissionTrieAuthority> roleSetTries;
+
+	public PermissionTrieResolver(PermissionProvider permissionProvider) {
+		this(permissionProvider, PermissionTrie.DEFAULT_SEPARATOR, DEFAULT_MAXIMUM_ROLE_SETS);
+	}
+
+	public PermissionTrieResolver(PermissionProvider permissionProvider, char separator, int maximumRoleSets) {
+		this.permissionProvider = permissionProvider;
+		this.separator = separator;
+		this.roleSetTries = new BoundedCache<>(maximumRoleSets);
+	}
+
+	public PermissionTrieAuthority resolve(Collection<String> roles) {
+		// sorted and de-duplicated, so every principal with the same roles shares a trie
+		List<String> roleSet = new ArrayList<>(new TreeSet<>(roles));
+		return roleSetTries.get(roleSet,
+				r -> new PermissionTrieAuthority(new PermissionTrie(permissionProvider.getEffectivePermissions(r), separator), r));
+	}
+
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onRolePermissionsChanged(RolePermissionsChangedEvent event) {
+		roleSetTries.invalidateAll();
+	}
+}
@@ -0,0 +1,102 @@
+package net.savantly.authorization.service;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.savantly.authorization.authority.GrantedAuthorityRegistry;
+
+/**
+ * Serves static role to permission mappings, like the ones bound from <code>savantly.permissions.roles</code>, without a database.
+ * <p>
+ * The mappings are compiled once into a pre-sized map of immutable lists of interned, distinct, trimmed names,
+ * so a lookup is a single map read that returns a shared list without allocating.
+ * {@link #update(Map)} compiles new mappings and swaps them in with a single volatile write.
+ *
+ * @author jeremy branham
+ *
+ */
+public class PropertiesPermissionProvider implements PermissionProvider, RoleCatalog {
+
+	private static final Logger log = LoggerFactory.getLogger(PropertiesPermissionProvider.class);
+
+	private final GrantedAuthorityRegistry authorityRegistry;
+	private volatile Map<String, List<String>> mappings;
+
+	public PropertiesPermissionProvider(Map<String, ? extends Collection<String>> mappings) {
+		this(mappings, GrantedAuthorityRegistry.getShared());
+	}
+
+	/**
+	 * @param authorityRegistry canonicalizes the role and permission names
+	 */
+	public PropertiesPermissionProvider(Map<String, ? extends Collection<String>> mappings, GrantedAuthorityRegistry authorityRegistry) {
+		this.authorityRegistry = authorityRegistry;
+		this.mappings = compile(mappings);
+	}
+
+	@Override
+	public List<String> getEffectivePermissions(String role) {
+		return this.mappings.getOrDefault(role, Collections.<String>emptyList());
+	}
+
+	@Override
+	public Set<String> getEffectivePermissions(Collection<String> roles) {
+		Map<String, List<String>> current = this.mappings;
+		Set<String> permissions = new LinkedHashSet<>();
+		for (String role : roles) {
+			permissions.addAll(current.getOrDefault(role, Collections.<String>emptyList()));
+		}
+		return permissions;
+	}
+
+	@Override
+	public Collection<String> getRoles() {
+		return this.mappings.keySet();
+	}
+
+	/**
+	 * @return the compiled, immutable role to permissions mapping
+	 */
+	public Map<String, List<String>> getMappings() {
+		return this.mappings;
+	}
+
+	/**
+	 * Replaces all mappings
+	 */
+	public void update(Map<String, ? extends Collection<String>> mappings) {
+		this.mappings = compile(mappings);
+		if (log.isDebugEnabled()) {
+			log.debug("compiled permissions of {} roles", this.mappings.size());
+		}
+	}
+
+	private Map<String, List<String>> compile(Map<String, ? extends Collection<String>> mappings) {
+		// sized so the map never rehashes at the default load factor
+		Map<String, List<String>> compiled = new HashMap<>((int) (mappings.size() / 0.75f) + 1);
+		for (Map.Entry<String, ? extends Collection<String>> mapping : mappings.entrySet()) {
+			Set<String> permissions = new LinkedHashSet<>();
+			if (mapping.getValue() != null) {
+				for (String permission : mapping.getValue()) {
+					if (permission != null && !permission.trim().isEmpty()) {
+						permissions.add(authorityRegistry.intern(permission.trim()));
+					}
+				}
+			}
+			List<String> list = permissions.isEmpty() ? Collections.<String>emptyList()
+					: Collections.unmodifiableList(Arrays.asList(permissions.toArray(new String[0])));
+			compiled.put(authorityRegistry.intern(mapping.getKey().trim()), list);
+		}
+		return Collections.unmodifiableMap(compiled);
+	}
+
+}
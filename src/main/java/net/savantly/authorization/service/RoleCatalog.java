@@ -0,0 +1,28 @@
+package net.savantly.authorization.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lists the roles that have a mapping in the backing store, whether or not they have any permissions
+ *
+ * @author jeremy branham
+ *
+ */
+public interface RoleCatalog {
+
+	Collection<String> getRoles();
+
+	/**
+	 * Reads every role in the catalog with its effective permissions, for the consumers that index the whole mapping.
+	 * A catalog that is also the permission provider can override it to read the mapping in one pass over the store.
+	 *
+	 * @param permissionProvider resolves the permissions of the roles, by default with one bulk lookup
+	 * @return the effective permissions of each role, an empty list for a role without permissions
+	 */
+	default Map<String, List<String>> getAllEffectivePermissions(PermissionProvider permissionProvider) {
+		return permissionProvider.getEffectivePermissionsByRole(getRoles());
+	}
+
+}
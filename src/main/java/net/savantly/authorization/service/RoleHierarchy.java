@@ -0,0 +1,183 @@
+package net.savantly.authorization.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable role hierarchy with the effective permissions of every role precomputed.
+ * <p>
+ * A role's effective permissions are its own permissions followed by the effective permissions of the roles it inherits,
+ * so looking them up is a single map read however deep the hierarchy is.
+ * {@link #update(Map, Map, Collection)} returns a new hierarchy where only the changed roles and the roles that inherit from them are recomputed.
+ * Cycles are rejected with an {@link IllegalArgumentException} naming the roles in the cycle.
+ *
+ * @author jeremy branham
+ *
+ */
+public final class RoleHierarchy {
+
+	private static final RoleHierarchy EMPTY = new RoleHierarchy(Collections.<String, List<String>>emptyMap(),
+			Collections.<String, Set<String>>emptyMap(), Collections.<String, Set<String>>emptyMap(),
+			Collections.<String, List<String>>emptyMap());
+
+	private final Map<String, List<String>> permissions;
+	private final Map<String, Set<String>> inheritedRoles;
+	private final Map<String, Set<String>> inheritingRoles;
+	private final Map<String, List<String>> effectivePermissions;
+
+	private RoleHierarchy(Map<String, List<String>> permissions, Map<String, Set<String>> inheritedRoles,
+			Map<String, Set<String>> inheritingRoles, Map<String, List<String>> effectivePermissions) {
+		this.permissions = permissions;
+		this.inheritedRoles = inheritedRoles;
+		this.inheritingRoles = inheritingRoles;
+		this.effectivePermissions = effectivePermissions;
+	}
+
+	public static RoleHierarchy empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * @param permissions the direct permissions of each role
+	 * @param inheritedRoles the roles each role inherits from, roles without an entry inherit nothing
+	 * @throws IllegalArgumentException if the hierarchy has a cycle
+	 */
+	public static RoleHierarchy of(Map<String, ? extends Collection<String>> permissions,
+			Map<String, ? extends Collection<String>> inheritedRoles) {
+		return EMPTY.update(permissions, inheritedRoles, permissions.keySet());
+	}
+
+	/**
+	 * @return the precomputed effective permissions of the role, or an empty list for an unknown role
+	 */
+	public List<String> getEffectivePermissions(String role) {
+		return this.effectivePermissions.getOrDefault(role, Collections.<String>emptyList());
+	}
+
+	/**
+	 * @return the immutable role to effective permissions mapping
+	 */
+	public Map<String, List<String>> getEffectivePermissions() {
+		return this.effectivePermissions;
+	}
+
+	/**
+	 * @return the roles the role directly inherits from
+	 */
+	public Set<String> getInheritedRoles(String role) {
+		return this.inheritedRoles.getOrDefault(role, Collections.<String>emptySet());
+	}
+
+	/**
+	 * @return the given roles and every role that inherits from them, directly or transitively
+	 */
+	public Set<String> getInheritingRoles(Collection<String> roles) {
+		return collectInheriting(roles, this.inheritingRoles);
+	}
+
+	/**
+	 * Replaces the mappings of some roles, and recomputes the effective permissions of only those roles and the roles that inherit from them
+	 *
+	 * @param changedPermissions the direct permissions of the changed roles
+	 * @param changedInheritedRoles the inherited roles of the changed roles
+	 * @param changedRoles the roles to replace, a changed role without an entry in <code>changedPermissions</code> is removed
+	 * @return a new hierarchy, this one is left untouched
+	 * @throws IllegalArgumentException if the change introduces a cycle
+	 */
+	public RoleHierarchy update(Map<String, ? extends Collection<String>> changedPermissions,
+			Map<String, ? extends Collection<String>> changedInheritedRoles, Collection<String> changedRoles) {
+		Map<String, List<String>> newPermissions = new HashMap<>(this.permissions);
+		Map<String, Set<String>> newInheritedRoles = new HashMap<>(this.inheritedRoles);
+		Map<String, Set<String>> newInheritingRoles = copyOf(this.inheritingRoles);
+		for (String role : changedRoles) {
+			for (String parent : newInheritedRoles.getOrDefault(role, Collections.<String>emptySet())) {
+				Set<String> children = newInheritingRoles.get(parent);
+				if (children != null && children.remove(role) && children.isEmpty()) {
+					newInheritingRoles.remove(parent);
+				}
+			}
+			newPermissions.remove(role);
+			newInheritedRoles.remove(role);
+			if (!changedPermissions.containsKey(role)) {
+				continue;
+			}
+			newPermissions.put(role, Collections.unmodifiableList(new ArrayList<>(changedPermissions.get(role))));
+			Collection<String> parents = changedInheritedRoles.get(role);
+			if (parents != null && !parents.isEmpty()) {
+				newInheritedRoles.put(role, Collections.unmodifiableSet(new LinkedHashSet<>(parents)));
+				for (String parent : parents) {
+					newInheritingRoles.computeIfAbsent(parent, p -> new HashSet<>()).add(role);
+				}
+			}
+		}
+
+		Set<String> affected = collectInheriting(changedRoles, newInheritingRoles);
+		Map<String, List<String>> newEffectivePermissions = new HashMap<>(this.effectivePermissions);
+		newEffectivePermissions.keySet().removeAll(affected);
+		Set<String> visiting = new LinkedHashSet<>();
+		for (String role : affected) {
+			if (newPermissions.containsKey(role)) {
+				resolve(role, affected, newPermissions, newInheritedRoles, newEffectivePermissions, visiting);
+			}
+		}
+		return new RoleHierarchy(Collections.unmodifiableMap(newPermissions), Collections.unmodifiableMap(newInheritedRoles),
+				newInheritingRoles, Collections.unmodifiableMap(newEffectivePermissions));
+	}
+
+	private static List<String> resolve(String role, Set<String> affected, Map<String, List<String>> permissions,
+			Map<String, Set<String>> inheritedRoles, Map<String, List<String>> effectivePermissions, Set<String> visiting) {
+		List<String> resolved = effectivePermissions.get(role);
+		if (resolved != null || !affected.contains(role)) {
+			return resolved == null ? Collections.<String>emptyList() : resolved;
+		}
+		if (!visiting.add(role)) {
+			throw new IllegalArgumentException("role hierarchy has a cycle: " + cycle(visiting, role));
+		}
+		Set<String> merged = new LinkedHashSet<>(permissions.getOrDefault(role, Collections.<String>emptyList()));
+		for (String parent : inheritedRoles.getOrDefault(role, Collections.<String>emptySet())) {
+			merged.addAll(resolve(parent, affected, permissions, inheritedRoles, effectivePermissions, visiting));
+		}
+		visiting.remove(role);
+		resolved = Collections.unmodifiableList(new ArrayList<>(merged));
+		if (permissions.containsKey(role)) {
+			effectivePermissions.put(role, resolved);
+		}
+		return resolved;
+	}
+
+	private static Set<String> collectInheriting(Collection<String> roles, Map<String, Set<String>> inheritingRoles) {
+		Set<String> collected = new HashSet<>(roles);
+		Deque<String> queue = new ArrayDeque<>(roles);
+		while (!queue.isEmpty()) {
+			for (String child : inheritingRoles.getOrDefault(queue.poll(), Collections.<String>emptySet())) {
+				if (collected.add(child)) {
+					queue.add(child);
+				}
+			}
+		}
+		return collected;
+	}
+
+	private static String cycle(Set<String> visiting, String role) {
+		List<String> path = new ArrayList<>(visiting);
+		List<String> cycle = new ArrayList<>(path.subList(path.indexOf(role), path.size()));
+		cycle.add(role);
+		return String.join(" -> ", cycle);
+	}
+
+	private static Map<String, Set<String>> copyOf(Map<String, Set<String>> map) {
+		Map<String, Set<String>> copy = new HashMap<>();
+		map.forEach((key, value) -> copy.put(key, new HashSet<>(value)));
+		return copy;
+	}
+
+}
@@ -0,0 +1,118 @@
+package net.savantly.authorization.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable closure of the role hierarchy: every role with the roles it inherits from, directly or transitively, precomputed.
+ * <p>
+ * Built on a {@link RoleHierarchy} in which each role grants only its own name, so the closure gets the same cycle detection,
+ * and an {@link #update(Map, Collection)} recomputes only the changed roles and the roles that inherit from them.
+ * A store backed provider expands the requested roles with it in memory and reads their permissions with a single query,
+ * however deep the hierarchy is. A role that inherits nothing expands to itself.
+ *
+ * @author jeremy branham
+ *
+ */
+public final class RoleInheritanceClosure {
+
+	private static final RoleInheritanceClosure EMPTY = new RoleInheritanceClosure(RoleHierarchy.empty());
+
+	private final RoleHierarchy hierarchy;
+
+	private RoleInheritanceClosure(RoleHierarchy hierarchy) {
+		this.hierarchy = hierarchy;
+	}
+
+	public static RoleInheritanceClosure empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * @param inheritedRoles the roles each role inherits from, roles without an entry inherit nothing
+	 * @throws IllegalArgumentException if the hierarchy has a cycle
+	 */
+	public static RoleInheritanceClosure of(Map<String, ? extends Collection<String>> inheritedRoles) {
+		return EMPTY.update(inheritedRoles, inheritedRoles.keySet());
+	}
+
+	/**
+	 * @return the role followed by every role it inherits from
+	 */
+	public List<String> getRoles(String role) {
+		List<String> roles = this.hierarchy.getEffectivePermissions(role);
+		return roles.isEmpty() ? Collections.singletonList(role) : roles;
+	}
+
+	/**
+	 * @return the distinct given roles and every role they inherit from
+	 */
+	public Set<String> expand(Collection<String> roles) {
+		Set<String> expanded = new LinkedHashSet<>();
+		for (String role : roles) {
+			expanded.addAll(getRoles(role));
+		}
+		return expanded;
+	}
+
+	/**
+	 * @param directPermissions the direct permissions of at least the roles in the closures of the given roles
+	 * @return the effective permissions of each distinct role, merged from the direct permissions of the roles in its closure,
+	 * an empty list for a role without permissions
+	 */
+	public Map<String, List<String>> getEffectivePermissions(Collection<String> roles, Map<String, ? extends Collection<String>> directPermissions) {
+		Map<String, List<String>> byRole = new LinkedHashMap<>();
+		for (String role : roles) {
+			Set<String> merged = new LinkedHashSet<>();
+			for (String inherited : getRoles(role)) {
+				Collection<String> permissions = directPermissions.get(inherited);
+				if (permissions != null) {
+					merged.addAll(permissions);
+				}
+			}
+			byRole.put(role, merged.isEmpty() ? Collections.<String>emptyList() : new ArrayList<>(merged));
+		}
+		return byRole;
+	}
+
+	/**
+	 * @return the given roles and every role that inherits from them, directly or transitively
+	 */
+	public Set<String> getInheritingRoles(Collection<String> roles) {
+		return this.hierarchy.getInheritingRoles(roles);
+	}
+
+	/**
+	 * Replaces the inherited roles of some roles
+	 *
+	 * @param changedInheritedRoles the inherited roles of the changed roles, a changed role without an entry inherits nothing
+	 * @param changedRoles the roles whose inherited roles changed
+	 * @return a new closure, this one is left untouched
+	 * @throws IllegalArgumentException if the change introduces a cycle
+	 */
+	public RoleInheritanceClosure update(Map<String, ? extends Collection<String>> changedInheritedRoles, Collection<String> changedRoles) {
+		Map<String, List<String>> names = new HashMap<>();
+		Set<String> changed = new LinkedHashSet<>(changedRoles);
+		for (String role : changedRoles) {
+			names.put(role, Collections.singletonList(role));
+		}
+		for (Collection<String> parents : changedInheritedRoles.values()) {
+			for (String parent : parents) {
+				// a parent must be in the hierarchy to be part of its children's closure, a known one keeps its own inherited roles
+				if (!names.containsKey(parent) && this.hierarchy.getEffectivePermissions(parent).isEmpty()) {
+					names.put(parent, Collections.singletonList(parent));
+					changed.add(parent);
+				}
+			}
+		}
+		return new RoleInheritanceClosure(this.hierarchy.update(names, changedInheritedRoles, changed));
+	}
+
+}
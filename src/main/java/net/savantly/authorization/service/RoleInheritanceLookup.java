@@ -0,0 +1,44 @@
+package net.savantly.authorization.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+
+import org.slf4j.LoggerFactory;
+
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+
+/**
+ * Finds the roles that inherit from other roles, so a change to a role also discards what was cached for the roles that inherit from it
+ *
+ * @author jeremy branham
+ *
+ */
+public interface RoleInheritanceLookup {
+
+	/**
+	 * @return the given roles and every role that inherits from them, directly or transitively
+	 */
+	Set<String> getInheritingRoles(Collection<String> roles);
+
+	/**
+	 * Widens the roles of a change event to the roles that inherit from them.
+	 * When the lookup fails, every role is treated as changed.
+	 *
+	 * @param lookup the role hierarchy, or null when roles do not inherit from each other
+	 * @return the roles whose effective permissions may have changed, or an empty set when any role may have changed
+	 */
+	static Set<String> getChangedRoles(RolePermissionsChangedEvent event, RoleInheritanceLookup lookup) {
+		if (event.isAllRoles() || lookup == null) {
+			return event.getRoles();
+		}
+		try {
+			return lookup.getInheritingRoles(event.getRoles());
+		} catch (RuntimeException e) {
+			LoggerFactory.getLogger(RoleInheritanceLookup.class)
+					.warn("failed to look up the roles inheriting from {}, treating every role as changed", event.getRoles(), e);
+			return Collections.emptySet();
+		}
+	}
+
+}
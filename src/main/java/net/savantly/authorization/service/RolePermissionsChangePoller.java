@@ -0,0 +1,199 @@
+package net.savantly.authorization.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+import net.savantly.authorization.jdbc.RolePermissionsChange;
+import net.savantly.authorization.jdbc.RolePermissionsChangeRepository;
+
+/**
+ * Polls the {@link RolePermissionsChange} log for changes made by any node sharing the database,
+ * and publishes a {@link RolePermissionsChangedEvent} naming the changed roles, so the caches on this node reload only those roles.
+ * <p>
+ * Each poll asks for the changes since the last version seen, so staleness is bounded by the poll interval.
+ * A version can become visible after a higher one when transactions commit out of order,
+ * so a skipped version is asked for again until it shows up or the grace period passes.
+ * When more versions are skipped than can be tracked, an event for all roles is published instead, so no change is lost.
+ * <p>
+ * Old change records are removed at most once per retention interval, not on every poll.
+ *
+ * @author jeremy branham
+ *
+ */
+public class RolePermissionsChangePoller implements InitializingBean, DisposableBean, ApplicationEventPublisherAware {
+
+	private static final Logger log = LoggerFactory.getLogger(RolePermissionsChangePoller.class);
+
+	public static final Duration DEFAULT_POLL_INTERVAL = Duration.ofSeconds(10);
+	public static final Duration DEFAULT_GRACE_PERIOD = Duration.ofMinutes(1);
+	public static final Duration DEFAULT_RETENTION_INTERVAL = Duration.ofHours(1);
+	private static final int MAXIMUM_PENDING_VERSIONS = 10_000;
+
+	private final RolePermissionsChangeRepository changeRepository;
+	private final Duration pollInterval;
+	private Duration gracePeriod = DEFAULT_GRACE_PERIOD;
+	private Duration retention;
+	private Duration retentionInterval = DEFAULT_RETENTION_INTERVAL;
+	private ApplicationEventPublisher eventPublisher;
+	private ScheduledExecutorService executor;
+
+	// guarded by this
+	private long version;
+	private long latestVersion;
+	private final TreeMap<Long, Long> pendingVersions = new TreeMap<>();
+	private long nextPurge;
+
+	public RolePermissionsChangePoller(RolePermissionsChangeRepository changeRepository) {
+		this(changeRepository, DEFAULT_POLL_INTERVAL);
+	}
+
+	/**
+	 * @param pollInterval how often to poll, or null to only poll on demand with {@link #poll()}
+	 */
+	public RolePermissionsChangePoller(RolePermissionsChangeRepository changeRepository, Duration pollInterval) {
+		this.changeRepository = changeRepository;
+		this.pollInterval = pollInterval;
+	}
+
+	/**
+	 * @param gracePeriod how long a skipped version is waited for, defaults to one minute
+	 */
+	public void setGracePeriod(Duration gracePeriod) {
+		this.gracePeriod = gracePeriod;
+	}
+
+	/**
+	 * @param retention change records older than this are removed while polling, or null to keep them
+	 */
+	public void setRetention(Duration retention) {
+		this.retention = retention;
+	}
+
+	/**
+	 * @param retentionInterval how often old change records are removed, defaults to one hour
+	 */
+	public void setRetentionInterval(Duration retentionInterval) {
+		this.retentionInterval = retentionInterval;
+	}
+
+	@Override
+	public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
+		this.eventPublisher = eventPublisher;
+	}
+
+	@Override
+	public synchronized void afterPropertiesSet() {
+		// the caches on this node are loaded from the current state, so only later changes are of interest
+		Long latest = changeRepository.findLatestVersion();
+		this.version = latest == null ? 0 : latest;
+		this.latestVersion = this.version;
+		this.nextPurge = System.nanoTime();
+		if (pollInterval != null && !pollInterval.isZero() && !pollInterval.isNegative()) {
+			long millis = pollInterval.toMillis();
+			executor = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "role-permissions-change-poller");
+				thread.setDaemon(true);
+				return thread;
+			});
+			executor.scheduleWithFixedDelay(this::pollQuietly, millis, millis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public synchronized void destroy() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reads the changes since the last poll, and publishes an event when any role changed
+	 *
+	 * @return the changed roles, an event for all roles is published instead when skipped versions could not all be tracked
+	 */
+	public synchronized Set<String> poll() {
+		long now = System.nanoTime();
+		Set<String> roles = new LinkedHashSet<>();
+		boolean untracked = false;
+		for (RolePermissionsChange change : changeRepository.findByVersionGreaterThanOrderByVersionAsc(version)) {
+			long changeVersion = change.getVersion();
+			if (changeVersion > latestVersion) {
+				for (long skipped = latestVersion + 1; skipped < changeVersion; skipped++) {
+					if (pendingVersions.size() >= MAXIMUM_PENDING_VERSIONS) {
+						untracked = true;
+						break;
+					}
+					pendingVersions.put(skipped, now);
+				}
+				latestVersion = changeVersion;
+				roles.add(change.getRole());
+			} else if (pendingVersions.remove(changeVersion) != null) {
+				roles.add(change.getRole());
+			}
+		}
+		expirePendingVersions(now);
+		version = pendingVersions.isEmpty() ? latestVersion : pendingVersions.firstKey() - 1;
+
+		if (untracked) {
+			// a change committed later under an untracked version would be missed, so every role is reloaded now
+			log.warn("more than {} versions skipped up to version {}, reloading every role", MAXIMUM_PENDING_VERSIONS, latestVersion);
+			if (eventPublisher != null) {
+				eventPublisher.publishEvent(new RolePermissionsChangedEvent(this));
+			}
+		} else if (!roles.isEmpty()) {
+			if (log.isDebugEnabled()) {
+				log.debug("roles changed up to version {}: {}", latestVersion, roles);
+			}
+			if (eventPublisher != null) {
+				eventPublisher.publishEvent(new RolePermissionsChangedEvent(this, roles));
+			}
+		}
+		if (retention != null && now - nextPurge >= 0) {
+			nextPurge = now + retentionInterval.toNanos();
+			changeRepository.deleteChangesBefore(Instant.now().minus(retention));
+		}
+		return roles;
+	}
+
+	/**
+	 * @return every change up to and including this version has been seen, or given up on
+	 */
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	private void expirePendingVersions(long now) {
+		long grace = gracePeriod.toNanos();
+		Iterator<Map.Entry<Long, Long>> iterator = pendingVersions.entrySet().iterator();
+		while (iterator.hasNext()) {
+			if (now - iterator.next().getValue() >= grace) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private void pollQuietly() {
+		try {
+			poll();
+		} catch (RuntimeException e) {
+			log.warn("failed to poll role permission changes, retrying on the next poll", e);
+		}
+	}
+
+}
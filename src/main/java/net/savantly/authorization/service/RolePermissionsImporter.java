@@ -0,0 +1,374 @@
+package net.savantly.authorization.service;
+
+import java.io.BufferedReader;
+import java.io.Reader;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+
+/**
+ * Imports role to permission mappings in bulk, from a stream of mappings that is never held in memory as a whole.
+ * <p>
+ * The mappings are read in chunks of {@link #setRolesPerTransaction(int)} roles, and each chunk is compared against the stored permissions
+ * of its roles with one query. Only the rows that differ are inserted or deleted, with JDBC batch statements, in one short transaction per chunk,
+ * instead of JPA deleting and re-inserting every permission of every saved role.
+ * Each chunk runs in a new transaction, also when the import is started inside one, so every chunk commits and releases its locks on its own.
+ * Each changed role is recorded in the change log, and a {@link RolePermissionsChangedEvent} for the changed roles of a chunk is published once it commits.
+ * <p>
+ * Permissions are compared as sets, so their order and duplicates in the input are ignored.
+ * The inherited roles of the imported roles are left as they are. Removing a role also removes it from the roles that inherit from it,
+ * which are recorded and published as changed.
+ *
+ * @author jeremy branham
+ *
+ */
+public class RolePermissionsImporter implements ApplicationEventPublisherAware {
+
+	private static final Logger log = LoggerFactory.getLogger(RolePermissionsImporter.class);
+
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	public static final int DEFAULT_ROLES_PER_TRANSACTION = 500;
+
+	static final String INHERITED_ROLES_TABLE = "role_permissions_inherited_roles";
+	static final String CHANGE_TABLE = "role_permissions_change";
+	private static final String SELECT_EXISTING_ROLES = "SELECT role FROM " + JdbcTemplatePermissionProvider.ROLES_TABLE
+			+ " WHERE role IN (:roles)";
+	private static final String SELECT_ENTRIES = "SELECT " + JdbcTemplatePermissionProvider.ROLE_COLUMN + ", "
+			+ JdbcTemplatePermissionProvider.PERMISSION_COLUMN + " FROM " + JdbcTemplatePermissionProvider.PERMISSIONS_TABLE
+			+ " WHERE " + JdbcTemplatePermissionProvider.ROLE_COLUMN + " IN (:roles)";
+	private static final String INSERT_ROLE = "INSERT INTO " + JdbcTemplatePermissionProvider.ROLES_TABLE + " (role) VALUES (?)";
+	private static final String INSERT_PERMISSION = "INSERT INTO " + JdbcTemplatePermissionProvider.PERMISSIONS_TABLE
+			+ " (" + JdbcTemplatePermissionProvider.ROLE_COLUMN + ", " + JdbcTemplatePermissionProvider.PERMISSION_COLUMN + ") VALUES (?, ?)";
+	private static final String DELETE_PERMISSION = "DELETE FROM " + JdbcTemplatePermissionProvider.PERMISSIONS_TABLE
+			+ " WHERE " + JdbcTemplatePermissionProvider.ROLE_COLUMN + " = ? AND " + JdbcTemplatePermissionProvider.PERMISSION_COLUMN + " = ?";
+	private static final String DELETE_PERMISSIONS = "DELETE FROM " + JdbcTemplatePermissionProvider.PERMISSIONS_TABLE
+			+ " WHERE " + JdbcTemplatePermissionProvider.ROLE_COLUMN + " = ?";
+	private static final String DELETE_INHERITED_ROLES = "DELETE FROM " + INHERITED_ROLES_TABLE
+			+ " WHERE " + JdbcTemplatePermissionProvider.ROLE_COLUMN + " = ?";
+	private static final String SELECT_INHERITING_ROLES = "SELECT DISTINCT " + JdbcTemplatePermissionProvider.ROLE_COLUMN
+			+ " FROM " + INHERITED_ROLES_TABLE + " WHERE " + JdbcTemplatePermissionProvider.INHERITED_ROLE_COLUMN + " IN (:roles)";
+	private static final String DELETE_INHERITING_ROLES = "DELETE FROM " + INHERITED_ROLES_TABLE
+			+ " WHERE " + JdbcTemplatePermissionProvider.INHERITED_ROLE_COLUMN + " = ?";
+	private static final String DELETE_ROLE = "DELETE FROM " + JdbcTemplatePermissionProvider.ROLES_TABLE + " WHERE role = ?";
+	private static final String INSERT_CHANGE = "INSERT INTO " + CHANGE_TABLE + " (role, changed_at) VALUES (?, ?)";
+
+	private final NamedParameterJdbcTemplate jdbcTemplate;
+	private final TransactionTemplate transactionTemplate;
+	private ApplicationEventPublisher eventPublisher;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private int rolesPerTransaction = DEFAULT_ROLES_PER_TRANSACTION;
+	private boolean recordChanges = true;
+	private boolean removeUnlistedRoles = false;
+
+	public RolePermissionsImporter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+		this.jdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+	}
+
+	@Override
+	public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
+		this.eventPublisher = eventPublisher;
+	}
+
+	/**
+	 * @param batchSize how many rows are sent to the database in one JDBC batch
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("batchSize must be greater than 0");
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param rolesPerTransaction how many roles are compared and written in one transaction, which bounds how long locks are held
+	 */
+	public void setRolesPerTransaction(int rolesPerTransaction) {
+		if (rolesPerTransaction <= 0) {
+			throw new IllegalArgumentException("rolesPerTransaction must be greater than 0");
+		}
+		this.rolesPerTransaction = rolesPerTransaction;
+	}
+
+	/**
+	 * @param recordChanges record a change log row for every changed role, turn off when the change log table does not exist
+	 */
+	public void setRecordChanges(boolean recordChanges) {
+		this.recordChanges = recordChanges;
+	}
+
+	/**
+	 * @param removeUnlistedRoles remove the stored roles that the input does not list, so the import is a full sync
+	 */
+	public void setRemoveUnlistedRoles(boolean removeUnlistedRoles) {
+		this.removeUnlistedRoles = removeUnlistedRoles;
+	}
+
+	public ImportResult importMappings(Map<String, ? extends Collection<String>> mappings) {
+		return importMappings(mappings.entrySet().iterator());
+	}
+
+	/**
+	 * Reads lines of a role followed by its permissions, like <code>ROLE_ADMIN,CREATE,READ</code>.
+	 * Blank lines and lines starting with <code>#</code> are skipped, and a role alone on a line has no permissions.
+	 */
+	public ImportResult importCsv(Reader reader) {
+		BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+		return importMappings(lines.lines()
+				.map(String::trim)
+				.filter(line -> !line.isEmpty() && !line.startsWith("#"))
+				.map(RolePermissionsImporter::parseCsvLine)
+				.iterator());
+	}
+
+	/**
+	 * Imports the mappings as they are read, a later mapping of the same role replaces an earlier one
+	 */
+	public ImportResult importMappings(Iterator<? extends Map.Entry<String, ? extends Collection<String>>> mappings) {
+		long start = System.nanoTime();
+		ImportResult result = new ImportResult();
+		Set<String> listedRoles = removeUnlistedRoles ? new HashSet<>() : null;
+		Map<String, Set<String>> chunk = new LinkedHashMap<>();
+		while (mappings.hasNext()) {
+			Map.Entry<String, ? extends Collection<String>> mapping = mappings.next();
+			String role = mapping.getKey().trim();
+			chunk.put(role, normalize(mapping.getValue()));
+			result.rolesRead++;
+			if (listedRoles != null) {
+				listedRoles.add(role);
+			}
+			if (chunk.size() >= rolesPerTransaction) {
+				applyChunk(chunk, result);
+				chunk = new LinkedHashMap<>();
+			}
+		}
+		if (!chunk.isEmpty()) {
+			applyChunk(chunk, result);
+		}
+		if (listedRoles != null) {
+			removeRoles(listedRoles, result);
+		}
+		result.elapsed = Duration.ofNanos(System.nanoTime() - start);
+		log.info("imported role permissions: {}", result);
+		return result;
+	}
+
+	private void applyChunk(Map<String, Set<String>> chunk, ImportResult result) {
+		Set<String> changedRoles = transactionTemplate.execute(status -> {
+			Map<String, Object> parameters = Collections.singletonMap("roles", chunk.keySet());
+			Set<String> existingRoles = new HashSet<>(jdbcTemplate.queryForList(SELECT_EXISTING_ROLES, parameters, String.class));
+			Map<String, Set<String>> current = new HashMap<>();
+			jdbcTemplate.query(SELECT_ENTRIES, parameters, rs -> {
+				String permission = rs.getString(2);
+				if (permission != null) {
+					current.computeIfAbsent(rs.getString(1), role -> new HashSet<>()).add(permission);
+				}
+			});
+
+			List<String> newRoles = new ArrayList<>();
+			List<String[]> inserts = new ArrayList<>();
+			List<String[]> deletes = new ArrayList<>();
+			Set<String> changed = new LinkedHashSet<>();
+			for (Map.Entry<String, Set<String>> mapping : chunk.entrySet()) {
+				String role = mapping.getKey();
+				Set<String> stored = current.getOrDefault(role, Collections.<String>emptySet());
+				if (!existingRoles.contains(role)) {
+					newRoles.add(role);
+					changed.add(role);
+				}
+				for (String permission : mapping.getValue()) {
+					if (!stored.contains(permission)) {
+						inserts.add(new String[] { role, permission });
+						changed.add(role);
+					}
+				}
+				for (String permission : stored) {
+					if (!mapping.getValue().contains(permission)) {
+						deletes.add(new String[] { role, permission });
+						changed.add(role);
+					}
+				}
+			}
+			batch(INSERT_ROLE, newRoles);
+			batchPairs(DELETE_PERMISSION, deletes);
+			batchPairs(INSERT_PERMISSION, inserts);
+			recordChanges(changed);
+			result.rolesCreated += newRoles.size();
+			result.permissionsInserted += inserts.size();
+			result.permissionsDeleted += deletes.size();
+			return changed;
+		});
+		result.transactions++;
+		result.rolesChanged += changedRoles.size();
+		publish(changedRoles);
+	}
+
+	private void removeRoles(Set<String> listedRoles, ImportResult result) {
+		List<String> unlisted = jdbcTemplate.getJdbcOperations().queryForList("SELECT role FROM " + JdbcTemplatePermissionProvider.ROLES_TABLE,
+				String.class).stream()
+				.filter(role -> !listedRoles.contains(role))
+				.collect(Collectors.toList());
+		for (int from = 0; from < unlisted.size(); from += rolesPerTransaction) {
+			List<String> roles = unlisted.subList(from, Math.min(from + rolesPerTransaction, unlisted.size()));
+			Set<String> inheritingRoles = transactionTemplate.execute(status -> {
+				Set<String> inheriting = new LinkedHashSet<>(jdbcTemplate.queryForList(SELECT_INHERITING_ROLES,
+						Collections.singletonMap("roles", roles), String.class));
+				inheriting.removeAll(roles);
+				batch(DELETE_INHERITING_ROLES, roles);
+				batch(DELETE_INHERITED_ROLES, roles);
+				batch(DELETE_PERMISSIONS, roles);
+				batch(DELETE_ROLE, roles);
+				recordChanges(roles);
+				recordChanges(inheriting);
+				return inheriting;
+			});
+			result.transactions++;
+			result.rolesRemoved += roles.size();
+			result.rolesChanged += inheritingRoles.size();
+			Set<String> changedRoles = new LinkedHashSet<>(roles);
+			changedRoles.addAll(inheritingRoles);
+			publish(changedRoles);
+		}
+	}
+
+	private void batch(String sql, Collection<String> roles) {
+		if (!roles.isEmpty()) {
+			jdbcTemplate.getJdbcOperations().batchUpdate(sql, roles, batchSize, (ps, role) -> ps.setString(1, role));
+		}
+	}
+
+	private void batchPairs(String sql, Collection<String[]> rows) {
+		if (!rows.isEmpty()) {
+			jdbcTemplate.getJdbcOperations().batchUpdate(sql, rows, batchSize, (ps, row) -> {
+				ps.setString(1, row[0]);
+				ps.setString(2, row[1]);
+			});
+		}
+	}
+
+	private void recordChanges(Collection<String> roles) {
+		if (recordChanges && !roles.isEmpty()) {
+			Timestamp changedAt = new Timestamp(System.currentTimeMillis());
+			jdbcTemplate.getJdbcOperations().batchUpdate(INSERT_CHANGE, roles, batchSize, (ps, role) -> {
+				ps.setString(1, role);
+				ps.setTimestamp(2, changedAt);
+			});
+		}
+	}
+
+	private void publish(Set<String> changedRoles) {
+		if (eventPublisher != null && !changedRoles.isEmpty()) {
+			eventPublisher.publishEvent(new RolePermissionsChangedEvent(this, changedRoles));
+		}
+	}
+
+	private static Set<String> normalize(Collection<String> permissions) {
+		Set<String> normalized = new LinkedHashSet<>();
+		if (permissions != null) {
+			for (String permission : permissions) {
+				if (permission != null && !permission.trim().isEmpty()) {
+					normalized.add(permission.trim());
+				}
+			}
+		}
+		return normalized;
+	}
+
+	static Map.Entry<String, List<String>> parseCsvLine(String line) {
+		String[] columns = line.split(",");
+		return new SimpleImmutableEntry<>(columns[0].trim(), Arrays.asList(columns).subList(1, columns.length));
+	}
+
+	/**
+	 * What an import changed, and how long it took
+	 */
+	public static final class ImportResult {
+
+		private long rolesRead;
+		private long rolesChanged;
+		private long rolesCreated;
+		private long rolesRemoved;
+		private long permissionsInserted;
+		private long permissionsDeleted;
+		private long transactions;
+		private Duration elapsed = Duration.ZERO;
+
+		public long getRolesRead() {
+			return rolesRead;
+		}
+
+		/**
+		 * @return how many roles were created, had permissions inserted or deleted, or were removed
+		 */
+		public long getRolesChanged() {
+			return rolesChanged + rolesRemoved;
+		}
+
+		public long getRolesCreated() {
+			return rolesCreated;
+		}
+
+		public long getRolesRemoved() {
+			return rolesRemoved;
+		}
+
+		public long getPermissionsInserted() {
+			return permissionsInserted;
+		}
+
+		public long getPermissionsDeleted() {
+			return permissionsDeleted;
+		}
+
+		public long getTransactions() {
+			return transactions;
+		}
+
+		public Duration getElapsed() {
+			return elapsed;
+		}
+
+		/**
+		 * @return how many input roles were compared and written per second
+		 */
+		public double getRolesPerSecond() {
+			long nanos = elapsed.toNanos();
+			return nanos == 0 ? 0 : rolesRead * 1_000_000_000d / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return "ImportResult [rolesRead=" + rolesRead + ", rolesChanged=" + getRolesChanged() + ", rolesCreated=" + rolesCreated
+					+ ", rolesRemoved=" + rolesRemoved + ", permissionsInserted=" + permissionsInserted + ", permissionsDeleted="
+					+ permissionsDeleted + ", transactions=" + transactions + ", elapsed=" + elapsed.toMillis() + "ms, rolesPerSecond="
+					+ Math.round(getRolesPerSecond()) + "]";
+		}
+	}
+
+}
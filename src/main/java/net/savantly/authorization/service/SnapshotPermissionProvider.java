@@ -0,0 +1,243 @@
+package net.savantly.authorization.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import net.savantly.authorization.authority.GrantedAuthorityRegistry;
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+import net.savantly.authorization.jdbc.RoleInheritanceEntry;
+import net.savantly.authorization.jdbc.RolePermissionEntry;
+import net.savantly.authorization.jdbc.RolePermissionsRepository;
+
+/**
+ * Serves permissions from an immutable in-memory snapshot of the whole role permissions table.
+ * <p>
+ * The snapshot is loaded when the bean is initialized, and rebuilt in the background
+ * on a fixed interval, on demand with {@link #refreshAsync()}, and when a {@link RolePermissionsChangedEvent} is received.
+ * A rebuilt snapshot replaces the previous one with a single volatile write,
+ * so readers never block and never see a partially built mapping.
+ * <p>
+ * Inherited roles are flattened into a {@link RoleHierarchy} as the snapshot is built, so a lookup never walks the hierarchy.
+ * When only some roles changed, only those roles and the roles that inherit from them are reloaded and recomputed.
+ *
+ * @author jeremy branham
+ *
+ */
+public class SnapshotPermissionProvider implements PermissionProvider, RoleInheritanceLookup, InitializingBean, DisposableBean {
+
+	private static final Logger log = LoggerFactory.getLogger(SnapshotPermissionProvider.class);
+
+	private final RolePermissionsRepository rolePermissionsRepository;
+	private final Duration refreshInterval;
+	private final Object refreshLock = new Object();
+	private GrantedAuthorityRegistry authorityRegistry = GrantedAuthorityRegistry.getShared();
+	private volatile RoleHierarchy hierarchy = RoleHierarchy.empty();
+	// guarded by this
+	private ScheduledExecutorService executor;
+	private boolean destroyed;
+
+	public SnapshotPermissionProvider(RolePermissionsRepository rolePermissionsRepository) {
+		this(rolePermissionsRepository, null);
+	}
+
+	/**
+	 * @param refreshInterval how often the snapshot is rebuilt, or null to only rebuild on demand
+	 */
+	public SnapshotPermissionProvider(RolePermissionsRepository rolePermissionsRepository, Duration refreshInterval) {
+		this.rolePermissionsRepository = rolePermissionsRepository;
+		this.refreshInterval = refreshInterval;
+	}
+
+	/**
+	 * @param authorityRegistry canonicalizes permission names as the snapshot is loaded, defaults to the shared registry
+	 */
+	public void setAuthorityRegistry(GrantedAuthorityRegistry authorityRegistry) {
+		this.authorityRegistry = authorityRegistry;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		refresh();
+		if (refreshInterval != null && !refreshInterval.isZero() && !refreshInterval.isNegative()) {
+			long millis = refreshInterval.toMillis();
+			getExecutor().scheduleWithFixedDelay(this::refreshQuietly, millis, millis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public void destroy() {
+		synchronized (this) {
+			destroyed = true;
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	@Override
+	public List<String> getEffectivePermissions(String role) {
+		return this.hierarchy.getEffectivePermissions(role);
+	}
+
+	@Override
+	public Set<String> getEffectivePermissions(Collection<String> roles) {
+		RoleHierarchy current = this.hierarchy;
+		Set<String> permissions = new LinkedHashSet<>();
+		for (String role : roles) {
+			permissions.addAll(current.getEffectivePermissions(role));
+		}
+		return permissions;
+	}
+
+	@Override
+	public Set<String> getInheritingRoles(Collection<String> roles) {
+		return this.hierarchy.getInheritingRoles(roles);
+	}
+
+	/**
+	 * @return the current immutable role to effective permissions mapping
+	 */
+	public Map<String, List<String>> getSnapshot() {
+		return this.hierarchy.getEffectivePermissions();
+	}
+
+	/**
+	 * @return the current role hierarchy
+	 */
+	public RoleHierarchy getHierarchy() {
+		return this.hierarchy;
+	}
+
+	/**
+	 * Rebuilds the snapshot on the calling thread
+	 */
+	public void refresh() {
+		synchronized (refreshLock) {
+			this.hierarchy = load();
+		}
+	}
+
+	/**
+	 * Reloads the given roles on the calling thread, and recomputes them and the roles that inherit from them
+	 */
+	public void refresh(Collection<String> roles) {
+		synchronized (refreshLock) {
+			long start = System.nanoTime();
+			this.hierarchy = this.hierarchy.update(loadPermissions(this.rolePermissionsRepository.findEntriesByRoleIn(roles)),
+					loadInheritedRoles(this.rolePermissionsRepository.findInheritanceEntriesByRoleIn(roles)), roles);
+			if (log.isDebugEnabled()) {
+				log.debug("reloaded permissions of roles {} in {}ms", roles,
+						TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the snapshot on the background refresh thread
+	 *
+	 * @return completes when the new snapshot has been swapped in
+	 * @throws RejectedExecutionException when the provider has been destroyed
+	 */
+	public CompletableFuture<Void> refreshAsync() {
+		return CompletableFuture.runAsync(this::refresh, getExecutor());
+	}
+
+	/**
+	 * Reloads the given roles on the background refresh thread
+	 *
+	 * @return completes when the new snapshot has been swapped in
+	 * @throws RejectedExecutionException when the provider has been destroyed
+	 */
+	public CompletableFuture<Void> refreshAsync(Collection<String> roles) {
+		List<String> changedRoles = new ArrayList<>(roles);
+		return CompletableFuture.runAsync(() -> refresh(changedRoles), getExecutor());
+	}
+
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onRolePermissionsChanged(RolePermissionsChangedEvent event) {
+		CompletableFuture<Void> refreshed;
+		try {
+			refreshed = event.isAllRoles() ? refreshAsync() : refreshAsync(event.getRoles());
+		} catch (RejectedExecutionException e) {
+			// the context is shutting down, nobody reads the snapshot anymore
+			log.debug("ignoring {}, the snapshot provider has been destroyed", event);
+			return;
+		}
+		refreshed.whenComplete((result, failure) -> {
+			if (failure != null) {
+				log.warn("failed to refresh role permissions snapshot after {}, keeping the previous snapshot", event,
+						failure.getCause() != null ? failure.getCause() : failure);
+			}
+		});
+	}
+
+	private void refreshQuietly() {
+		try {
+			refresh();
+		} catch (RuntimeException e) {
+			log.warn("failed to refresh role permissions snapshot, keeping the previous snapshot", e);
+		}
+	}
+
+	private RoleHierarchy load() {
+		long start = System.nanoTime();
+		RoleHierarchy loaded = RoleHierarchy.of(loadPermissions(this.rolePermissionsRepository.findAllEntries()),
+				loadInheritedRoles(this.rolePermissionsRepository.findAllInheritanceEntries()));
+		if (log.isDebugEnabled()) {
+			log.debug("loaded permissions snapshot of {} roles in {}ms", loaded.getEffectivePermissions().size(),
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		}
+		return loaded;
+	}
+
+	private Map<String, List<String>> loadPermissions(List<RolePermissionEntry> entries) {
+		Map<String, List<String>> map = new HashMap<>();
+		for (RolePermissionEntry entry : entries) {
+			List<String> permissions = map.computeIfAbsent(entry.getRole(), r -> new ArrayList<>());
+			if (entry.getPermission() != null) {
+				permissions.add(authorityRegistry.intern(entry.getPermission()));
+			}
+		}
+		return map;
+	}
+
+	private Map<String, Set<String>> loadInheritedRoles(List<RoleInheritanceEntry> entries) {
+		Map<String, Set<String>> map = new HashMap<>();
+		for (RoleInheritanceEntry entry : entries) {
+			map.computeIfAbsent(entry.getRole(), r -> new LinkedHashSet<>()).add(entry.getInheritedRole());
+		}
+		return map;
+	}
+
+	private synchronized ScheduledExecutorService getExecutor() {
+		if (destroyed) {
+			throw new RejectedExecutionException("the role permissions snapshot provider has been destroyed");
+		}
+		if (executor == null) {
+			executor = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "role-permissions-snapshot");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return executor;
+	}
+
+}
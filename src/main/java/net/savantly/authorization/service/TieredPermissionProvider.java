@@ -0,0 +1,294 @@
+package net.savantly.authorization.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import net.savantly.authorization.cache.BoundedCache;
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+import net.savantly.authorization.metrics.PermissionMetrics;
+
+/**
+ * Looks a role up in an ordered list of {@link Tier}s,
+ * like an in-process cache, then the database as the source of truth, then defaults from a configuration file.
+ * Only tiers that are invalidated by a {@link RolePermissionsChangedEvent}, like the cache tiers, belong before the source,
+ * a stale tier ahead of it would keep answering after a change or a revocation.
+ * <p>
+ * A cache tier ends the lookup as soon as it holds the role.
+ * Other tiers count an empty result as a miss: with {@link MergePolicy#FIRST_HIT} the first tier with permissions answers,
+ * with {@link MergePolicy#UNION} the permissions of every tier are merged.
+ * The merged result is then filled back into the cache tiers that missed, unless a tier failed
+ * or a {@link RolePermissionsChangedEvent} arrived during the lookup.
+ * A change discards the changed roles from the cache tiers, and the roles inheriting from them when a {@link RoleInheritanceLookup} is set.
+ * <p>
+ * A failing tier is skipped when another tier has permissions for the role, otherwise its exception is thrown,
+ * so an outage is never mistaken for a role without permissions.
+ * Every tier lookup is timed for the per-tier statistics, and reported to the {@link PermissionMetrics} under the tier name.
+ *
+ * @author jeremy branham
+ *
+ */
+public class TieredPermissionProvider implements PermissionProvider {
+
+	private static final Logger log = LoggerFactory.getLogger(TieredPermissionProvider.class);
+
+	public enum MergePolicy {
+		/**
+		 * The first tier with permissions for the role answers
+		 */
+		FIRST_HIT,
+		/**
+		 * The permissions of every tier are merged
+		 */
+		UNION
+	}
+
+	public static final int MAXIMUM_TIERS = 64;
+
+	private final List<Tier> tiers;
+	private final MergePolicy mergePolicy;
+	// incremented on every change, so a lookup that raced with it does not fill stale permissions
+	private final AtomicLong generation = new AtomicLong();
+	private PermissionMetrics permissionMetrics = PermissionMetrics.NOOP;
+	private RoleInheritanceLookup roleInheritanceLookup;
+
+	public TieredPermissionProvider(List<Tier> tiers) {
+		this(tiers, MergePolicy.FIRST_HIT);
+	}
+
+	public TieredPermissionProvider(List<Tier> tiers, MergePolicy mergePolicy) {
+		if (tiers.isEmpty() || tiers.size() > MAXIMUM_TIERS) {
+			throw new IllegalArgumentException("between 1 and " + MAXIMUM_TIERS + " tiers are required, got " + tiers.size());
+		}
+		this.tiers = Collections.unmodifiableList(new ArrayList<>(tiers));
+		this.mergePolicy = mergePolicy;
+	}
+
+	@Override
+	public List<String> getEffectivePermissions(String role) {
+		long startGeneration = generation.get();
+		List<String> firstHit = null;
+		Set<String> union = null;
+		// bit i is set when cache tier i missed
+		long missedCaches = 0;
+		RuntimeException failure = null;
+		for (int i = 0; i < tiers.size(); i++) {
+			Tier tier = tiers.get(i);
+			List<String> permissions;
+			long start = System.nanoTime();
+			try {
+				permissions = tier.lookup(role);
+			} catch (RuntimeException e) {
+				tier.record(System.nanoTime() - start, false, true);
+				if (log.isDebugEnabled()) {
+					log.debug("permission tier {} failed to look up {}", tier.getName(), role, e);
+				}
+				if (failure == null) {
+					failure = e;
+				} else {
+					failure.addSuppressed(e);
+				}
+				continue;
+			}
+			long nanos = System.nanoTime() - start;
+			boolean hit = permissions != null;
+			tier.record(nanos, hit, false);
+			permissionMetrics.recordLookup(tier.getName(), nanos, 1, hit ? 0 : 1);
+			if (!hit) {
+				if (tier.isCache()) {
+					missedCaches |= 1L << i;
+				}
+				continue;
+			}
+			if (tier.isCache() || mergePolicy == MergePolicy.FIRST_HIT) {
+				firstHit = permissions;
+				break;
+			}
+			if (union == null) {
+				union = new LinkedHashSet<>();
+			}
+			union.addAll(permissions);
+		}
+		if (failure != null && firstHit == null && union == null) {
+			throw failure;
+		}
+		List<String> result = firstHit != null ? firstHit
+				: union != null ? Collections.unmodifiableList(new ArrayList<>(union)) : Collections.<String>emptyList();
+		if (missedCaches != 0 && failure == null && generation.get() == startGeneration) {
+			fill(role, result, missedCaches);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the tiers, in lookup order
+	 */
+	public List<Tier> getTiers() {
+		return tiers;
+	}
+
+	public MergePolicy getMergePolicy() {
+		return mergePolicy;
+	}
+
+	/**
+	 * @param permissionMetrics reports the latency of every tier lookup, and the size and hit ratio of the cache tiers
+	 */
+	public void setPermissionMetrics(PermissionMetrics permissionMetrics) {
+		this.permissionMetrics = permissionMetrics;
+		for (Tier tier : tiers) {
+			if (tier.isCache()) {
+				permissionMetrics.monitorCache(tier.getName(), tier.getCache());
+			}
+		}
+	}
+
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onRolePermissionsChanged(RolePermissionsChangedEvent event) {
+		generation.incrementAndGet();
+		Set<String> changedRoles = RoleInheritanceLookup.getChangedRoles(event, roleInheritanceLookup);
+		for (Tier tier : tiers) {
+			if (!tier.isCache()) {
+				continue;
+			}
+			if (changedRoles.isEmpty()) {
+				tier.getCache().invalidateAll();
+			} else {
+				changedRoles.forEach(tier.getCache()::invalidate);
+			}
+		}
+	}
+
+	/**
+	 * @param roleInheritanceLookup widens a change to the roles inheriting from the changed roles, unset when roles do not inherit from each other
+	 */
+	public void setRoleInheritanceLookup(RoleInheritanceLookup roleInheritanceLookup) {
+		this.roleInheritanceLookup = roleInheritanceLookup;
+	}
+
+	private void fill(String role, List<String> permissions, long missedCaches) {
+		for (int i = 0; i < tiers.size(); i++) {
+			if ((missedCaches & (1L << i)) != 0) {
+				tiers.get(i).getCache().put(role, permissions);
+			}
+		}
+	}
+
+	/**
+	 * A source of permissions in a {@link TieredPermissionProvider}, with its lookup statistics
+	 */
+	public static class Tier {
+
+		private final String name;
+		private final PermissionProvider provider;
+		private final BoundedCache<String, List<String>> cache;
+		private final LongAdder lookups = new LongAdder();
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+
+		/**
+		 * A tier that counts a role without permissions as a miss
+		 */
+		public Tier(String name, PermissionProvider provider) {
+			this(name, provider, null);
+		}
+
+		private Tier(String name, PermissionProvider provider, BoundedCache<String, List<String>> cache) {
+			this.name = name;
+			this.provider = provider;
+			this.cache = cache;
+		}
+
+		/**
+		 * A tier that is filled with the merged permissions of the tiers after it, including roles without permissions
+		 */
+		public static Tier cache(String name, BoundedCache<String, List<String>> cache) {
+			return new Tier(name, null, cache);
+		}
+
+		List<String> lookup(String role) {
+			if (cache != null) {
+				return cache.get(role);
+			}
+			List<String> permissions = provider.getEffectivePermissions(role);
+			return permissions == null || permissions.isEmpty() ? null : permissions;
+		}
+
+		void record(long elapsedNanos, boolean hit, boolean error) {
+			lookups.increment();
+			nanos.add(elapsedNanos);
+			if (hit) {
+				hits.increment();
+			}
+			if (error) {
+				errors.increment();
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the provider, or null for a cache tier
+		 */
+		public PermissionProvider getProvider() {
+			return provider;
+		}
+
+		/**
+		 * @return the cache, or null when this is not a cache tier
+		 */
+		public BoundedCache<String, List<String>> getCache() {
+			return cache;
+		}
+
+		public boolean isCache() {
+			return cache != null;
+		}
+
+		public long getLookupCount() {
+			return lookups.sum();
+		}
+
+		public long getHitCount() {
+			return hits.sum();
+		}
+
+		public long getErrorCount() {
+			return errors.sum();
+		}
+
+		/**
+		 * @return the share of lookups this tier answered, or 0 before the first lookup
+		 */
+		public double getHitRate() {
+			long count = lookups.sum();
+			return count == 0 ? 0 : (double) hits.sum() / count;
+		}
+
+		/**
+		 * @return the mean duration of this tier's lookups in nanoseconds, or 0 before the first lookup
+		 */
+		public long getAverageLatencyNanos() {
+			long count = lookups.sum();
+			return count == 0 ? 0 : nanos.sum() / count;
+		}
+
+		@Override
+		public String toString() {
+			return name + " [lookups=" + getLookupCount() + ", hitRate=" + getHitRate() + ", errors=" + getErrorCount()
+					+ ", averageLatencyNanos=" + getAverageLatencyNanos() + "]";
+		}
+	}
+
+}
@@ -0,0 +1,234 @@
+package net.savantly.authorization.snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+import net.savantly.authorization.authority.GrantedAuthorityRegistry;
+import net.savantly.authorization.service.PermissionProvider;
+import net.savantly.authorization.service.RoleCatalog;
+
+/**
+ * Serves permissions from a {@link PermissionSnapshotFile}, memory-mapped read-only, so a snapshot is usable as soon as it is opened
+ * without reading the whole file onto the heap.
+ * <p>
+ * A role is found with a binary search of the role table in the mapped file. Only the names of the roles that are looked up are decoded,
+ * once, so the heap grows with the roles in use rather than with the size of the snapshot.
+ * {@link #reload()} maps a newly written file and swaps it in with a single volatile write.
+ * <p>
+ * Lookups fail with an {@link IllegalStateException} until a snapshot has been loaded, so this is usually the fallback of a
+ * <code>FailoverPermissionProvider</code> in front of the database.
+ *
+ * @author jeremy branham
+ *
+ */
+public class MappedPermissionSnapshotProvider implements PermissionProvider, RoleCatalog, InitializingBean {
+
+	private static final Logger log = LoggerFactory.getLogger(MappedPermissionSnapshotProvider.class);
+
+	private final Path file;
+	private GrantedAuthorityRegistry authorityRegistry = GrantedAuthorityRegistry.getShared();
+	private volatile Snapshot snapshot;
+
+	public MappedPermissionSnapshotProvider(Path file) {
+		this.file = file;
+	}
+
+	/**
+	 * @param authorityRegistry canonicalizes permission names as they are decoded, defaults to the shared registry
+	 */
+	public void setAuthorityRegistry(GrantedAuthorityRegistry authorityRegistry) {
+		this.authorityRegistry = authorityRegistry;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		reload();
+	}
+
+	/**
+	 * Maps the current file, keeping the previous snapshot when the file is missing or invalid
+	 *
+	 * @return true when a snapshot was loaded
+	 */
+	public boolean reload() {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// the mapping stays valid after the channel is closed
+			Snapshot loaded = new Snapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			this.snapshot = loaded;
+			if (log.isDebugEnabled()) {
+				log.debug("mapped permission snapshot version {} of {} roles from {}", loaded.version, loaded.roleCount, file);
+			}
+			return true;
+		} catch (NoSuchFileException e) {
+			log.info("no permission snapshot at {}", file);
+			return false;
+		} catch (IOException | RuntimeException e) {
+			log.warn("failed to map permission snapshot {}, keeping the previous snapshot", file, e);
+			return false;
+		}
+	}
+
+	/**
+	 * @return true when a snapshot has been loaded
+	 */
+	public boolean isAvailable() {
+		return snapshot != null;
+	}
+
+	/**
+	 * @return the version the snapshot was written with, or -1 before a snapshot is loaded
+	 */
+	public long getVersion() {
+		Snapshot current = this.snapshot;
+		return current == null ? -1 : current.version;
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	@Override
+	public List<String> getEffectivePermissions(String role) {
+		Snapshot current = current();
+		int index = current.indexOf(role.getBytes(StandardCharsets.UTF_8));
+		return index < 0 ? Collections.<String>emptyList() : current.permissions(index);
+	}
+
+	@Override
+	public Collection<String> getRoles() {
+		Snapshot current = current();
+		List<String> roles = new ArrayList<>(current.roleCount);
+		for (int i = 0; i < current.roleCount; i++) {
+			roles.add(current.string(current.roleStringId(i)));
+		}
+		return roles;
+	}
+
+	private Snapshot current() {
+		Snapshot current = this.snapshot;
+		if (current == null) {
+			throw new IllegalStateException("no permission snapshot has been loaded from " + file);
+		}
+		return current;
+	}
+
+	private class Snapshot {
+
+		private final ByteBuffer buffer;
+		private final long version;
+		private final int stringCount;
+		private final int roleCount;
+		private final int offsetsStart;
+		private final int rolesStart;
+		private final int permissionIdsStart;
+		private final int stringsStart;
+		// decoded on first use, racing threads decode the same immutable values
+		private final String[] strings;
+		private final List<?>[] permissions;
+
+		Snapshot(ByteBuffer buffer) {
+			this.buffer = buffer;
+			if (buffer.capacity() < PermissionSnapshotFile.HEADER_BYTES || buffer.getInt(0) != PermissionSnapshotFile.MAGIC) {
+				throw new IllegalArgumentException("not a permission snapshot");
+			}
+			int formatVersion = buffer.getInt(4);
+			if (formatVersion != PermissionSnapshotFile.FORMAT_VERSION) {
+				throw new IllegalArgumentException("unsupported permission snapshot format version " + formatVersion);
+			}
+			this.version = buffer.getLong(8);
+			this.stringCount = buffer.getInt(16);
+			this.roleCount = buffer.getInt(20);
+			int permissionIdCount = buffer.getInt(24);
+			this.offsetsStart = PermissionSnapshotFile.HEADER_BYTES;
+			this.rolesStart = offsetsStart + (stringCount + 1) * 4;
+			this.permissionIdsStart = rolesStart + roleCount * PermissionSnapshotFile.ROLE_ENTRY_BYTES;
+			this.stringsStart = permissionIdsStart + permissionIdCount * 4;
+			if (stringsStart > buffer.capacity() || stringsStart + buffer.getInt(rolesStart - 4) != buffer.capacity()) {
+				throw new IllegalArgumentException("truncated permission snapshot");
+			}
+			this.strings = new String[stringCount];
+			this.permissions = new List<?>[roleCount];
+		}
+
+		int indexOf(byte[] role) {
+			int low = 0;
+			int high = roleCount - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				int comparison = compare(roleStringId(middle), role);
+				if (comparison < 0) {
+					low = middle + 1;
+				} else if (comparison > 0) {
+					high = middle - 1;
+				} else {
+					return middle;
+				}
+			}
+			return -1;
+		}
+
+		int roleStringId(int index) {
+			return buffer.getInt(rolesStart + index * PermissionSnapshotFile.ROLE_ENTRY_BYTES);
+		}
+
+		@SuppressWarnings("unchecked")
+		List<String> permissions(int index) {
+			List<String> decoded = (List<String>) permissions[index];
+			if (decoded == null) {
+				int entry = rolesStart + index * PermissionSnapshotFile.ROLE_ENTRY_BYTES;
+				int first = buffer.getInt(entry + 4);
+				int count = buffer.getInt(entry + 8);
+				String[] names = new String[count];
+				for (int i = 0; i < count; i++) {
+					names[i] = string(buffer.getInt(permissionIdsStart + (first + i) * 4));
+				}
+				decoded = Collections.unmodifiableList(Arrays.asList(names));
+				permissions[index] = decoded;
+			}
+			return decoded;
+		}
+
+		String string(int id) {
+			String decoded = strings[id];
+			if (decoded == null) {
+				int start = stringsStart + buffer.getInt(offsetsStart + id * 4);
+				byte[] bytes = new byte[stringsStart + buffer.getInt(offsetsStart + (id + 1) * 4) - start];
+				for (int i = 0; i < bytes.length; i++) {
+					bytes[i] = buffer.get(start + i);
+				}
+				decoded = authorityRegistry.intern(new String(bytes, StandardCharsets.UTF_8));
+				strings[id] = decoded;
+			}
+			return decoded;
+		}
+
+		private int compare(int id, byte[] value) {
+			int start = stringsStart + buffer.getInt(offsetsStart + id * 4);
+			int length = stringsStart + buffer.getInt(offsetsStart + (id + 1) * 4) - start;
+			int common = Math.min(length, value.length);
+			for (int i = 0; i < common; i++) {
+				int difference = (buffer.get(start + i) & 0xff) - (value[i] & 0xff);
+				if (difference != 0) {
+					return difference;
+				}
+			}
+			return length - value.length;
+		}
+	}
+
+}
@@ -0,0 +1,151 @@
+package net.savantly.authorization.snapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+import net.savantly.authorization.service.PermissionProvider;
+import net.savantly.authorization.service.RoleCatalog;
+
+/**
+ * Writes the current mappings to a {@link PermissionSnapshotFile} in the background, when the bean is initialized
+ * and after every {@link RolePermissionsChangedEvent}, and then reloads the {@link MappedPermissionSnapshotProvider} reading it.
+ * <p>
+ * Changes that arrive while an export is waiting to run are folded into that export.
+ * A failed export, like one attempted while the database is unreachable, leaves the previous file in place.
+ *
+ * @author jeremy branham
+ *
+ */
+public class PermissionSnapshotExporter implements InitializingBean, DisposableBean {
+
+	private static final Logger log = LoggerFactory.getLogger(PermissionSnapshotExporter.class);
+
+	private final Supplier<? extends Map<String, ? extends Collection<String>>> mappings;
+	private final Path file;
+	private final AtomicBoolean exportPending = new AtomicBoolean();
+	private final Object exportLock = new Object();
+	private MappedPermissionSnapshotProvider snapshotProvider;
+	private ExecutorService executor;
+
+	/**
+	 * @param mappings reads the permissions of every role from the backing store
+	 */
+	public PermissionSnapshotExporter(Supplier<? extends Map<String, ? extends Collection<String>>> mappings, Path file) {
+		this.mappings = mappings;
+		this.file = file;
+	}
+
+	/**
+	 * Exports the permissions of every role the catalog lists, as the provider resolves them
+	 */
+	public static <P extends PermissionProvider & RoleCatalog> PermissionSnapshotExporter of(P permissionProvider, Path file) {
+		return new PermissionSnapshotExporter(() -> {
+			Map<String, List<String>> mappings = new LinkedHashMap<>();
+			for (String role : permissionProvider.getRoles()) {
+				mappings.put(role, permissionProvider.getEffectivePermissions(role));
+			}
+			return mappings;
+		}, file);
+	}
+
+	/**
+	 * @param snapshotProvider reloaded after every export
+	 */
+	public void setSnapshotProvider(MappedPermissionSnapshotProvider snapshotProvider) {
+		this.snapshotProvider = snapshotProvider;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		exportAsync();
+	}
+
+	@Override
+	public void destroy() {
+		synchronized (this) {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Writes the snapshot on the calling thread
+	 */
+	public void export() {
+		synchronized (exportLock) {
+			long start = System.nanoTime();
+			Map<String, ? extends Collection<String>> current = mappings.get();
+			try {
+				PermissionSnapshotFile.write(file, System.currentTimeMillis(), current);
+			} catch (IOException e) {
+				throw new UncheckedIOException("failed to write permission snapshot " + file, e);
+			}
+			if (log.isDebugEnabled()) {
+				log.debug("exported permission snapshot of {} roles to {} in {}ms", current.size(), file,
+						TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+			}
+			if (snapshotProvider != null) {
+				snapshotProvider.reload();
+			}
+		}
+	}
+
+	/**
+	 * Writes the snapshot on the background export thread, unless an export is already waiting to run
+	 *
+	 * @return completes when the waiting export has finished
+	 */
+	public CompletableFuture<Void> exportAsync() {
+		if (!exportPending.compareAndSet(false, true)) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return CompletableFuture.runAsync(() -> {
+			exportPending.set(false);
+			exportQuietly();
+		}, getExecutor());
+	}
+
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onRolePermissionsChanged(RolePermissionsChangedEvent event) {
+		exportAsync();
+	}
+
+	private void exportQuietly() {
+		try {
+			export();
+		} catch (RuntimeException e) {
+			log.warn("failed to export permission snapshot, keeping the previous snapshot", e);
+		}
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newSingleThreadExecutor(r -> {
+				Thread thread = new Thread(r, "role-permissions-snapshot-export");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return executor;
+	}
+
+}
@@ -0,0 +1,150 @@
+package net.savantly.authorization.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The binary format of a role to permissions snapshot, read by the {@link MappedPermissionSnapshotProvider}.
+ * <p>
+ * All numbers are big-endian. After the header come the string dictionary offsets, the role table sorted by the UTF-8 bytes of the role name,
+ * the permission ids of all roles back to back, and the UTF-8 bytes of every distinct role and permission name.
+ *
+ * <pre>
+ * int  magic            "SRPS"
+ * int  format version   {@link #FORMAT_VERSION}
+ * long snapshot version
+ * int  string count, role count, permission id count
+ * int  string offsets[string count + 1]      relative to the string data
+ * int  roles[role count][3]                  role string id, first permission id index, permission count
+ * int  permission ids[permission id count]
+ * byte string data
+ * </pre>
+ *
+ * @author jeremy branham
+ *
+ */
+public final class PermissionSnapshotFile {
+
+	public static final int MAGIC = 0x53525053;
+	public static final int FORMAT_VERSION = 1;
+	static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4 + 4;
+	static final int ROLE_ENTRY_BYTES = 3 * 4;
+
+	private PermissionSnapshotFile() {
+	}
+
+	/**
+	 * Writes the mappings to a temporary file next to the target, and moves it over the target,
+	 * so readers only ever see a complete snapshot
+	 *
+	 * @param version identifies the snapshot, like the time or the change log version it was taken at
+	 * @param mappings the permissions of each role, null permissions are skipped
+	 */
+	public static void write(Path file, long version, Map<String, ? extends Collection<String>> mappings) throws IOException {
+		Map<String, Integer> stringIds = new LinkedHashMap<>();
+		List<byte[]> strings = new ArrayList<>();
+		List<byte[]> roleNames = new ArrayList<>(mappings.size());
+		for (String role : mappings.keySet()) {
+			roleNames.add(role.getBytes(StandardCharsets.UTF_8));
+		}
+		roleNames.sort(PermissionSnapshotFile::compare);
+
+		int[] roleIds = new int[roleNames.size()];
+		List<int[]> permissionIds = new ArrayList<>(roleNames.size());
+		int permissionCount = 0;
+		for (int i = 0; i < roleNames.size(); i++) {
+			String role = new String(roleNames.get(i), StandardCharsets.UTF_8);
+			roleIds[i] = stringId(role, stringIds, strings);
+			List<Integer> ids = new ArrayList<>();
+			for (String permission : mappings.get(role)) {
+				if (permission != null) {
+					ids.add(stringId(permission, stringIds, strings));
+				}
+			}
+			int[] array = new int[ids.size()];
+			for (int j = 0; j < array.length; j++) {
+				array[j] = ids.get(j);
+			}
+			permissionIds.add(array);
+			permissionCount += array.length;
+		}
+
+		Path directory = file.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 64 * 1024))) {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				out.writeLong(version);
+				out.writeInt(strings.size());
+				out.writeInt(roleNames.size());
+				out.writeInt(permissionCount);
+				int offset = 0;
+				for (byte[] string : strings) {
+					out.writeInt(offset);
+					offset += string.length;
+				}
+				out.writeInt(offset);
+				int first = 0;
+				for (int i = 0; i < roleIds.length; i++) {
+					out.writeInt(roleIds[i]);
+					out.writeInt(first);
+					out.writeInt(permissionIds.get(i).length);
+					first += permissionIds.get(i).length;
+				}
+				for (int[] ids : permissionIds) {
+					for (int id : ids) {
+						out.writeInt(id);
+					}
+				}
+				for (byte[] string : strings) {
+					out.write(string);
+				}
+			}
+			try {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Orders UTF-8 bytes as unsigned, the order of the role table
+	 */
+	static int compare(byte[] left, byte[] right) {
+		int length = Math.min(left.length, right.length);
+		for (int i = 0; i < length; i++) {
+			int difference = (left[i] & 0xff) - (right[i] & 0xff);
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		return left.length - right.length;
+	}
+
+	private static int stringId(String value, Map<String, Integer> stringIds, List<byte[]> strings) {
+		Integer id = stringIds.get(value);
+		if (id == null) {
+			id = strings.size();
+			stringIds.put(value, id);
+			strings.add(value.getBytes(StandardCharsets.UTF_8));
+		}
+		return id;
+	}
+
+}
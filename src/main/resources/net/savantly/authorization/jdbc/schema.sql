@@ -0,0 +1,24 @@
+-- The tables mapped by the RolePermissions entity, for applications that do not let Hibernate create them
+CREATE TABLE IF NOT EXISTS role_permissions (
+	role VARCHAR(255) NOT NULL PRIMARY KEY
+);
+
+CREATE TABLE IF NOT EXISTS role_permissions_permissions (
+	role_permissions_role VARCHAR(255) NOT NULL,
+	permissions VARCHAR(255),
+	FOREIGN KEY (role_permissions_role) REFERENCES role_permissions (role)
+);
+
+CREATE INDEX IF NOT EXISTS idx_role_permissions_permission ON role_permissions_permissions (permissions);
+
+CREATE TABLE IF NOT EXISTS role_permissions_inherited_roles (
+	role_permissions_role VARCHAR(255) NOT NULL,
+	inherited_roles VARCHAR(255),
+	FOREIGN KEY (role_permissions_role) REFERENCES role_permissions (role)
+);
+
+CREATE TABLE IF NOT EXISTS role_permissions_change (
+	version BIGINT AUTO_INCREMENT PRIMARY KEY,
+	role VARCHAR(255) NOT NULL,
+	changed_at TIMESTAMP NOT NULL
+);
@@ -2,12 +2,40 @@ package com.example.app;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.Collections;
+
 import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurationPackages;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.test.context.FilteredClassLoader;
 import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.savantly.authorization.authority.GrantedAuthorityRegistry;
 import net.savantly.authorization.configuration.EnableRolePermissions;
+import net.savantly.authorization.configuration.RolePermissionAutoConfiguration;
+import net.savantly.authorization.jdbc.RolePermissionsRepository;
+import net.savantly.authorization.metrics.MicrometerPermissionMetrics;
+import net.savantly.authorization.metrics.PermissionMetrics;
+import net.savantly.authorization.service.CachingPermissionProvider;
+import net.savantly.authorization.service.CoalescingPermissionProvider;
+import net.savantly.authorization.service.FailoverPermissionProvider;
+import net.savantly.authorization.service.InstrumentedPermissionProvider;
+import net.savantly.authorization.service.InvertedPermissionIndex;
+import net.savantly.authorization.service.JdbcPermissionProvider;
+import net.savantly.authorization.service.JdbcTemplatePermissionProvider;
+import net.savantly.authorization.service.KnownRolesPermissionProvider;
 import net.savantly.authorization.service.PermissionProvider;
+import net.savantly.authorization.service.PermissionRoleLookup;
+import net.savantly.authorization.service.PropertiesPermissionProvider;
+import net.savantly.authorization.service.TieredPermissionProvider;
+import net.savantly.authorization.service.TieredPermissionProvider.Tier;
+import net.savantly.authorization.snapshot.MappedPermissionSnapshotProvider;
+import net.savantly.authorization.snapshot.PermissionSnapshotExporter;
 
 class ConfigurationTests {
 
@@ -19,11 +47,235 @@ class ConfigurationTests {
 			assertThat(context).getBean(PermissionProvider.class).isNotNull();
 		});
 	}
+
+	@Test
+	void cachingPermissionProviderCreated() {
+		final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+				.withUserConfiguration(TestConfig.class)
+				.withPropertyValues("savantly.permissions.cache.enabled=true");
+		contextRunner.run((context) -> {
+			assertThat(context).getBean(PermissionProvider.class).isInstanceOf(CachingPermissionProvider.class);
+		});
+	}
+
+	@Test
+	void coalescingPermissionProviderCreated() {
+		final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+				.withUserConfiguration(TestConfig.class)
+				.withPropertyValues("savantly.permissions.cache.enabled=true");
+		contextRunner.run((context) -> {
+			assertThat(context).hasSingleBean(CoalescingPermissionProvider.class);
+			assertThat(context.getBean(CachingPermissionProvider.class).getDelegate())
+					.isSameAs(context.getBean(CoalescingPermissionProvider.class));
+		});
+		contextRunner.withPropertyValues("savantly.permissions.cache.coalesce-loads=false").run((context) -> {
+			assertThat(context).doesNotHaveBean(CoalescingPermissionProvider.class);
+			assertThat(context.getBean(CachingPermissionProvider.class).getDelegate()).isInstanceOf(InstrumentedPermissionProvider.class);
+		});
+	}
+
+	@Test
+	void jpaPermissionProviderCreated() {
+		final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+				.withUserConfiguration(TestConfig.class);
+		contextRunner.run((context) -> {
+			assertThat(context).hasSingleBean(JdbcPermissionProvider.class);
+			assertThat(context).hasSingleBean(RolePermissionsRepository.class);
+		});
+	}
+
+	@Test
+	void jdbcTemplatePermissionProviderCreatedWithoutJpa() {
+		final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+				.withClassLoader(new FilteredClassLoader("org.springframework.data.jpa", "org.hibernate", "javax.persistence"))
+				.withUserConfiguration(TestConfig.class);
+		contextRunner.run((context) -> {
+			assertThat(context).hasSingleBean(JdbcTemplatePermissionProvider.class);
+			assertThat(context).doesNotHaveBean(RolePermissionsRepository.class);
+		});
+	}
+
+	@Test
+	void jdbcStoreSelected() {
+		final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+				.withUserConfiguration(TestConfig.class)
+				.withPropertyValues("savantly.permissions.store=jdbc", "savantly.permissions.cache.enabled=true");
+		contextRunner.run((context) -> {
+			assertThat(context).getBean(PermissionProvider.class).isInstanceOf(CachingPermissionProvider.class);
+			assertThat(context).hasSingleBean(JdbcTemplatePermissionProvider.class);
+			assertThat(context).doesNotHaveBean(JdbcPermissionProvider.class);
+		});
+	}
+
+	@Test
+	void autoConfiguredWithoutAnnotation() {
+		final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+				.withConfiguration(AutoConfigurations.of(DataSourceAutoConfiguration.class,
+						JdbcTemplateAutoConfiguration.class, RolePermissionAutoConfiguration.class))
+				.withPropertyValues("savantly.permissions.store=jdbc");
+		contextRunner.run((context) -> {
+			assertThat(context).hasSingleBean(JdbcTemplatePermissionProvider.class);
+		});
+	}
+
+	@Test
+	void autoConfigurationBacksOffForApplicationProvider() {
+		final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+				.withConfiguration(AutoConfigurations.of(DataSourceAutoConfiguration.class,
+						JdbcTemplateAutoConfiguration.class, RolePermissionAutoConfiguration.class))
+				.withPropertyValues("savantly.permissions.store=jdbc")
+				.withBean(PermissionProvider.class, () -> role -> Collections.singletonList("READ"));
+		contextRunner.run((context) -> {
+			assertThat(context).hasSingleBean(PermissionProvider.class);
+			assertThat(context).doesNotHaveBean(JdbcTemplatePermissionProvider.class);
+			assertThat(context).doesNotHaveBean(InstrumentedPermissionProvider.class);
+		});
+	}
+
+	@Test
+	void autoConfigurationBacksOffWithoutDataSource() {
+		final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+				.withClassLoader(new FilteredClassLoader("org.springframework.data.jpa", "org.hibernate", "javax.persistence"))
+				.withConfiguration(AutoConfigurations.of(RolePermissionAutoConfiguration.class));
+		contextRunner.run((context) -> {
+			assertThat(context).hasNotFailed();
+			assertThat(context).doesNotHaveBean(PermissionProvider.class);
+		});
+	}
+
+	@Test
+	void autoConfiguredPropertiesStoreWithoutDataSource() {
+		final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+				.withClassLoader(new FilteredClassLoader("org.springframework.data.jpa", "org.hibernate", "javax.persistence"))
+				.withConfiguration(AutoConfigurations.of(RolePermissionAutoConfiguration.class))
+				.withPropertyValues("savantly.permissions.store=properties", "savantly.permissions.roles[ROLE_USER]=READ");
+		contextRunner.run((context) -> {
+			assertThat(context).hasSingleBean(PropertiesPermissionProvider.class);
+		});
+	}
+
+	@Test
+	void applicationPackagesKeptWithJpa() {
+		final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+				.withUserConfiguration(TestConfig.class);
+		contextRunner.run((context) -> {
+			assertThat(AutoConfigurationPackages.get(context)).contains("com.example.app", "net.savantly.authorization.jdbc");
+			assertThat(context).hasSingleBean(RolePermissionsRepository.class);
+		});
+	}
+
+	@Test
+	void knownRolesPermissionProviderCreated() {
+		final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+				.withUserConfiguration(TestConfig.class)
+				.withPropertyValues("savantly.permissions.known-roles.enabled=true");
+		contextRunner.run((context) -> {
+			assertThat(context).hasSingleBean(KnownRolesPermissionProvider.class);
+			assertThat(context).getBean(PermissionProvider.class).isInstanceOf(InstrumentedPermissionProvider.class);
+			assertThat(((InstrumentedPermissionProvider) context.getBean(PermissionProvider.class)).getDelegate())
+					.isInstanceOf(KnownRolesPermissionProvider.class);
+		});
+	}
+
+	@Test
+	void invertedPermissionIndexCreated() {
+		final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+				.withClassLoader(new FilteredClassLoader("org.springframework.data.jpa", "org.hibernate", "javax.persistence"))
+				.withUserConfiguration(TestConfig.class)
+				.withPropertyValues("savantly.permissions.store=properties",
+						"savantly.permissions.roles[ROLE_ADMIN]=CREATE, READ",
+						"savantly.permissions.roles[ROLE_USER]=READ",
+						"savantly.permissions.inverted-index.enabled=true");
+		contextRunner.run((context) -> {
+			assertThat(context).hasSingleBean(InvertedPermissionIndex.class);
+			assertThat(context.getBean(InvertedPermissionIndex.class).getRolesGranting("READ")).containsExactlyInAnyOrder("ROLE_ADMIN", "ROLE_USER");
+		});
+	}
+
+	@Test
+	void invertedPermissionIndexIsPrimaryRoleLookup() {
+		final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+				.withUserConfiguration(TestConfig.class)
+				.withPropertyValues("savantly.permissions.store=jdbc", "savantly.permissions.inverted-index.enabled=true",
+						"spring.datasource.schema=classpath:net/savantly/authorization/jdbc/schema.sql");
+		contextRunner.run((context) -> {
+			assertThat(context).hasSingleBean(JdbcTemplatePermissionProvider.class);
+			assertThat(context).getBean(PermissionRoleLookup.class).isInstanceOf(InvertedPermissionIndex.class);
+		});
+	}
+
+	@Test
+	void snapshotFailoverCreated() {
+		final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+				.withUserConfiguration(TestConfig.class)
+				.withPropertyValues("savantly.permissions.snapshot-file.path=build/permissions.snapshot");
+		contextRunner.run((context) -> {
+			assertThat(context).hasSingleBean(MappedPermissionSnapshotProvider.class);
+			assertThat(context).hasSingleBean(PermissionSnapshotExporter.class);
+			assertThat(((InstrumentedPermissionProvider) context.getBean(PermissionProvider.class)).getDelegate())
+					.isInstanceOf(FailoverPermissionProvider.class);
+		});
+	}
+
+	@Test
+	void tieredPermissionProviderCreated() {
+		final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+				.withUserConfiguration(TestConfig.class)
+				.withPropertyValues("savantly.permissions.tiers.enabled=true", "savantly.permissions.cache.enabled=true",
+						"savantly.permissions.roles[ROLE_SUPPORT]=READ");
+		contextRunner.run((context) -> {
+			assertThat(context).getBean(PermissionProvider.class).isInstanceOf(TieredPermissionProvider.class);
+			assertThat(context).doesNotHaveBean(CachingPermissionProvider.class);
+			assertThat(context.getBean(TieredPermissionProvider.class).getTiers()).extracting(Tier::getName)
+					.containsExactly("memory", "source", "properties");
+			assertThat(context.getBean(PermissionProvider.class).getEffectivePermissions("ROLE_SUPPORT")).containsExactly("READ");
+			assertThat(context.getBean(TieredPermissionProvider.class).getTiers().get(1).getProvider())
+					.isSameAs(context.getBean(CoalescingPermissionProvider.class));
+		});
+	}
+
+	@Test
+	void propertiesStoreSelected() {
+		final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+				.withClassLoader(new FilteredClassLoader("org.springframework.data.jpa", "org.hibernate", "javax.persistence"))
+				.withUserConfiguration(TestConfig.class)
+				.withPropertyValues("savantly.permissions.store=properties",
+						"savantly.permissions.roles[ROLE_ADMIN]=CREATE, READ",
+						"savantly.permissions.roles[ROLE_USER]=READ");
+		contextRunner.run((context) -> {
+			assertThat(context).hasSingleBean(PropertiesPermissionProvider.class);
+			assertThat(context).doesNotHaveBean(JdbcTemplatePermissionProvider.class);
+			assertThat(context.getBean(PermissionProvider.class).getEffectivePermissions("ROLE_ADMIN")).containsExactly("CREATE", "READ");
+			// interned in the registry bean the converters are given, not in the static fallback
+			assertThat(context.getBean(PermissionProvider.class).getEffectivePermissions("ROLE_ADMIN").get(0))
+					.isSameAs(context.getBean(GrantedAuthorityRegistry.class).intern("CREATE"));
+			assertThat(context.getBean(GrantedAuthorityRegistry.class)).isNotSameAs(GrantedAuthorityRegistry.getShared());
+		});
+	}
+
+	@Test
+	void permissionMetricsCreated() {
+		final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+				.withUserConfiguration(TestConfig.class)
+				.withBean(MeterRegistry.class, SimpleMeterRegistry::new);
+		contextRunner.run((context) -> {
+			assertThat(context).getBean(PermissionMetrics.class).isInstanceOf(MicrometerPermissionMetrics.class);
+			assertThat(context).getBean(PermissionProvider.class).isInstanceOf(InstrumentedPermissionProvider.class);
+		});
+	}
+
+	@Test
+	void permissionMetricsAreNoopWithoutRegistry() {
+		final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+				.withUserConfiguration(TestConfig.class);
+		contextRunner.run((context) -> {
+			assertThat(context).getBean(PermissionMetrics.class).isSameAs(PermissionMetrics.NOOP);
+		});
+	}
 	
 	@SpringBootApplication
 	@EnableRolePermissions
 	public static class TestConfig {
 		
 	}
-
 }
@@ -0,0 +1,55 @@
+package net.savantly.authorization.authority;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+public class PermissionTrieTests {
+
+	PermissionTrie trie = new PermissionTrie(Arrays.asList("orders:read", "billing:*", "reports:*:view", "AUDIT"));
+
+	@Test
+	public void testExactGrants() {
+		assertTrue(trie.implies("orders:read"));
+		assertTrue(trie.implies("AUDIT"));
+		assertFalse(trie.implies("orders:write"));
+		assertFalse(trie.implies("orders"), "a grant should not imply its namespace");
+		assertFalse(trie.implies("orders:read:all"), "a grant should not imply its children");
+		assertEquals(4, trie.size());
+	}
+
+	@Test
+	public void testTrailingWildcardImpliesEverythingBelow() {
+		assertTrue(trie.implies("billing:read"));
+		assertTrue(trie.implies("billing:refund:approve"));
+		assertFalse(trie.implies("billing"), "the wildcard should not imply the namespace itself");
+		assertFalse(trie.implies("billingx:read"));
+	}
+
+	@Test
+	public void testInnerWildcardMatchesOneSegment() {
+		assertTrue(trie.implies("reports:sales:view"));
+		assertFalse(trie.implies("reports:sales:edit"));
+		assertFalse(trie.implies("reports:sales:q1:view"));
+
+		// the exact branch is a dead end, so the wildcard branch next to it has to be tried too
+		PermissionTrie sideBySide = new PermissionTrie(Arrays.asList("orders:eu:edit", "orders:*:view"));
+		assertTrue(sideBySide.implies("orders:eu:view"));
+		assertTrue(sideBySide.implies("orders:eu:edit"));
+		assertFalse(sideBySide.implies("orders:us:edit"));
+	}
+
+	@Test
+	public void testGlobalWildcardAndSeparator() {
+		assertTrue(new PermissionTrie(Collections.singleton("*")).implies("anything:at:all"));
+		PermissionTrie dotted = new PermissionTrie(Collections.singleton("orders.*"), '.');
+		assertTrue(dotted.implies("orders.refund.approve"));
+		assertFalse(dotted.implies("orders:refund"));
+		assertFalse(trie.implies(null));
+	}
+}
@@ -0,0 +1,190 @@
+package net.savantly.authorization.authority;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+import net.savantly.authorization.service.PermissionAwareJwtAuthenticationConverter;
+import net.savantly.authorization.service.PermissionAwareUserDetailsService;
+import net.savantly.authorization.service.PermissionBitsResolver;
+import net.savantly.authorization.service.PermissionProvider;
+import net.savantly.authorization.service.PermissionTrieResolver;
+
+public class RolePermissionEvaluatorTests {
+
+	Map<String, List<String>> mappings = new HashMap<>();
+	{
+		mappings.put("ROLE_ADMIN", Arrays.asList("CREATE", "READ", "UPDATE", "DELETE"));
+		mappings.put("ROLE_USER", Arrays.asList("READ"));
+		mappings.put("ROLE_AUDITOR", Arrays.asList("READ", "AUDIT"));
+		mappings.put("ROLE_ORDERS", Arrays.asList("orders:*", "billing:read"));
+	}
+	PermissionProvider permissionProvider = role -> mappings.getOrDefault(role, Collections.emptyList());
+	RolePermissionEvaluator evaluator = new RolePermissionEvaluator();
+
+	@Test
+	public void testJwtAuthenticationCarriesPermissionBits() {
+		PermissionAwareJwtAuthenticationConverter converter = new PermissionAwareJwtAuthenticationConverter(permissionProvider);
+		converter.setPermissionBitsResolver(new PermissionBitsResolver(permissionProvider));
+
+		Authentication authentication = converter.convert(jwt("ROLE_USER", "ROLE_AUDITOR"));
+
+		GrantedAuthority first = authentication.getAuthorities().iterator().next();
+		assertTrue(first instanceof PermissionBitsAuthority, "permission bits should be the first authority");
+		assertTrue(evaluator.hasPermission(authentication, null, "AUDIT"));
+		assertTrue(evaluator.hasPermission(authentication, null, "READ"));
+		assertFalse(evaluator.hasPermission(authentication, null, "DELETE"));
+		assertFalse(evaluator.hasPermission(authentication, null, "UNKNOWN"));
+		// the authority names stay available for hasAuthority
+		assertTrue(authentication.getAuthorities().contains(new SimpleGrantedAuthority("AUDIT")));
+		// the roles are held beside the bitset
+		assertTrue(evaluator.hasPermission(authentication, null, "ROLE_AUDITOR"));
+		assertFalse(evaluator.hasPermission(authentication, null, "ROLE_ADMIN"));
+	}
+
+	@Test
+	public void testDirectAuthoritiesWithPermissionBits() {
+		PermissionAwareUserDetailsService service = new PermissionAwareUserDetailsService(
+				username -> new User(username, "password", Arrays.asList(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("EXPORT"))),
+				permissionProvider);
+		service.setPermissionBitsResolver(new PermissionBitsResolver(permissionProvider));
+
+		UserDetails user = service.loadUserByUsername("user");
+		Authentication authentication = new TestingAuthenticationToken(user, null, new ArrayList<GrantedAuthority>(user.getAuthorities()));
+
+		assertTrue(evaluator.hasPermission(authentication, null, "READ"));
+		assertTrue(evaluator.hasPermission(authentication, null, "EXPORT"), "an authority granted by the user details should be found");
+		assertFalse(evaluator.hasPermission(authentication, null, "DELETE"));
+	}
+
+	@Test
+	public void testUserDetailsCarryPermissionBits() {
+		PermissionAwareUserDetailsService service = new PermissionAwareUserDetailsService(
+				username -> new User(username, "password", Collections.singletonList(new SimpleGrantedAuthority("ROLE_ADMIN"))),
+				permissionProvider);
+		service.setPermissionBitsResolver(new PermissionBitsResolver(permissionProvider));
+
+		UserDetails user = service.loadUserByUsername("admin");
+		Authentication authentication = new TestingAuthenticationToken(user, null, new ArrayList<GrantedAuthority>(user.getAuthorities()));
+
+		assertTrue(evaluator.hasPermission(authentication, null, "DELETE"));
+		assertFalse(evaluator.hasPermission(authentication, null, "AUDIT"));
+	}
+
+	@Test
+	public void testWildcardGrants() {
+		PermissionAwareJwtAuthenticationConverter converter = new PermissionAwareJwtAuthenticationConverter(permissionProvider);
+		converter.setPermissionTrieResolver(new PermissionTrieResolver(permissionProvider));
+		converter.setPermissionBitsResolver(new PermissionBitsResolver(permissionProvider));
+
+		Authentication authentication = converter.convert(jwt("ROLE_ORDERS", "ROLE_USER"));
+
+		assertTrue(authentication.getAuthorities().iterator().next() instanceof PermissionTrieAuthority,
+				"the trie should be the first authority");
+		assertTrue(evaluator.hasPermission(authentication, null, "orders:refund:approve"));
+		assertTrue(evaluator.hasPermission(authentication, null, "billing:read"));
+		assertTrue(evaluator.hasPermission(authentication, null, "READ"));
+		assertFalse(evaluator.hasPermission(authentication, null, "billing:write"));
+		// grants are stored as-is, not expanded
+		assertTrue(authentication.getAuthorities().contains(new SimpleGrantedAuthority("orders:*")));
+		// the roles are held beside the trie
+		assertTrue(evaluator.hasPermission(authentication, null, "ROLE_ORDERS"));
+		assertFalse(evaluator.hasPermission(authentication, null, "ROLE_ADMIN"));
+	}
+
+	@Test
+	public void testUserDetailsCarryPermissionTrie() {
+		PermissionAwareUserDetailsService service = new PermissionAwareUserDetailsService(
+				username -> new User(username, "password", Collections.singletonList(new SimpleGrantedAuthority("ROLE_ORDERS"))),
+				permissionProvider);
+		service.setPermissionTrieResolver(new PermissionTrieResolver(permissionProvider));
+
+		UserDetails user = service.loadUserByUsername("clerk");
+		Authentication authentication = new TestingAuthenticationToken(user, null, new ArrayList<GrantedAuthority>(user.getAuthorities()));
+
+		assertTrue(evaluator.hasPermission(authentication, null, "orders:read"));
+		assertFalse(evaluator.hasPermission(authentication, null, "DELETE"));
+	}
+
+	@Test
+	public void testChecksDoNotScanTheAuthorityNames() {
+		PermissionBitsResolver bitsResolver = new PermissionBitsResolver(permissionProvider);
+		PermissionTrieResolver trieResolver = new PermissionTrieResolver(permissionProvider);
+		List<String> roles = Arrays.asList("ROLE_USER", "EXPORT");
+
+		Authentication bits = new TestingAuthenticationToken("user", null, Arrays.asList(bitsResolver.resolve(roles), unscannable()));
+		Authentication trie = new TestingAuthenticationToken("user", null, Arrays.asList(trieResolver.resolve(roles), unscannable()));
+
+		for (Authentication authentication : Arrays.asList(bits, trie)) {
+			assertTrue(evaluator.hasPermission(authentication, null, "READ"));
+			assertTrue(evaluator.hasPermission(authentication, null, "ROLE_USER"));
+			assertTrue(evaluator.hasPermission(authentication, null, "EXPORT"));
+			assertFalse(evaluator.hasPermission(authentication, null, "DELETE"));
+			assertFalse(evaluator.hasPermission(authentication, null, "ROLE_ADMIN"));
+		}
+	}
+
+	@Test
+	public void testPermissionBitsWithoutAuthorityNamesFallBackToScan() {
+		PermissionIndex index = new PermissionIndex();
+		PermissionBitsAuthority bits = new PermissionBitsAuthority(index, index.toBits(Arrays.asList("READ")));
+		Authentication authentication = new TestingAuthenticationToken("user", null,
+				Arrays.asList(bits, new SimpleGrantedAuthority("ROLE_USER")));
+
+		assertFalse(bits.isComplete());
+		assertTrue(evaluator.hasPermission(authentication, null, "READ"));
+		assertTrue(evaluator.hasPermission(authentication, null, "ROLE_USER"));
+		assertFalse(evaluator.hasPermission(authentication, null, "DELETE"));
+	}
+
+	@Test
+	public void testFallsBackToAuthorityNames() {
+		Authentication authentication = new TestingAuthenticationToken("user", null, "READ");
+		assertTrue(evaluator.hasPermission(authentication, null, "READ"));
+		assertFalse(evaluator.hasPermission(authentication, null, "DELETE"));
+	}
+
+	@Test
+	public void testRoleBitsAreOred() {
+		PermissionBitsResolver resolver = new PermissionBitsResolver(permissionProvider);
+		PermissionBitsAuthority bits = resolver.resolve(Arrays.asList("ROLE_USER", "ROLE_AUDITOR"));
+		assertEquals(2, bits.getPermissionCount());
+
+		mappings.put("ROLE_USER", Arrays.asList("READ", "COMMENT"));
+		resolver.onRolePermissionsChanged(new RolePermissionsChangedEvent(this, Collections.singleton("ROLE_USER")));
+		assertTrue(resolver.resolve(Arrays.asList("ROLE_USER")).hasPermission("COMMENT"));
+	}
+
+	/**
+	 * @return an authority that fails the test when the evaluator reads its name
+	 */
+	private GrantedAuthority unscannable() {
+		return () -> {
+			throw new AssertionError("the authority names should not be scanned");
+		};
+	}
+
+	private Jwt jwt(String... groups) {
+		return Jwt.withTokenValue("token")
+				.header("alg", "none")
+				.claim("groups", Arrays.asList(groups))
+				.build();
+	}
+}
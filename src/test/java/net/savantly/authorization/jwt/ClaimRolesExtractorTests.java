@@ -0,0 +1,68 @@
+package net.savantly.authorization.jwt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class ClaimRolesExtractorTests {
+
+	Map<String, Object> claims = new HashMap<>();
+	{
+		claims.put("groups", Arrays.asList("ADMINS", "USERS"));
+		claims.put("scope", "orders.read orders.write");
+
+		Map<String, Object> realmAccess = new HashMap<>();
+		realmAccess.put("roles", new String[] { "offline_access" });
+		claims.put("realm_access", realmAccess);
+
+		Map<String, Object> client = new HashMap<>();
+		client.put("roles", Arrays.asList("manager"));
+		Map<String, Object> resourceAccess = new HashMap<>();
+		resourceAccess.put("my-client", client);
+		claims.put("resource_access", resourceAccess);
+	}
+
+	@Test
+	public void testSingleClaim() {
+		assertEquals(Arrays.asList("ADMINS", "USERS"), ClaimRolesExtractor.of("groups").extract(claims));
+	}
+
+	@Test
+	public void testSingleListClaimIsNotCopied() {
+		assertSame(claims.get("groups"), ClaimRolesExtractor.of("groups").extract(claims), "the claim itself should be returned");
+		assertEquals(Arrays.asList("ROLE_ADMINS", "ROLE_USERS"), ClaimRolesExtractor.builder().claim("groups", "ROLE_").build().extract(claims));
+
+		claims.put("groups", Arrays.asList("ADMINS", "", null, 42));
+		assertEquals(Arrays.asList("ROLE_ADMINS", "ROLE_42"), ClaimRolesExtractor.builder().claim("groups", "ROLE_").build().extract(claims),
+				"a copied claim should be filtered");
+	}
+
+	@Test
+	public void testMultipleClaims() {
+		ClaimRolesExtractor extractor = ClaimRolesExtractor.builder()
+				.claim("groups")
+				.claim("realm_access.roles")
+				.claim("resource_access.my-client.roles", "ROLE_")
+				.delimitedClaim("scope", " ", "SCOPE_")
+				.build();
+
+		assertEquals(Arrays.asList("ADMINS", "USERS", "offline_access", "ROLE_manager", "SCOPE_orders.read", "SCOPE_orders.write"),
+				extractor.extract(claims));
+	}
+
+	@Test
+	public void testStringClaimWithoutDelimiterIsOneRole() {
+		assertEquals(Arrays.asList("orders.read orders.write"), ClaimRolesExtractor.of("scope").extract(claims));
+	}
+
+	@Test
+	public void testMissingClaimsAreIgnored() {
+		assertTrue(ClaimRolesExtractor.of("missing", "groups.roles", "realm_access.missing.roles").extract(claims).isEmpty());
+	}
+}
@@ -0,0 +1,133 @@
+package net.savantly.authorization.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.savantly.authorization.cache.BoundedCache;
+import net.savantly.authorization.service.InstrumentedPermissionProvider;
+import net.savantly.authorization.service.PermissionAwareJwtAuthenticationConverter;
+import net.savantly.authorization.service.PermissionAwareUserDetailsService;
+import net.savantly.authorization.service.PermissionProvider;
+
+public class MicrometerPermissionMetricsTests {
+
+	Map<String, List<String>> mappings = new HashMap<>();
+	{
+		mappings.put("ROLE_ADMIN", Arrays.asList("CREATE", "READ"));
+		mappings.put("ROLE_USER", Arrays.asList("READ"));
+	}
+	PermissionProvider permissionProvider = role -> mappings.getOrDefault(role, Collections.emptyList());
+	SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	MicrometerPermissionMetrics metrics = new MicrometerPermissionMetrics(registry);
+
+	@Test
+	public void testProviderLookups() {
+		InstrumentedPermissionProvider provider = new InstrumentedPermissionProvider(permissionProvider, metrics, "test");
+		provider.getEffectivePermissions("ROLE_ADMIN");
+		provider.getEffectivePermissions("UNKNOWN_ROLE");
+		provider.getEffectivePermissions(Arrays.asList("ROLE_ADMIN", "ROLE_USER"));
+
+		assertEquals(3, registry.get(MicrometerPermissionMetrics.LOOKUP).tag("provider", "test").timer().count());
+		assertEquals(4, registry.get(MicrometerPermissionMetrics.LOOKUP_ROLES).tag("provider", "test").summary().totalAmount());
+		assertEquals(1, registry.get(MicrometerPermissionMetrics.UNKNOWN_ROLES).tag("provider", "test").counter().count());
+	}
+
+	@Test
+	public void testUnknownRolesOfBulkLookups() {
+		PermissionProvider bulkProvider = new PermissionProvider() {
+			@Override
+			public List<String> getEffectivePermissions(String role) {
+				return permissionProvider.getEffectivePermissions(role);
+			}
+
+			@Override
+			public boolean isBulkLookupByRole() {
+				return true;
+			}
+		};
+		InstrumentedPermissionProvider provider = new InstrumentedPermissionProvider(bulkProvider, metrics, "test");
+		assertEquals(2, provider.getEffectivePermissions(Arrays.asList("ROLE_ADMIN", "UNKNOWN_A", "ROLE_USER", "UNKNOWN_B")).size());
+
+		assertEquals(4, registry.get(MicrometerPermissionMetrics.LOOKUP_ROLES).tag("provider", "test").summary().totalAmount());
+		assertEquals(2, registry.get(MicrometerPermissionMetrics.UNKNOWN_ROLES).tag("provider", "test").counter().count());
+	}
+
+	@Test
+	public void testBulkLookupStaysMerged() {
+		AtomicInteger bulkLookups = new AtomicInteger();
+		PermissionProvider mergingProvider = new PermissionProvider() {
+			@Override
+			public List<String> getEffectivePermissions(String role) {
+				throw new AssertionError("a bulk lookup should not be split into single role lookups");
+			}
+
+			@Override
+			public Set<String> getEffectivePermissions(Collection<String> roles) {
+				bulkLookups.incrementAndGet();
+				Set<String> permissions = new LinkedHashSet<>();
+				roles.forEach(role -> permissions.addAll(permissionProvider.getEffectivePermissions(role)));
+				return permissions;
+			}
+		};
+		InstrumentedPermissionProvider provider = new InstrumentedPermissionProvider(mergingProvider, metrics, "test");
+		assertEquals(2, provider.getEffectivePermissions(Arrays.asList("ROLE_ADMIN", "UNKNOWN_A")).size());
+		assertEquals(0, provider.getEffectivePermissions(Arrays.asList("UNKNOWN_A", "UNKNOWN_B", "UNKNOWN_A")).size());
+
+		assertEquals(2, bulkLookups.get());
+		assertEquals(5, registry.get(MicrometerPermissionMetrics.LOOKUP_ROLES).tag("provider", "test").summary().totalAmount());
+		assertEquals(2, registry.get(MicrometerPermissionMetrics.UNKNOWN_ROLES).tag("provider", "test").counter().count(),
+				"only a lookup that found nothing should count its distinct roles");
+	}
+
+	@Test
+	public void testJwtResolutionAndCache() {
+		PermissionAwareJwtAuthenticationConverter converter = new PermissionAwareJwtAuthenticationConverter(permissionProvider);
+		converter.setAuthorityCache(new BoundedCache<>(100));
+		converter.setPermissionMetrics(metrics);
+
+		converter.convert(jwt("ROLE_ADMIN", "ROLE_USER"));
+		converter.convert(jwt("ROLE_USER", "ROLE_ADMIN"));
+
+		assertEquals(2, registry.get(MicrometerPermissionMetrics.RESOLUTION).tag("source", "jwt").timer().count());
+		assertEquals(2, registry.get(MicrometerPermissionMetrics.RESOLUTION_ROLES).tag("source", "jwt").summary().mean());
+		// two roles and two distinct permissions
+		assertEquals(4, registry.get(MicrometerPermissionMetrics.RESOLUTION_AUTHORITIES).tag("source", "jwt").summary().mean());
+		assertEquals(0.5, registry.get(MicrometerPermissionMetrics.CACHE_HIT_RATIO).tag("cache", "jwt-authorities").gauge().value());
+		assertEquals(1, registry.get(MicrometerPermissionMetrics.CACHE_REQUESTS).tags("cache", "jwt-authorities", "result", "hit").functionCounter().count());
+	}
+
+	@Test
+	public void testUserDetailsResolution() {
+		PermissionAwareUserDetailsService service = new PermissionAwareUserDetailsService(
+				username -> new User(username, "password", Collections.singletonList(new SimpleGrantedAuthority("ROLE_ADMIN"))),
+				permissionProvider);
+		service.setPermissionMetrics(metrics);
+
+		service.loadUserByUsername("admin");
+
+		assertEquals(1, registry.get(MicrometerPermissionMetrics.RESOLUTION).tag("source", "user-details").timer().count());
+		assertEquals(3, registry.get(MicrometerPermissionMetrics.RESOLUTION_AUTHORITIES).tag("source", "user-details").summary().totalAmount());
+	}
+
+	private Jwt jwt(String... groups) {
+		return Jwt.withTokenValue("token")
+				.header("alg", "none")
+				.claim("groups", Arrays.asList(groups))
+				.build();
+	}
+}
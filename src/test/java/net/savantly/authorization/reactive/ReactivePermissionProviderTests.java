@@ -0,0 +1,176 @@
+package net.savantly.authorization.reactive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.MapReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import io.r2dbc.h2.CloseableConnectionFactory;
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.Result;
+import net.savantly.authorization.service.PermissionProvider;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+public class ReactivePermissionProviderTests {
+
+	CloseableConnectionFactory connectionFactory = H2ConnectionFactory.inMemory("reactive-permissions");
+	R2dbcPermissionProvider provider = new R2dbcPermissionProvider(connectionFactory);
+
+	@BeforeEach
+	public void beforeEach() {
+		execute("CREATE TABLE role_permissions (role VARCHAR(255) PRIMARY KEY)",
+				"CREATE TABLE role_permissions_permissions (role_permissions_role VARCHAR(255) NOT NULL, permissions VARCHAR(255))",
+				"CREATE TABLE role_permissions_inherited_roles (role_permissions_role VARCHAR(255) NOT NULL, inherited_roles VARCHAR(255))",
+				"INSERT INTO role_permissions VALUES ('ROLE_ADMIN'), ('ROLE_USER'), ('ROLE_OWNER')",
+				"INSERT INTO role_permissions_permissions VALUES ('ROLE_ADMIN', 'CREATE'), ('ROLE_ADMIN', 'READ'), ('ROLE_USER', 'READ'), ('ROLE_OWNER', 'DELETE')",
+				"INSERT INTO role_permissions_inherited_roles VALUES ('ROLE_OWNER', 'ROLE_ADMIN'), ('ROLE_ADMIN', 'ROLE_USER')");
+	}
+
+	@AfterEach
+	public void afterEach() {
+		execute("DROP TABLE role_permissions_inherited_roles", "DROP TABLE role_permissions_permissions", "DROP TABLE role_permissions");
+	}
+
+	@Test
+	public void testEffectivePermissions() {
+		StepVerifier.create(provider.getEffectivePermissions("ROLE_ADMIN"))
+			.assertNext(permissions -> assertEquals(new HashSet<>(Arrays.asList("CREATE", "READ")), new HashSet<>(permissions)))
+			.verifyComplete();
+		StepVerifier.create(provider.getEffectivePermissions("UNKNOWN_ROLE"))
+			.assertNext(permissions -> assertTrue(permissions.isEmpty()))
+			.verifyComplete();
+	}
+
+	@Test
+	public void testEffectivePermissionsForRoles() {
+		StepVerifier.create(provider.getEffectivePermissions(Arrays.asList("ROLE_ADMIN", "ROLE_USER", "UNKNOWN_ROLE")))
+			.assertNext(permissions -> assertEquals(new HashSet<>(Arrays.asList("CREATE", "READ")), permissions))
+			.verifyComplete();
+	}
+
+	@Test
+	public void testInheritedPermissions() {
+		StepVerifier.create(provider.getEffectivePermissions("ROLE_OWNER"))
+			.assertNext(permissions -> assertEquals(new HashSet<>(Arrays.asList("DELETE", "CREATE", "READ")), new HashSet<>(permissions)))
+			.verifyComplete();
+		StepVerifier.create(provider.getEffectivePermissions(Arrays.asList("ROLE_OWNER", "ROLE_USER")))
+			.assertNext(permissions -> assertEquals(new HashSet<>(Arrays.asList("DELETE", "CREATE", "READ")), permissions))
+			.verifyComplete();
+	}
+
+	@Test
+	public void testChangedInheritedRoles() {
+		StepVerifier.create(provider.getEffectivePermissions("ROLE_USER"))
+			.assertNext(permissions -> assertEquals(Collections.singletonList("READ"), permissions))
+			.verifyComplete();
+		execute("INSERT INTO role_permissions_permissions VALUES ('ROLE_GUEST', 'BROWSE')",
+				"INSERT INTO role_permissions_inherited_roles VALUES ('ROLE_USER', 'ROLE_GUEST')");
+		StepVerifier.create(provider.refreshInheritance(Collections.singleton("ROLE_USER")))
+			.verifyComplete();
+		StepVerifier.create(provider.getEffectivePermissions("ROLE_OWNER"))
+			.assertNext(permissions -> assertEquals(new HashSet<>(Arrays.asList("DELETE", "CREATE", "READ", "BROWSE")), new HashSet<>(permissions)))
+			.verifyComplete();
+
+		execute("INSERT INTO role_permissions_inherited_roles VALUES ('ROLE_GUEST', 'ROLE_OWNER')");
+		StepVerifier.create(provider.refreshInheritance(Collections.singleton("ROLE_GUEST")))
+			.expectError(IllegalArgumentException.class)
+			.verify();
+		StepVerifier.create(provider.getEffectivePermissions("ROLE_GUEST"))
+			.assertNext(permissions -> assertEquals(Collections.singletonList("BROWSE"), permissions))
+			.verifyComplete();
+	}
+
+	@Test
+	public void testBlockingAdapterRunsOnScheduler() {
+		PermissionProvider blocking = role -> {
+			assertTrue(Thread.currentThread().getName().startsWith("blocking-test"), "lookup should run on the bounded scheduler");
+			return Collections.singletonList("READ");
+		};
+		BlockingPermissionProviderAdapter adapter = new BlockingPermissionProviderAdapter(blocking,
+				Schedulers.newBoundedElastic(2, 100, "blocking-test"));
+		StepVerifier.create(adapter.getEffectivePermissions("ROLE_USER"))
+			.expectNext(Collections.singletonList("READ"))
+			.verifyComplete();
+	}
+
+	@Test
+	public void testJwtAuthenticationConverter() {
+		ReactivePermissionAwareJwtAuthenticationConverter converter = new ReactivePermissionAwareJwtAuthenticationConverter(provider);
+		Jwt jwt = Jwt.withTokenValue("token")
+				.header("alg", "none")
+				.claim("groups", Arrays.asList("ROLE_ADMIN"))
+				.build();
+		StepVerifier.create(converter.convert(jwt))
+			.assertNext(authentication -> assertEquals(new HashSet<>(Arrays.asList("ROLE_ADMIN", "CREATE", "READ")),
+					AuthorityUtils.authorityListToSet(authentication.getAuthorities())))
+			.verifyComplete();
+	}
+
+	@Test
+	public void testUserDetailsService() {
+		MapReactiveUserDetailsService users = new MapReactiveUserDetailsService(
+				new User("admin", "password", Collections.singletonList(new SimpleGrantedAuthority("ROLE_ADMIN"))));
+		ReactivePermissionAwareUserDetailsService service = new ReactivePermissionAwareUserDetailsService(users, provider);
+		StepVerifier.create(service.findByUsername("admin"))
+			.assertNext(user -> {
+				assertEquals("password", user.getPassword());
+				assertEquals(new HashSet<>(Arrays.asList("ROLE_ADMIN", "CREATE", "READ")),
+						AuthorityUtils.authorityListToSet(user.getAuthorities()));
+			})
+			.verifyComplete();
+		StepVerifier.create(service.findByUsername("missing"))
+			.verifyComplete();
+	}
+
+	@Test
+	public void testUserDetailsServiceKeepsCustomUser() {
+		TenantUser tenantUser = new TenantUser("admin", "tenant-1");
+		ReactivePermissionAwareUserDetailsService service = new ReactivePermissionAwareUserDetailsService(
+				username -> Mono.just(tenantUser), provider);
+		StepVerifier.create(service.findByUsername("admin"))
+			.assertNext(user -> {
+				assertSame(tenantUser, ((ReactivePermissionAwareUserDetailsService.UserDetailsWrapper) user).getUserDetails());
+				assertTrue(AuthorityUtils.authorityListToSet(user.getAuthorities()).containsAll(Arrays.asList("ROLE_ADMIN", "CREATE")));
+			})
+			.verifyComplete();
+	}
+
+	static class TenantUser extends User {
+
+		private static final long serialVersionUID = 1L;
+		final String tenant;
+
+		TenantUser(String username, String tenant) {
+			super(username, "password", Collections.singletonList(new SimpleGrantedAuthority("ROLE_ADMIN")));
+			this.tenant = tenant;
+		}
+	}
+
+	private void execute(String... statements) {
+		List<String> sql = Arrays.asList(statements);
+		Flux.usingWhen(connectionFactory.create(),
+				connection -> Flux.fromIterable(sql)
+					.concatMap(statement -> Flux.from(connection.createStatement(statement).execute()))
+					.concatMap(Result::getRowsUpdated),
+				Connection::close)
+			.then()
+			.block();
+	}
+}
@@ -0,0 +1,151 @@
+package net.savantly.authorization.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import net.savantly.authorization.cache.BoundedCache;
+import net.savantly.authorization.cache.CacheStatistics;
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+
+public class CachingPermissionProviderTests {
+
+	AtomicInteger calls = new AtomicInteger();
+	AtomicLong ticker = new AtomicLong();
+	PermissionProvider delegate = role -> {
+		calls.incrementAndGet();
+		List<String> permissions = new ArrayList<>();
+		permissions.add(role + "_READ");
+		return permissions;
+	};
+
+	@Test
+	public void testHitsAreServedFromCache() {
+		CachingPermissionProvider provider = new CachingPermissionProvider(delegate);
+		provider.getEffectivePermissions("ROLE_ADMIN");
+		List<String> permissions = provider.getEffectivePermissions("ROLE_ADMIN");
+
+		assertTrue(permissions.contains("ROLE_ADMIN_READ"), "ROLE_ADMIN_READ permission should be present");
+		assertEquals(1, calls.get(), "delegate should be called once");
+		CacheStatistics statistics = provider.getStatistics();
+		assertEquals(1, statistics.getHitCount());
+		assertEquals(1, statistics.getMissCount());
+	}
+
+	@Test
+	public void testExpireAfterWrite() {
+		CachingPermissionProvider provider = new CachingPermissionProvider(delegate,
+				new BoundedCache<>(10, Duration.ofSeconds(10), null, ticker::get));
+		provider.getEffectivePermissions("ROLE_ADMIN");
+		ticker.addAndGet(Duration.ofSeconds(5).toNanos());
+		provider.getEffectivePermissions("ROLE_ADMIN");
+		assertEquals(1, calls.get(), "entry should still be live");
+
+		ticker.addAndGet(Duration.ofSeconds(5).toNanos());
+		provider.getEffectivePermissions("ROLE_ADMIN");
+		assertEquals(2, calls.get(), "entry should have expired");
+	}
+
+	@Test
+	public void testExpireAfterAccess() {
+		CachingPermissionProvider provider = new CachingPermissionProvider(delegate,
+				new BoundedCache<>(10, null, Duration.ofSeconds(10), ticker::get));
+		provider.getEffectivePermissions("ROLE_ADMIN");
+		for (int i = 0; i < 5; i++) {
+			ticker.addAndGet(Duration.ofSeconds(5).toNanos());
+			provider.getEffectivePermissions("ROLE_ADMIN");
+		}
+		assertEquals(1, calls.get(), "accessed entry should not expire");
+
+		ticker.addAndGet(Duration.ofSeconds(10).toNanos());
+		provider.getEffectivePermissions("ROLE_ADMIN");
+		assertEquals(2, calls.get(), "idle entry should have expired");
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() {
+		CachingPermissionProvider provider = new CachingPermissionProvider(delegate, new BoundedCache<>(2));
+		provider.getEffectivePermissions("ROLE_A");
+		provider.getEffectivePermissions("ROLE_B");
+		provider.getEffectivePermissions("ROLE_A");
+		provider.getEffectivePermissions("ROLE_C");
+		assertEquals(3, calls.get());
+
+		provider.getEffectivePermissions("ROLE_A");
+		assertEquals(3, calls.get(), "recently used role should still be cached");
+		provider.getEffectivePermissions("ROLE_B");
+		assertEquals(4, calls.get(), "least recently used role should have been evicted");
+		assertEquals(2, provider.getStatistics().getEvictionCount());
+	}
+
+	@Test
+	public void testInvalidate() {
+		CachingPermissionProvider provider = new CachingPermissionProvider(delegate);
+		provider.getEffectivePermissions("ROLE_ADMIN");
+		provider.invalidate("ROLE_ADMIN");
+		provider.getEffectivePermissions("ROLE_ADMIN");
+		assertEquals(2, calls.get());
+	}
+
+	@Test
+	public void testLoadOverlappingInvalidationIsNotCached() {
+		BoundedCache<String, List<String>> cache = new BoundedCache<>(10);
+		AtomicInteger version = new AtomicInteger();
+		CachingPermissionProvider provider = new CachingPermissionProvider(role -> {
+			List<String> permissions = new ArrayList<>();
+			permissions.add(role + "_V" + version.get());
+			if (calls.incrementAndGet() == 1) {
+				// the mapping changes while the first load is in flight
+				version.incrementAndGet();
+				cache.invalidate(role);
+			}
+			return permissions;
+		}, cache);
+
+		assertEquals("ROLE_ADMIN_V0", provider.getEffectivePermissions("ROLE_ADMIN").get(0), "the caller still gets its load");
+		assertEquals(0, cache.size(), "a load that overlapped an invalidation should not be cached");
+		assertEquals("ROLE_ADMIN_V1", provider.getEffectivePermissions("ROLE_ADMIN").get(0));
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testChangeEvictsInheritingRoles() {
+		BoundedCache<String, List<String>> cache = new BoundedCache<>(10);
+		CachingPermissionProvider provider = new CachingPermissionProvider(delegate, cache);
+		provider.setRoleInheritanceLookup(roles -> roles.contains("ROLE_VIEWER")
+				? new LinkedHashSet<>(Arrays.asList("ROLE_VIEWER", "ROLE_EDITOR", "ROLE_ADMIN")) : new LinkedHashSet<>(roles));
+		provider.getEffectivePermissions("ROLE_VIEWER");
+		provider.getEffectivePermissions("ROLE_EDITOR");
+		provider.getEffectivePermissions("ROLE_ADMIN");
+		provider.getEffectivePermissions("ROLE_AUDITOR");
+
+		provider.onRolePermissionsChanged(new RolePermissionsChangedEvent(this, Collections.singleton("ROLE_VIEWER")));
+		assertEquals(1, cache.size(), "the roles inheriting from the changed role should be evicted with it");
+		provider.getEffectivePermissions("ROLE_AUDITOR");
+		assertEquals(4, calls.get());
+	}
+
+	@Test
+	public void testFailedInheritanceLookupEvictsEverything() {
+		BoundedCache<String, List<String>> cache = new BoundedCache<>(10);
+		CachingPermissionProvider provider = new CachingPermissionProvider(delegate, cache);
+		provider.setRoleInheritanceLookup(roles -> {
+			throw new IllegalStateException("database unavailable");
+		});
+		provider.getEffectivePermissions("ROLE_VIEWER");
+		provider.getEffectivePermissions("ROLE_AUDITOR");
+
+		provider.onRolePermissionsChanged(new RolePermissionsChangedEvent(this, Collections.singleton("ROLE_VIEWER")));
+		assertEquals(0, cache.size(), "every role should be treated as changed");
+	}
+}
@@ -0,0 +1,154 @@
+package net.savantly.authorization.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+
+public class CoalescingPermissionProviderTests {
+
+	static final int CALLERS = 32;
+
+	AtomicInteger calls = new AtomicInteger();
+	CountDownLatch release = new CountDownLatch(1);
+	volatile RuntimeException failure;
+	// blocks until released, so every caller arrives while the first lookup is in flight
+	PermissionProvider slowProvider = role -> {
+		calls.incrementAndGet();
+		try {
+			release.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return Collections.singletonList(role + "_READ");
+	};
+	ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+	@AfterEach
+	public void afterEach() {
+		release.countDown();
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testConcurrentLookupsShareOneCall() throws Exception {
+		CoalescingPermissionProvider provider = new CoalescingPermissionProvider(slowProvider);
+		List<Future<List<String>>> results = new ArrayList<>();
+		for (int i = 0; i < CALLERS; i++) {
+			results.add(executor.submit(() -> provider.getEffectivePermissions("ROLE_POPULAR")));
+		}
+		awaitCoalesced(provider, CALLERS - 1);
+		release.countDown();
+
+		List<String> first = results.get(0).get(5, TimeUnit.SECONDS);
+		for (Future<List<String>> result : results) {
+			assertSame(first, result.get(5, TimeUnit.SECONDS), "every caller should share the result");
+		}
+		assertEquals(1, calls.get(), "the store should be called once");
+		assertEquals(Collections.singletonList("ROLE_POPULAR_READ"), first);
+
+		provider.getEffectivePermissions("ROLE_POPULAR");
+		assertEquals(2, calls.get(), "a completed lookup should not be remembered");
+	}
+
+	@Test
+	public void testConcurrentBulkLookupsShareOneCall() throws Exception {
+		CoalescingPermissionProvider provider = new CoalescingPermissionProvider(slowProvider);
+		List<Future<?>> results = new ArrayList<>();
+		for (int i = 0; i < CALLERS; i++) {
+			List<String> roles = i % 2 == 0 ? Arrays.asList("ROLE_A", "ROLE_B") : Arrays.asList("ROLE_B", "ROLE_A", "ROLE_A");
+			results.add(executor.submit(() -> provider.getEffectivePermissions(roles)));
+		}
+		awaitCoalesced(provider, CALLERS - 1);
+		release.countDown();
+		for (Future<?> result : results) {
+			result.get(5, TimeUnit.SECONDS);
+		}
+		// the default bulk lookup calls the single role lookup once per role
+		assertEquals(2, calls.get());
+	}
+
+	@Test
+	public void testExceptionIsPropagatedToEveryCaller() throws Exception {
+		CoalescingPermissionProvider provider = new CoalescingPermissionProvider(slowProvider);
+		failure = new IllegalStateException("store unavailable");
+		List<Future<List<String>>> results = new ArrayList<>();
+		for (int i = 0; i < CALLERS; i++) {
+			results.add(executor.submit(() -> provider.getEffectivePermissions("ROLE_POPULAR")));
+		}
+		awaitCoalesced(provider, CALLERS - 1);
+		release.countDown();
+
+		for (Future<List<String>> result : results) {
+			ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+			assertSame(failure, e.getCause());
+		}
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	public void testWaitingCallerTimesOut() throws Exception {
+		CoalescingPermissionProvider provider = new CoalescingPermissionProvider(slowProvider, Duration.ofMillis(100));
+		Future<List<String>> first = executor.submit(() -> provider.getEffectivePermissions("ROLE_POPULAR"));
+		while (calls.get() == 0) {
+			Thread.sleep(1);
+		}
+
+		PermissionLookupException e = assertThrows(PermissionLookupException.class,
+				() -> provider.getEffectivePermissions("ROLE_POPULAR"));
+		assertEquals(Collections.singleton("ROLE_POPULAR"), e.getRoles());
+
+		release.countDown();
+		assertEquals(Collections.singletonList("ROLE_POPULAR_READ"), first.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testChangeStartsNewLookup() throws Exception {
+		CoalescingPermissionProvider provider = new CoalescingPermissionProvider(slowProvider);
+		Future<List<String>> before = executor.submit(() -> provider.getEffectivePermissions("ROLE_POPULAR"));
+		Future<List<String>> waiting = executor.submit(() -> provider.getEffectivePermissions("ROLE_POPULAR"));
+		awaitCoalesced(provider, 1);
+
+		provider.onRolePermissionsChanged(new RolePermissionsChangedEvent(this, Collections.singletonList("ROLE_POPULAR")));
+		Future<List<String>> after = executor.submit(() -> provider.getEffectivePermissions("ROLE_POPULAR"));
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (calls.get() < 2 && System.nanoTime() < deadline) {
+			Thread.sleep(1);
+		}
+		assertEquals(2, calls.get(), "a lookup after the change should not join the one from before it");
+		assertEquals(1, provider.getCoalescedCount());
+
+		release.countDown();
+		assertSame(before.get(5, TimeUnit.SECONDS), waiting.get(5, TimeUnit.SECONDS));
+		assertEquals(Collections.singletonList("ROLE_POPULAR_READ"), after.get(5, TimeUnit.SECONDS));
+	}
+
+	private void awaitCoalesced(CoalescingPermissionProvider provider, int coalesced) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (provider.getCoalescedCount() < coalesced && System.nanoTime() < deadline) {
+			Thread.sleep(1);
+		}
+		assertTrue(provider.getCoalescedCount() >= coalesced, "callers should be waiting on the lookup in flight");
+	}
+}
@@ -0,0 +1,190 @@
+package net.savantly.authorization.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import net.savantly.authorization.authority.GrantedAuthorityRegistry;
+
+/**
+ * Verifies the steady-state authorization path hands out the same authority instances on every request
+ */
+public class GrantedAuthorityAllocationTests {
+
+	GrantedAuthorityRegistry registry = new GrantedAuthorityRegistry();
+	PermissionProvider permissionProvider = role -> {
+		// a fresh list of fresh strings on every call, like a JPA load
+		List<String> permissions = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			permissions.add(new String(role + "_PERMISSION_" + i));
+		}
+		return permissions;
+	};
+
+	@Test
+	public void testJwtConverterReusesAuthorities() {
+		PermissionAwareJwtAuthenticationConverter converter = new PermissionAwareJwtAuthenticationConverter(permissionProvider);
+		converter.setAuthorityRegistry(registry);
+
+		List<GrantedAuthority> first = new ArrayList<>(converter.extractAuthorities(jwt()));
+		int registered = registry.size();
+		List<GrantedAuthority> second = new ArrayList<>(converter.extractAuthorities(jwt()));
+
+		// the first two authorities are the token's groups, which are not registered, so only their names repeat
+		assertEquals(Arrays.asList("ROLE_ADMIN", "ROLE_USER"), names(first.subList(0, 2)));
+		assertEquals(first.subList(0, 2), second.subList(0, 2));
+		assertSameInstances(first.subList(2, first.size()), second.subList(2, second.size()));
+		assertEquals(registered, registry.size(), "no new authorities should be registered");
+	}
+
+	@Test
+	public void testJwtConverterReusesMappedGroupAuthorities() {
+		PermissionAwareJwtAuthenticationConverter converter = new PermissionAwareJwtAuthenticationConverter(permissionProvider);
+		converter.setAuthorityRegistry(registry);
+		// a group that is itself a mapped permission name is registered by the provider's mappings
+		registry.intern("ROLE_ADMIN");
+
+		List<GrantedAuthority> first = new ArrayList<>(converter.extractAuthorities(jwt()));
+		List<GrantedAuthority> second = new ArrayList<>(converter.extractAuthorities(jwt()));
+
+		assertSame(registry.getAuthority("ROLE_ADMIN"), first.get(0));
+		assertSame(first.get(0), second.get(0), "a registered group should be the canonical instance");
+		assertEquals("ROLE_USER", second.get(1).getAuthority());
+	}
+
+	@Test
+	public void testJwtConverterAllocatesNoAuthoritiesForPermissions() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		assumeTrue(threads instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported(), "allocation counter not available");
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+		Set<String> permissions = new LinkedHashSet<>(permissionProvider.getEffectivePermissions("ROLE_ADMIN"));
+		// the same set on every call, like a cache in front of the store, so only the converter's own allocations are measured
+		PermissionProvider cachedProvider = new PermissionProvider() {
+			@Override
+			public List<String> getEffectivePermissions(String role) {
+				return new ArrayList<>(permissions);
+			}
+
+			@Override
+			public Set<String> getEffectivePermissions(Collection<String> roles) {
+				return permissions;
+			}
+		};
+		PermissionAwareJwtAuthenticationConverter converter = new PermissionAwareJwtAuthenticationConverter(cachedProvider);
+		converter.setAuthorityRegistry(registry);
+		Jwt jwt = jwt();
+		// without a started application the logging defaults to debug, which would format every permission on every call
+		LoggingSystem loggingSystem = LoggingSystem.get(getClass().getClassLoader());
+		String logger = PermissionAwareJwtAuthenticationConverter.class.getName();
+		loggingSystem.setLogLevel(logger, LogLevel.INFO);
+		long perCall;
+		try {
+			for (int i = 0; i < 1000; i++) {
+				converter.extractAuthorities(jwt);
+			}
+			int calls = 100;
+			long thread = Thread.currentThread().getId();
+			long before = allocations.getThreadAllocatedBytes(thread);
+			for (int i = 0; i < calls; i++) {
+				converter.extractAuthorities(jwt);
+			}
+			perCall = (allocations.getThreadAllocatedBytes(thread) - before) / calls;
+		} finally {
+			loggingSystem.setLogLevel(logger, null);
+		}
+
+		// a new authority per permission alone would take at least 16 bytes each, the canonical ones leave only the result list
+		assertTrue(perCall < permissions.size() * 16L, "allocated " + perCall + " bytes per conversion of " + permissions.size() + " permissions");
+	}
+
+	@Test
+	public void testTokenGroupsAreNotRegistered() {
+		PermissionAwareJwtAuthenticationConverter converter = new PermissionAwareJwtAuthenticationConverter(role -> Collections.emptyList());
+		converter.setAuthorityRegistry(registry);
+		registry.intern("ROLE_ADMIN");
+
+		List<GrantedAuthority> authorities = new ArrayList<>(converter.extractAuthorities(jwt()));
+
+		assertEquals(1, registry.size(), "unmapped group names should not be registered");
+		assertSame(registry.getAuthority("ROLE_ADMIN"), authorities.get(0), "a registered group should get the canonical authority");
+		assertEquals("ROLE_USER", authorities.get(1).getAuthority());
+	}
+
+	@Test
+	public void testUserDetailsServiceReusesAuthorities() {
+		PermissionAwareUserDetailsService service = new PermissionAwareUserDetailsService(
+				username -> new User(username, "password", Collections.singletonList(new SimpleGrantedAuthority("ROLE_ADMIN"))),
+				permissionProvider);
+		service.setAuthorityRegistry(registry);
+
+		List<GrantedAuthority> first = new ArrayList<>(service.loadUserByUsername("admin").getAuthorities());
+		int registered = registry.size();
+		List<GrantedAuthority> second = new ArrayList<>(service.loadUserByUsername("admin").getAuthorities());
+
+		// the last authority is the user's own role, which comes from the delegate
+		assertEquals("ROLE_ADMIN", first.get(first.size() - 1).getAuthority());
+		assertEquals(first.get(first.size() - 1), second.get(second.size() - 1));
+		assertSameInstances(first.subList(0, first.size() - 1), second.subList(0, second.size() - 1));
+		assertEquals(registered, registry.size(), "no new authorities should be registered");
+	}
+
+	@Test
+	public void testInternedNamesAreCanonical() {
+		String first = registry.intern(new String("READ"));
+		String second = registry.intern(new String("READ"));
+		assertSame(first, second);
+	}
+
+	@Test
+	public void testRegistryIsBounded() {
+		GrantedAuthorityRegistry bounded = new GrantedAuthorityRegistry(1);
+		bounded.getAuthority("READ");
+		GrantedAuthority unregistered = bounded.getAuthority("WRITE");
+		assertEquals("WRITE", unregistered.getAuthority());
+		assertEquals(1, bounded.size());
+	}
+
+	private void assertSameInstances(Collection<GrantedAuthority> first, Collection<GrantedAuthority> second) {
+		assertEquals(first.size(), second.size());
+		List<GrantedAuthority> firstList = new ArrayList<>(first);
+		List<GrantedAuthority> secondList = new ArrayList<>(second);
+		for (int i = 0; i < firstList.size(); i++) {
+			assertSame(firstList.get(i), secondList.get(i), "authority should be the canonical instance");
+		}
+	}
+
+	private List<String> names(Collection<GrantedAuthority> authorities) {
+		List<String> names = new ArrayList<>();
+		for (GrantedAuthority authority : authorities) {
+			names.add(authority.getAuthority());
+		}
+		return names;
+	}
+
+	private Jwt jwt() {
+		return Jwt.withTokenValue("token")
+				.header("alg", "none")
+				.claim("groups", Arrays.asList("ROLE_ADMIN", "ROLE_USER"))
+				.build();
+	}
+}
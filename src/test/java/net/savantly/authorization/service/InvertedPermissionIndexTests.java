@@ -0,0 +1,118 @@
+package net.savantly.authorization.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+
+public class InvertedPermissionIndexTests {
+
+	@Test
+	public void testRolesGranting() {
+		Map<String, List<String>> roles = new LinkedHashMap<>();
+		roles.put("ROLE_ADMIN", Arrays.asList("CREATE", "READ"));
+		roles.put("ROLE_USER", Arrays.asList("READ"));
+		roles.put("ROLE_EMPTY", Collections.<String>emptyList());
+		PropertiesPermissionProvider provider = new PropertiesPermissionProvider(roles);
+		InvertedPermissionIndex index = new InvertedPermissionIndex(provider, provider);
+		index.afterPropertiesSet();
+
+		assertEquals(new HashSet<>(Arrays.asList("ROLE_ADMIN", "ROLE_USER")), index.getRolesGranting("READ"));
+		assertEquals(Collections.singleton("ROLE_ADMIN"), index.getRolesGranting("CREATE"));
+		assertTrue(index.getRolesGranting("DELETE").isEmpty());
+		assertTrue(index.getPermissions("ROLE_EMPTY").isEmpty());
+		assertEquals(2, index.getPermissionCount());
+		assertSame(index.getRolesGranting("READ"), index.getRolesGranting("READ"), "lookups should not copy the index");
+		assertThrows(UnsupportedOperationException.class, () -> index.getRolesGranting("READ").add("ROLE_GUEST"));
+	}
+
+	@Test
+	public void testIncrementalUpdate() {
+		Map<String, List<String>> roles = new LinkedHashMap<>();
+		roles.put("ROLE_ADMIN", Arrays.asList("CREATE", "READ"));
+		roles.put("ROLE_USER", Arrays.asList("READ"));
+		PropertiesPermissionProvider provider = new PropertiesPermissionProvider(roles);
+		InvertedPermissionIndex index = new InvertedPermissionIndex(provider, provider);
+		index.afterPropertiesSet();
+		Set<String> readers = index.getRolesGranting("READ");
+
+		roles.put("ROLE_USER", Arrays.asList("UPDATE"));
+		roles.put("ROLE_GUEST", Arrays.asList("READ"));
+		provider.update(roles);
+		index.onRolePermissionsChanged(new RolePermissionsChangedEvent(this, Arrays.asList("ROLE_USER", "ROLE_GUEST")));
+
+		assertEquals(new HashSet<>(Arrays.asList("ROLE_ADMIN", "ROLE_GUEST")), index.getRolesGranting("READ"));
+		assertEquals(Collections.singleton("ROLE_USER"), index.getRolesGranting("UPDATE"));
+		assertEquals(new HashSet<>(Arrays.asList("ROLE_ADMIN", "ROLE_USER")), readers, "sets already handed out should not change");
+
+		roles.remove("ROLE_ADMIN");
+		provider.update(roles);
+		index.onRolePermissionsChanged(new RolePermissionsChangedEvent(this, Collections.singleton("ROLE_ADMIN")));
+		assertTrue(index.getRolesGranting("CREATE").isEmpty(), "a permission no role grants should be removed");
+		assertEquals(2, index.getPermissionCount());
+
+		roles.put("ROLE_ADMIN", Arrays.asList("DELETE"));
+		provider.update(roles);
+		index.onRolePermissionsChanged(new RolePermissionsChangedEvent(this));
+		assertEquals(Collections.singleton("ROLE_ADMIN"), index.getRolesGranting("DELETE"));
+	}
+
+	@Test
+	public void testUpdateIsPublishedAtOnce() {
+		Map<String, List<String>> roles = new LinkedHashMap<>();
+		roles.put("ROLE_ADMIN", Arrays.asList("CREATE", "READ"));
+		roles.put("ROLE_USER", Arrays.asList("READ"));
+		PropertiesPermissionProvider properties = new PropertiesPermissionProvider(roles);
+		InvertedPermissionIndex[] index = new InvertedPermissionIndex[1];
+		// reads the index between the roles of an update, as a concurrent reader could
+		PermissionProvider provider = role -> {
+			if (role.equals("ROLE_GUEST")) {
+				assertEquals(new HashSet<>(Arrays.asList("ROLE_ADMIN", "ROLE_USER")), index[0].getRolesGranting("READ"),
+						"an update in progress should not be visible");
+			}
+			return properties.getEffectivePermissions(role);
+		};
+		index[0] = new InvertedPermissionIndex(provider, properties);
+		index[0].afterPropertiesSet();
+
+		roles.put("ROLE_USER", Arrays.asList("UPDATE"));
+		roles.put("ROLE_GUEST", Arrays.asList("READ"));
+		properties.update(roles);
+		index[0].update(Arrays.asList("ROLE_USER", "ROLE_GUEST"));
+
+		assertEquals(new HashSet<>(Arrays.asList("ROLE_ADMIN", "ROLE_GUEST")), index[0].getRolesGranting("READ"));
+	}
+
+	@Test
+	public void testRolesImplying() {
+		Map<String, List<String>> roles = new LinkedHashMap<>();
+		roles.put("ROLE_ADMIN", Arrays.asList("payments:*"));
+		roles.put("ROLE_CLERK", Arrays.asList("payments:read"));
+		roles.put("ROLE_USER", Arrays.asList("reports:read"));
+		PropertiesPermissionProvider provider = new PropertiesPermissionProvider(roles);
+		InvertedPermissionIndex index = new InvertedPermissionIndex(provider, provider);
+		index.afterPropertiesSet();
+
+		assertEquals(Collections.singleton("ROLE_CLERK"), index.getRolesGranting("payments:read"));
+		assertEquals(new HashSet<>(Arrays.asList("ROLE_ADMIN", "ROLE_CLERK")), index.getRolesImplying("payments:read"));
+		assertEquals(Collections.singleton("ROLE_ADMIN"), index.getRolesImplying("payments:refund"));
+		assertEquals(Collections.singleton("ROLE_USER"), index.getRolesImplying("reports:read"));
+
+		roles.remove("ROLE_ADMIN");
+		provider.update(roles);
+		index.onRolePermissionsChanged(new RolePermissionsChangedEvent(this, Collections.singleton("ROLE_ADMIN")));
+		assertTrue(index.getRolesImplying("payments:refund").isEmpty(), "a removed wildcard grant should no longer match");
+	}
+}
@@ -0,0 +1,172 @@
+package net.savantly.authorization.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import net.savantly.authorization.authority.GrantedAuthorityRegistry;
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+
+public class JdbcTemplatePermissionProviderTests {
+
+	EmbeddedDatabase database;
+	GrantedAuthorityRegistry registry = new GrantedAuthorityRegistry();
+	AtomicInteger queries = new AtomicInteger();
+	JdbcTemplate jdbcTemplate;
+	JdbcTemplatePermissionProvider provider;
+
+	@BeforeEach
+	public void beforeEach() {
+		database = new EmbeddedDatabaseBuilder()
+				.setType(EmbeddedDatabaseType.H2)
+				.generateUniqueName(true)
+				.addScript("classpath:net/savantly/authorization/jdbc/schema.sql")
+				.build();
+		jdbcTemplate = new JdbcTemplate(database) {
+			@Override
+			public <T> T query(PreparedStatementCreator psc, PreparedStatementSetter pss, ResultSetExtractor<T> rse) {
+				queries.incrementAndGet();
+				return super.query(psc, pss, rse);
+			}
+		};
+		jdbcTemplate.update("insert into role_permissions (role) values ('ROLE_ADMIN'), ('ROLE_USER'), ('ROLE_EMPTY')");
+		jdbcTemplate.update("insert into role_permissions_permissions (role_permissions_role, permissions) values "
+				+ "('ROLE_ADMIN', 'CREATE'), ('ROLE_ADMIN', 'READ'), ('ROLE_USER', 'READ')");
+		jdbcTemplate.update("insert into role_permissions (role) values ('ROLE_EDITOR'), ('ROLE_OWNER'), ('ROLE_CYCLE_A'), ('ROLE_CYCLE_B')");
+		jdbcTemplate.update("insert into role_permissions_permissions (role_permissions_role, permissions) values "
+				+ "('ROLE_EDITOR', 'UPDATE'), ('ROLE_OWNER', 'TRANSFER'), ('ROLE_CYCLE_A', 'A'), ('ROLE_CYCLE_B', 'B')");
+		jdbcTemplate.update("insert into role_permissions_inherited_roles (role_permissions_role, inherited_roles) values "
+				+ "('ROLE_EDITOR', 'ROLE_USER'), ('ROLE_OWNER', 'ROLE_EDITOR')");
+		provider = new JdbcTemplatePermissionProvider(jdbcTemplate, registry);
+	}
+
+	@AfterEach
+	public void afterEach() {
+		database.shutdown();
+	}
+
+	@Test
+	public void testEffectivePermissions() {
+		List<String> permissions = provider.getEffectivePermissions("ROLE_ADMIN");
+		assertTrue(permissions.containsAll(Arrays.asList("CREATE", "READ")), "CREATE and READ permissions should be present");
+		assertSame(registry.intern("READ"), permissions.get(permissions.indexOf("READ")), "permission names should be interned");
+		assertTrue(provider.getEffectivePermissions("ROLE_EMPTY").isEmpty(), "role without permissions should have none");
+		assertTrue(provider.getEffectivePermissions("UNKNOWN_ROLE").isEmpty(), "unknown role should have no permissions");
+	}
+
+	@Test
+	public void testBulkEffectivePermissions() {
+		Set<String> permissions = provider.getEffectivePermissions(Arrays.asList("ROLE_ADMIN", "ROLE_USER", "UNKNOWN_ROLE"));
+		assertEquals(2, permissions.size(), "permissions should be distinct");
+		assertTrue(permissions.containsAll(Arrays.asList("CREATE", "READ")));
+		assertTrue(provider.getEffectivePermissions(Collections.<String>emptyList()).isEmpty());
+	}
+
+	@Test
+	public void testRoles() {
+		assertTrue(provider.getRoles().containsAll(Arrays.asList("ROLE_ADMIN", "ROLE_USER", "ROLE_EMPTY")));
+		assertEquals(7, provider.getRoles().size());
+	}
+
+	@Test
+	public void testRolesGranting() {
+		assertEquals(new HashSet<>(Arrays.asList("ROLE_ADMIN", "ROLE_USER", "ROLE_EDITOR", "ROLE_OWNER")), new HashSet<>(provider.getRolesGranting("READ")),
+				"roles inheriting a permission should grant it");
+		assertEquals(Collections.singleton("ROLE_ADMIN"), new HashSet<>(provider.getRolesGranting("CREATE")));
+		assertTrue(provider.getRolesGranting("DELETE").isEmpty());
+	}
+
+	@Test
+	public void testInvertedIndexMatchesRolesGranting() {
+		provider.getEffectivePermissions("ROLE_ADMIN");
+		queries.set(0);
+		InvertedPermissionIndex index = new InvertedPermissionIndex(provider, provider);
+		index.afterPropertiesSet();
+		assertEquals(1, queries.get(), "the index should be built from one read of the mappings");
+		for (String permission : Arrays.asList("CREATE", "READ", "UPDATE", "TRANSFER", "DELETE")) {
+			assertEquals(new HashSet<>(provider.getRolesGranting(permission)), index.getRolesGranting(permission), permission);
+		}
+		assertEquals(new HashSet<>(Arrays.asList("TRANSFER", "UPDATE", "READ")), index.getPermissions("ROLE_OWNER"));
+		assertTrue(index.getPermissions("ROLE_EMPTY").isEmpty());
+	}
+
+	@Test
+	public void testInheritedPermissions() {
+		assertEquals(new HashSet<>(Arrays.asList("TRANSFER", "UPDATE", "READ")), new HashSet<>(provider.getEffectivePermissions("ROLE_OWNER")));
+		assertEquals(new HashSet<>(Arrays.asList("UPDATE", "READ", "CREATE")),
+				provider.getEffectivePermissions(Arrays.asList("ROLE_EDITOR", "ROLE_ADMIN")));
+	}
+
+	@Test
+	public void testSingleQueryPerLookup() {
+		provider.getEffectivePermissions("ROLE_ADMIN");
+		queries.set(0);
+		provider.getEffectivePermissions("ROLE_ADMIN");
+		assertEquals(1, queries.get(), "a role without inherited roles should be read with one query");
+		provider.getEffectivePermissions("ROLE_OWNER");
+		assertEquals(2, queries.get(), "a role two levels deep should be read with one query");
+		provider.getEffectivePermissionsByRole(Arrays.asList("ROLE_OWNER", "ROLE_ADMIN"));
+		provider.getInheritingRoles(Collections.singleton("ROLE_USER"));
+		assertEquals(3, queries.get(), "inheriting roles should be answered from the closure");
+	}
+
+	@Test
+	public void testCycleIsRejected() {
+		jdbcTemplate.update("insert into role_permissions_inherited_roles (role_permissions_role, inherited_roles) values "
+				+ "('ROLE_CYCLE_A', 'ROLE_CYCLE_B'), ('ROLE_CYCLE_B', 'ROLE_CYCLE_A')");
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> provider.getEffectivePermissions("ROLE_ADMIN"));
+		assertTrue(e.getMessage().contains("ROLE_CYCLE_A"), e.getMessage());
+	}
+
+	@Test
+	public void testChangedInheritedRoles() {
+		assertEquals(Collections.singletonList("A"), provider.getEffectivePermissions("ROLE_CYCLE_A"));
+		jdbcTemplate.update("insert into role_permissions_inherited_roles (role_permissions_role, inherited_roles) values ('ROLE_CYCLE_A', 'ROLE_CYCLE_B')");
+		assertEquals(Collections.singletonList("A"), provider.getEffectivePermissions("ROLE_CYCLE_A"), "the closure is kept until a change is received");
+		provider.onRolePermissionsChanged(new RolePermissionsChangedEvent(this, Collections.singleton("ROLE_CYCLE_A")));
+		assertEquals(Arrays.asList("A", "B"), provider.getEffectivePermissions("ROLE_CYCLE_A"));
+
+		jdbcTemplate.update("insert into role_permissions_inherited_roles (role_permissions_role, inherited_roles) values ('ROLE_CYCLE_B', 'ROLE_CYCLE_A')");
+		provider.onRolePermissionsChanged(new RolePermissionsChangedEvent(this, Collections.singleton("ROLE_CYCLE_B")));
+		assertEquals(Collections.singletonList("B"), provider.getEffectivePermissions("ROLE_CYCLE_B"), "a change introducing a cycle should keep the previous closure");
+		assertEquals(new HashSet<>(Arrays.asList("ROLE_CYCLE_A", "ROLE_CYCLE_B")), provider.getInheritingRoles(Collections.singleton("ROLE_CYCLE_B")));
+	}
+
+	@Test
+	public void testInheritingRoles() {
+		assertEquals(new HashSet<>(Arrays.asList("ROLE_USER", "ROLE_EDITOR", "ROLE_OWNER")),
+				provider.getInheritingRoles(Collections.singleton("ROLE_USER")));
+		assertEquals(Collections.singleton("ROLE_ADMIN"), provider.getInheritingRoles(Collections.singleton("ROLE_ADMIN")));
+	}
+
+	@Test
+	public void testEffectivePermissionsByRole() {
+		Map<String, List<String>> byRole = provider.getEffectivePermissionsByRole(Arrays.asList("ROLE_OWNER", "ROLE_USER", "ROLE_EMPTY", "UNKNOWN_ROLE"));
+		assertEquals(Arrays.asList("ROLE_OWNER", "ROLE_USER", "ROLE_EMPTY", "UNKNOWN_ROLE"), new ArrayList<>(byRole.keySet()));
+		assertEquals(new HashSet<>(Arrays.asList("TRANSFER", "UPDATE", "READ")), new HashSet<>(byRole.get("ROLE_OWNER")));
+		assertEquals(Collections.singletonList("READ"), byRole.get("ROLE_USER"));
+		assertTrue(byRole.get("ROLE_EMPTY").isEmpty());
+		assertTrue(byRole.get("UNKNOWN_ROLE").isEmpty());
+	}
+}
@@ -0,0 +1,148 @@
+package net.savantly.authorization.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.savantly.authorization.cache.BloomFilter;
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+
+public class KnownRolesPermissionProviderTests {
+
+	Map<String, List<String>> mappings = new HashMap<>();
+	AtomicInteger lookups = new AtomicInteger();
+	AtomicInteger bulkLookups = new AtomicInteger();
+	MappedPermissionProvider delegate = new MappedPermissionProvider();
+	KnownRolesPermissionProvider provider;
+
+	@BeforeEach
+	public void beforeEach() {
+		mappings.put("ROLE_ADMIN", Arrays.asList("CREATE", "READ"));
+		mappings.put("ROLE_USER", Arrays.asList("READ"));
+		mappings.put("ROLE_EMPTY", Collections.<String>emptyList());
+		provider = new KnownRolesPermissionProvider(delegate, delegate);
+		provider.afterPropertiesSet();
+	}
+
+	@Test
+	public void testUnmappedGroupsDoNotReachDelegate() {
+		List<String> groups = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			groups.add("AAD_GROUP_" + i);
+		}
+		for (String group : groups) {
+			assertTrue(provider.getEffectivePermissions(group).isEmpty());
+		}
+		assertTrue(lookups.get() <= 10, "at most a few false positives should reach the delegate, but " + lookups.get() + " did");
+
+		lookups.set(0);
+		groups.add("ROLE_ADMIN");
+		Set<String> permissions = provider.getEffectivePermissions(groups);
+		assertTrue(permissions.containsAll(Arrays.asList("CREATE", "READ")));
+		assertTrue(provider.getFilteredCount() >= 100);
+	}
+
+	@Test
+	public void testMappedRolesArePassedThrough() {
+		assertEquals(Arrays.asList("CREATE", "READ"), provider.getEffectivePermissions("ROLE_ADMIN"));
+		assertTrue(provider.getEffectivePermissions("ROLE_EMPTY").isEmpty());
+		assertEquals(2, lookups.get());
+	}
+
+	@Test
+	public void testMissesAreNegativelyCached() {
+		provider.getEffectivePermissions("ROLE_EMPTY");
+		provider.getEffectivePermissions("ROLE_EMPTY");
+		assertEquals(1, lookups.get(), "the second lookup should be answered by the negative cache");
+		assertEquals(1, provider.getNegativeCacheStatistics().getHitCount());
+	}
+
+	@Test
+	public void testBulkMissesAreNegativelyCached() {
+		Set<String> permissions = provider.getEffectivePermissions(Arrays.asList("ROLE_ADMIN", "ROLE_EMPTY"));
+		assertTrue(permissions.containsAll(Arrays.asList("CREATE", "READ")));
+		assertEquals(2, lookups.get());
+
+		assertTrue(provider.getEffectivePermissions("ROLE_EMPTY").isEmpty());
+		assertEquals(Arrays.asList("READ"), provider.getEffectivePermissionsByRole(Arrays.asList("ROLE_EMPTY", "ROLE_USER")).get("ROLE_USER"));
+		assertEquals(3, lookups.get(), "the miss of the bulk lookup should be answered by the negative cache");
+		assertEquals(2, provider.getNegativeCacheStatistics().getHitCount());
+	}
+
+	@Test
+	public void testMergedLookupOfDelegateWithoutBulkLookupByRole() {
+		delegate.bulkLookupByRole = false;
+		Set<String> permissions = provider.getEffectivePermissions(Arrays.asList("ROLE_ADMIN", "ROLE_EMPTY"));
+		assertTrue(permissions.containsAll(Arrays.asList("CREATE", "READ")));
+		assertEquals(1, bulkLookups.get(), "the delegate should get one merged lookup");
+
+		assertTrue(provider.getEffectivePermissions(Collections.singleton("ROLE_EMPTY")).isEmpty());
+		assertTrue(provider.getEffectivePermissions("ROLE_EMPTY").isEmpty());
+		assertEquals(2, bulkLookups.get());
+		assertEquals(1, provider.getNegativeCacheStatistics().getHitCount(), "the roles of a merged lookup that found nothing should be negatively cached");
+	}
+
+	@Test
+	public void testChangeRebuildsFilter() {
+		assertTrue(provider.getEffectivePermissions("ROLE_NEW").isEmpty());
+		provider.getEffectivePermissions("ROLE_EMPTY");
+
+		mappings.put("ROLE_NEW", Arrays.asList("DELETE"));
+		mappings.put("ROLE_EMPTY", Arrays.asList("UPDATE"));
+		provider.onRolePermissionsChanged(new RolePermissionsChangedEvent(this, Arrays.asList("ROLE_NEW", "ROLE_EMPTY")));
+
+		assertEquals(Arrays.asList("DELETE"), provider.getEffectivePermissions("ROLE_NEW"));
+		assertEquals(Arrays.asList("UPDATE"), provider.getEffectivePermissions("ROLE_EMPTY"));
+	}
+
+	@Test
+	public void testFilterIsSizedByFalsePositiveRate() {
+		BloomFilter filter = provider.getBloomFilter();
+		assertEquals(3, filter.getInsertions());
+		assertTrue(filter.getExpectedFalsePositiveRate() < 0.02, "expected about 1% false positives");
+
+		BloomFilter large = new BloomFilter(1000, 0.01);
+		BloomFilter larger = new BloomFilter(1000, 0.001);
+		assertTrue(large.getMemoryBytes() < 1300, "about 1.2 bytes per role at 1%");
+		assertTrue(larger.getMemoryBytes() > large.getMemoryBytes());
+	}
+
+	class MappedPermissionProvider implements PermissionProvider, RoleCatalog {
+
+		boolean bulkLookupByRole = true;
+
+		@Override
+		public List<String> getEffectivePermissions(String role) {
+			lookups.incrementAndGet();
+			return mappings.getOrDefault(role, Collections.<String>emptyList());
+		}
+
+		@Override
+		public Set<String> getEffectivePermissions(Collection<String> roles) {
+			bulkLookups.incrementAndGet();
+			return PermissionProvider.super.getEffectivePermissions(roles);
+		}
+
+		@Override
+		public boolean isBulkLookupByRole() {
+			return bulkLookupByRole;
+		}
+
+		@Override
+		public Collection<String> getRoles() {
+			return mappings.keySet();
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package net.savantly.authorization.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import net.savantly.authorization.service.ParallelPermissionProvider.PartialFailurePolicy;
+
+public class ParallelPermissionProviderTests {
+
+	AtomicInteger running = new AtomicInteger();
+	AtomicInteger maximumRunning = new AtomicInteger();
+	CountDownLatch release = new CountDownLatch(1);
+	// every lookup takes 100ms, ROLE_HUNG waits to be released and ROLE_BROKEN fails
+	PermissionProvider slowProvider = role -> {
+		maximumRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+		try {
+			if (role.equals("ROLE_HUNG")) {
+				release.await();
+			} else {
+				TimeUnit.MILLISECONDS.sleep(100);
+			}
+			if (role.equals("ROLE_BROKEN")) {
+				throw new IllegalStateException("store unavailable");
+			}
+			return Collections.singletonList(role + "_READ");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return Collections.emptyList();
+		} finally {
+			running.decrementAndGet();
+		}
+	};
+	ParallelPermissionProvider provider;
+
+	@AfterEach
+	public void afterEach() {
+		release.countDown();
+		if (provider != null) {
+			provider.destroy();
+		}
+	}
+
+	@Test
+	public void testRolesAreLookedUpConcurrently() {
+		provider = new ParallelPermissionProvider(slowProvider, 8, Duration.ofSeconds(5), PartialFailurePolicy.FAIL);
+		long start = System.nanoTime();
+		Set<String> permissions = provider.getEffectivePermissions(roles(8));
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		assertEquals(8, permissions.size());
+		assertTrue(millis < 500, "8 lookups of 100ms should overlap, but took " + millis + "ms");
+	}
+
+	@Test
+	public void testParallelismIsBounded() {
+		provider = new ParallelPermissionProvider(slowProvider, 2, Duration.ofSeconds(5), PartialFailurePolicy.FAIL);
+		assertEquals(6, provider.getEffectivePermissions(roles(6)).size());
+		assertTrue(maximumRunning.get() <= 2, "at most 2 lookups should run at a time, but " + maximumRunning.get() + " did");
+	}
+
+	@Test
+	public void testDeadlineFailsLookup() {
+		provider = new ParallelPermissionProvider(slowProvider, 8, Duration.ofMillis(300), PartialFailurePolicy.FAIL);
+		List<String> roles = roles(3);
+		roles.add("ROLE_HUNG");
+
+		long start = System.nanoTime();
+		PermissionLookupException e = assertThrows(PermissionLookupException.class, () -> provider.getEffectivePermissions(roles));
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		assertEquals(Collections.singleton("ROLE_HUNG"), e.getRoles());
+		assertTrue(millis < 2000, "the lookup should give up at the deadline, but took " + millis + "ms");
+	}
+
+	@Test
+	public void testDeadlineOmitsUnfinishedRoles() {
+		provider = new ParallelPermissionProvider(slowProvider, 8, Duration.ofMillis(300), PartialFailurePolicy.OMIT);
+		List<String> roles = roles(3);
+		roles.add("ROLE_HUNG");
+
+		Set<String> permissions = provider.getEffectivePermissions(roles);
+		assertEquals(3, permissions.size());
+		assertTrue(!permissions.contains("ROLE_HUNG_READ"));
+	}
+
+	@Test
+	public void testFailureIsPropagated() {
+		provider = new ParallelPermissionProvider(slowProvider, 8, Duration.ofSeconds(5), PartialFailurePolicy.FAIL);
+		PermissionLookupException e = assertThrows(PermissionLookupException.class,
+				() -> provider.getEffectivePermissions(Arrays.asList("ROLE_A", "ROLE_BROKEN")));
+		assertEquals(Collections.singleton("ROLE_BROKEN"), e.getRoles());
+		assertTrue(e.getCause() instanceof IllegalStateException);
+	}
+
+	@Test
+	public void testAsyncLookup() {
+		provider = new ParallelPermissionProvider(slowProvider);
+		assertEquals(Collections.singletonList("ROLE_A_READ"), provider.getEffectivePermissionsAsync("ROLE_A").join());
+		assertEquals(3, provider.getEffectivePermissionsAsync(roles(3)).join().size());
+	}
+
+	private List<String> roles(int count) {
+		List<String> roles = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			roles.add("ROLE_" + i);
+		}
+		return roles;
+	}
+}
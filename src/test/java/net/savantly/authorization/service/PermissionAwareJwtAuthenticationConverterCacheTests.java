@@ -0,0 +1,121 @@
+package net.savantly.authorization.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import net.savantly.authorization.cache.BoundedCache;
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+
+public class PermissionAwareJwtAuthenticationConverterCacheTests {
+
+	AtomicInteger calls = new AtomicInteger();
+	PermissionProvider permissionProvider = role -> {
+		calls.incrementAndGet();
+		List<String> permissions = new ArrayList<>();
+		permissions.add(role + "_READ");
+		return permissions;
+	};
+
+	@Test
+	public void testAuthoritiesAreMemoizedPerRoleSet() {
+		PermissionAwareJwtAuthenticationConverter converter = new PermissionAwareJwtAuthenticationConverter(permissionProvider);
+		converter.setAuthorityCache(new BoundedCache<>(100));
+
+		Collection<GrantedAuthority> first = converter.extractAuthorities(jwt("ROLE_A", "ROLE_B"));
+		Collection<GrantedAuthority> second = converter.extractAuthorities(jwt("ROLE_B", "ROLE_A", "ROLE_B"));
+
+		assertSame(first, second, "tokens with the same roles should share authorities");
+		assertEquals(2, calls.get(), "permissions should only be resolved once per role");
+		assertTrue(AuthorityUtils.authorityListToSet(first).containsAll(Arrays.asList("ROLE_A", "ROLE_B", "ROLE_A_READ", "ROLE_B_READ")));
+	}
+
+	@Test
+	public void testMappingChangeClearsMemoizedAuthorities() {
+		PermissionAwareJwtAuthenticationConverter converter = new PermissionAwareJwtAuthenticationConverter(permissionProvider);
+		converter.setAuthorityCache(new BoundedCache<>(100));
+
+		Collection<GrantedAuthority> first = converter.extractAuthorities(jwt("ROLE_A"));
+		converter.onRolePermissionsChanged(new RolePermissionsChangedEvent(this));
+		Collection<GrantedAuthority> second = converter.extractAuthorities(jwt("ROLE_A"));
+
+		assertNotSame(first, second);
+		assertEquals(2, calls.get());
+	}
+
+	@Test
+	public void testWithoutCache() {
+		PermissionAwareJwtAuthenticationConverter converter = new PermissionAwareJwtAuthenticationConverter(permissionProvider);
+		converter.extractAuthorities(jwt("ROLE_A"));
+		converter.extractAuthorities(jwt("ROLE_A"));
+		assertEquals(2, calls.get());
+	}
+
+	@Test
+	public void testAuthoritiesAreCachedPerTokenUntilExpiry() {
+		Instant now = Instant.parse("2020-01-01T00:00:00Z");
+		PermissionAwareJwtAuthenticationConverter converter = new PermissionAwareJwtAuthenticationConverter(permissionProvider);
+		converter.setTokenCache(new BoundedCache<>(100, Duration.ofHours(1), null));
+		converter.setClock(Clock.fixed(now, ZoneOffset.UTC));
+		Jwt token = jwt(now.plusSeconds(60), "ROLE_A");
+
+		Collection<GrantedAuthority> first = converter.extractAuthorities(token);
+		assertSame(first, converter.extractAuthorities(token));
+		assertEquals(1, calls.get());
+
+		converter.setClock(Clock.fixed(now.plusSeconds(61), ZoneOffset.UTC));
+		assertNotSame(first, converter.extractAuthorities(token), "authorities should not outlive the token");
+		assertEquals(2, calls.get());
+		assertEquals(0, converter.getTokenCache().size(), "an expired token should not be cached");
+
+		converter.setClock(Clock.fixed(now, ZoneOffset.UTC));
+		converter.extractAuthorities(jwt(now.plusSeconds(30), "ROLE_A"));
+		assertEquals(1, converter.getTokenCache().size());
+		converter.onRolePermissionsChanged(new RolePermissionsChangedEvent(this));
+		assertEquals(0, converter.getTokenCache().size());
+	}
+
+	@Test
+	public void testTokenKey() {
+		Jwt withId = Jwt.withTokenValue("token").header("alg", "none").claim("iss", "https://issuer").claim("jti", "42").build();
+		assertEquals("jti:https://issuer 42", PermissionAwareJwtAuthenticationConverter.tokenKey(withId));
+
+		String first = PermissionAwareJwtAuthenticationConverter.tokenKey(jwt("ROLE_A"));
+		Jwt other = Jwt.withTokenValue("other").header("alg", "none").claim("groups", Arrays.asList("ROLE_A")).build();
+		assertTrue(first.startsWith("sha256:"));
+		assertNotEquals(first, PermissionAwareJwtAuthenticationConverter.tokenKey(other));
+	}
+
+	private Jwt jwt(Instant expiresAt, String... groups) {
+		return Jwt.withTokenValue("token")
+				.header("alg", "none")
+				.claim("groups", Arrays.asList(groups))
+				.claim("jti", "token-" + expiresAt.toEpochMilli())
+				.expiresAt(expiresAt)
+				.build();
+	}
+
+	private Jwt jwt(String... groups) {
+		return Jwt.withTokenValue("token")
+				.header("alg", "none")
+				.claim("groups", Arrays.asList(groups))
+				.build();
+	}
+}
@@ -0,0 +1,94 @@
+package net.savantly.authorization.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.CredentialsContainer;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import net.savantly.authorization.cache.BoundedCache;
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+
+public class PermissionAwareUserDetailsServiceCacheTests {
+
+	AtomicInteger permissionLookups = new AtomicInteger();
+	AtomicInteger userLookups = new AtomicInteger();
+	volatile String role = "ROLE_USER";
+	volatile String password = "secret";
+	PermissionProvider permissionProvider = role -> {
+		permissionLookups.incrementAndGet();
+		List<String> permissions = new ArrayList<>();
+		permissions.add(role + "_READ");
+		return permissions;
+	};
+	UserDetailsService users = username -> {
+		userLookups.incrementAndGet();
+		return new User(username, password, Collections.singletonList(new SimpleGrantedAuthority(role)));
+	};
+
+	@Test
+	public void testAuthoritiesAreMemoizedPerUser() {
+		PermissionAwareUserDetailsService service = new PermissionAwareUserDetailsService(users, permissionProvider);
+		service.setAuthorityCache(new BoundedCache<>(100));
+
+		UserDetails first = service.loadUserByUsername("jeremy");
+		password = "changed";
+		UserDetails second = service.loadUserByUsername("jeremy");
+
+		assertSame(first.getAuthorities(), second.getAuthorities());
+		assertEquals(1, permissionLookups.get());
+		assertEquals(2, userLookups.get(), "the user should be loaded every time without a user details cache");
+		assertEquals("changed", second.getPassword(), "password data should not be cached with the authorities");
+		assertTrue(AuthorityUtils.authorityListToSet(first.getAuthorities()).contains("ROLE_USER_READ"));
+	}
+
+	@Test
+	public void testRoleChangesAreNoticed() {
+		PermissionAwareUserDetailsService service = new PermissionAwareUserDetailsService(users, permissionProvider);
+		service.setAuthorityCache(new BoundedCache<>(100));
+
+		UserDetails first = service.loadUserByUsername("jeremy");
+		role = "ROLE_ADMIN";
+		UserDetails second = service.loadUserByUsername("jeremy");
+		assertTrue(AuthorityUtils.authorityListToSet(second.getAuthorities()).contains("ROLE_ADMIN_READ"),
+				"a user whose roles changed should be expanded again");
+
+		service.onRolePermissionsChanged(new RolePermissionsChangedEvent(this));
+		UserDetails third = service.loadUserByUsername("jeremy");
+		assertNotSame(second.getAuthorities(), third.getAuthorities());
+		assertNotSame(first.getAuthorities(), second.getAuthorities());
+		assertEquals(3, permissionLookups.get());
+	}
+
+	@Test
+	public void testUserDetailsCache() {
+		PermissionAwareUserDetailsService service = new PermissionAwareUserDetailsService(users, permissionProvider);
+		service.setAuthorityCache(new BoundedCache<>(100));
+		service.setUserDetailsCache(new BoundedCache<>(100, Duration.ofMinutes(1), null));
+
+		UserDetails first = service.loadUserByUsername("jeremy");
+		assertFalse(first instanceof CredentialsContainer, "erasing credentials should not reach the cached user");
+		service.loadUserByUsername("jeremy");
+		assertEquals(1, userLookups.get());
+		assertEquals(1, permissionLookups.get());
+
+		password = "changed";
+		service.invalidate("jeremy");
+		assertEquals("changed", service.loadUserByUsername("jeremy").getPassword());
+		assertEquals(2, userLookups.get());
+	}
+}
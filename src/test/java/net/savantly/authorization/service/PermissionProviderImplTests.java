@@ -1,9 +1,19 @@
 package net.savantly.authorization.service;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -13,6 +23,7 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 
 import net.savantly.authorization.configuration.EnableRolePermissions;
+import net.savantly.authorization.jdbc.RolePermissionEntry;
 import net.savantly.authorization.jdbc.RolePermissions;
 import net.savantly.authorization.jdbc.RolePermissionsRepository;
 
@@ -20,6 +31,7 @@ import net.savantly.authorization.jdbc.RolePermissionsRepository;
 public class PermissionProviderImplTests {
 	
 	String roleName = "TEST_ROLE";
+	String otherRoleName = "OTHER_ROLE";
 	List<String> permissions = new ArrayList<String>();
 	{
 		permissions.add("CREATE");
@@ -34,6 +46,7 @@ public class PermissionProviderImplTests {
 	@BeforeEach
 	public void beforeEach() {
 		repository.save(new RolePermissions(roleName, permissions));
+		repository.save(new RolePermissions(otherRoleName, Arrays.asList("READ", "AUDIT")));
 	}
 	
 	@AfterEach
@@ -51,10 +64,75 @@ public class PermissionProviderImplTests {
 		assertTrue(effectivePermissions.contains("DELETE"), "DELETE permission should be present");
 	}
 	
+	@Test
+	public void testEffectivePermissionsForRoles() {
+		JdbcPermissionProvider provider = new JdbcPermissionProvider(repository);
+		Set<String> effectivePermissions = provider.getEffectivePermissions(Arrays.asList(roleName, otherRoleName, "UNKNOWN_ROLE"));
+		assertEquals(5, effectivePermissions.size(), "permissions should be merged without duplicates");
+		assertTrue(effectivePermissions.contains("CREATE"), "CREATE permission should be present");
+		assertTrue(effectivePermissions.contains("AUDIT"), "AUDIT permission should be present");
+		assertTrue(provider.getEffectivePermissions(Collections.<String>emptyList()).isEmpty(), "no roles should have no permissions");
+	}
+	
+	@Test
+	public void testEntryProjection() {
+		repository.save(new RolePermissions("EMPTY_ROLE", new ArrayList<>()));
+		List<RolePermissionEntry> entries = repository.findAllEntries();
+		assertEquals(7, entries.size(), "one row per permission, and one for the role without permissions");
+		assertTrue(entries.stream().anyMatch(e -> e.getRole().equals(otherRoleName) && e.getPermission().equals("AUDIT")));
+		assertTrue(entries.stream().anyMatch(e -> e.getRole().equals("EMPTY_ROLE") && e.getPermission() == null));
+
+		List<RolePermissionEntry> roleEntries = repository.findEntriesByRoleIn(Collections.singleton(otherRoleName));
+		assertEquals(2, roleEntries.size());
+	}
+	
+	@Test
+	public void testPermissionsOfRoles() {
+		List<String> distinct = repository.findPermissionsByRoleIn(Arrays.asList(roleName, otherRoleName, "UNKNOWN_ROLE"));
+		assertEquals(5, distinct.size(), "READ is granted by both roles and should be returned once");
+		assertTrue(distinct.containsAll(Arrays.asList("CREATE", "AUDIT")));
+		assertTrue(repository.findPermissionsByRoleIn(Collections.singleton("UNKNOWN_ROLE")).isEmpty());
+	}
+	
+	@Test
+	public void testInheritedPermissions() {
+		repository.save(new RolePermissions("EDITOR_ROLE", Arrays.asList("PUBLISH"), Collections.singleton(otherRoleName)));
+		repository.save(new RolePermissions("OWNER_ROLE", Arrays.asList("TRANSFER"), Collections.singleton("EDITOR_ROLE")));
+		JdbcPermissionProvider provider = new JdbcPermissionProvider(repository);
+		assertEquals(new HashSet<>(Arrays.asList("TRANSFER", "PUBLISH", "READ", "AUDIT")), new HashSet<>(provider.getEffectivePermissions("OWNER_ROLE")));
+		assertEquals(new HashSet<>(Arrays.asList("PUBLISH", "READ", "AUDIT")), provider.getEffectivePermissions(Arrays.asList("EDITOR_ROLE", otherRoleName)));
+		assertEquals(new HashSet<>(Arrays.asList(otherRoleName, "EDITOR_ROLE", "OWNER_ROLE")),
+				provider.getInheritingRoles(Collections.singleton(otherRoleName)));
+	}
+	
+	@Test
+	public void testSingleQueryPerLookup() {
+		repository.save(new RolePermissions("EDITOR_ROLE", Arrays.asList("PUBLISH"), Collections.singleton(otherRoleName)));
+		repository.save(new RolePermissions("OWNER_ROLE", Arrays.asList("TRANSFER"), Collections.singleton("EDITOR_ROLE")));
+		Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+		RolePermissionsRepository counting = (RolePermissionsRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { RolePermissionsRepository.class }, (proxy, method, args) -> {
+					calls.computeIfAbsent(method.getName(), m -> new AtomicInteger()).incrementAndGet();
+					try {
+						return method.invoke(repository, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+		JdbcPermissionProvider provider = new JdbcPermissionProvider(counting);
+		provider.getEffectivePermissions(roleName);
+		calls.clear();
+		assertEquals(new HashSet<>(permissions), new HashSet<>(provider.getEffectivePermissions(roleName)));
+		assertEquals(new HashSet<>(Arrays.asList("TRANSFER", "PUBLISH", "READ", "AUDIT")), new HashSet<>(provider.getEffectivePermissions("OWNER_ROLE")));
+		provider.getInheritingRoles(Collections.singleton(otherRoleName));
+		provider.getEffectivePermissions(Arrays.asList(roleName, "OWNER_ROLE"));
+		assertEquals(Collections.singleton("findPermissionsByRoleIn"), calls.keySet(), "the hierarchy should be read once");
+		assertEquals(3, calls.get("findPermissionsByRoleIn").get(), "each lookup should be a single query however deep the role is");
+	}
+
 	@SpringBootApplication
 	@EnableRolePermissions
 	public static class TestConfig {
 		
 	}
-	
 }
@@ -0,0 +1,77 @@
+package net.savantly.authorization.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import net.savantly.authorization.configuration.RolePermissionsFileReloader;
+
+public class PropertiesPermissionProviderTests {
+
+	@Test
+	public void testCompiledMappings() {
+		Map<String, List<String>> roles = new LinkedHashMap<>();
+		roles.put("ROLE_ADMIN", Arrays.asList(" CREATE", "READ", "READ", ""));
+		roles.put("ROLE_USER", Arrays.asList("READ"));
+		roles.put("ROLE_EMPTY", null);
+		PropertiesPermissionProvider provider = new PropertiesPermissionProvider(roles);
+
+		assertEquals(Arrays.asList("CREATE", "READ"), provider.getEffectivePermissions("ROLE_ADMIN"));
+		assertTrue(provider.getEffectivePermissions("ROLE_EMPTY").isEmpty());
+		assertTrue(provider.getEffectivePermissions("ROLE_UNKNOWN").isEmpty());
+		assertEquals(new HashSet<>(Arrays.asList("CREATE", "READ")),
+				provider.getEffectivePermissions(Arrays.asList("ROLE_USER", "ROLE_ADMIN", "ROLE_UNKNOWN")));
+		assertEquals(roles.keySet(), new HashSet<>(provider.getRoles()));
+		assertSame(provider.getEffectivePermissions("ROLE_ADMIN"), provider.getEffectivePermissions("ROLE_ADMIN"),
+				"lookups should return the compiled list");
+		assertSame(provider.getEffectivePermissions("ROLE_ADMIN").get(1), provider.getEffectivePermissions("ROLE_USER").get(0),
+				"permission names should be interned");
+		assertThrows(UnsupportedOperationException.class, () -> provider.getEffectivePermissions("ROLE_ADMIN").add("DELETE"));
+		assertThrows(UnsupportedOperationException.class, () -> provider.getMappings().remove("ROLE_ADMIN"));
+
+		roles.put("ROLE_USER", Arrays.asList("DELETE"));
+		assertEquals(Arrays.asList("READ"), provider.getEffectivePermissions("ROLE_USER"),
+				"changes to the source map should not leak into the compiled mappings");
+	}
+
+	@Test
+	public void testFileReload() throws IOException {
+		Path file = Files.createTempFile("role-permissions", ".properties");
+		try {
+			PropertiesPermissionProvider provider = new PropertiesPermissionProvider(new LinkedHashMap<String, List<String>>());
+			RolePermissionsFileReloader reloader = new RolePermissionsFileReloader(provider, file, null);
+			write(file, "savantly.permissions.roles[ROLE_ADMIN]=CREATE,READ\nsavantly.permissions.roles[ROLE_USER]=READ\n", 1000);
+			reloader.afterPropertiesSet();
+			assertEquals(Arrays.asList("CREATE", "READ"), provider.getEffectivePermissions("ROLE_ADMIN"));
+			assertFalse(reloader.reloadIfModified(), "an unchanged file should not be reloaded");
+
+			write(file, "savantly.permissions.roles[ROLE_ADMIN]=CREATE,READ,DELETE\n", 2000);
+			assertTrue(reloader.reloadIfModified());
+			assertEquals(Arrays.asList("CREATE", "READ", "DELETE"), provider.getEffectivePermissions("ROLE_ADMIN"));
+			assertTrue(provider.getEffectivePermissions("ROLE_USER").isEmpty());
+			reloader.destroy();
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	private void write(Path file, String content, long lastModified) throws IOException {
+		Files.write(file, content.getBytes(StandardCharsets.ISO_8859_1));
+		Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified));
+	}
+}
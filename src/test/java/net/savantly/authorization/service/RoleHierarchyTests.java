@@ -0,0 +1,71 @@
+package net.savantly.authorization.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class RoleHierarchyTests {
+
+	Map<String, List<String>> permissions = new HashMap<>();
+	Map<String, Set<String>> inheritedRoles = new HashMap<>();
+	{
+		permissions.put("VIEWER", Arrays.asList("READ"));
+		permissions.put("EDITOR", Arrays.asList("WRITE"));
+		permissions.put("ADMIN", Arrays.asList("DELETE"));
+		permissions.put("AUDITOR", Arrays.asList("AUDIT"));
+		inheritedRoles.put("EDITOR", Collections.singleton("VIEWER"));
+		inheritedRoles.put("ADMIN", Collections.singleton("EDITOR"));
+	}
+
+	@Test
+	public void testTransitiveClosure() {
+		RoleHierarchy hierarchy = RoleHierarchy.of(permissions, inheritedRoles);
+		assertEquals(Arrays.asList("DELETE", "WRITE", "READ"), hierarchy.getEffectivePermissions("ADMIN"));
+		assertEquals(Arrays.asList("WRITE", "READ"), hierarchy.getEffectivePermissions("EDITOR"));
+		assertTrue(hierarchy.getEffectivePermissions("UNKNOWN_ROLE").isEmpty(), "unknown role should have no permissions");
+	}
+
+	@Test
+	public void testUpdateRecomputesInheritingRolesOnly() {
+		RoleHierarchy hierarchy = RoleHierarchy.of(permissions, inheritedRoles);
+		RoleHierarchy updated = hierarchy.update(Collections.singletonMap("VIEWER", Arrays.asList("READ", "LIST")),
+				Collections.<String, Set<String>>emptyMap(), Collections.singleton("VIEWER"));
+
+		assertTrue(updated.getEffectivePermissions("ADMIN").contains("LIST"), "ADMIN should inherit the new permission");
+		assertSame(hierarchy.getEffectivePermissions("AUDITOR"), updated.getEffectivePermissions("AUDITOR"),
+				"unrelated roles should not be recomputed");
+		assertTrue(!hierarchy.getEffectivePermissions("ADMIN").contains("LIST"), "the previous hierarchy should be unchanged");
+		assertEquals(new HashSet<>(Arrays.asList("VIEWER", "EDITOR", "ADMIN")), updated.getInheritingRoles(Collections.singleton("VIEWER")));
+	}
+
+	@Test
+	public void testUpdateRemovesRole() {
+		RoleHierarchy updated = RoleHierarchy.of(permissions, inheritedRoles)
+				.update(Collections.<String, List<String>>emptyMap(), Collections.<String, Set<String>>emptyMap(), Collections.singleton("EDITOR"));
+		assertTrue(updated.getEffectivePermissions("EDITOR").isEmpty());
+		assertEquals(Arrays.asList("DELETE"), updated.getEffectivePermissions("ADMIN"));
+	}
+
+	@Test
+	public void testCycleIsRejected() {
+		RoleHierarchy hierarchy = RoleHierarchy.of(permissions, inheritedRoles);
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> hierarchy.update(
+				Collections.singletonMap("VIEWER", Arrays.asList("READ")),
+				Collections.singletonMap("VIEWER", Collections.singleton("ADMIN")), Collections.singleton("VIEWER")));
+		assertTrue(e.getMessage().contains("VIEWER"), "the cycle should be named");
+
+		Map<String, Set<String>> selfInheriting = Collections.singletonMap("VIEWER", Collections.singleton("VIEWER"));
+		assertThrows(IllegalArgumentException.class, () -> RoleHierarchy.of(permissions, selfInheriting));
+	}
+}
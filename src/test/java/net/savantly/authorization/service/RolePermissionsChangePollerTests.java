@@ -0,0 +1,136 @@
+package net.savantly.authorization.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import net.savantly.authorization.configuration.EnableRolePermissions;
+import net.savantly.authorization.jdbc.RolePermissions;
+import net.savantly.authorization.jdbc.RolePermissionsRepository;
+
+/**
+ * Runs two nodes against one shared database
+ */
+public class RolePermissionsChangePollerTests {
+
+	ApplicationContextRunner node = new ApplicationContextRunner()
+			.withUserConfiguration(TestConfig.class)
+			.withPropertyValues(
+					"spring.datasource.url=jdbc:h2:mem:role-permissions-change-log;DB_CLOSE_DELAY=-1",
+					"spring.jpa.hibernate.ddl-auto=update",
+					"savantly.permissions.cache.enabled=true",
+					"savantly.permissions.change-log.enabled=true",
+					"savantly.permissions.change-log.poll-interval=0");
+
+	@Test
+	public void testChangesReachOtherNodes() {
+		node.run(a -> node.run(b -> {
+			RolePermissionsRepository repository = a.getBean(RolePermissionsRepository.class);
+			PermissionProvider otherProvider = b.getBean(PermissionProvider.class);
+			RolePermissionsChangePoller otherPoller = b.getBean(RolePermissionsChangePoller.class);
+
+			repository.save(new RolePermissions("ROLE_SHARED", new ArrayList<>(Arrays.asList("READ"))));
+			otherPoller.poll();
+			assertEquals(Arrays.asList("READ"), otherProvider.getEffectivePermissions("ROLE_SHARED"));
+
+			repository.save(new RolePermissions("ROLE_SHARED", new ArrayList<>(Arrays.asList("READ", "WRITE"))));
+			assertFalse(otherProvider.getEffectivePermissions("ROLE_SHARED").contains("WRITE"), "the other node should be stale until it polls");
+			assertEquals(Collections.singleton("ROLE_SHARED"), otherPoller.poll());
+			assertTrue(otherProvider.getEffectivePermissions("ROLE_SHARED").contains("WRITE"), "the other node should reload the changed role");
+
+			repository.deleteById("ROLE_SHARED");
+			assertEquals(Collections.singleton("ROLE_SHARED"), otherPoller.poll());
+			assertTrue(otherProvider.getEffectivePermissions("ROLE_SHARED").isEmpty(), "the deleted role should have no permissions");
+			assertTrue(otherPoller.poll().isEmpty(), "changes should only be reported once");
+		}));
+	}
+
+	@Test
+	public void testVersionsCommittedOutOfOrderAreNotMissed() {
+		node.withPropertyValues("spring.datasource.url=jdbc:h2:mem:role-permissions-change-gaps;DB_CLOSE_DELAY=-1").run(context -> {
+			RolePermissionsChangePoller poller = context.getBean(RolePermissionsChangePoller.class);
+			JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+			poller.poll();
+			long version = poller.getVersion();
+
+			insertChange(jdbcTemplate, version + 2, "ROLE_LATE_B");
+			assertEquals(Collections.singleton("ROLE_LATE_B"), poller.poll());
+			assertEquals(version, poller.getVersion(), "the skipped version should be polled again");
+
+			insertChange(jdbcTemplate, version + 1, "ROLE_LATE_A");
+			assertEquals(Collections.singleton("ROLE_LATE_A"), poller.poll());
+			assertEquals(version + 2, poller.getVersion());
+		});
+	}
+
+	@Test
+	public void testTooManySkippedVersionsReloadEveryRole() {
+		node.withPropertyValues("spring.datasource.url=jdbc:h2:mem:role-permissions-change-overflow;DB_CLOSE_DELAY=-1").run(context -> {
+			RolePermissionsRepository repository = context.getBean(RolePermissionsRepository.class);
+			PermissionProvider provider = context.getBean(PermissionProvider.class);
+			RolePermissionsChangePoller poller = context.getBean(RolePermissionsChangePoller.class);
+			JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+			repository.save(new RolePermissions("ROLE_CACHED", new ArrayList<>(Arrays.asList("READ"))));
+			poller.poll();
+			assertEquals(Arrays.asList("READ"), provider.getEffectivePermissions("ROLE_CACHED"));
+
+			// changed without a change record, so only a reload of every role picks it up
+			jdbcTemplate.update("update role_permissions_permissions set permissions = 'WRITE' where role_permissions_role = 'ROLE_CACHED'");
+			insertChange(jdbcTemplate, poller.getVersion() + 20_000, "ROLE_FAR_AHEAD");
+			poller.poll();
+			assertEquals(Arrays.asList("WRITE"), provider.getEffectivePermissions("ROLE_CACHED"), "every role should be reloaded");
+		});
+	}
+
+	@Test
+	public void testRetentionRunsOncePerInterval() {
+		node.withPropertyValues("spring.datasource.url=jdbc:h2:mem:role-permissions-change-retention;DB_CLOSE_DELAY=-1",
+				"savantly.permissions.change-log.retention=1d").run(context -> {
+			RolePermissionsChangePoller poller = context.getBean(RolePermissionsChangePoller.class);
+			JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+			long version = poller.getVersion();
+			Timestamp old = new Timestamp(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2));
+
+			insertChange(jdbcTemplate, version + 1, "ROLE_OLD_A", old);
+			poller.poll();
+			assertEquals(0, countChanges(jdbcTemplate), "the first poll should remove old records");
+
+			insertChange(jdbcTemplate, version + 2, "ROLE_OLD_B", old);
+			assertEquals(Collections.singleton("ROLE_OLD_B"), poller.poll());
+			assertEquals(1, countChanges(jdbcTemplate), "old records should be kept until the retention interval passes");
+		});
+	}
+
+	private int countChanges(JdbcTemplate jdbcTemplate) {
+		return jdbcTemplate.queryForObject("select count(*) from role_permissions_change", Integer.class);
+	}
+
+	private void insertChange(JdbcTemplate jdbcTemplate, long version, String role) {
+		insertChange(jdbcTemplate, version, role, new Timestamp(System.currentTimeMillis()));
+	}
+
+	private void insertChange(JdbcTemplate jdbcTemplate, long version, String role, Timestamp changedAt) {
+		jdbcTemplate.update("insert into role_permissions_change (version, role, changed_at) values (?, ?, ?)",
+				version, role, changedAt);
+	}
+
+	@Configuration
+	@EnableAutoConfiguration
+	@EnableRolePermissions
+	public static class TestConfig {
+
+	}
+
+}
@@ -0,0 +1,149 @@
+package net.savantly.authorization.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+
+public class RolePermissionsImporterTests {
+
+	EmbeddedDatabase database;
+	JdbcTemplate jdbcTemplate;
+	JdbcTemplatePermissionProvider provider;
+	RolePermissionsImporter importer;
+	List<RolePermissionsChangedEvent> events = new ArrayList<>();
+
+	@BeforeEach
+	public void beforeEach() {
+		database = new EmbeddedDatabaseBuilder()
+				.setType(EmbeddedDatabaseType.H2)
+				.generateUniqueName(true)
+				.addScript("classpath:net/savantly/authorization/jdbc/schema.sql")
+				.build();
+		jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.update("insert into role_permissions (role) values ('ROLE_ADMIN'), ('ROLE_USER'), ('ROLE_OLD')");
+		jdbcTemplate.update("insert into role_permissions_permissions (role_permissions_role, permissions) values "
+				+ "('ROLE_ADMIN', 'CREATE'), ('ROLE_ADMIN', 'READ'), ('ROLE_USER', 'READ'), ('ROLE_OLD', 'READ')");
+		provider = new JdbcTemplatePermissionProvider(jdbcTemplate);
+		importer = new RolePermissionsImporter(jdbcTemplate, new DataSourceTransactionManager(database));
+		importer.setApplicationEventPublisher(event -> events.add((RolePermissionsChangedEvent) event));
+	}
+
+	@AfterEach
+	public void afterEach() {
+		database.shutdown();
+	}
+
+	@Test
+	public void testOnlyDifferencesAreWritten() {
+		Map<String, List<String>> mappings = new LinkedHashMap<>();
+		mappings.put("ROLE_ADMIN", Arrays.asList("READ", "DELETE", "DELETE"));
+		mappings.put("ROLE_USER", Arrays.asList("READ"));
+		mappings.put("ROLE_NEW", Arrays.asList("READ"));
+
+		RolePermissionsImporter.ImportResult result = importer.importMappings(mappings);
+
+		assertEquals(3, result.getRolesRead());
+		assertEquals(2, result.getRolesChanged(), "ROLE_USER did not change");
+		assertEquals(1, result.getRolesCreated());
+		assertEquals(2, result.getPermissionsInserted());
+		assertEquals(1, result.getPermissionsDeleted());
+		assertEquals(new HashSet<>(Arrays.asList("READ", "DELETE")), new HashSet<>(provider.getEffectivePermissions("ROLE_ADMIN")));
+		assertEquals(Arrays.asList("READ"), provider.getEffectivePermissions("ROLE_NEW"));
+		assertEquals(Arrays.asList("READ"), provider.getEffectivePermissions("ROLE_OLD"), "unlisted roles are kept by default");
+		assertEquals(2, (int) jdbcTemplate.queryForObject("select count(*) from role_permissions_change", Integer.class));
+		assertEquals(1, events.size());
+		assertEquals(new HashSet<>(Arrays.asList("ROLE_ADMIN", "ROLE_NEW")), events.get(0).getRoles());
+
+		events.clear();
+		assertEquals(0, importer.importMappings(mappings).getRolesChanged(), "importing the same mappings again changes nothing");
+		assertTrue(events.isEmpty());
+	}
+
+	@Test
+	public void testCsvInBoundedTransactions() {
+		importer.setRolesPerTransaction(2);
+		importer.setBatchSize(2);
+		importer.setRemoveUnlistedRoles(true);
+
+		RolePermissionsImporter.ImportResult result = importer.importCsv(new StringReader(
+				"# role,permissions...\n"
+				+ "ROLE_ADMIN, CREATE, READ, UPDATE\n"
+				+ "\n"
+				+ "ROLE_USER,READ\n"
+				+ "ROLE_GUEST\n"
+				+ "ROLE_SUPPORT,READ,COMMENT\n"));
+
+		assertEquals(4, result.getRolesRead());
+		assertEquals(3, result.getTransactions(), "two chunks of roles and one removal");
+		assertEquals(1, result.getRolesRemoved());
+		assertEquals(Arrays.asList("CREATE", "READ", "UPDATE"), provider.getEffectivePermissions("ROLE_ADMIN").stream().sorted()
+				.collect(Collectors.toList()));
+		assertTrue(provider.getEffectivePermissions("ROLE_GUEST").isEmpty());
+		assertTrue(provider.getRoles().contains("ROLE_GUEST"));
+		assertTrue(!provider.getRoles().contains("ROLE_OLD"), "unlisted roles should be removed");
+		assertTrue(provider.getEffectivePermissions("ROLE_OLD").isEmpty());
+		assertTrue(result.getRolesPerSecond() > 0);
+	}
+
+	@Test
+	public void testRemovedRolesAreNoLongerInherited() {
+		jdbcTemplate.update("insert into role_permissions_inherited_roles (role_permissions_role, inherited_roles) values "
+				+ "('ROLE_ADMIN', 'ROLE_OLD'), ('ROLE_USER', 'ROLE_OLD')");
+		importer.setRemoveUnlistedRoles(true);
+		Map<String, List<String>> mappings = new LinkedHashMap<>();
+		mappings.put("ROLE_ADMIN", Arrays.asList("CREATE", "READ"));
+		mappings.put("ROLE_USER", Arrays.asList("READ"));
+
+		RolePermissionsImporter.ImportResult result = importer.importMappings(mappings);
+
+		assertEquals(1, result.getRolesRemoved());
+		assertEquals(3, result.getRolesChanged(), "the roles inheriting from the removed role changed too");
+		assertEquals(0, (int) jdbcTemplate.queryForObject("select count(*) from role_permissions_inherited_roles", Integer.class));
+		assertEquals(new HashSet<>(Arrays.asList("ROLE_OLD", "ROLE_ADMIN", "ROLE_USER")), events.get(events.size() - 1).getRoles());
+		assertEquals(3, (int) jdbcTemplate.queryForObject("select count(*) from role_permissions_change", Integer.class));
+	}
+
+	@Test
+	public void testChunksCommitInsideAnOuterTransaction() {
+		DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(database);
+		TransactionTemplate outer = new TransactionTemplate(transactionManager);
+		importer = new RolePermissionsImporter(jdbcTemplate, transactionManager);
+		importer.setApplicationEventPublisher(event -> events.add((RolePermissionsChangedEvent) event));
+
+		outer.execute(status -> {
+			importer.importMappings(Collections.singletonMap("ROLE_NEW", Arrays.asList("READ")));
+			status.setRollbackOnly();
+			return null;
+		});
+
+		assertEquals(Arrays.asList("READ"), provider.getEffectivePermissions("ROLE_NEW"), "the chunk should commit on its own");
+	}
+
+	@Test
+	public void testParseCsvLine() {
+		assertEquals("ROLE_GUEST", RolePermissionsImporter.parseCsvLine("ROLE_GUEST").getKey());
+		assertEquals(Collections.emptyList(), RolePermissionsImporter.parseCsvLine("ROLE_GUEST").getValue());
+		assertEquals(Arrays.asList("A", " B"), RolePermissionsImporter.parseCsvLine("ROLE_X,A, B").getValue());
+	}
+}
@@ -0,0 +1,102 @@
+package net.savantly.authorization.service;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import net.savantly.authorization.configuration.EnableRolePermissions;
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+import net.savantly.authorization.jdbc.RolePermissions;
+import net.savantly.authorization.jdbc.RolePermissionsRepository;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class SnapshotPermissionProviderTests {
+
+	String roleName = "TEST_ROLE";
+
+	@Autowired
+	RolePermissionsRepository repository;
+
+	SnapshotPermissionProvider provider;
+
+	@BeforeEach
+	public void beforeEach() {
+		repository.save(new RolePermissions(roleName, new ArrayList<>(Arrays.asList("CREATE", "READ"))));
+		provider = new SnapshotPermissionProvider(repository);
+		provider.afterPropertiesSet();
+	}
+
+	@AfterEach
+	public void afterEach() {
+		provider.destroy();
+		repository.deleteAll();
+	}
+
+	@Test
+	public void testEffectivePermissions() {
+		List<String> effectivePermissions = provider.getEffectivePermissions(roleName);
+		assertTrue(effectivePermissions.contains("CREATE"), "CREATE permission should be present");
+		assertTrue(effectivePermissions.contains("READ"), "READ permission should be present");
+		assertTrue(provider.getEffectivePermissions("UNKNOWN_ROLE").isEmpty(), "unknown role should have no permissions");
+	}
+
+	@Test
+	public void testSnapshotIsImmutable() {
+		assertThrows(UnsupportedOperationException.class, () -> provider.getEffectivePermissions(roleName).add("DELETE"));
+		assertThrows(UnsupportedOperationException.class, () -> provider.getSnapshot().clear());
+	}
+
+	@Test
+	public void testRefreshSwapsSnapshot() throws Exception {
+		repository.save(new RolePermissions(roleName, new ArrayList<>(Arrays.asList("CREATE", "READ", "DELETE"))));
+		assertTrue(!provider.getEffectivePermissions(roleName).contains("DELETE"), "snapshot should not change until refreshed");
+
+		provider.refreshAsync().get();
+		assertTrue(provider.getEffectivePermissions(roleName).contains("DELETE"), "DELETE permission should be present after refresh");
+	}
+
+	@Test
+	public void testInheritedPermissions() {
+		repository.save(new RolePermissions("EDITOR", new ArrayList<>(Arrays.asList("UPDATE")),
+				Collections.singleton(roleName)));
+		repository.save(new RolePermissions("ADMIN", new ArrayList<>(Arrays.asList("DELETE")),
+				Collections.singleton("EDITOR")));
+		provider.refresh();
+		assertTrue(provider.getEffectivePermissions("ADMIN").containsAll(Arrays.asList("DELETE", "UPDATE", "CREATE", "READ")),
+				"ADMIN should inherit the permissions of EDITOR and " + roleName);
+
+		repository.save(new RolePermissions(roleName, new ArrayList<>(Arrays.asList("CREATE", "READ", "EXPORT"))));
+		provider.refresh(Collections.singleton(roleName));
+		assertTrue(provider.getEffectivePermissions("ADMIN").contains("EXPORT"), "ADMIN should inherit the changed permissions");
+	}
+
+	@Test
+	public void testChangeAfterDestroyIsIgnored() {
+		provider.destroy();
+		provider.onRolePermissionsChanged(new RolePermissionsChangedEvent(this, Collections.singleton(roleName)));
+		assertThrows(RejectedExecutionException.class, () -> provider.refreshAsync());
+		assertTrue(provider.getEffectivePermissions(roleName).contains("READ"), "the last snapshot should still be served");
+	}
+
+	@SpringBootApplication
+	@EnableRolePermissions
+	public static class TestConfig {
+
+	}
+
+}
@@ -0,0 +1,110 @@
+package net.savantly.authorization.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.savantly.authorization.cache.BoundedCache;
+import net.savantly.authorization.event.RolePermissionsChangedEvent;
+import net.savantly.authorization.service.TieredPermissionProvider.MergePolicy;
+import net.savantly.authorization.service.TieredPermissionProvider.Tier;
+
+public class TieredPermissionProviderTests {
+
+	Map<String, List<String>> configured = new HashMap<>();
+	Map<String, List<String>> database = new HashMap<>();
+	AtomicInteger databaseLookups = new AtomicInteger();
+	volatile boolean databaseAvailable = true;
+	BoundedCache<String, List<String>> memory = new BoundedCache<>(100);
+
+	@BeforeEach
+	public void beforeEach() {
+		configured.put("ROLE_ADMIN", Arrays.asList("CREATE"));
+		database.put("ROLE_ADMIN", Arrays.asList("READ", "DELETE"));
+		database.put("ROLE_USER", Arrays.asList("READ"));
+	}
+
+	@Test
+	public void testFirstHitFillsCache() {
+		TieredPermissionProvider provider = provider(MergePolicy.FIRST_HIT);
+
+		assertEquals(Arrays.asList("CREATE"), provider.getEffectivePermissions("ROLE_ADMIN"));
+		assertEquals(Arrays.asList("READ"), provider.getEffectivePermissions("ROLE_USER"));
+		assertTrue(provider.getEffectivePermissions("ROLE_UNKNOWN").isEmpty());
+		assertEquals(2, databaseLookups.get(), "the configured tier should answer for ROLE_ADMIN");
+
+		assertEquals(Arrays.asList("READ"), provider.getEffectivePermissions("ROLE_USER"));
+		assertTrue(provider.getEffectivePermissions("ROLE_UNKNOWN").isEmpty());
+		assertEquals(2, databaseLookups.get(), "filled roles, including unknown ones, should be served from memory");
+
+		Tier memoryTier = provider.getTiers().get(0);
+		assertEquals(5, memoryTier.getLookupCount());
+		assertEquals(2, memoryTier.getHitCount());
+		assertEquals(1, provider.getTiers().get(1).getHitCount());
+		assertEquals(1, provider.getTiers().get(2).getHitCount());
+	}
+
+	@Test
+	public void testUnionMergesTiers() {
+		TieredPermissionProvider provider = provider(MergePolicy.UNION);
+
+		assertEquals(Arrays.asList("CREATE", "READ", "DELETE"), provider.getEffectivePermissions("ROLE_ADMIN"));
+		assertEquals(Arrays.asList("CREATE", "READ", "DELETE"), memory.get("ROLE_ADMIN"));
+		assertSame(provider.getEffectivePermissions("ROLE_ADMIN"), provider.getEffectivePermissions("ROLE_ADMIN"));
+		assertEquals(1, databaseLookups.get());
+	}
+
+	@Test
+	public void testFailingTier() {
+		TieredPermissionProvider provider = provider(MergePolicy.FIRST_HIT);
+		databaseAvailable = false;
+
+		assertEquals(Arrays.asList("CREATE"), provider.getEffectivePermissions("ROLE_ADMIN"));
+		assertThrows(IllegalStateException.class, () -> provider.getEffectivePermissions("ROLE_USER"),
+				"an outage should not be mistaken for a role without permissions");
+		assertEquals(1, provider.getTiers().get(2).getErrorCount());
+
+		TieredPermissionProvider union = provider(MergePolicy.UNION);
+		assertEquals(Arrays.asList("CREATE"), union.getEffectivePermissions("ROLE_ADMIN"));
+		assertEquals(null, memory.get("ROLE_ADMIN"), "a partial result should not be filled");
+	}
+
+	@Test
+	public void testChangeInvalidatesCache() {
+		TieredPermissionProvider provider = provider(MergePolicy.FIRST_HIT);
+		provider.getEffectivePermissions("ROLE_USER");
+		database.put("ROLE_USER", Arrays.asList("READ", "COMMENT"));
+
+		provider.onRolePermissionsChanged(new RolePermissionsChangedEvent(this, Collections.singleton("ROLE_USER")));
+		assertEquals(Arrays.asList("READ", "COMMENT"), provider.getEffectivePermissions("ROLE_USER"));
+
+		provider.onRolePermissionsChanged(new RolePermissionsChangedEvent(this));
+		assertEquals(0, memory.size());
+	}
+
+	private TieredPermissionProvider provider(MergePolicy mergePolicy) {
+		memory.invalidateAll();
+		PermissionProvider databaseProvider = role -> {
+			if (!databaseAvailable) {
+				throw new IllegalStateException("database unavailable");
+			}
+			databaseLookups.incrementAndGet();
+			return database.getOrDefault(role, Collections.<String>emptyList());
+		};
+		return new TieredPermissionProvider(Arrays.asList(
+				Tier.cache("memory", memory),
+				new Tier("properties", new PropertiesPermissionProvider(configured)),
+				new Tier("database", databaseProvider)), mergePolicy);
+	}
+}
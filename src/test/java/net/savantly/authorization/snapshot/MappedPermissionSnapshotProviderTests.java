@@ -0,0 +1,142 @@
+package net.savantly.authorization.snapshot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.savantly.authorization.service.FailoverPermissionProvider;
+import net.savantly.authorization.service.PermissionProvider;
+import net.savantly.authorization.service.RoleCatalog;
+
+public class MappedPermissionSnapshotProviderTests {
+
+	Path directory;
+	Path file;
+	Map<String, List<String>> mappings = new LinkedHashMap<>();
+
+	@BeforeEach
+	public void beforeEach() throws IOException {
+		directory = Files.createTempDirectory("permission-snapshot");
+		file = directory.resolve("permissions.snapshot");
+		mappings.put("ROLE_USER", Arrays.asList("READ"));
+		mappings.put("ROLE_ADMIN", Arrays.asList("CREATE", "READ", "orders:refund:*"));
+		mappings.put("ROLE_EMPTY", Collections.<String>emptyList());
+		mappings.put("R\u00d4LE_\u00c9DITEUR", Arrays.asList("UPDATE"));
+	}
+
+	@AfterEach
+	public void afterEach() throws IOException {
+		Files.deleteIfExists(file);
+		Files.deleteIfExists(directory);
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		PermissionSnapshotFile.write(file, 42, mappings);
+		MappedPermissionSnapshotProvider provider = new MappedPermissionSnapshotProvider(file);
+		provider.afterPropertiesSet();
+
+		assertEquals(42, provider.getVersion());
+		assertEquals(Arrays.asList("CREATE", "READ", "orders:refund:*"), provider.getEffectivePermissions("ROLE_ADMIN"));
+		assertEquals(Arrays.asList("READ"), provider.getEffectivePermissions("ROLE_USER"));
+		assertEquals(Arrays.asList("UPDATE"), provider.getEffectivePermissions("R\u00d4LE_\u00c9DITEUR"));
+		assertTrue(provider.getEffectivePermissions("ROLE_EMPTY").isEmpty());
+		assertTrue(provider.getEffectivePermissions("ROLE_UNKNOWN").isEmpty());
+		assertTrue(provider.getEffectivePermissions("ROLE_").isEmpty());
+		assertEquals(mappings.keySet(), new HashSet<>(provider.getRoles()));
+		assertSame(provider.getEffectivePermissions("ROLE_ADMIN"), provider.getEffectivePermissions("ROLE_ADMIN"),
+				"decoded permissions should be reused");
+	}
+
+	@Test
+	public void testManyRoles() throws IOException {
+		Map<String, List<String>> many = new HashMap<>();
+		for (int i = 0; i < 5000; i++) {
+			many.put("ROLE_" + i, Arrays.asList("PERMISSION_" + (i % 100), "PERMISSION_" + (i % 7)));
+		}
+		PermissionSnapshotFile.write(file, 1, many);
+		MappedPermissionSnapshotProvider provider = new MappedPermissionSnapshotProvider(file);
+		provider.afterPropertiesSet();
+		for (Map.Entry<String, List<String>> mapping : many.entrySet()) {
+			assertEquals(mapping.getValue(), provider.getEffectivePermissions(mapping.getKey()));
+		}
+	}
+
+	@Test
+	public void testReload() throws IOException {
+		MappedPermissionSnapshotProvider provider = new MappedPermissionSnapshotProvider(file);
+		provider.afterPropertiesSet();
+		assertFalse(provider.isAvailable());
+		assertThrows(IllegalStateException.class, () -> provider.getEffectivePermissions("ROLE_USER"));
+
+		PermissionSnapshotFile.write(file, 1, mappings);
+		assertTrue(provider.reload());
+		mappings.put("ROLE_USER", Arrays.asList("READ", "COMMENT"));
+		PermissionSnapshotFile.write(file, 2, mappings);
+		assertTrue(provider.reload());
+		assertEquals(2, provider.getVersion());
+		assertEquals(Arrays.asList("READ", "COMMENT"), provider.getEffectivePermissions("ROLE_USER"));
+
+		Files.write(file, new byte[] { 1, 2, 3 });
+		assertFalse(provider.reload());
+		assertEquals(2, provider.getVersion(), "an invalid file should keep the previous snapshot");
+	}
+
+	@Test
+	public void testExportAndFailover() {
+		MapPermissionProvider database = new MapPermissionProvider();
+		MappedPermissionSnapshotProvider snapshot = new MappedPermissionSnapshotProvider(file);
+		PermissionSnapshotExporter exporter = PermissionSnapshotExporter.of(database, file);
+		exporter.setSnapshotProvider(snapshot);
+		exporter.export();
+		FailoverPermissionProvider provider = new FailoverPermissionProvider(database, snapshot);
+
+		assertEquals(Arrays.asList("READ"), provider.getEffectivePermissions("ROLE_USER"));
+		database.available = false;
+		assertEquals(Arrays.asList("READ"), provider.getEffectivePermissions("ROLE_USER"));
+		assertTrue(provider.getEffectivePermissions(Arrays.asList("ROLE_ADMIN", "ROLE_USER")).contains("CREATE"));
+		assertTrue(provider.isFailingOver());
+		assertEquals(2, provider.getFailoverCount());
+
+		database.available = true;
+		provider.getEffectivePermissions("ROLE_USER");
+		assertFalse(provider.isFailingOver());
+		exporter.destroy();
+	}
+
+	class MapPermissionProvider implements PermissionProvider, RoleCatalog {
+
+		volatile boolean available = true;
+
+		@Override
+		public List<String> getEffectivePermissions(String role) {
+			if (!available) {
+				throw new IllegalStateException("database unavailable");
+			}
+			return mappings.getOrDefault(role, Collections.<String>emptyList());
+		}
+
+		@Override
+		public Collection<String> getRoles() {
+			return mappings.keySet();
+		}
+	}
+}